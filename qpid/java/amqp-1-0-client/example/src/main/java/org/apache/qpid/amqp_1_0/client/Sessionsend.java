@@ -0,0 +1,235 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+package org.apache.qpid.amqp_1_0.client;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.commons.cli.*;
+
+/**
+ * Measures the rate at which messages can be sent over many sessions sharing a single connection, each session
+ * sending from its own thread. When more than one session is used, the same number of messages is first sent over a
+ * single session on the connection, and the rates are compared.
+ */
+public class Sessionsend extends Util
+{
+    private static final String USAGE_STRING = "sessionsend [options] <address>\n\nOptions:";
+
+    public static void main(String[] args)
+    {
+        new Sessionsend(args).run();
+    }
+
+
+    public Sessionsend(final String[] args)
+    {
+        super(args);
+    }
+
+    @Override
+    protected boolean hasLinkDurableOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasLinkNameOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasResponseQueueOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasSizeOption()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean hasBlockOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasStdInOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasTxnOption()
+    {
+        return false;
+    }
+
+    @Override
+    protected boolean hasModeOption()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean hasCountOption()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean hasWindowSizeOption()
+    {
+        return true;
+    }
+
+    @Override
+    protected boolean hasSessionCountOption()
+    {
+        return true;
+    }
+
+    public void run()
+    {
+        final String queue = getArgs()[0];
+        final int sessionCount = getSessionCount();
+        final int count = getCount();
+        final byte[] bytes = new byte[Math.max(getMessageSize(), 0)];
+        Arrays.fill(bytes, (byte) '.');
+
+        try
+        {
+            Connection conn = newConnection();
+
+            // the same number of messages sent over a single session, against which the gain from the others is measured
+            double baseline = 0d;
+            if(sessionCount > 1)
+            {
+                baseline = send(conn, queue, 1, count * sessionCount, bytes);
+            }
+
+            double rate = send(conn, queue, sessionCount, count, bytes);
+
+            if(sessionCount > 1)
+            {
+                System.out.println("Speed-up over a single session: " + String.format("%.2f", rate / baseline) + "x");
+            }
+
+            conn.close();
+        }
+        catch (Exception e)
+        {
+            System.err.println("Failed to send messages to " + queue + ": " + e);
+            e.printStackTrace();
+            System.exit(1);
+        }
+
+    }
+
+    private double send(final Connection conn, final String queue, final int sessionCount, final int count,
+                        final byte[] bytes) throws Exception
+    {
+        final List<Session> sessions = new ArrayList<Session>();
+        final List<Sender> senders = new ArrayList<Sender>();
+        for(int i = 0; i < sessionCount; i++)
+        {
+            Session session = conn.createSession();
+            sessions.add(session);
+            senders.add(session.createSender(queue, getWindowSize(), getMode(), null));
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(sessionCount);
+        final AtomicReference<Exception> failure = new AtomicReference<Exception>();
+        for(final Sender sender : senders)
+        {
+            Thread thread = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for(int i = 0; i < count; i++)
+                        {
+                            sender.send(new Message(new Data(new Binary(bytes))));
+                        }
+                    }
+                    catch (Exception e)
+                    {
+                        failure.compareAndSet(null, e);
+                    }
+                    finally
+                    {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long startTime = System.nanoTime();
+        start.countDown();
+        done.await();
+        long elapsed = System.nanoTime() - startTime;
+
+        if(failure.get() != null)
+        {
+            throw failure.get();
+        }
+
+        long total = (long) count * sessionCount;
+        double seconds = elapsed / 1000000000d;
+        double rate = total / seconds;
+        System.out.println("Sent " + total + " messages over " + sessionCount
+                           + (sessionCount == 1 ? " session in " : " sessions in ")
+                           + String.format("%.3f", seconds) + "s ("
+                           + String.format("%.0f", rate) + " msg/s)");
+
+        for(Sender sender : senders)
+        {
+            sender.close();
+        }
+        for(Session session : sessions)
+        {
+            session.close();
+        }
+        return rate;
+    }
+
+    protected void printUsage(Options options)
+    {
+        HelpFormatter formatter = new HelpFormatter();
+        formatter.printHelp(USAGE_STRING, options );
+    }
+
+}
@@ -50,6 +50,7 @@ public abstract class Util
     private boolean _durableLink;
     private boolean _useMultipleConnections;
     private int _windowSize = 100;
+    private int _sessionCount = 1;
     private String _subject;
     private String _filter;
     private String _remoteHost;
@@ -202,6 +203,15 @@ public abstract class Util
                     .create('W'));
         }
 
+        if(hasSessionCountOption())
+        {
+            options.addOption(OptionBuilder.withLongOpt("sessions")
+                    .withDescription("number of sessions to open on the connection (default 1)")
+                    .hasArg(true)
+                    .withArgName("SESSIONS")
+                    .create('n'));
+        }
+
         CommandLine cmdLine = null;
         try
         {
@@ -237,6 +247,11 @@ public abstract class Util
             _subject = cmdLine.getOptionValue('s');
         }
 
+        if(hasSessionCountOption())
+        {
+            _sessionCount = Integer.parseInt(cmdLine.getOptionValue('n',"1"));
+        }
+
         if(cmdLine.hasOption('u'))
         {
             _username = cmdLine.getOptionValue('u');
@@ -375,6 +390,11 @@ public abstract class Util
         return false;
     }
 
+    protected boolean hasSessionCountOption()
+    {
+        return false;
+    }
+
     protected abstract boolean hasLinkDurableOption();
 
     protected abstract boolean hasLinkNameOption();
@@ -528,4 +548,9 @@ public abstract class Util
     {
         return _filter;
     }
+
+    public int getSessionCount()
+    {
+        return _sessionCount;
+    }
 }
@@ -34,6 +34,7 @@ public class FrameWriter implements ValueWriter<AMQFrame>
     private int _size = -1;
     private static final byte[] EMPTY_BYTE_ARRAY = new byte[] {};
     private ByteBuffer _payload;
+    private int _omittedPayloadLength;
 
     enum State
     {
@@ -86,11 +87,12 @@ public class FrameWriter implements ValueWriter<AMQFrame>
 
                         _size = _typeWriter.writeToBuffer(remaining > 8
                                                           ? (ByteBuffer)buffer.duplicate().position(buffer.position()+8)
-                                                          : ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + payloadLength;
+                                                          : ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + payloadLength
+                                + _omittedPayloadLength;
                     }
                     else
                     {
-                        _size = 8 + payloadLength;
+                        _size = 8 + payloadLength + _omittedPayloadLength;
                     }
                     if(remaining >= 4)
                     {
@@ -102,14 +104,15 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                             buffer.put(_frame.getFrameType()); // AMQP Frame Type
                             buffer.putShort(_frame.getChannel());
 
-                            if(_size - payloadLength > remaining)
+                            final int writtenSize = _size - _omittedPayloadLength;
+                            if(writtenSize - payloadLength > remaining)
                             {
                                 buffer.position(buffer.limit());
                                 _state = State.DELEGATE;
                             }
-                            else if(_size > remaining )
+                            else if(writtenSize > remaining )
                             {
-                                buffer.position(buffer.position()+_size-8-payloadLength);
+                                buffer.position(buffer.position()+writtenSize-8-payloadLength);
                                 if(payloadLength > 0)
                                 {
 
@@ -124,7 +127,7 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                             else
                             {
 
-                                buffer.position(buffer.position()+_size-8-payloadLength);
+                                buffer.position(buffer.position()+writtenSize-8-payloadLength);
                                 if(payloadLength > 0)
                                 {
                                     buffer.put(_payload);
@@ -221,7 +224,17 @@ public class FrameWriter implements ValueWriter<AMQFrame>
                     }
                     else if(buffer.hasRemaining())
                     {
-                        buffer.put(_payload);
+                        if(_payload.remaining() > buffer.remaining())
+                        {
+                            ByteBuffer dup = _payload.slice();
+                            dup.limit(buffer.remaining());
+                            buffer.put(dup);
+                            _payload.position(_payload.position() + dup.limit());
+                        }
+                        else
+                        {
+                            buffer.put(_payload);
+                        }
                         if(_payload.remaining() == 0)
                         {
                             _state = State.DONE;
@@ -235,16 +248,32 @@ public class FrameWriter implements ValueWriter<AMQFrame>
         }
         if(_size == -1)
         {
-            _size =  _typeWriter.writeToBuffer(ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + (_payload == null ? 0 : _payload.remaining());
+            _size =  _typeWriter.writeToBuffer(ByteBuffer.wrap(EMPTY_BYTE_ARRAY)) + 8 + (_payload == null ? 0 : _payload.remaining())
+                     + _omittedPayloadLength;
         }
         return _size;
     }
 
+    /**
+     * Sets the frame to be written, without its payload. The frame size written still accounts for the payload,
+     * which the caller must write immediately after the frame.
+     */
+    public void setValueWithoutPayload(AMQFrame frame)
+    {
+        setValue(frame);
+        if(_payload != null)
+        {
+            _omittedPayloadLength = _payload.remaining();
+            _payload = null;
+        }
+    }
+
     public void setValue(AMQFrame frame)
     {
         _frame = frame;
         _state = State.SIZE_0;
         _size = -1;
+        _omittedPayloadLength = 0;
         _payload = null;
         final Object frameBody = frame.getFrameBody();
         if(frameBody!=null)
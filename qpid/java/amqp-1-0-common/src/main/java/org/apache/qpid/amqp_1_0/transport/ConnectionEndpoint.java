@@ -28,6 +28,8 @@ import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.TimeoutException;
@@ -67,6 +69,15 @@ import org.apache.qpid.amqp_1_0.type.transport.Open;
 import org.apache.qpid.amqp_1_0.type.transport.Transfer;
 
 
+/**
+ * The connection end of an AMQP 1.0 connection.
+ *
+ * The connection's lock (see {@link #getLock()}) guards the connection state, the channel tables and frame output.
+ * Each session has its own lock, which also guards its links, so that sessions multiplexed on a connection do not
+ * contend with one another. A thread may take the connection's lock while holding a session's, for instance to send a
+ * frame, but never the other way round: the connection only calls into a session, other than one not yet visible to
+ * other threads, once it has released its own lock.
+ */
 public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Source, ValueWriter.Registry.Source,
                                            ErrorHandler, SASLEndpoint
 
@@ -85,7 +96,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     private static final long DEFAULT_SYNC_TIMEOUT = Long.getLong("amqp.connection_sync_timeout",5000l);
 
 
-    private ConnectionState _state = ConnectionState.UNOPENED;
+    private volatile ConnectionState _state = ConnectionState.UNOPENED;
     private short _channelMax = DEFAULT_CHANNEL_MAX;
     private int _maxFrameSize = 4096;
     private String _remoteContainerId;
@@ -211,8 +222,8 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         if (channel != -1)
         {
             SessionEndpoint endpoint = new SessionEndpoint(this);
-            _sendingSessions[channel] = endpoint;
             endpoint.setSendingChannel(channel);
+            _sendingSessions[channel] = endpoint;
             Begin begin = new Begin();
             begin.setNextOutgoingId(endpoint.getNextOutgoingId());
             begin.setOutgoingWindow(endpoint.getOutgoingWindowSize());
@@ -312,7 +323,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         return -1;
     }
 
-    private SessionEndpoint getSession(final short channel)
+    private synchronized SessionEndpoint getSession(final short channel)
     {
         SessionEndpoint session = _receivingSessions[channel];
         if (session == null)
@@ -376,32 +387,36 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         notifyAll();
     }
 
-    public synchronized void receiveClose(short channel, Close close)
+    public void receiveClose(short channel, Close close)
     {
         setClosedForInput(true);
         _connectionEventListener.closeReceived();
-        switch (_state)
+        synchronized (this)
         {
-            case UNOPENED:
-            case AWAITING_OPEN:
-                Error error = new Error();
-                error.setCondition(ConnectionError.CONNECTION_FORCED);
-                error.setDescription("Connection close sent before connection was opened");
-                close(error);
-                break;
-            case OPEN:
-                _state = ConnectionState.CLOSE_RECEIVED;
-                sendClose(new Close());
-                _state = ConnectionState.CLOSED;
-                break;
-            case CLOSE_SENT:
-                _state = ConnectionState.CLOSED;
+            switch (_state)
+            {
+                case UNOPENED:
+                case AWAITING_OPEN:
+                    Error error = new Error();
+                    error.setCondition(ConnectionError.CONNECTION_FORCED);
+                    error.setDescription("Connection close sent before connection was opened");
+                    close(error);
+                    break;
+                case OPEN:
+                    _state = ConnectionState.CLOSE_RECEIVED;
+                    sendClose(new Close());
+                    _state = ConnectionState.CLOSED;
+                    break;
+                case CLOSE_SENT:
+                    _state = ConnectionState.CLOSED;
 
-            default:
-        }
-        _remoteError = close.getError();
+                default:
+            }
+            _remoteError = close.getError();
 
-        notifyAll();
+            notifyAll();
+        }
+        notifySessions();
     }
 
     public synchronized void close(Error error)
@@ -426,40 +441,91 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void inputClosed()
+    public void inputClosed()
     {
-        if (!_closedForInput)
+        List<SessionEndpoint> sessionsToEnd = new ArrayList<SessionEndpoint>();
+        synchronized (this)
         {
-            _closedForInput = true;
-            switch(_state)
+            if (!_closedForInput)
             {
-                case UNOPENED:
-                case AWAITING_OPEN:
-                case CLOSE_SENT:
-                    _state = ConnectionState.CLOSED;
-                    break;
-                case OPEN:
-                    _state = ConnectionState.CLOSE_RECEIVED;
-                case CLOSED:
-                    // already sent our close - too late to do anything more
-                    break;
-                default:
+                _closedForInput = true;
+                switch(_state)
+                {
+                    case UNOPENED:
+                    case AWAITING_OPEN:
+                    case CLOSE_SENT:
+                        _state = ConnectionState.CLOSED;
+                        break;
+                    case OPEN:
+                        _state = ConnectionState.CLOSE_RECEIVED;
+                    case CLOSED:
+                        // already sent our close - too late to do anything more
+                        break;
+                    default:
+                }
+
+                if(_receivingSessions != null)
+                {
+                    for (int i = 0; i < _receivingSessions.length; i++)
+                    {
+                        if (_receivingSessions[i] != null)
+                        {
+                            sessionsToEnd.add(_receivingSessions[i]);
+                            _receivingSessions[i] = null;
+
+                        }
+                    }
+                }
             }
+            notifyAll();
+        }
 
-            if(_receivingSessions != null)
+        for (SessionEndpoint session : sessionsToEnd)
+        {
+            session.end();
+        }
+        notifySessions();
+    }
+
+    /**
+     * Wakes any threads waiting on the sessions of the connection, so that they see a change in the connection state.
+     * Must not be called while holding the connection's lock.
+     */
+    private void notifySessions()
+    {
+        // a session which has sent its end is no longer in the sending table, but may still await the reply
+        Set<SessionEndpoint> sessions = new LinkedHashSet<SessionEndpoint>();
+        synchronized (this)
+        {
+            if (_sendingSessions != null)
             {
-                for (int i = 0; i < _receivingSessions.length; i++)
+                for (SessionEndpoint session : _sendingSessions)
                 {
-                    if (_receivingSessions[i] != null)
+                    if (session != null)
                     {
-                        _receivingSessions[i].end();
-                        _receivingSessions[i] = null;
-
+                        sessions.add(session);
+                    }
+                }
+            }
+            if (_receivingSessions != null)
+            {
+                for (SessionEndpoint session : _receivingSessions)
+                {
+                    if (session != null)
+                    {
+                        sessions.add(session);
                     }
                 }
             }
         }
-        notifyAll();
+
+        for (SessionEndpoint session : sessions)
+        {
+            synchronized (session.getLock())
+            {
+                session.getLock().notifyAll();
+            }
+        }
     }
 
     private void sendClose(Close closeToSend)
@@ -475,7 +541,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         notifyAll();
     }
 
-    public synchronized void receiveBegin(short channel, Begin begin)
+    public void receiveBegin(short channel, Begin begin)
     {
         short myChannelId;
 
@@ -484,104 +550,115 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         {
             myChannelId = begin.getRemoteChannel().shortValue();
             SessionEndpoint endpoint;
-            try
-            {
-                endpoint = _sendingSessions[myChannelId];
-            }
-            catch (IndexOutOfBoundsException e)
-            {
-                final Error error = new Error();
-                error.setCondition(ConnectionError.FRAMING_ERROR);
-                error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
-                                     + begin.getRemoteChannel() + " which is outside the valid range of 0 to "
-                                     + _channelMax + ".");
-                close(error);
-                return;
-            }
-            if (endpoint != null)
+            synchronized (this)
             {
-                if (_receivingSessions[channel] == null)
+                try
                 {
-                    _receivingSessions[channel] = endpoint;
-                    endpoint.setReceivingChannel(channel);
-                    endpoint.setNextIncomingId(begin.getNextOutgoingId());
-                    endpoint.setOutgoingSessionCredit(begin.getIncomingWindow());
-                    
-                    if (endpoint.getState() == SessionState.END_SENT)
-                    {
-                        _sendingSessions[myChannelId] = null;
-                    }
+                    endpoint = _sendingSessions[myChannelId];
                 }
-                else
+                catch (IndexOutOfBoundsException e)
+                {
+                    final Error error = new Error();
+                    error.setCondition(ConnectionError.FRAMING_ERROR);
+                    error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
+                                         + begin.getRemoteChannel() + " which is outside the valid range of 0 to "
+                                         + _channelMax + ".");
+                    close(error);
+                    return;
+                }
+                if (endpoint == null)
+                {
+                    final Error error = new Error();
+                    error.setCondition(ConnectionError.FRAMING_ERROR);
+                    error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
+                                         + begin.getRemoteChannel() + " which is not known as a begun session.");
+                    close(error);
+                    return;
+                }
+                if (_receivingSessions[channel] != null)
                 {
                     final Error error = new Error();
                     error.setCondition(ConnectionError.FRAMING_ERROR);
                     error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
                     close(error);
+                    return;
                 }
+                _receivingSessions[channel] = endpoint;
             }
-            else
+
+            endpoint.setReceivingChannel(channel);
+            endpoint.setNextIncomingId(begin.getNextOutgoingId());
+            endpoint.setOutgoingSessionCredit(begin.getIncomingWindow());
+
+            if (endpoint.getState() == SessionState.END_SENT)
             {
-                final Error error = new Error();
-                error.setCondition(ConnectionError.FRAMING_ERROR);
-                error.setDescription("BEGIN received on channel " + channel + " with given remote-channel "
-                                     + begin.getRemoteChannel() + " which is not known as a begun session.");
-                close(error);
+                synchronized (this)
+                {
+                    if (_sendingSessions[myChannelId] == endpoint)
+                    {
+                        _sendingSessions[myChannelId] = null;
+                    }
+                }
             }
 
-
         }
         else // Peer requesting session creation
         {
-
-            myChannelId = getFirstFreeChannel();
-            if (myChannelId == -1)
+            SessionEndpoint endpoint;
+            synchronized (this)
             {
-                // close any half open channel
                 myChannelId = getFirstFreeChannel();
+                if (myChannelId == -1)
+                {
+                    // close any half open channel
+                    myChannelId = getFirstFreeChannel();
 
-            }
+                }
 
-            if (_receivingSessions[channel] == null)
-            {
-                SessionEndpoint endpoint = new SessionEndpoint(this, begin);
+                if (_receivingSessions[channel] != null)
+                {
+                    final Error error = new Error();
+                    error.setCondition(ConnectionError.FRAMING_ERROR);
+                    error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
+                    close(error);
+                    return;
+                }
+
+                // the session is not yet visible to other threads, so its lock may be taken while holding ours
+                endpoint = new SessionEndpoint(this, begin);
+                endpoint.setReceivingChannel(channel);
+                endpoint.setSendingChannel(myChannelId);
 
                 _receivingSessions[channel] = endpoint;
                 _sendingSessions[myChannelId] = endpoint;
 
                 Begin beginToSend = new Begin();
 
-                endpoint.setReceivingChannel(channel);
-                endpoint.setSendingChannel(myChannelId);
                 beginToSend.setRemoteChannel(UnsignedShort.valueOf(channel));
                 beginToSend.setNextOutgoingId(endpoint.getNextOutgoingId());
                 beginToSend.setOutgoingWindow(endpoint.getOutgoingWindowSize());
                 beginToSend.setIncomingWindow(endpoint.getIncomingWindowSize());
                 send(myChannelId, beginToSend);
-
-                _connectionEventListener.remoteSessionCreation(endpoint);
-            }
-            else
-            {
-                final Error error = new Error();
-                error.setCondition(ConnectionError.FRAMING_ERROR);
-                error.setDescription("BEGIN received on channel " + channel + " which is already in use.");
-                close(error);
             }
 
+            _connectionEventListener.remoteSessionCreation(endpoint);
+
         }
 
 
     }
 
 
-    public synchronized void receiveEnd(short channel, End end)
+    public void receiveEnd(short channel, End end)
     {
-        SessionEndpoint endpoint = _receivingSessions[channel];
-        if (endpoint != null)
+        SessionEndpoint endpoint;
+        synchronized (this)
         {
+            endpoint = _receivingSessions[channel];
             _receivingSessions[channel] = null;
-
+        }
+        if (endpoint != null)
+        {
             endpoint.receiveEnd(end);
         }
         else
@@ -601,7 +678,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveAttach(short channel, Attach attach)
+    public void receiveAttach(short channel, Attach attach)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -611,7 +688,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     }
 
 
-    public synchronized void receiveDetach(short channel, Detach detach)
+    public void receiveDetach(short channel, Detach detach)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -620,7 +697,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveTransfer(short channel, Transfer transfer)
+    public void receiveTransfer(short channel, Transfer transfer)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -629,7 +706,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveDisposition(short channel, Disposition disposition)
+    public void receiveDisposition(short channel, Disposition disposition)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -638,7 +715,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         }
     }
 
-    public synchronized void receiveFlow(short channel, Flow flow)
+    public void receiveFlow(short channel, Flow flow)
     {
         SessionEndpoint endPoint = getSession(channel);
         if (endPoint != null)
@@ -763,7 +840,7 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
         _logger = logger;
     }
 
-    public synchronized void receive(final short channel, final Object frame)
+    public void receive(final short channel, final Object frame)
     {
         if (_logger.isEnabled())
         {
@@ -1133,14 +1210,19 @@ public class ConnectionEndpoint implements DescribedTypeConstructorRegistry.Sour
     }
 
     public void waitUntil(Predicate predicate, long timeout) throws InterruptedException, TimeoutException
+    {
+        waitUntil(getLock(), predicate, timeout);
+    }
+
+    static void waitUntil(Object lock, Predicate predicate, long timeout) throws InterruptedException, TimeoutException
     {
         long endTime = System.currentTimeMillis() + timeout;
 
-        synchronized(getLock())
+        synchronized(lock)
         {
             while(!predicate.isSatisfied())
             {
-                getLock().wait(timeout);
+                lock.wait(timeout);
 
                 if(!predicate.isSatisfied())
                 {
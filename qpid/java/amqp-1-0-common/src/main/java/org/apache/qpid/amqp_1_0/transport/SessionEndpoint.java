@@ -37,9 +37,16 @@ import java.nio.ByteBuffer;
 import java.util.*;
 import java.util.concurrent.TimeoutException;
 
+/**
+ * The session end of an AMQP 1.0 session.
+ *
+ * The session and its links are guarded by the session's own lock (see {@link #getLock()}) rather than by that of the
+ * connection, which is only taken, while holding the session's lock, to send frames and to update the channel tables.
+ */
 public class SessionEndpoint
 {
-    private SessionState _state = SessionState.INACTIVE;
+    private final Object _lock = new Object();
+    private volatile SessionState _state = SessionState.INACTIVE;
 
     private final Map<String, LinkEndpoint> _linkMap = new HashMap<String, LinkEndpoint>();
     private final Map<LinkEndpoint, UnsignedInteger> _localLinkEndpoints = new HashMap<LinkEndpoint, UnsignedInteger>();
@@ -110,39 +117,47 @@ public class SessionEndpoint
 
     public void setReceivingChannel(final short receivingChannel)
     {
-        _receivingChannel = receivingChannel;
-        switch(_state)
+        synchronized(getLock())
         {
-            case INACTIVE:
-                _state = SessionState.BEGIN_RECVD;
-                break;
-            case BEGIN_SENT:
-                _state = SessionState.ACTIVE;
-                break;
-            case END_PIPE:
-                _state = SessionState.END_SENT;
-                break;
-            default:
-                // TODO error
+            _receivingChannel = receivingChannel;
+            switch(_state)
+            {
+                case INACTIVE:
+                    _state = SessionState.BEGIN_RECVD;
+                    break;
+                case BEGIN_SENT:
+                    _state = SessionState.ACTIVE;
+                    break;
+                case END_PIPE:
+                    _state = SessionState.END_SENT;
+                    break;
+                default:
+                    // TODO error
 
+            }
+            getLock().notifyAll();
         }
     }
 
 
     public void setSendingChannel(final short sendingChannel)
     {
-        _sendingChannel = sendingChannel;
-        switch(_state)
+        synchronized(getLock())
         {
-            case INACTIVE:
-                _state = SessionState.BEGIN_SENT;
-                break;
-            case BEGIN_RECVD:
-                _state = SessionState.ACTIVE;
-                break;
-            default:
-                // TODO error
+            _sendingChannel = sendingChannel;
+            switch(_state)
+            {
+                case INACTIVE:
+                    _state = SessionState.BEGIN_SENT;
+                    break;
+                case BEGIN_RECVD:
+                    _state = SessionState.ACTIVE;
+                    break;
+                default:
+                    // TODO error
 
+            }
+            getLock().notifyAll();
         }
     }
 
@@ -244,49 +259,52 @@ public class SessionEndpoint
 
     public void receiveAttach(final Attach attach)
     {
-        if(_state == SessionState.ACTIVE)
+        synchronized(getLock())
         {
-            UnsignedInteger handle = attach.getHandle();
-            if(_remoteLinkEndpoints.containsKey(handle))
-            {
-                // TODO - Error - handle busy?
-            }
-            else
+            if(_state == SessionState.ACTIVE)
             {
-                LinkEndpoint endpoint = getLinkMap().get(attach.getName());
-                if(endpoint == null)
+                UnsignedInteger handle = attach.getHandle();
+                if(_remoteLinkEndpoints.containsKey(handle))
                 {
-                    endpoint = attach.getRole() == Role.RECEIVER
-                               ? new SendingLinkEndpoint(this, attach)
-                               : new ReceivingLinkEndpoint(this, attach);
+                    // TODO - Error - handle busy?
+                }
+                else
+                {
+                    LinkEndpoint endpoint = getLinkMap().get(attach.getName());
+                    if(endpoint == null)
+                    {
+                        endpoint = attach.getRole() == Role.RECEIVER
+                                   ? new SendingLinkEndpoint(this, attach)
+                                   : new ReceivingLinkEndpoint(this, attach);
 
-                    // TODO : fix below - distinguish between local and remote owned
-                    endpoint.setSource(attach.getSource());
-                    endpoint.setTarget(attach.getTarget());
+                        // TODO : fix below - distinguish between local and remote owned
+                        endpoint.setSource(attach.getSource());
+                        endpoint.setTarget(attach.getTarget());
 
 
-                }
+                    }
 
-                if(attach.getRole() == Role.SENDER)
-                {
-                    endpoint.setDeliveryCount(attach.getInitialDeliveryCount());
-                }
+                    if(attach.getRole() == Role.SENDER)
+                    {
+                        endpoint.setDeliveryCount(attach.getInitialDeliveryCount());
+                    }
 
-                _remoteLinkEndpoints.put(handle, endpoint);
+                    _remoteLinkEndpoints.put(handle, endpoint);
 
-                if(!_localLinkEndpoints.containsKey(endpoint))
-                {
-                    UnsignedInteger localHandle = findNextAvailableHandle();
-                    endpoint.setLocalHandle(localHandle);
-                    _localLinkEndpoints.put(endpoint, localHandle);
+                    if(!_localLinkEndpoints.containsKey(endpoint))
+                    {
+                        UnsignedInteger localHandle = findNextAvailableHandle();
+                        endpoint.setLocalHandle(localHandle);
+                        _localLinkEndpoints.put(endpoint, localHandle);
 
-                    _sessionEventListener.remoteLinkCreation(endpoint);
+                        _sessionEventListener.remoteLinkCreation(endpoint);
 
 
-                }
-                else
-                {
-                    endpoint.receiveAttach(attach);
+                    }
+                    else
+                    {
+                        endpoint.receiveAttach(attach);
+                    }
                 }
             }
         }
@@ -320,8 +338,11 @@ public class SessionEndpoint
 
     public void receiveDetach(final Detach detach)
     {
-        UnsignedInteger handle = detach.getHandle();
-        detach(handle, detach);
+        synchronized(getLock())
+        {
+            UnsignedInteger handle = detach.getHandle();
+            detach(handle, detach);
+        }
     }
 
     private void detach(UnsignedInteger handle, Detach detach)
@@ -461,45 +482,48 @@ public class SessionEndpoint
 
     public void receiveDisposition(final Disposition disposition)
     {
-        Role dispositionRole = disposition.getRole();
+        synchronized(getLock())
+        {
+            Role dispositionRole = disposition.getRole();
 
-        LinkedHashMap<UnsignedInteger, Delivery> unsettledTransfers;
+            LinkedHashMap<UnsignedInteger, Delivery> unsettledTransfers;
 
-        if(dispositionRole == Role.RECEIVER)
-        {
-            unsettledTransfers = _outgoingUnsettled;
-        }
-        else
-        {
-            unsettledTransfers = _incomingUnsettled;
+            if(dispositionRole == Role.RECEIVER)
+            {
+                unsettledTransfers = _outgoingUnsettled;
+            }
+            else
+            {
+                unsettledTransfers = _incomingUnsettled;
 
-        }
+            }
 
-        UnsignedInteger deliveryId = disposition.getFirst();
-        UnsignedInteger last = disposition.getLast();
-        if(last == null)
-        {
-            last = deliveryId;
-        }
+            UnsignedInteger deliveryId = disposition.getFirst();
+            UnsignedInteger last = disposition.getLast();
+            if(last == null)
+            {
+                last = deliveryId;
+            }
 
 
-                while(deliveryId.compareTo(last)<=0)
-                {
+                    while(deliveryId.compareTo(last)<=0)
+                    {
 
-                    Delivery delivery = unsettledTransfers.get(deliveryId);
-                    if(delivery != null)
+                        Delivery delivery = unsettledTransfers.get(deliveryId);
+                        if(delivery != null)
+                        {
+                            delivery.getLinkEndpoint().receiveDeliveryState(delivery,
+                                                                       disposition.getState(),
+                                                                       disposition.getSettled());
+                        }
+                        deliveryId = deliveryId.add(UnsignedInteger.ONE);
+                    }
+                    if(disposition.getSettled())
                     {
-                        delivery.getLinkEndpoint().receiveDeliveryState(delivery,
-                                                                   disposition.getState(),
-                                                                   disposition.getSettled());
+                        checkSendFlow();
                     }
-                    deliveryId = deliveryId.add(UnsignedInteger.ONE);
-                }
-                if(disposition.getSettled())
-                {
-                    checkSendFlow();
-                }
 
+        }
     }
 
     private void checkSendFlow()
@@ -632,7 +656,7 @@ public class SessionEndpoint
 
     public Object getLock()
     {
-        return _connection.getLock();
+        return _lock;
     }
 
 
@@ -643,12 +667,12 @@ public class SessionEndpoint
 
     public void waitUntil(Predicate predicate) throws TimeoutException, InterruptedException
     {
-        _connection.waitUntil(predicate);
+        waitUntil(predicate, getSyncTimeout());
     }
 
     public void waitUntil(Predicate predicate, long timeout) throws TimeoutException, InterruptedException
     {
-        _connection.waitUntil(predicate, timeout);
+        ConnectionEndpoint.waitUntil(getLock(), predicate, timeout);
     }
 
 
@@ -788,13 +812,19 @@ public class SessionEndpoint
 
     public void setNextIncomingId(final UnsignedInteger nextIncomingId)
     {
-        _nextIncomingTransferId = new SequenceNumber(nextIncomingId.intValue());
-
+        synchronized(getLock())
+        {
+            _nextIncomingTransferId = new SequenceNumber(nextIncomingId.intValue());
+        }
     }
 
     public void setOutgoingSessionCredit(final UnsignedInteger outgoingSessionCredit)
     {
-        _outgoingSessionCredit = outgoingSessionCredit;
+        synchronized(getLock())
+        {
+            _outgoingSessionCredit = outgoingSessionCredit;
+            getLock().notifyAll();
+        }
     }
 
     public UnsignedInteger getNextOutgoingId()
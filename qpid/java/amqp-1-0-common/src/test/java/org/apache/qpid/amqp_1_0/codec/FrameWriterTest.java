@@ -0,0 +1,162 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.codec;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.framing.AMQFrame;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.transport.Transfer;
+
+/**
+ * Checks that a frame written without its payload, with the payload then written as it is, is encoded exactly as
+ * the frame written with its payload into a single buffer.
+ */
+public class FrameWriterTest extends TestCase
+{
+    private final AMQPDescribedTypeRegistry _registry = AMQPDescribedTypeRegistry.newInstance()
+            .registerTransportLayer()
+            .registerMessagingLayer();
+
+    public void testNoPayload()
+    {
+        assertWrittenWithoutPayloadAsWithPayload(createFrame(null, false), 1024);
+    }
+
+    public void testEmptyPayload()
+    {
+        assertWrittenWithoutPayloadAsWithPayload(createFrame(ByteBuffer.allocate(0), false), 1024);
+    }
+
+    public void testPayload()
+    {
+        assertWrittenWithoutPayloadAsWithPayload(createFrame(createPayload(0, 300), false), 1024);
+    }
+
+    public void testPayloadWrittenInSmallBuffers()
+    {
+        // buffers which hold at least the fixed frame header, splitting the frame body and the payload at each point
+        for (int bufferSize = 8; bufferSize < 400; bufferSize += 7)
+        {
+            assertWrittenWithoutPayloadAsWithPayload(createFrame(createPayload(0, 300), false), bufferSize);
+        }
+    }
+
+    public void testPayloadSplitOverSeveralFrames()
+    {
+        ByteBuffer content = createPayload(0, 1000);
+        int frameSize = 400;
+        while (content.hasRemaining())
+        {
+            ByteBuffer payload = content.slice();
+            payload.limit(Math.min(frameSize, payload.remaining()));
+            content.position(content.position() + payload.remaining());
+
+            assertWrittenWithoutPayloadAsWithPayload(createFrame(payload, content.hasRemaining()), 1024);
+        }
+    }
+
+    public void testWriterReusedAfterFrameWrittenWithoutPayload()
+    {
+        FrameWriter writer = new FrameWriter(_registry);
+        AMQFrame first = createFrame(createPayload(0, 200), false);
+        writer.setValueWithoutPayload(first);
+        write(writer, 1024);
+
+        AMQFrame second = createFrame(createPayload(1, 100), false);
+        writer.setValue(second);
+        byte[] reused = write(writer, 1024);
+
+        assertTrue("Omitted payload length retained by the writer",
+                   Arrays.equals(writeWithPayload(second, 1024), reused));
+    }
+
+    private void assertWrittenWithoutPayloadAsWithPayload(final AMQFrame frame, final int bufferSize)
+    {
+        byte[] expected = writeWithPayload(frame, bufferSize);
+
+        FrameWriter writer = new FrameWriter(_registry);
+        writer.setValueWithoutPayload(frame);
+        byte[] header = write(writer, bufferSize);
+        ByteBuffer payload = frame.getPayload() == null ? ByteBuffer.allocate(0) : frame.getPayload().duplicate();
+
+        assertEquals("Unexpected encoded size", expected.length, header.length + payload.remaining());
+        assertEquals("Unexpected frame size", expected.length, ByteBuffer.wrap(header).getInt(0));
+
+        byte[] gathered = new byte[header.length + payload.remaining()];
+        System.arraycopy(header, 0, gathered, 0, header.length);
+        payload.get(gathered, header.length, payload.remaining());
+        assertTrue("Unexpected encoding with " + bufferSize + " byte buffers", Arrays.equals(expected, gathered));
+    }
+
+    private byte[] writeWithPayload(final AMQFrame frame, final int bufferSize)
+    {
+        FrameWriter writer = new FrameWriter(_registry);
+        writer.setValue(frame);
+        return write(writer, bufferSize);
+    }
+
+    private byte[] write(final FrameWriter writer, final int bufferSize)
+    {
+        ByteBuffer output = ByteBuffer.allocate(4096);
+        ByteBuffer buffer = ByteBuffer.allocate(bufferSize);
+        while (!writer.isComplete())
+        {
+            buffer.clear();
+            writer.writeToBuffer(buffer);
+            buffer.flip();
+            output.put(buffer);
+        }
+        output.flip();
+        byte[] bytes = new byte[output.remaining()];
+        output.get(bytes);
+        return bytes;
+    }
+
+    private AMQFrame createFrame(final ByteBuffer payload, final boolean more)
+    {
+        Transfer transfer = new Transfer();
+        transfer.setHandle(UnsignedInteger.ZERO);
+        transfer.setDeliveryId(UnsignedInteger.valueOf(5));
+        transfer.setDeliveryTag(new Binary(new byte[] { 1, 2, 3 }));
+        transfer.setMessageFormat(UnsignedInteger.ZERO);
+        if (more)
+        {
+            transfer.setMore(Boolean.TRUE);
+        }
+        return AMQFrame.createAMQFrame((short) 3, transfer, payload);
+    }
+
+    private ByteBuffer createPayload(final int seed, final int size)
+    {
+        byte[] payload = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            payload[i] = (byte) (seed + i);
+        }
+        return ByteBuffer.wrap(payload);
+    }
+}
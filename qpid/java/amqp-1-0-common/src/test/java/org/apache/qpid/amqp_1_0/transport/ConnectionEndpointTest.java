@@ -0,0 +1,358 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.amqp_1_0.transport;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.amqp_1_0.framing.AMQFrame;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.FrameBody;
+import org.apache.qpid.amqp_1_0.type.UnsignedInteger;
+import org.apache.qpid.amqp_1_0.type.UnsignedShort;
+import org.apache.qpid.amqp_1_0.type.transport.Attach;
+import org.apache.qpid.amqp_1_0.type.transport.Begin;
+import org.apache.qpid.amqp_1_0.type.transport.Close;
+import org.apache.qpid.amqp_1_0.type.transport.End;
+import org.apache.qpid.amqp_1_0.type.transport.Flow;
+import org.apache.qpid.amqp_1_0.type.transport.Open;
+import org.apache.qpid.amqp_1_0.type.transport.Role;
+import org.apache.qpid.amqp_1_0.type.transport.Transfer;
+
+/**
+ * Drives the sessions of one connection from several threads at once, as the application and the network do, to
+ * check that the session and connection locks cannot deadlock and that no waiter on a session misses its end.
+ */
+public class ConnectionEndpointTest extends TestCase
+{
+    private static final int SESSION_COUNT = 6;
+    private static final int ITERATIONS = 500;
+    private static final long JOIN_TIMEOUT = 10000l;
+    private static final UnsignedInteger WINDOW = UnsignedInteger.valueOf(1 << 20);
+
+    private final List<Throwable> _failures = Collections.synchronizedList(new ArrayList<Throwable>());
+    private final AtomicInteger _frameCount = new AtomicInteger();
+    private final AtomicInteger _wokenCount = new AtomicInteger();
+    private final CountDownLatch _start = new CountDownLatch(1);
+    private final List<Thread> _threads = new ArrayList<Thread>();
+
+    private ConnectionEndpoint _connection;
+    private final List<SessionEndpoint> _sessions = new ArrayList<SessionEndpoint>();
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _connection = new ConnectionEndpoint(new Container(getName()), null);
+        _connection.setFrameOutputHandler(new CountingFrameOutputHandler());
+        // a waiter which was not woken times out only long after the test has given up on it
+        _connection.setSyncTimeout(JOIN_TIMEOUT * 6);
+        _connection.receiveOpen((short) 0, new Open());
+        assertTrue("Connection not open", _connection.isOpen());
+
+        for(int i = 0; i < SESSION_COUNT; i++)
+        {
+            _sessions.add(createActiveSession(i));
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try
+        {
+            for(Thread thread : _threads)
+            {
+                thread.interrupt();
+            }
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testConcurrentSessionTrafficWithReceiveClose() throws Exception
+    {
+        runConcurrentSessionTraffic(new Runnable()
+        {
+            public void run()
+            {
+                _connection.receiveClose((short) 0, new Close());
+            }
+        });
+    }
+
+    public void testConcurrentSessionTrafficWithInputClosed() throws Exception
+    {
+        runConcurrentSessionTraffic(new Runnable()
+        {
+            public void run()
+            {
+                _connection.inputClosed();
+            }
+        });
+    }
+
+    /**
+     * Every third session is ended by the application, and waits for a reply to its end which never comes, every
+     * third by the peer, and the rest only by the closing of the connection.
+     */
+    private void runConcurrentSessionTraffic(final Runnable closer) throws Exception
+    {
+        for(int i = 0; i < SESSION_COUNT; i++)
+        {
+            startThread("waiter-" + i, createWaiter(_sessions.get(i)));
+            startThread("sender-" + i, createSender(_sessions.get(i), i % 3 == 0));
+        }
+        startThread("network", createNetwork(closer));
+
+        _start.countDown();
+
+        long endTime = System.currentTimeMillis() + JOIN_TIMEOUT;
+        List<String> running = new ArrayList<String>();
+        for(Thread thread : _threads)
+        {
+            thread.join(Math.max(1l, endTime - System.currentTimeMillis()));
+            if(thread.isAlive())
+            {
+                running.add(thread.getName());
+            }
+        }
+
+        long[] deadlocked = ManagementFactory.getThreadMXBean().findDeadlockedThreads();
+        assertNull("Deadlock between threads " + running, deadlocked);
+        assertTrue("Threads did not finish: " + running, running.isEmpty());
+        assertTrue("Unexpected failures: " + _failures, _failures.isEmpty());
+
+        assertEquals("Not all session waiters were woken", SESSION_COUNT, _wokenCount.get());
+        for(SessionEndpoint session : _sessions)
+        {
+            assertTrue("Session on channel " + session.getSendingChannel() + " not ended", session.isEnded());
+        }
+        assertTrue("Connection not closed", _connection.isClosed());
+        assertTrue("No frames were sent", _frameCount.get() > 0);
+    }
+
+    private SessionEndpoint createActiveSession(final int index)
+    {
+        final SessionEndpoint session = _connection.createSession("session-" + index);
+        final short channel = session.getSendingChannel();
+
+        Begin begin = new Begin();
+        begin.setRemoteChannel(UnsignedShort.valueOf(channel));
+        begin.setNextOutgoingId(UnsignedInteger.ZERO);
+        begin.setIncomingWindow(WINDOW);
+        begin.setOutgoingWindow(WINDOW);
+        _connection.receiveBegin(channel, begin);
+        assertTrue("Session on channel " + channel + " not active", session.isActive());
+
+        session.setSessionEventListener(new SessionEventListener()
+        {
+            public void remoteLinkCreation(final LinkEndpoint endpoint)
+            {
+                endpoint.setLinkCredit(UnsignedInteger.valueOf(Integer.MAX_VALUE));
+                endpoint.attach();
+            }
+
+            public void remoteEnd(final End end)
+            {
+            }
+        });
+
+        Attach attach = new Attach();
+        attach.setName("incoming-" + index);
+        attach.setHandle(UnsignedInteger.ZERO);
+        attach.setRole(Role.SENDER);
+        attach.setInitialDeliveryCount(UnsignedInteger.ZERO);
+        session.receiveAttach(attach);
+
+        return session;
+    }
+
+    private Runnable createWaiter(final SessionEndpoint session)
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    session.waitUntil(new Predicate()
+                    {
+                        public boolean isSatisfied()
+                        {
+                            return session.isEnded();
+                        }
+                    });
+                    _wokenCount.incrementAndGet();
+                }
+                catch (Exception e)
+                {
+                    _failures.add(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * Sends transfers and flows on the session, as the application does, under the session's lock.
+     */
+    private Runnable createSender(final SessionEndpoint session, final boolean endSession)
+    {
+        final SendingLinkEndpoint link =
+                session.createSendingLinkEndpoint("outgoing-" + session.getSendingChannel(), "target", "source");
+        link.setLinkCredit(UnsignedInteger.valueOf(Integer.MAX_VALUE));
+
+        return new Runnable()
+        {
+            public void run()
+            {
+                for(int i = 0; i < ITERATIONS; i++)
+                {
+                    synchronized (session.getLock())
+                    {
+                        if(!session.isActive())
+                        {
+                            break;
+                        }
+                        if(endSession && i == ITERATIONS / 2)
+                        {
+                            session.end();
+                            break;
+                        }
+
+                        Transfer transfer = new Transfer();
+                        transfer.setDeliveryTag(new Binary(String.valueOf(i).getBytes()));
+                        transfer.setSettled(Boolean.TRUE);
+                        link.transfer(transfer);
+                        session.sendFlow();
+                    }
+                }
+            }
+        };
+    }
+
+    /**
+     * Delivers transfers and flows to every session, as the connection's network thread does, ends every third
+     * session part way through, and finally closes the connection.
+     */
+    private Runnable createNetwork(final Runnable closer)
+    {
+        return new Runnable()
+        {
+            public void run()
+            {
+                List<SessionEndpoint> open = new ArrayList<SessionEndpoint>(_sessions);
+                for(int i = 0; i < ITERATIONS; i++)
+                {
+                    if(i == ITERATIONS / 2)
+                    {
+                        for(int j = 1; j < SESSION_COUNT; j += 3)
+                        {
+                            SessionEndpoint session = _sessions.get(j);
+                            _connection.receiveEnd(session.getSendingChannel(), new End());
+                            open.remove(session);
+                        }
+                    }
+
+                    for(SessionEndpoint session : open)
+                    {
+                        if(!session.isActive())
+                        {
+                            // ended by the application, which has detached its links
+                            continue;
+                        }
+                        short channel = session.getSendingChannel();
+
+                        Transfer transfer = new Transfer();
+                        transfer.setHandle(UnsignedInteger.ZERO);
+                        transfer.setDeliveryId(UnsignedInteger.valueOf(i));
+                        transfer.setDeliveryTag(new Binary(String.valueOf(i).getBytes()));
+                        transfer.setSettled(Boolean.TRUE);
+                        _connection.receiveTransfer(channel, transfer);
+
+                        Flow flow = new Flow();
+                        flow.setNextIncomingId(UnsignedInteger.valueOf(i));
+                        flow.setIncomingWindow(WINDOW);
+                        flow.setNextOutgoingId(UnsignedInteger.valueOf(i + 1));
+                        flow.setOutgoingWindow(WINDOW);
+                        _connection.receiveFlow(channel, flow);
+                    }
+                }
+                closer.run();
+            }
+        };
+    }
+
+    private void startThread(final String name, final Runnable task)
+    {
+        Thread thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                try
+                {
+                    _start.await();
+                    task.run();
+                }
+                catch (Throwable t)
+                {
+                    _failures.add(t);
+                }
+            }
+        }, name);
+        thread.setDaemon(true);
+        _threads.add(thread);
+        thread.start();
+    }
+
+    private class CountingFrameOutputHandler implements FrameOutputHandler<FrameBody>
+    {
+        public boolean canSend()
+        {
+            return true;
+        }
+
+        public void send(final AMQFrame<FrameBody> frame)
+        {
+            _frameCount.incrementAndGet();
+            // give the other threads a chance to contend for the locks held by the sender
+            Thread.yield();
+        }
+
+        public void send(final AMQFrame<FrameBody> frame, final ByteBuffer payload)
+        {
+            send(frame);
+        }
+
+        public void close()
+        {
+        }
+    }
+}
@@ -43,7 +43,10 @@ import org.apache.qpid.server.store.DurableConfigurationStore;
 import org.apache.qpid.server.store.Event;
 import org.apache.qpid.server.store.EventListener;
 import org.apache.qpid.server.store.EventManager;
+import org.apache.qpid.server.store.FlowableStoredMessage;
+import org.apache.qpid.server.store.MessageContentCache;
 import org.apache.qpid.server.store.MessageStore;
+import org.apache.qpid.server.store.SpillFile;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.store.StoreException;
 import org.apache.qpid.server.store.StoreFuture;
@@ -53,11 +56,12 @@ import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.store.Xid;
 import org.apache.qpid.server.store.berkeleydb.EnvironmentFacadeFactory.EnvironmentFacadeTask;
 import org.apache.qpid.server.store.berkeleydb.entry.HierarchyKey;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
 import org.apache.qpid.server.store.berkeleydb.entry.PreparedTransaction;
 import org.apache.qpid.server.store.berkeleydb.entry.QueueEntryKey;
 import org.apache.qpid.server.store.berkeleydb.tuple.ConfiguredObjectBinding;
-import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.HierarchyKeyBinding;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.MessageMetaDataBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.PreparedTransactionBinding;
 import org.apache.qpid.server.store.berkeleydb.tuple.QueueEntryBinding;
@@ -97,7 +101,10 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
 {
     private static final Logger LOGGER = Logger.getLogger(BDBMessageStore.class);
 
-    public static final int VERSION = 8;
+    public static final int VERSION = 9;
+
+    /** The size of the records in which message content is stored, every record but the last of a message being full */
+    public static final int CONTENT_CHUNK_SIZE = 64 * 1024;
     private static final int LOCK_RETRY_ATTEMPTS = 5;
     private static String CONFIGURED_OBJECTS_DB_NAME = "CONFIGURED_OBJECTS";
     private static String CONFIGURED_OBJECT_HIERARCHY_DB_NAME = "CONFIGURED_OBJECT_HIERARCHY";
@@ -129,6 +136,7 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
     private final EnvironmentFacadeFactory _environmentFacadeFactory;
 
     private volatile Committer _committer;
+    private volatile MessageContentCache _contentCache;
 
     private boolean _isMessageStoreProvider;
 
@@ -284,6 +292,8 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
                 _storeLocation = _environmentFacade.getStoreLocation();
             }
 
+            _contentCache = MessageContentCache.createContentCache(messageStoreSettings);
+
             _committer = _environmentFacade.createCommitter(parent.getName());
             _committer.start();
         }
@@ -319,6 +329,10 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
                 {
                     _committer.stop();
                 }
+                if (_contentCache != null)
+                {
+                    _contentCache.clear();
+                }
             }
             finally
             {
@@ -423,9 +437,7 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
                     }
 
                     //now remove the content data from the store if there is any.
-                    DatabaseEntry contentKeyEntry = new DatabaseEntry();
-                    LongBinding.longToEntry(messageId, contentKeyEntry);
-                    getMessageContentDb().delete(tx, contentKeyEntry);
+                    removeContent(tx, messageId);
 
                     if (LOGGER.isDebugEnabled())
                     {
@@ -880,29 +892,32 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
     }
 
     /**
-     * Stores a chunk of message data.
+     * Stores message data as a record for each {@link #CONTENT_CHUNK_SIZE} bytes of it.
      *
      * @param tx         The transaction for the operation.
      * @param messageId       The message to store the data for.
-     * @param offset          The offset of the data chunk in the message.
-     * @param contentBody     The content of the data chunk.
+     * @param data            The content of the message.
      *
      * @throws StoreException If the operation fails for any reason, or if the specified message does not exist.
      */
-    private void addContent(final com.sleepycat.je.Transaction tx, long messageId, int offset,
-                                      ByteBuffer contentBody) throws StoreException
+    private void addContent(final com.sleepycat.je.Transaction tx, long messageId, byte[] data, int length)
+            throws StoreException
     {
-        DatabaseEntry key = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, key);
-        DatabaseEntry value = new DatabaseEntry();
-        ContentBinding messageBinding = ContentBinding.getInstance();
-        messageBinding.objectToEntry(contentBody.array(), value);
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
         try
         {
-            OperationStatus status = getMessageContentDb().put(tx, key, value);
-            if (status != OperationStatus.SUCCESS)
+            for (int offset = 0; offset < length; offset += CONTENT_CHUNK_SIZE)
             {
-                throw new StoreException("Error adding content for message id " + messageId + ": " + status);
+                int chunk = offset / CONTENT_CHUNK_SIZE;
+                DatabaseEntry key = new DatabaseEntry();
+                keyBinding.objectToEntry(new MessageContentKey(messageId, chunk), key);
+                DatabaseEntry value = new DatabaseEntry(data, offset, Math.min(CONTENT_CHUNK_SIZE, length - offset));
+                OperationStatus status = getMessageContentDb().put(tx, key, value);
+                if (status != OperationStatus.SUCCESS)
+                {
+                    throw new StoreException("Error adding content chunk " + chunk + " for message id " + messageId
+                                             + ": " + status);
+                }
             }
 
             if (LOGGER.isDebugEnabled())
@@ -917,6 +932,33 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
         }
     }
 
+    /**
+     * Removes all of the content records of a message.
+     */
+    private void removeContent(final com.sleepycat.je.Transaction tx, long messageId) throws DatabaseException
+    {
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+        DatabaseEntry contentKeyEntry = new DatabaseEntry();
+        keyBinding.objectToEntry(new MessageContentKey(messageId, 0), contentKeyEntry);
+        DatabaseEntry value = new DatabaseEntry();
+        value.setPartial(0, 0, true);
+
+        Cursor cursor = getMessageContentDb().openCursor(tx, null);
+        try
+        {
+            OperationStatus status = cursor.getSearchKeyRange(contentKeyEntry, value, LockMode.RMW);
+            while (status == OperationStatus.SUCCESS && keyBinding.entryToObject(contentKeyEntry).getMessageId() == messageId)
+            {
+                cursor.delete();
+                status = cursor.getNext(contentKeyEntry, value, LockMode.RMW);
+            }
+        }
+        finally
+        {
+            cursor.close();
+        }
+    }
+
     /**
      * Stores message meta-data.
      *
@@ -1011,11 +1053,8 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
      */
     int getContent(long messageId, int offset, ByteBuffer dst) throws StoreException
     {
-        DatabaseEntry contentKeyEntry = new DatabaseEntry();
-        LongBinding.longToEntry(messageId, contentKeyEntry);
+        MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
         DatabaseEntry value = new DatabaseEntry();
-        ContentBinding contentTupleBinding = ContentBinding.getInstance();
-
 
         if (LOGGER.isDebugEnabled())
         {
@@ -1024,27 +1063,37 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
 
         try
         {
-
+            // only the chunks holding the requested part of the content are read
             int written = 0;
-            OperationStatus status = getMessageContentDb().get(null, contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
-            if (status == OperationStatus.SUCCESS)
-            {
-                byte[] dataAsBytes = contentTupleBinding.entryToObject(value);
-                int size = dataAsBytes.length;
-                if (offset > size)
+            int chunk = offset / CONTENT_CHUNK_SIZE;
+            int offsetInChunk = offset % CONTENT_CHUNK_SIZE;
+            while (dst.hasRemaining())
+            {
+                DatabaseEntry contentKeyEntry = new DatabaseEntry();
+                keyBinding.objectToEntry(new MessageContentKey(messageId, chunk), contentKeyEntry);
+                OperationStatus status = getMessageContentDb().get(null, contentKeyEntry, value, LockMode.READ_UNCOMMITTED);
+                if (status != OperationStatus.SUCCESS)
                 {
-                    throw new RuntimeException("Offset " + offset + " is greater than message size " + size
-                            + " for message id " + messageId + "!");
-
+                    break;
                 }
 
-                written = size - offset;
-                if(written > dst.remaining())
+                int size = value.getSize();
+                if (offsetInChunk > size)
                 {
-                    written = dst.remaining();
+                    throw new RuntimeException("Offset " + offset + " is greater than message size "
+                            + (chunk * CONTENT_CHUNK_SIZE + size) + " for message id " + messageId + "!");
                 }
 
-                dst.put(dataAsBytes, offset, written);
+                int length = Math.min(size - offsetInChunk, dst.remaining());
+                dst.put(value.getData(), value.getOffset() + offsetInChunk, length);
+                written += length;
+
+                if (size < CONTENT_CHUNK_SIZE)
+                {
+                    break;
+                }
+                chunk++;
+                offsetInChunk = 0;
             }
             return written;
         }
@@ -1152,7 +1201,8 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
         return status;
     }
 
-    private class StoredBDBMessage implements StoredMessage<StorableMessageMetaData>
+    private class StoredBDBMessage implements FlowableStoredMessage<StorableMessageMetaData>,
+                                              MessageContentCache.ContentLoader
     {
 
         private final long _messageId;
@@ -1162,6 +1212,7 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
         private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
 
         private byte[] _data;
+        private int _contentLength;
         private volatile SoftReference<byte[]> _dataRef;
 
         StoredBDBMessage(long messageId, StorableMessageMetaData metaData)
@@ -1209,19 +1260,22 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
 
             if(_data == null)
             {
-                _data = new byte[src.remaining()];
+                // the content is sized from the meta-data so that it is not copied again as each frame arrives;
+                // not every type of meta-data gives the size of the content, so the array may be larger than the
+                // content and only the first _contentLength bytes of it are ever read
+                _data = new byte[Math.max(src.remaining(), _metaData.getContentSize())];
                 _dataRef = new SoftReference<byte[]>(_data);
-                src.duplicate().get(_data);
             }
-            else
+            if(_data.length - _contentLength < src.remaining())
             {
                 byte[] oldData = _data;
-                _data = new byte[oldData.length + src.remaining()];
+                _data = new byte[_contentLength + src.remaining()];
                 _dataRef = new SoftReference<byte[]>(_data);
 
-                System.arraycopy(oldData,0,_data,0,oldData.length);
-                src.duplicate().get(_data, oldData.length, src.remaining());
+                System.arraycopy(oldData,0,_data,0,_contentLength);
             }
+            src.duplicate().get(_data, _contentLength, src.remaining());
+            _contentLength += src.remaining();
 
         }
 
@@ -1231,7 +1285,7 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
             byte[] data = _dataRef == null ? null : _dataRef.get();
             if(data != null)
             {
-                int length = Math.min(dst.remaining(), data.length - offsetInMessage);
+                int length = Math.min(dst.remaining(), _contentLength - offsetInMessage);
                 dst.put(data, offsetInMessage, length);
                 return length;
             }
@@ -1239,7 +1293,9 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
             {
                 checkMessageStoreOpen();
 
-                return BDBMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+                MessageContentCache contentCache = _contentCache;
+                int length = contentCache == null ? -1 : contentCache.getContent(_messageId, this, offsetInMessage, dst);
+                return length == -1 ? loadContent(offsetInMessage, dst) : length;
             }
         }
 
@@ -1247,9 +1303,16 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
             byte[] data = _dataRef == null ? null : _dataRef.get();
+            MessageContentCache contentCache = _contentCache;
+            ByteBuffer content;
             if(data != null)
             {
-                return ByteBuffer.wrap(data,offsetInMessage,size);
+                return ByteBuffer.wrap(data, offsetInMessage, Math.min(size, _contentLength - offsetInMessage));
+            }
+            else if(contentCache != null
+                    && (content = contentCache.getContent(_messageId, this, offsetInMessage, size)) != null)
+            {
+                return content;
             }
             else
             {
@@ -1261,16 +1324,38 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
             }
         }
 
+        @Override
+        public int getContentSize()
+        {
+            checkMessageStoreOpen();
+            return getMetaData().getContentSize();
+        }
+
+        @Override
+        public int loadContent(final int offsetInMessage, final ByteBuffer dst)
+        {
+            return BDBMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+        }
+
         synchronized void store(com.sleepycat.je.Transaction txn)
         {
             if (!stored())
             {
                 try
                 {
-                    _dataRef = new SoftReference<byte[]>(_data);
+                    MessageContentCache contentCache = _contentCache;
+                    if(_data != null && contentCache != null && contentCache.isCacheable(_contentLength))
+                    {
+                        // large content is held off-heap once stored, rather than softly referenced
+                        contentCache.put(_messageId, ByteBuffer.wrap(_data, 0, _contentLength));
+                        _dataRef = null;
+                    }
+                    else
+                    {
+                        _dataRef = new SoftReference<byte[]>(_data);
+                    }
                     BDBMessageStore.this.storeMetaData(txn, _messageId, _metaData);
-                    BDBMessageStore.this.addContent(txn, _messageId, 0,
-                                                    _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    BDBMessageStore.this.addContent(txn, _messageId, _data == null ? new byte[0] : _data, _contentLength);
                 }
                 finally
                 {
@@ -1306,6 +1391,19 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
             return StoreFuture.IMMEDIATE_FUTURE;
         }
 
+        @Override
+        public synchronized int flowToDisk(final SpillFile spillFile)
+        {
+            if(!stored())
+            {
+                flushToStore();
+            }
+
+            byte[] data = _dataRef == null ? null : _dataRef.get();
+            _dataRef = null;
+            return data == null ? 0 : data.length;
+        }
+
         @Override
         public void remove()
         {
@@ -1314,6 +1412,12 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
             int delta = getMetaData().getContentSize();
             BDBMessageStore.this.removeMessage(_messageId, false);
             storedSizeChangeOccured(-delta);
+
+            MessageContentCache contentCache = _contentCache;
+            if(contentCache != null)
+            {
+                contentCache.remove(_messageId);
+            }
         }
 
         private boolean stored()
@@ -1676,14 +1780,14 @@ public class BDBMessageStore implements MessageStore, DurableConfigurationStore
         {
             cursor = environmentFacade.getOpenDatabase(MESSAGE_META_DATA_DB_NAME).openCursor(null, null);
             DatabaseEntry key = new DatabaseEntry();
+            // only the message ids are read, the meta-data of a recovered message is read when first needed
             DatabaseEntry value = new DatabaseEntry();
-            MessageMetaDataBinding valueBinding = MessageMetaDataBinding.getInstance();
+            value.setPartial(0, 0, true);
 
             while (cursor.getNext(key, value, LockMode.RMW) == OperationStatus.SUCCESS)
             {
                 long messageId = LongBinding.entryToLong(key);
-                StorableMessageMetaData metaData = valueBinding.entryToObject(value);
-                StoredBDBMessage message = new StoredBDBMessage(messageId, metaData, true);
+                StoredBDBMessage message = new StoredBDBMessage(messageId, null, true);
 
                 if (!handler.handle(message))
                 {
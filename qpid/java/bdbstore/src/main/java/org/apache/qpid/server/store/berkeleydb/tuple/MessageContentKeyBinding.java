@@ -24,29 +24,33 @@ import com.sleepycat.bind.tuple.TupleBinding;
 import com.sleepycat.bind.tuple.TupleInput;
 import com.sleepycat.bind.tuple.TupleOutput;
 
-public class ContentBinding extends TupleBinding<byte[]>
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+
+public class MessageContentKeyBinding extends TupleBinding<MessageContentKey>
 {
-    private static final ContentBinding INSTANCE = new ContentBinding();
+    private static final MessageContentKeyBinding INSTANCE = new MessageContentKeyBinding();
 
-    public static ContentBinding getInstance()
+    public static MessageContentKeyBinding getInstance()
     {
         return INSTANCE;
     }
 
     /** private constructor forces getInstance instead */
-    private ContentBinding() { }
+    private MessageContentKeyBinding() { }
 
     @Override
-    public byte[] entryToObject(final TupleInput input)
+    public MessageContentKey entryToObject(TupleInput tupleInput)
     {
-        byte[] data = new byte[input.available()];
-        input.read(data);
-        return data;
+        long messageId = tupleInput.readLong();
+        int chunk = tupleInput.readInt();
+
+        return new MessageContentKey(messageId, chunk);
     }
 
     @Override
-    public void objectToEntry(final byte[] data, final TupleOutput output)
+    public void objectToEntry(MessageContentKey key, TupleOutput tupleOutput)
     {
-        output.write(data);
+        tupleOutput.writeLong(key.getMessageId());
+        tupleOutput.writeInt(key.getChunk());
     }
 }
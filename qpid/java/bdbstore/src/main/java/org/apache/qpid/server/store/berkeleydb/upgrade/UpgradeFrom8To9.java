@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.upgrade;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.store.StoreException;
+import org.apache.qpid.server.store.berkeleydb.BDBMessageStore;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
+
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Environment;
+import com.sleepycat.je.OperationStatus;
+import com.sleepycat.je.Transaction;
+
+public class UpgradeFrom8To9 extends AbstractStoreUpgrade
+{
+    private static final Logger _logger = Logger.getLogger(UpgradeFrom8To9.class);
+
+    static final String CONTENT_DB_NAME = "MESSAGE_CONTENT";
+    private static final int LONG_SIZE = 8;
+
+    /**
+     * Upgrades from a v8 database to a v9 database
+     *
+     * Change in this version:
+     *
+     * The structure of MESSAGE_CONTENT changes from ( message-id: long ) -> ( byte[] data ) to ( message-id: long,
+     * chunk: int ) -> ( byte[] data ), each message having a record for every {@link BDBMessageStore#CONTENT_CHUNK_SIZE}
+     * bytes of its content, so that a part of the content can be read without reading all of it.
+     */
+    @Override
+    public void performUpgrade(final Environment environment, final UpgradeInteractionHandler handler, ConfiguredObject<?> parent)
+    {
+        reportStarting(environment, 8);
+        if (environment.getDatabaseNames().contains(CONTENT_DB_NAME))
+        {
+            Transaction transaction = environment.beginTransaction(null, null);
+            upgradeMessageContent(environment, transaction);
+            transaction.commit();
+        }
+        reportFinished(environment, 9);
+    }
+
+    private void upgradeMessageContent(final Environment environment, final Transaction transaction)
+    {
+        _logger.info("Message Contents");
+
+        CursorOperation contentOperation = new CursorOperation()
+        {
+            @Override
+            public void processEntry(Database contentDatabase, Database notUsed, Transaction transaction,
+                                     DatabaseEntry key, DatabaseEntry value)
+            {
+                // the chunks of upgraded messages are written to the database being iterated, so are met again here
+                if (key.getSize() == LONG_SIZE)
+                {
+                    long messageId = LongBinding.entryToLong(key);
+                    putChunks(contentDatabase, transaction, messageId, value);
+                    if (!deleteCurrent())
+                    {
+                        throw new StoreException("Unable to delete content record for message " + messageId);
+                    }
+                }
+            }
+        };
+        new DatabaseTemplate(environment, CONTENT_DB_NAME, transaction).run(contentOperation);
+        _logger.info(contentOperation.getRowCount() + " Message Content Entries");
+    }
+
+    private void putChunks(Database contentDatabase, Transaction transaction, long messageId, DatabaseEntry value)
+    {
+        final byte[] data = value.getData();
+        final int offset = value.getOffset();
+        final int size = value.getSize();
+        final MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+
+        for (int position = 0; position < size; position += BDBMessageStore.CONTENT_CHUNK_SIZE)
+        {
+            int chunk = position / BDBMessageStore.CONTENT_CHUNK_SIZE;
+            DatabaseEntry chunkKey = new DatabaseEntry();
+            keyBinding.objectToEntry(new MessageContentKey(messageId, chunk), chunkKey);
+            DatabaseEntry chunkValue = new DatabaseEntry(data, offset + position,
+                                                         Math.min(BDBMessageStore.CONTENT_CHUNK_SIZE, size - position));
+            OperationStatus status = contentDatabase.put(transaction, chunkKey, chunkValue);
+            if (status != OperationStatus.SUCCESS)
+            {
+                throw new StoreException("Cannot add content chunk " + chunk + " of message " + messageId + ": " + status);
+            }
+        }
+    }
+}
@@ -334,6 +334,77 @@ public class BDBMessageStoreTest extends MessageStoreTestCase
         assertTrue("Unexpected content", Arrays.equals(expected, array));
     }
 
+    public void testGetContentOfMessageStoredInSeveralChunks() throws Exception
+    {
+        BDBMessageStore bdbStore = (BDBMessageStore) getStore();
+        byte[] content = new byte[2 * BDBMessageStore.CONTENT_CHUNK_SIZE + 10];
+        for (int i = 0; i < content.length; i++)
+        {
+            content[i] = (byte) i;
+        }
+
+        MessageMetaData messageMetaData_0_8 = new MessageMetaData(createPublishInfoBody_0_8(),
+                createContentHeaderBody_0_8(createContentHeaderProperties_0_8(), content.length));
+        StoredMessage<MessageMetaData> storedMessage_0_8 = bdbStore.addMessage(messageMetaData_0_8);
+        storedMessage_0_8.addContent(0, ByteBuffer.wrap(content, 0, 100));
+        storedMessage_0_8.addContent(100, ByteBuffer.wrap(content, 100, content.length - 100));
+        storedMessage_0_8.flushToStore();
+        long messageid_0_8 = storedMessage_0_8.getMessageNumber();
+
+        // read spanning the end of the first chunk and the start of the second
+        ByteBuffer dst = ByteBuffer.allocate(20);
+        int offset = BDBMessageStore.CONTENT_CHUNK_SIZE - 10;
+        assertEquals("Unexpected length", 20, bdbStore.getContent(messageid_0_8, offset, dst));
+        byte[] expected = new byte[20];
+        System.arraycopy(content, offset, expected, 0, 20);
+        assertTrue("Unexpected content", Arrays.equals(expected, dst.array()));
+
+        // read of the whole content
+        dst = ByteBuffer.allocate(content.length + 10);
+        assertEquals("Unexpected length", content.length, bdbStore.getContent(messageid_0_8, 0, dst));
+        dst.flip();
+        byte[] array = new byte[dst.remaining()];
+        dst.get(array);
+        assertTrue("Unexpected content", Arrays.equals(content, array));
+
+        bdbStore.removeMessage(messageid_0_8, true);
+
+        dst = ByteBuffer.allocate(10);
+        assertEquals("Retrieved content when none was expected",
+                     0, bdbStore.getContent(messageid_0_8, 2 * BDBMessageStore.CONTENT_CHUNK_SIZE, dst));
+    }
+
+    public void testGetContentWhenMetaDataOverstatesContentSize() throws Exception
+    {
+        // not every type of meta-data gives the size of the content, 1-0 meta-data gives its own encoded size
+        BDBMessageStore bdbStore = (BDBMessageStore) getStore();
+        MessageMetaData messageMetaData_0_8 = new MessageMetaData(createPublishInfoBody_0_8(),
+                createContentHeaderBody_0_8(createContentHeaderProperties_0_8(), CONTENT_BYTES.length + 100));
+        StoredMessage<MessageMetaData> storedMessage_0_8 = bdbStore.addMessage(messageMetaData_0_8);
+        storedMessage_0_8.addContent(0, ByteBuffer.wrap(CONTENT_BYTES, 0, 4));
+        storedMessage_0_8.addContent(4, ByteBuffer.wrap(CONTENT_BYTES, 4, CONTENT_BYTES.length - 4));
+
+        assertContent(storedMessage_0_8);
+        storedMessage_0_8.flushToStore();
+        assertContent(storedMessage_0_8);
+
+        ByteBuffer dst = ByteBuffer.allocate(CONTENT_BYTES.length + 10);
+        assertEquals("Unexpected stored length",
+                     CONTENT_BYTES.length, bdbStore.getContent(storedMessage_0_8.getMessageNumber(), 0, dst));
+    }
+
+    private void assertContent(final StoredMessage<MessageMetaData> storedMessage)
+    {
+        ByteBuffer dst = ByteBuffer.allocate(CONTENT_BYTES.length + 10);
+        assertEquals("Unexpected length", CONTENT_BYTES.length, storedMessage.getContent(0, dst));
+
+        ByteBuffer content = storedMessage.getContent(2, CONTENT_BYTES.length + 10);
+        assertEquals("Unexpected length", CONTENT_BYTES.length - 2, content.remaining());
+        byte[] array = new byte[content.remaining()];
+        content.get(array);
+        assertTrue("Unexpected content", Arrays.equals(Arrays.copyOfRange(CONTENT_BYTES, 2, CONTENT_BYTES.length), array));
+    }
+
     /**
      * Tests that messages which are added to the store and then removed using the
      * public MessageStore interfaces are actually removed from the store by then
@@ -0,0 +1,134 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.berkeleydb.upgrade;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.apache.qpid.server.store.berkeleydb.BDBMessageStore;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
+
+import com.sleepycat.bind.tuple.LongBinding;
+import com.sleepycat.je.Database;
+import com.sleepycat.je.DatabaseEntry;
+import com.sleepycat.je.Transaction;
+
+public class UpgradeFrom8To9Test extends AbstractUpgradeTestCase
+{
+    private static final String MESSAGE_CONTENT_DB_NAME = "MESSAGE_CONTENT";
+    private static final long LARGE_MESSAGE_ID = Long.MAX_VALUE / 2;
+    private static final int LARGE_MESSAGE_SIZE = 2 * BDBMessageStore.CONTENT_CHUNK_SIZE + 100;
+
+    @Override
+    protected String getStoreDirectoryName()
+    {
+        // the content database is unchanged between versions 7 and 8
+        return "bdbstore-v7";
+    }
+
+    public void testPerformUpgrade() throws Exception
+    {
+        final byte[] largeContent = new byte[LARGE_MESSAGE_SIZE];
+        for (int i = 0; i < largeContent.length; i++)
+        {
+            largeContent[i] = (byte) i;
+        }
+        putOldContent(LARGE_MESSAGE_ID, largeContent);
+        Map<Long, Integer> expectedChunkCounts = loadExpectedChunkCounts();
+        assertEquals("Unexpected number of chunks for large message", Integer.valueOf(3),
+                     expectedChunkCounts.get(LARGE_MESSAGE_ID));
+
+        UpgradeFrom8To9 upgrade = new UpgradeFrom8To9();
+        upgrade.performUpgrade(_environment, UpgradeInteractionHandler.DEFAULT_HANDLER, getVirtualHost());
+
+        assertEquals("Unexpected chunks", expectedChunkCounts, loadChunkCounts(largeContent));
+    }
+
+    private Map<Long, Integer> loadExpectedChunkCounts()
+    {
+        final Map<Long, Integer> chunkCounts = new HashMap<Long, Integer>();
+        CursorOperation contentCursorOperation = new CursorOperation()
+        {
+            @Override
+            public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction,
+                                     DatabaseEntry key, DatabaseEntry value)
+            {
+                int size = value.getSize();
+                if (size > 0)
+                {
+                    int chunks = (size + BDBMessageStore.CONTENT_CHUNK_SIZE - 1) / BDBMessageStore.CONTENT_CHUNK_SIZE;
+                    chunkCounts.put(LongBinding.entryToLong(key), chunks);
+                }
+            }
+        };
+        new DatabaseTemplate(_environment, MESSAGE_CONTENT_DB_NAME, null).run(contentCursorOperation);
+        return chunkCounts;
+    }
+
+    private void putOldContent(final long messageId, final byte[] content)
+    {
+        DatabaseRunnable operation = new DatabaseRunnable()
+        {
+            @Override
+            public void run(Database sourceDatabase, Database targetDatabase, Transaction transaction)
+            {
+                DatabaseEntry key = new DatabaseEntry();
+                LongBinding.longToEntry(messageId, key);
+                sourceDatabase.put(null, key, new DatabaseEntry(content));
+            }
+        };
+        new DatabaseTemplate(_environment, MESSAGE_CONTENT_DB_NAME, null).run(operation);
+    }
+
+    private Map<Long, Integer> loadChunkCounts(final byte[] largeContent)
+    {
+        final Map<Long, Integer> chunkCounts = new HashMap<Long, Integer>();
+        final MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
+        CursorOperation contentCursorOperation = new CursorOperation()
+        {
+            @Override
+            public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction,
+                                     DatabaseEntry key, DatabaseEntry value)
+            {
+                MessageContentKey contentKey = keyBinding.entryToObject(key);
+                Integer chunks = chunkCounts.get(contentKey.getMessageId());
+                int expectedChunk = chunks == null ? 0 : chunks;
+                assertEquals("Unexpected chunk", expectedChunk, contentKey.getChunk());
+                chunkCounts.put(contentKey.getMessageId(), expectedChunk + 1);
+
+                if (contentKey.getMessageId() == LARGE_MESSAGE_ID)
+                {
+                    int offset = contentKey.getChunk() * BDBMessageStore.CONTENT_CHUNK_SIZE;
+                    int expectedSize = Math.min(BDBMessageStore.CONTENT_CHUNK_SIZE, largeContent.length - offset);
+                    assertEquals("Unexpected chunk size", expectedSize, value.getSize());
+                    for (int i = 0; i < expectedSize; i++)
+                    {
+                        assertEquals("Unexpected content at " + (offset + i),
+                                     largeContent[offset + i], value.getData()[value.getOffset() + i]);
+                    }
+                }
+            }
+        };
+        new DatabaseTemplate(_environment, MESSAGE_CONTENT_DB_NAME, null).run(contentCursorOperation);
+        return chunkCounts;
+    }
+}
@@ -25,10 +25,10 @@ import java.util.ArrayList;
 import java.util.List;
 
 import org.apache.qpid.server.store.berkeleydb.BDBMessageStore;
-import org.apache.qpid.server.store.berkeleydb.tuple.ContentBinding;
+import org.apache.qpid.server.store.berkeleydb.entry.MessageContentKey;
+import org.apache.qpid.server.store.berkeleydb.tuple.MessageContentKeyBinding;
 
 import com.sleepycat.bind.tuple.IntegerBinding;
-import com.sleepycat.bind.tuple.LongBinding;
 import com.sleepycat.je.Cursor;
 import com.sleepycat.je.Database;
 import com.sleepycat.je.DatabaseConfig;
@@ -127,7 +127,7 @@ public class UpgraderTest extends AbstractUpgradeTestCase
 
     private void assertContent()
     {
-        final ContentBinding contentBinding = ContentBinding.getInstance();
+        final MessageContentKeyBinding keyBinding = MessageContentKeyBinding.getInstance();
         CursorOperation contentCursorOperation = new CursorOperation()
         {
 
@@ -135,10 +135,9 @@ public class UpgraderTest extends AbstractUpgradeTestCase
             public void processEntry(Database sourceDatabase, Database targetDatabase, Transaction transaction, DatabaseEntry key,
                     DatabaseEntry value)
             {
-                long id = LongBinding.entryToLong(key);
-                assertTrue("Unexpected id", id > 0);
-                byte[] content = contentBinding.entryToObject(value);
-                assertNotNull("Unexpected content", content);
+                MessageContentKey contentKey = keyBinding.entryToObject(key);
+                assertTrue("Unexpected id", contentKey.getMessageId() > 0);
+                assertTrue("Unexpected chunk size", value.getSize() <= BDBMessageStore.CONTENT_CHUNK_SIZE);
             }
         };
         new DatabaseTemplate(_environment, "MESSAGE_CONTENT", null).run(contentCursorOperation);
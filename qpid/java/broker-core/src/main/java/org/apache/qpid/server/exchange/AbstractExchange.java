@@ -45,7 +45,6 @@ import org.apache.qpid.server.logging.messages.ExchangeMessages;
 import org.apache.qpid.server.logging.subjects.ExchangeLogSubject;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.MessageInstance;
-import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.AbstractConfiguredObject;
 import org.apache.qpid.server.model.Binding;
@@ -59,6 +58,7 @@ import org.apache.qpid.server.model.State;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.BaseQueue;
 import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.txn.EnqueueAction;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.util.StateChangeListener;
@@ -453,6 +453,12 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
         return getBindings().size();
     }
 
+    @Override
+    public long getRoutingStateCount()
+    {
+        return 0L;
+    }
+
 
     final List<? extends BaseQueue> route(final ServerMessage message,
                                           final String routingAddress,
@@ -471,6 +477,7 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
             {
                 if(!deletedQueues)
                 {
+                    // the routed list may be shared, as by the routing cache, so is copied before it is changed
                     deletedQueues = true;
                     queues = new ArrayList<BaseQueue>(allQueues);
                 }
@@ -520,30 +527,7 @@ public abstract class AbstractExchange<T extends AbstractExchange<T>>
         {
             final BaseQueue[] baseQueues = queues.toArray(new BaseQueue[queues.size()]);
 
-            txn.enqueue(queues,message, new ServerTransaction.Action()
-            {
-                MessageReference _reference = message.newReference();
-
-                public void postCommit()
-                {
-                    try
-                    {
-                        for(int i = 0; i < baseQueues.length; i++)
-                        {
-                            baseQueues[i].enqueue(message, postEnqueueAction);
-                        }
-                    }
-                    finally
-                    {
-                        _reference.release();
-                    }
-                }
-
-                public void onRollback()
-                {
-                    _reference.release();
-                }
-            });
+            txn.enqueue(queues,message, new EnqueueAction(baseQueues, message, postEnqueueAction));
             return queues.size();
         }
     }
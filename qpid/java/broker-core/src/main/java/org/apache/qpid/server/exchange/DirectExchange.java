@@ -159,12 +159,14 @@ public class DirectExchange extends AbstractExchange<DirectExchange>
                 Set<BaseQueue> queuesSet = new HashSet<BaseQueue>(queues);
 
                 Map<BaseQueue, MessageFilter> filteredQueues = bindings.getFilteredQueues();
+                // a single filterable is shared by all of the filters, so that each header is fetched only once
+                final Filterable filterable = Filterable.Factory.newInstance(payload, instanceProperties);
                 for(Map.Entry<BaseQueue, MessageFilter> entry : filteredQueues.entrySet())
                 {
                     if(!queuesSet.contains(entry.getKey()))
                     {
                         MessageFilter filter = entry.getValue();
-                        if(filter.matches(Filterable.Factory.newInstance(payload, instanceProperties)))
+                        if(filter.matches(filterable))
                         {
                             queuesSet.add(entry.getKey());
                         }
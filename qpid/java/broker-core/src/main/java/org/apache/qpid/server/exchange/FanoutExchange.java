@@ -87,6 +87,8 @@ public class FanoutExchange extends AbstractExchange<FanoutExchange>
         final Map<AMQQueue, Map<BindingImpl, MessageFilter>> filteredBindings = _filteredBindings.get();
         if(!_filteredQueues.isEmpty())
         {
+            // a single filterable is shared by all of the filters, so that each header is fetched only once
+            final Filterable filterable = Filterable.Factory.newInstance(payload, instanceProperties);
             for(AMQQueue q : _filteredQueues)
             {
                 final Map<BindingImpl, MessageFilter> bindingMessageFilterMap = filteredBindings.get(q);
@@ -94,7 +96,7 @@ public class FanoutExchange extends AbstractExchange<FanoutExchange>
                 {
                     for(MessageFilter filter : bindingMessageFilterMap.values())
                     {
-                        if(filter.matches(Filterable.Factory.newInstance(payload,instanceProperties)))
+                        if(filter.matches(filterable))
                         {
                             result.add(q);
                             break;
@@ -119,6 +119,46 @@ class HeadersBinding
         return _binding;
     }
 
+    /**
+     * @return the names of the headers which must be present, whatever their value
+     */
+    Set<String> getRequiredHeaders()
+    {
+        return required;
+    }
+
+    /**
+     * @return the headers which must be present with the given value
+     */
+    Map<String, Object> getMatchedHeaders()
+    {
+        return matches;
+    }
+
+    /**
+     * @return true if matching any one of the required headers or header values suffices, rather than all of them
+     */
+    boolean isMatchAny()
+    {
+        return matchAny;
+    }
+
+    /**
+     * @return the number of header conditions of the binding
+     */
+    int getConditionCount()
+    {
+        return required.size() + matches.size();
+    }
+
+    /**
+     * Checks whether the message passes the filter of the binding, if it has one
+     */
+    boolean matchesFilter(Filterable message)
+    {
+        return _filter == null || _filter.matches(message);
+    }
+
     /**
      * Checks whether the supplied headers match the requirements of this binding
      * @param headers the headers to check
@@ -281,4 +321,10 @@ class HeadersBinding
 
         return true;
     }
+
+    @Override
+    public int hashCode()
+    {
+        return _binding == null ? 0 : _binding.hashCode();
+    }
 }
@@ -0,0 +1,230 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.qpid.server.binding.BindingImpl;
+import org.apache.qpid.server.message.AMQMessageHeader;
+
+/**
+ * Indexes the bindings of a headers exchange by the headers they require, so that the bindings matched by a message
+ * are found by looking up each of its headers rather than by testing every binding.
+ *
+ * Bindings are indexed by the name of each header they require to be present, and by the name and value of each
+ * header they require to have a particular value. Looking up the headers of a message yields the bindings with at
+ * least one condition met: a binding matching on any header is then matched, and a binding matching on all headers
+ * is matched once as many of its conditions are met as it has. Bindings without conditions match every message.
+ *
+ * Bindings are added and removed one at a time, but may be while messages are being matched; a binding being added or
+ * removed may or may not be matched meanwhile.
+ */
+final class HeadersBindingIndex
+{
+    private final ConcurrentMap<BindingImpl, HeadersBinding> _bindings =
+            new ConcurrentHashMap<BindingImpl, HeadersBinding>();
+
+    private final Set<HeadersBinding> _unconditionalBindings = newSet();
+
+    private final ConcurrentMap<String, Set<HeadersBinding>> _bindingsByRequiredHeader =
+            new ConcurrentHashMap<String, Set<HeadersBinding>>();
+
+    private final ConcurrentMap<String, ConcurrentMap<Object, Set<HeadersBinding>>> _bindingsByHeaderValue =
+            new ConcurrentHashMap<String, ConcurrentMap<Object, Set<HeadersBinding>>>();
+
+    /**
+     * Adds the binding to the index, replacing any entry for the same binding.
+     */
+    synchronized void add(final HeadersBinding headersBinding)
+    {
+        final HeadersBinding previous = _bindings.put(headersBinding.getBinding(), headersBinding);
+        if(previous != null)
+        {
+            unindex(previous);
+        }
+        index(headersBinding);
+    }
+
+    /**
+     * Removes the binding from the index.
+     *
+     * @return true if the binding was in the index
+     */
+    synchronized boolean remove(final BindingImpl binding)
+    {
+        final HeadersBinding headersBinding = _bindings.remove(binding);
+        if(headersBinding != null)
+        {
+            unindex(headersBinding);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Finds the bindings whose header conditions are met by the given message headers. The filters of the bindings
+     * are not applied.
+     */
+    Collection<HeadersBinding> match(final AMQMessageHeader headers)
+    {
+        if(headers == null)
+        {
+            return _unconditionalBindings;
+        }
+
+        final Map<HeadersBinding, int[]> conditionsMet = new IdentityHashMap<HeadersBinding, int[]>();
+        final Set<HeadersBinding> matched = Collections.newSetFromMap(new IdentityHashMap<HeadersBinding, Boolean>());
+        matched.addAll(_unconditionalBindings);
+
+        for(String name : headers.getHeaderNames())
+        {
+            final Set<HeadersBinding> requiringHeader = _bindingsByRequiredHeader.get(name);
+            if(requiringHeader != null)
+            {
+                conditionMet(requiringHeader, conditionsMet, matched);
+            }
+
+            final ConcurrentMap<Object, Set<HeadersBinding>> bindingsByValue = _bindingsByHeaderValue.get(name);
+            if(bindingsByValue != null)
+            {
+                final Object value = headers.getHeader(name);
+                final Set<HeadersBinding> requiringValue = value == null ? null : bindingsByValue.get(value);
+                if(requiringValue != null)
+                {
+                    conditionMet(requiringValue, conditionsMet, matched);
+                }
+            }
+        }
+        return matched;
+    }
+
+    private static void conditionMet(final Set<HeadersBinding> bindings,
+                                     final Map<HeadersBinding, int[]> conditionsMet,
+                                     final Set<HeadersBinding> matched)
+    {
+        for(HeadersBinding headersBinding : bindings)
+        {
+            if(headersBinding.isMatchAny())
+            {
+                matched.add(headersBinding);
+            }
+            else
+            {
+                int[] count = conditionsMet.get(headersBinding);
+                if(count == null)
+                {
+                    count = new int[1];
+                    conditionsMet.put(headersBinding, count);
+                }
+                if(++count[0] == headersBinding.getConditionCount())
+                {
+                    matched.add(headersBinding);
+                }
+            }
+        }
+    }
+
+    private void index(final HeadersBinding headersBinding)
+    {
+        if(headersBinding.getConditionCount() == 0)
+        {
+            _unconditionalBindings.add(headersBinding);
+        }
+        for(String name : headersBinding.getRequiredHeaders())
+        {
+            getOrCreate(_bindingsByRequiredHeader, name).add(headersBinding);
+        }
+        for(Map.Entry<String, Object> entry : headersBinding.getMatchedHeaders().entrySet())
+        {
+            ConcurrentMap<Object, Set<HeadersBinding>> bindingsByValue = _bindingsByHeaderValue.get(entry.getKey());
+            if(bindingsByValue == null)
+            {
+                bindingsByValue = new ConcurrentHashMap<Object, Set<HeadersBinding>>();
+                final ConcurrentMap<Object, Set<HeadersBinding>> existing =
+                        _bindingsByHeaderValue.putIfAbsent(entry.getKey(), bindingsByValue);
+                if(existing != null)
+                {
+                    bindingsByValue = existing;
+                }
+            }
+            getOrCreate(bindingsByValue, entry.getValue()).add(headersBinding);
+        }
+    }
+
+    private void unindex(final HeadersBinding headersBinding)
+    {
+        _unconditionalBindings.remove(headersBinding);
+        for(String name : headersBinding.getRequiredHeaders())
+        {
+            remove(_bindingsByRequiredHeader, name, headersBinding);
+        }
+        for(Map.Entry<String, Object> entry : headersBinding.getMatchedHeaders().entrySet())
+        {
+            final ConcurrentMap<Object, Set<HeadersBinding>> bindingsByValue =
+                    _bindingsByHeaderValue.get(entry.getKey());
+            if(bindingsByValue != null)
+            {
+                remove(bindingsByValue, entry.getValue(), headersBinding);
+                if(bindingsByValue.isEmpty())
+                {
+                    _bindingsByHeaderValue.remove(entry.getKey(), bindingsByValue);
+                }
+            }
+        }
+    }
+
+    private static <K> Set<HeadersBinding> getOrCreate(final ConcurrentMap<K, Set<HeadersBinding>> map, final K key)
+    {
+        Set<HeadersBinding> bindings = map.get(key);
+        if(bindings == null)
+        {
+            bindings = newSet();
+            final Set<HeadersBinding> existing = map.putIfAbsent(key, bindings);
+            if(existing != null)
+            {
+                bindings = existing;
+            }
+        }
+        return bindings;
+    }
+
+    private static <K> void remove(final ConcurrentMap<K, Set<HeadersBinding>> map,
+                                   final K key,
+                                   final HeadersBinding headersBinding)
+    {
+        final Set<HeadersBinding> bindings = map.get(key);
+        if(bindings != null && bindings.remove(headersBinding) && bindings.isEmpty())
+        {
+            map.remove(key, bindings);
+        }
+    }
+
+    private static Set<HeadersBinding> newSet()
+    {
+        return Collections.newSetFromMap(new ConcurrentHashMap<HeadersBinding, Boolean>());
+    }
+}
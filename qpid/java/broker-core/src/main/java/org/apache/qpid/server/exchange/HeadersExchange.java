@@ -22,10 +22,8 @@ package org.apache.qpid.server.exchange;
 
 import java.util.ArrayList;
 import java.util.LinkedHashSet;
-import java.util.ListIterator;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
 
 import org.apache.log4j.Logger;
@@ -77,8 +75,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
     private final ConcurrentHashMap<String, CopyOnWriteArraySet<BindingImpl>> _bindingsByKey =
                             new ConcurrentHashMap<String, CopyOnWriteArraySet<BindingImpl>>();
 
-    private final CopyOnWriteArrayList<HeadersBinding> _bindingHeaderMatchers =
-                            new CopyOnWriteArrayList<HeadersBinding>();
+    private final HeadersBindingIndex _bindingHeaderMatchers = new HeadersBindingIndex();
 
     @ManagedObjectFactoryConstructor
     public HeadersExchange(final Map<String, Object> attributes, final VirtualHostImpl vhost)
@@ -97,10 +94,15 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
         }
 
         LinkedHashSet<BaseQueue> queues = new LinkedHashSet<BaseQueue>();
+        Filterable filterable = null;
 
-        for (HeadersBinding hb : _bindingHeaderMatchers)
+        for (HeadersBinding hb : _bindingHeaderMatchers.match(payload.getMessageHeader()))
         {
-            if (hb.matches(Filterable.Factory.newInstance(payload,instanceProperties)))
+            if(filterable == null)
+            {
+                filterable = Filterable.Factory.newInstance(payload,instanceProperties);
+            }
+            if (hb.matchesFilter(filterable))
             {
                 BindingImpl b = hb.getBinding();
 
@@ -153,15 +155,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
     @Override
     protected void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
     {
-        HeadersBinding headersBinding = new HeadersBinding(binding);
-        ListIterator<HeadersBinding> iter = _bindingHeaderMatchers.listIterator();
-        while(iter.hasNext())
-        {
-            if(iter.next().equals(headersBinding))
-            {
-                iter.set(headersBinding);
-            }
-        }
+        _bindingHeaderMatchers.add(new HeadersBinding(binding));
 
     }
 
@@ -175,7 +169,7 @@ public class HeadersExchange extends AbstractExchange<HeadersExchange>
             bindings.remove(binding);
         }
 
-        boolean removedBinding = _bindingHeaderMatchers.remove(new HeadersBinding(binding));
+        boolean removedBinding = _bindingHeaderMatchers.remove(binding);
         if(_logger.isDebugEnabled())
         {
             _logger.debug("Removing Binding: " + removedBinding);
@@ -26,7 +26,12 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
+import java.util.List;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 
@@ -41,11 +46,13 @@ import org.apache.qpid.server.filter.FilterSupport;
 import org.apache.qpid.server.filter.Filterable;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.ManagedContextDefault;
 import org.apache.qpid.server.model.ManagedObject;
 import org.apache.qpid.server.model.ManagedObjectFactoryConstructor;
 import org.apache.qpid.server.queue.AMQQueue;
 import org.apache.qpid.server.queue.BaseQueue;
 import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
+import org.apache.qpid.server.virtualhost.HouseKeepingTask;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 @ManagedObject( category = false, type = ExchangeDefaults.TOPIC_EXCHANGE_CLASS )
@@ -53,6 +60,11 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 {
     private static final Logger _logger = Logger.getLogger(TopicExchange.class);
 
+    public static final String ROUTING_CACHE_SIZE = "exchange.topic.routingCacheSize";
+
+    @ManagedContextDefault( name = ROUTING_CACHE_SIZE)
+    public static final int DEFAULT_ROUTING_CACHE_SIZE = 4096;
+
     private final TopicParser _parser = new TopicParser();
 
     private final Map<String, TopicExchangeResult> _topicExchangeResults =
@@ -60,12 +72,24 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 
     private final Map<BindingImpl, Map<String,Object>> _bindings = new HashMap<BindingImpl, Map<String,Object>>();
 
+    private final AtomicReference<RoutingCache> _routingCache = new AtomicReference<RoutingCache>(new RoutingCache());
+    private volatile int _routingCacheSize = DEFAULT_ROUTING_CACHE_SIZE;
+
+    private final AtomicBoolean _compactionScheduled = new AtomicBoolean();
+
     @ManagedObjectFactoryConstructor
     public TopicExchange(final Map<String,Object> attributes, final VirtualHostImpl vhost)
     {
         super(attributes, vhost);
     }
 
+    @Override
+    protected void onOpen()
+    {
+        super.onOpen();
+        _routingCacheSize = getContextValue(Integer.class, ROUTING_CACHE_SIZE);
+    }
+
     @Override
     protected synchronized void onBindingUpdated(final BindingImpl binding, final Map<String, Object> oldArguments)
     {
@@ -116,7 +140,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                         return;
                     }
                 }
-
+                invalidateRoutingCache();
             }
         }
         catch (AMQInvalidArgumentException e)
@@ -175,7 +199,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             }
 
             result.addBinding(binding);
-
+            invalidateRoutingCache();
         }
         else
         {
@@ -192,7 +216,6 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                 {
                     result.addUnfilteredQueue(queue);
                 }
-                _parser.addBinding(routingKey, result);
                 _topicExchangeResults.put(routingKey,result);
             }
             else
@@ -208,37 +231,45 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             }
 
             result.addBinding(binding);
+            _parser.addBinding(routingKey, result);
             _bindings.put(binding, args);
+            invalidateRoutingCache();
         }
 
     }
 
     @Override
-    public ArrayList<BaseQueue> doRoute(ServerMessage payload,
-                                        final String routingAddress,
-                                        final InstanceProperties instanceProperties)
+    public List<? extends BaseQueue> doRoute(ServerMessage payload,
+                                             final String routingAddress,
+                                             final InstanceProperties instanceProperties)
     {
 
         final String routingKey = routingAddress == null
                                           ? ""
                                           : routingAddress;
 
-        final Collection<AMQQueue> matchedQueues =
-                getMatchedQueues(Filterable.Factory.newInstance(payload,instanceProperties), routingKey);
-
-        ArrayList<BaseQueue> queues;
-
-        if(matchedQueues.getClass() == ArrayList.class)
+        final List<? extends BaseQueue> queues;
+        final RoutingCache routingCache = _routingCache.get();
+        final CachedRoute route = routingCache.get(routingKey);
+        if(route != null)
         {
-            queues = (ArrayList) matchedQueues;
+            route.incrementMatches();
+            // the cached list is shared by every message routed with the key, so must not be changed by the caller
+            queues = Collections.unmodifiableList(route.getQueues());
         }
         else
         {
-            queues = new ArrayList<BaseQueue>();
-            queues.addAll(matchedQueues);
+            final Collection<TopicMatcherResult> results = _parser.parse(routingKey);
+            final Collection<AMQQueue> matchedQueues =
+                    getMatchedQueues(Filterable.Factory.newInstance(payload,instanceProperties), results);
+            if(isCacheable(results))
+            {
+                cacheRoute(routingCache, routingKey, results, matchedQueues);
+            }
+            queues = new ArrayList<BaseQueue>(matchedQueues);
         }
 
-        if(queues == null || queues.isEmpty())
+        if(queues.isEmpty())
         {
             _logger.info("Message routing key: " + routingAddress + " No routes.");
         }
@@ -256,6 +287,15 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             TopicExchangeResult result = _topicExchangeResults.get(bindingKey);
 
             result.removeBinding(binding);
+            if(result.getBindings().isEmpty())
+            {
+                _topicExchangeResults.remove(bindingKey);
+            }
+            _parser.removeBinding(bindingKey);
+            if(_parser.isCompactionDue())
+            {
+                scheduleCompaction();
+            }
 
             if(FilterSupport.argumentsContainFilter(bindingArgs))
             {
@@ -266,6 +306,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
                 }
                 catch (AMQInvalidArgumentException e)
                 {
+                    invalidateRoutingCache();
                     return false;
                 }
             }
@@ -273,6 +314,7 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
             {
                 result.removeUnfilteredQueue(binding.getAMQQueue());
             }
+            invalidateRoutingCache();
             return true;
         }
         else
@@ -281,10 +323,8 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         }
     }
 
-    private Collection<AMQQueue> getMatchedQueues(Filterable message, String routingKey)
+    private Collection<AMQQueue> getMatchedQueues(Filterable message, Collection<TopicMatcherResult> results)
     {
-
-        Collection<TopicMatcherResult> results = _parser.parse(routingKey);
         switch(results.size())
         {
             case 0:
@@ -312,6 +352,83 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
 
     }
 
+    /**
+     * The queues matched by a routing key can be cached only if none of the bindings matched has a filter, as
+     * otherwise they depend on the message itself.
+     */
+    private static boolean isCacheable(Collection<TopicMatcherResult> results)
+    {
+        for(TopicMatcherResult result : results)
+        {
+            if(((TopicExchangeResult)result).hasFilteredQueues())
+            {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void cacheRoute(final RoutingCache routingCache,
+                            final String routingKey,
+                            final Collection<TopicMatcherResult> results,
+                            final Collection<AMQQueue> queues)
+    {
+        final int routingCacheSize = _routingCacheSize;
+        if(routingCacheSize > 0)
+        {
+            // the matches of the bindings are only counted when a routing key matches more than one binding key
+            final List<BindingImpl> bindings = new ArrayList<BindingImpl>();
+            if(results.size() > 1)
+            {
+                for(TopicMatcherResult result : results)
+                {
+                    bindings.addAll(((TopicExchangeResult)result).getBindings());
+                }
+            }
+            if(!routingCache.put(routingKey, new CachedRoute(new ArrayList<BaseQueue>(queues), bindings),
+                                 routingCacheSize))
+            {
+                // the cache is full, so start again with an empty one
+                _routingCache.compareAndSet(routingCache, new RoutingCache());
+            }
+        }
+    }
+
+    /**
+     * Discards the cached routes, as the bindings of the exchange have changed. A route being found concurrently may
+     * be added to the old cache, but not to its replacement.
+     */
+    private void invalidateRoutingCache()
+    {
+        _routingCache.set(new RoutingCache());
+    }
+
+    /**
+     * Schedules the state machine matching routing keys to be rebuilt without the states left by removed bindings,
+     * on a housekeeping thread rather than one making or removing bindings.
+     */
+    private void scheduleCompaction()
+    {
+        if(_compactionScheduled.compareAndSet(false, true))
+        {
+            try
+            {
+                getVirtualHost().scheduleTask(0L, new CompactionTask(getVirtualHost()));
+            }
+            catch (RejectedExecutionException e)
+            {
+                // the virtual host is closing
+                _compactionScheduled.set(false);
+            }
+        }
+    }
+
+    @Override
+    public long getRoutingStateCount()
+    {
+        return _parser.getStateCount();
+    }
+
     protected void onBind(final BindingImpl binding)
     {
         try
@@ -330,4 +447,78 @@ public class TopicExchange extends AbstractExchange<TopicExchange>
         deregisterQueue(binding);
     }
 
+    private final class CompactionTask extends HouseKeepingTask
+    {
+        private CompactionTask(final VirtualHostImpl vhost)
+        {
+            super(vhost);
+        }
+
+        @Override
+        public void execute()
+        {
+            _compactionScheduled.set(false);
+            if(!_parser.compact() && _parser.isCompactionDue())
+            {
+                // the bindings changed while the state machine was being rebuilt
+                scheduleCompaction();
+            }
+        }
+    }
+
+    /**
+     * A bounded map from routing key to the queues it routes to, for routing keys whose route does not depend on the
+     * message. The cache is replaced, rather than updated, whenever the bindings change or it becomes full.
+     */
+    private static final class RoutingCache
+    {
+        private final ConcurrentHashMap<String, CachedRoute> _routes = new ConcurrentHashMap<String, CachedRoute>();
+        private final AtomicInteger _size = new AtomicInteger();
+
+        private CachedRoute get(final String routingKey)
+        {
+            return _routes.get(routingKey);
+        }
+
+        /**
+         * @return false if the cache already holds its maximum number of routes
+         */
+        private boolean put(final String routingKey, final CachedRoute route, final int maximumSize)
+        {
+            if(_size.get() >= maximumSize)
+            {
+                return false;
+            }
+            if(_routes.putIfAbsent(routingKey, route) == null)
+            {
+                _size.incrementAndGet();
+            }
+            return true;
+        }
+    }
+
+    private static final class CachedRoute
+    {
+        private final ArrayList<BaseQueue> _queues;
+        private final List<BindingImpl> _bindings;
+
+        private CachedRoute(final ArrayList<BaseQueue> queues, final List<BindingImpl> bindings)
+        {
+            _queues = queues;
+            _bindings = bindings;
+        }
+
+        private ArrayList<BaseQueue> getQueues()
+        {
+            return _queues;
+        }
+
+        private void incrementMatches()
+        {
+            for(BindingImpl binding : _bindings)
+            {
+                binding.incrementMatches();
+            }
+        }
+    }
 }
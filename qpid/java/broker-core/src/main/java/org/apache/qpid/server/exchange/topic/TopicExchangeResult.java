@@ -168,6 +168,15 @@ public final class TopicExchangeResult implements TopicMatcherResult
         _filteredQueues.put(queue,newFilters);
     }
 
+    /**
+     * @return true if any queue is bound with a filter, and so the queues matched depend on the message as well as
+     *         its routing key
+     */
+    public boolean hasFilteredQueues()
+    {
+        return !_filteredQueues.isEmpty();
+    }
+
     public Collection<AMQQueue> processMessage(Filterable msg, Collection<AMQQueue> queues)
     {
         if(queues == null)
@@ -20,15 +20,14 @@
  */
 package org.apache.qpid.server.exchange.topic;
 
-import java.util.Arrays;
-import java.util.Iterator;
-
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -44,7 +43,7 @@ public class TopicMatcherDFAState
 
     private final Collection<TopicMatcherResult> _results;
     private final Map<TopicWord, TopicMatcherDFAState> _nextStateMap;
-    private static final String TOPIC_DELIMITER = "\\.";
+    private static final char TOPIC_DELIMITER = '.';
 
 
     public TopicMatcherDFAState(Map<TopicWord, TopicMatcherDFAState> nextStateMap,
@@ -69,34 +68,52 @@ public class TopicMatcherDFAState
 
     public Collection<TopicMatcherResult> parse(TopicWordDictionary dictionary, String routingKey)
     {
-        return parse(dictionary, Arrays.asList(routingKey.split(TOPIC_DELIMITER)).iterator());
-    }
-
-    private Collection<TopicMatcherResult> parse(final TopicWordDictionary dictionary,
-                                                 final Iterator<String> tokens)
-    {
-        if(!tokens.hasNext())
+        // the words of the routing key are looked up in place rather than split out of it, but are taken as
+        // String.split() would take them: empty words are kept, other than those at the end of the key
+        int end = routingKey.length();
+        while(end > 0 && routingKey.charAt(end - 1) == TOPIC_DELIMITER)
         {
-            return _results;
+            end--;
         }
-        TopicWord word = dictionary.getWord(tokens.next());
-        TopicMatcherDFAState nextState = _nextStateMap.get(word);
-        if(nextState == null && word != TopicWord.ANY_WORD)
-        {
-            nextState = _nextStateMap.get(TopicWord.ANY_WORD);
-        }
-        if(nextState == null)
-        {
-            return Collections.EMPTY_LIST;
-        }
-        // Shortcut if we are at a looping terminal state
-        if((nextState == this) && (_nextStateMap.size() == 1) && _nextStateMap.containsKey(TopicWord.ANY_WORD))
+        if(end == 0 && routingKey.length() != 0)
         {
             return _results;
         }
 
-        return nextState.parse(dictionary, tokens);
+        TopicMatcherDFAState state = this;
+        int start = 0;
+        while(true)
+        {
+            int delimiter = routingKey.indexOf(TOPIC_DELIMITER, start);
+            if(delimiter == -1 || delimiter > end)
+            {
+                delimiter = end;
+            }
+
+            TopicWord word = dictionary.getWord(routingKey, start, delimiter);
+            TopicMatcherDFAState nextState = state._nextStateMap.get(word);
+            if(nextState == null && word != TopicWord.ANY_WORD)
+            {
+                nextState = state._nextStateMap.get(TopicWord.ANY_WORD);
+            }
+            if(nextState == null)
+            {
+                return Collections.EMPTY_LIST;
+            }
+            // Shortcut if we are at a looping terminal state
+            if((nextState == state) && (state._nextStateMap.size() == 1)
+               && state._nextStateMap.containsKey(TopicWord.ANY_WORD))
+            {
+                return state._results;
+            }
 
+            state = nextState;
+            if(delimiter == end)
+            {
+                return state._results;
+            }
+            start = delimiter + 1;
+        }
     }
 
 
@@ -248,6 +265,227 @@ public class TopicMatcherDFAState
     }
 
 
+    /**
+     * @return a copy of the state machine starting at this state, in which no state has the given result. The states
+     *         which led only to the result remain, but lead to no result.
+     */
+    public TopicMatcherDFAState removeResult(final TopicMatcherResult result)
+    {
+        final List<TopicMatcherDFAState> states = getReachableStates();
+        final Map<TopicMatcherDFAState, TopicMatcherDFAState> copies =
+                new HashMap<TopicMatcherDFAState, TopicMatcherDFAState>();
+        final Map<Collection<TopicMatcherResult>, Collection<TopicMatcherResult>> resultCopies =
+                new IdentityHashMap<Collection<TopicMatcherResult>, Collection<TopicMatcherResult>>();
+
+        for(TopicMatcherDFAState state : states)
+        {
+            Collection<TopicMatcherResult> results = state._results;
+            if(results.contains(result))
+            {
+                Collection<TopicMatcherResult> copy = resultCopies.get(results);
+                if(copy == null)
+                {
+                    copy = new HashSet<TopicMatcherResult>(results);
+                    copy.remove(result);
+                    if(copy.isEmpty())
+                    {
+                        copy = Collections.EMPTY_SET;
+                    }
+                    resultCopies.put(results, copy);
+                }
+                results = copy;
+            }
+            copies.put(state, new TopicMatcherDFAState(new HashMap<TopicWord, TopicMatcherDFAState>(), results));
+        }
+
+        for(TopicMatcherDFAState state : states)
+        {
+            final Map<TopicWord, TopicMatcherDFAState> nextStateMap = copies.get(state)._nextStateMap;
+            for(Map.Entry<TopicWord, TopicMatcherDFAState> entry : state._nextStateMap.entrySet())
+            {
+                nextStateMap.put(entry.getKey(), copies.get(entry.getValue()));
+            }
+        }
+
+        return copies.get(this);
+    }
+
+    /**
+     * Builds the minimal state machine equivalent to that starting at this state, by merging the states which match
+     * the same routing keys to the same results and dropping the states from which no result can be reached.
+     *
+     * @return the start state of the minimal state machine, or null if no result can be reached from this state
+     */
+    public TopicMatcherDFAState minimise()
+    {
+        final List<TopicMatcherDFAState> states = getReachableStates();
+        final Set<TopicMatcherDFAState> liveStates = getLiveStates(states);
+        if(!liveStates.contains(this))
+        {
+            return null;
+        }
+
+        // initially partition the live states by their results, then refine the partition by the blocks the
+        // transitions of each state lead to until it no longer changes; dead states are in no block (-1)
+        final Map<TopicMatcherDFAState, Integer> blocks = new HashMap<TopicMatcherDFAState, Integer>();
+        final Map<Object, Integer> signatures = new HashMap<Object, Integer>();
+        for(TopicMatcherDFAState state : liveStates)
+        {
+            blocks.put(state, getBlock(signatures, new HashSet<TopicMatcherResult>(state._results)));
+        }
+
+        int blockCount;
+        do
+        {
+            blockCount = signatures.size();
+            signatures.clear();
+            final Map<TopicMatcherDFAState, Integer> refinedBlocks = new HashMap<TopicMatcherDFAState, Integer>();
+            for(TopicMatcherDFAState state : liveStates)
+            {
+                refinedBlocks.put(state, getBlock(signatures, state.getSignature(blocks)));
+            }
+            blocks.putAll(refinedBlocks);
+        }
+        while(signatures.size() != blockCount);
+
+        final TopicMatcherDFAState[] minimalStates = new TopicMatcherDFAState[blockCount];
+        for(TopicMatcherDFAState state : liveStates)
+        {
+            final int block = blocks.get(state);
+            if(minimalStates[block] == null)
+            {
+                minimalStates[block] =
+                        new TopicMatcherDFAState(new HashMap<TopicWord, TopicMatcherDFAState>(), state._results);
+            }
+        }
+
+        final TopicMatcherDFAState deadState =
+                new TopicMatcherDFAState(Collections.<TopicWord, TopicMatcherDFAState>emptyMap(), Collections.EMPTY_SET);
+        final boolean[] built = new boolean[blockCount];
+        for(TopicMatcherDFAState state : liveStates)
+        {
+            final int block = blocks.get(state);
+            if(!built[block])
+            {
+                built[block] = true;
+                final Map<TopicWord, TopicMatcherDFAState> nextStateMap = minimalStates[block]._nextStateMap;
+                final int anyWordBlock = state.getNextBlock(TopicWord.ANY_WORD, blocks);
+                if(anyWordBlock != -1)
+                {
+                    nextStateMap.put(TopicWord.ANY_WORD, minimalStates[anyWordBlock]);
+                }
+                for(TopicWord word : state._nextStateMap.keySet())
+                {
+                    final int nextBlock = state.getNextBlock(word, blocks);
+                    if(nextBlock != anyWordBlock)
+                    {
+                        nextStateMap.put(word, nextBlock == -1 ? deadState : minimalStates[nextBlock]);
+                    }
+                }
+            }
+        }
+
+        return minimalStates[blocks.get(this)];
+    }
+
+    /**
+     * @return the number of states in the state machine starting at this state
+     */
+    public int getStateCount()
+    {
+        return getReachableStates().size();
+    }
+
+    private List<TopicMatcherDFAState> getReachableStates()
+    {
+        final Set<TopicMatcherDFAState> reachableStates = new HashSet<TopicMatcherDFAState>();
+        final List<TopicMatcherDFAState> states = new ArrayList<TopicMatcherDFAState>();
+        reachableStates.add(this);
+        states.add(this);
+        for(int i = 0; i < states.size(); i++)
+        {
+            for(TopicMatcherDFAState nextState : states.get(i)._nextStateMap.values())
+            {
+                if(reachableStates.add(nextState))
+                {
+                    states.add(nextState);
+                }
+            }
+        }
+        return states;
+    }
+
+    private static Set<TopicMatcherDFAState> getLiveStates(final List<TopicMatcherDFAState> states)
+    {
+        final Set<TopicMatcherDFAState> liveStates = new HashSet<TopicMatcherDFAState>();
+        boolean changed = true;
+        while(changed)
+        {
+            changed = false;
+            for(TopicMatcherDFAState state : states)
+            {
+                if(!liveStates.contains(state)
+                   && (!state._results.isEmpty() || containsAny(liveStates, state._nextStateMap.values())))
+                {
+                    liveStates.add(state);
+                    changed = true;
+                }
+            }
+        }
+        return liveStates;
+    }
+
+    private static boolean containsAny(final Set<TopicMatcherDFAState> states,
+                                       final Collection<TopicMatcherDFAState> candidates)
+    {
+        for(TopicMatcherDFAState candidate : candidates)
+        {
+            if(states.contains(candidate))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int getBlock(final Map<Object, Integer> signatures, final Object signature)
+    {
+        Integer block = signatures.get(signature);
+        if(block == null)
+        {
+            block = signatures.size();
+            signatures.put(signature, block);
+        }
+        return block;
+    }
+
+    /**
+     * The signature of a state is its block, and the blocks reached on the any word and on each other word which
+     * does not lead to the same block as the any word. States with the same signature cannot be told apart by any
+     * routing key.
+     */
+    private List<Object> getSignature(final Map<TopicMatcherDFAState, Integer> blocks)
+    {
+        final int anyWordBlock = getNextBlock(TopicWord.ANY_WORD, blocks);
+        final Map<TopicWord, Integer> wordBlocks = new HashMap<TopicWord, Integer>();
+        for(TopicWord word : _nextStateMap.keySet())
+        {
+            final int nextBlock = getNextBlock(word, blocks);
+            if(nextBlock != anyWordBlock)
+            {
+                wordBlocks.put(word, nextBlock);
+            }
+        }
+        return Arrays.<Object>asList(blocks.get(this), anyWordBlock, wordBlocks);
+    }
+
+    private int getNextBlock(final TopicWord word, final Map<TopicMatcherDFAState, Integer> blocks)
+    {
+        final TopicMatcherDFAState nextState = nextState(word);
+        final Integer block = nextState == null ? null : blocks.get(nextState);
+        return block == null ? -1 : block;
+    }
+
     public String toString()
     {
         StringBuilder transitions = new StringBuilder();
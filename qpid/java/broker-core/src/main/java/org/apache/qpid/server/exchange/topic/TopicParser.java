@@ -34,8 +34,44 @@ public class TopicParser
 {
     private static final String TOPIC_DELIMITER = "\\.";
 
-    private final TopicWordDictionary _dictionary = new TopicWordDictionary();
-    private final AtomicReference<TopicMatcherDFAState> _stateMachine = new AtomicReference<TopicMatcherDFAState>();
+    /**
+     * The minimum number of binding keys to be removed before the state machine is rebuilt. The state machine is
+     * also only rebuilt once the keys removed since it was last built amount to a quarter of those remaining.
+     */
+    private static final int MINIMUM_REMOVALS_BEFORE_COMPACTION = 16;
+
+    private final AtomicReference<Matcher> _matcher = new AtomicReference<Matcher>(new Matcher(new TopicWordDictionary(), null));
+
+    // the number of bindings with each binding key, and the result of the key
+    private final Map<String, BindingKey> _bindingKeys = new HashMap<String, BindingKey>();
+    private int _modificationCount;
+    private int _removalsSinceCompaction;
+
+    /**
+     * The state machine matching routing keys, together with the dictionary of the words it was built from.
+     */
+    private static final class Matcher
+    {
+        private final TopicWordDictionary _dictionary;
+        private final TopicMatcherDFAState _stateMachine;
+
+        private Matcher(final TopicWordDictionary dictionary, final TopicMatcherDFAState stateMachine)
+        {
+            _dictionary = dictionary;
+            _stateMachine = stateMachine;
+        }
+    }
+
+    private static final class BindingKey
+    {
+        private final TopicMatcherResult _result;
+        private int _references = 1;
+
+        private BindingKey(final TopicMatcherResult result)
+        {
+            _result = result;
+        }
+    }
 
     private static class Position
     {
@@ -95,46 +131,140 @@ public class TopicParser
     }
 
 
-    public void addBinding(String bindingKey, TopicMatcherResult result)
+    /**
+     * Adds a binding with the given key. The state machine is only changed by the first binding with the key, the
+     * result of which is used for all later bindings with the key until the last of them is removed.
+     */
+    public synchronized void addBinding(String bindingKey, TopicMatcherResult result)
+    {
+        BindingKey key = _bindingKeys.get(bindingKey);
+        if(key != null)
+        {
+            key._references++;
+        }
+        else
+        {
+            _bindingKeys.put(bindingKey, new BindingKey(result));
+            _modificationCount++;
+
+            final Matcher matcher = _matcher.get();
+            final TopicMatcherDFAState newStateMachine = createStateMachine(matcher._dictionary, bindingKey, result);
+            _matcher.set(new Matcher(matcher._dictionary,
+                                     matcher._stateMachine == null
+                                             ? newStateMachine
+                                             : matcher._stateMachine.mergeStateMachines(newStateMachine)));
+        }
+    }
+
+    /**
+     * Removes a binding with the given key. When the last binding with the key is removed its result is removed
+     * from the states of the state machine, but the states themselves remain until the state machine is compacted.
+     */
+    public synchronized void removeBinding(String bindingKey)
     {
+        BindingKey key = _bindingKeys.get(bindingKey);
+        if(key != null && --key._references == 0)
+        {
+            _bindingKeys.remove(bindingKey);
+            _modificationCount++;
+            _removalsSinceCompaction++;
+
+            final Matcher matcher = _matcher.get();
+            _matcher.set(new Matcher(matcher._dictionary, _bindingKeys.isEmpty()
+                    ? null
+                    : matcher._stateMachine.removeResult(key._result)));
+        }
+    }
 
-        TopicMatcherDFAState startingStateMachine;
-        TopicMatcherDFAState newStateMachine;
+    /**
+     * @return true if enough binding keys have been removed since the state machine was built for it to be worth
+     *         compacting
+     */
+    public synchronized boolean isCompactionDue()
+    {
+        return _removalsSinceCompaction >= MINIMUM_REMOVALS_BEFORE_COMPACTION
+               && _removalsSinceCompaction * 4 >= _bindingKeys.size();
+    }
 
-        do
+    /**
+     * Rebuilds the state machine from the current binding keys, with a dictionary of only their words, and reduces
+     * it to its minimal form. The state machine is built without holding the lock of the parser, so that routing and
+     * binding continue meanwhile; if a binding key is added or removed before it is built, it is discarded.
+     *
+     * @return true if the rebuilt state machine replaced the current one
+     */
+    public boolean compact()
+    {
+        final Map<String, TopicMatcherResult> bindingKeys = new HashMap<String, TopicMatcherResult>();
+        final int modificationCount;
+        synchronized (this)
         {
-            startingStateMachine = _stateMachine.get();
-            if(startingStateMachine == null)
+            for(Map.Entry<String, BindingKey> entry : _bindingKeys.entrySet())
             {
-                newStateMachine = createStateMachine(bindingKey, result);
+                bindingKeys.put(entry.getKey(), entry.getValue()._result);
             }
-            else
+            modificationCount = _modificationCount;
+        }
+
+        final TopicWordDictionary dictionary = new TopicWordDictionary();
+        List<TopicMatcherDFAState> stateMachines = new ArrayList<TopicMatcherDFAState>(bindingKeys.size());
+        for(Map.Entry<String, TopicMatcherResult> entry : bindingKeys.entrySet())
+        {
+            stateMachines.add(createStateMachine(dictionary, entry.getKey(), entry.getValue()));
+        }
+
+        // merge the machines in pairs, so that each state is copied by only a logarithmic number of merges
+        while(stateMachines.size() > 1)
+        {
+            final List<TopicMatcherDFAState> merged = new ArrayList<TopicMatcherDFAState>((stateMachines.size() + 1) / 2);
+            for(int i = 0; i < stateMachines.size(); i += 2)
             {
-                newStateMachine = startingStateMachine.mergeStateMachines(createStateMachine(bindingKey, result));
+                merged.add(i + 1 == stateMachines.size()
+                                   ? stateMachines.get(i)
+                                   : stateMachines.get(i).mergeStateMachines(stateMachines.get(i + 1)));
             }
-
+            stateMachines = merged;
         }
-        while(!_stateMachine.compareAndSet(startingStateMachine,newStateMachine));
+        final TopicMatcherDFAState stateMachine = stateMachines.isEmpty() ? null : stateMachines.get(0).minimise();
 
+        synchronized (this)
+        {
+            if(modificationCount != _modificationCount)
+            {
+                return false;
+            }
+            _matcher.set(new Matcher(dictionary, stateMachine));
+            _removalsSinceCompaction = 0;
+            return true;
+        }
     }
 
     public Collection<TopicMatcherResult> parse(String routingKey)
     {
-        TopicMatcherDFAState stateMachine = _stateMachine.get();
-        if(stateMachine == null)
+        final Matcher matcher = _matcher.get();
+        if(matcher._stateMachine == null)
         {
             return Collections.EMPTY_SET;
         }
         else
         {
-            return stateMachine.parse(_dictionary,routingKey);
+            return matcher._stateMachine.parse(matcher._dictionary, routingKey);
         }
     }
 
+    /**
+     * @return the number of states of the current state machine
+     */
+    public int getStateCount()
+    {
+        final TopicMatcherDFAState stateMachine = _matcher.get()._stateMachine;
+        return stateMachine == null ? 0 : stateMachine.getStateCount();
+    }
+
 
-    TopicMatcherDFAState createStateMachine(String bindingKey, TopicMatcherResult result)
+    TopicMatcherDFAState createStateMachine(TopicWordDictionary dictionary, String bindingKey, TopicMatcherResult result)
     {
-        List<TopicWord> wordList = createTopicWordList(bindingKey);
+        List<TopicWord> wordList = createTopicWordList(dictionary, bindingKey);
         int wildCards = 0;
         for(TopicWord word : wordList)
         {
@@ -419,7 +549,7 @@ public class TopicParser
 
     }
 
-    private List<TopicWord> createTopicWordList(final String bindingKey)
+    private static List<TopicWord> createTopicWordList(final TopicWordDictionary dictionary, final String bindingKey)
     {
         String[] tokens = bindingKey.split(TOPIC_DELIMITER);
         TopicWord previousWord = null;
@@ -428,7 +558,7 @@ public class TopicParser
 
         for(String token : tokens)
         {
-            TopicWord nextWord = _dictionary.getOrCreateWord(token);
+            TopicWord nextWord = dictionary.getOrCreateWord(token);
             if(previousWord == TopicWord.WILDCARD_WORD)
             {
 
@@ -20,25 +20,35 @@
 */
 package org.apache.qpid.server.exchange.topic;
 
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
+/**
+ * Maps the words of binding keys to their {@link TopicWord}s.
+ *
+ * Words are held in an open addressing table so that a word can be looked up from a region of a routing key
+ * without creating a string for it. Words are only added (when bindings are made), never removed; additions are
+ * serialised and the table is replaced by a larger one when it becomes half full.
+ */
 public class TopicWordDictionary
 {
-    private final ConcurrentHashMap<String,TopicWord> _dictionary =
-            new ConcurrentHashMap<String,TopicWord>();
+    private static final int INITIAL_CAPACITY = 64;
+
+    private volatile AtomicReferenceArray<Entry> _table = new AtomicReferenceArray<Entry>(INITIAL_CAPACITY);
+    private int _size;
 
     public TopicWordDictionary()
     {
-        _dictionary.put("*", TopicWord.ANY_WORD);
-        _dictionary.put("#", TopicWord.WILDCARD_WORD);
+        add(TopicWord.ANY_WORD.toString(), TopicWord.ANY_WORD);
+        add(TopicWord.WILDCARD_WORD.toString(), TopicWord.WILDCARD_WORD);
     }
 
-    public TopicWord getOrCreateWord(String name)
+    public synchronized TopicWord getOrCreateWord(String name)
     {
-        TopicWord word = _dictionary.putIfAbsent(name, new TopicWord(name));
+        TopicWord word = find(name, 0, name.length());
         if(word == null)
         {
-            word = _dictionary.get(name);
+            word = new TopicWord(name);
+            add(name, word);
         }
         return word;
     }
@@ -46,11 +56,94 @@ public class TopicWordDictionary
 
     public TopicWord getWord(String name)
     {
-        TopicWord word = _dictionary.get(name);
+        return getWord(name, 0, name.length());
+    }
+
+    /**
+     * Returns the word held between the given indexes of the string, or {@link TopicWord#ANY_WORD} if the dictionary
+     * does not contain it.
+     */
+    public TopicWord getWord(String s, int start, int end)
+    {
+        TopicWord word = find(s, start, end);
         if(word == null)
         {
             word = TopicWord.ANY_WORD;
         }
         return word;
     }
+
+    private TopicWord find(final String s, final int start, final int end)
+    {
+        final AtomicReferenceArray<Entry> table = _table;
+        final int mask = table.length() - 1;
+        final int length = end - start;
+        for(int i = hash(s, start, end) & mask; ; i = (i + 1) & mask)
+        {
+            final Entry entry = table.get(i);
+            if(entry == null)
+            {
+                return null;
+            }
+            if(entry._name.length() == length && entry._name.regionMatches(0, s, start, length))
+            {
+                return entry._word;
+            }
+        }
+    }
+
+    private void add(final String name, final TopicWord word)
+    {
+        if(2 * (_size + 1) > _table.length())
+        {
+            final AtomicReferenceArray<Entry> oldTable = _table;
+            final AtomicReferenceArray<Entry> newTable = new AtomicReferenceArray<Entry>(2 * oldTable.length());
+            for(int i = 0; i < oldTable.length(); i++)
+            {
+                final Entry entry = oldTable.get(i);
+                if(entry != null)
+                {
+                    insert(newTable, entry);
+                }
+            }
+            _table = newTable;
+        }
+        insert(_table, new Entry(name, word));
+        _size++;
+    }
+
+    private static void insert(final AtomicReferenceArray<Entry> table, final Entry entry)
+    {
+        final int mask = table.length() - 1;
+        int i = entry._hash & mask;
+        while(table.get(i) != null)
+        {
+            i = (i + 1) & mask;
+        }
+        table.set(i, entry);
+    }
+
+    private static int hash(final String s, final int start, final int end)
+    {
+        int h = 0;
+        for(int i = start; i < end; i++)
+        {
+            h = 31 * h + s.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry
+    {
+        private final String _name;
+        private final TopicWord _word;
+        private final int _hash;
+
+        private Entry(final String name, final TopicWord word)
+        {
+            _name = name;
+            _word = word;
+            _hash = hash(name, 0, name.length());
+        }
+    }
 }
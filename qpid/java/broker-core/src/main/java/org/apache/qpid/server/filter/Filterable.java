@@ -39,32 +39,7 @@ public interface Filterable
 
         public static Filterable newInstance(final ServerMessage message, final InstanceProperties properties)
         {
-            return new Filterable()
-            {
-                @Override
-                public AMQMessageHeader getMessageHeader()
-                {
-                    return message.getMessageHeader();
-                }
-
-                @Override
-                public boolean isPersistent()
-                {
-                    return Boolean.TRUE.equals(properties.getProperty(InstanceProperties.Property.PERSISTENT));
-                }
-
-                @Override
-                public boolean isRedelivered()
-                {
-                    return Boolean.TRUE.equals(properties.getProperty(InstanceProperties.Property.REDELIVERED));
-                }
-
-                @Override
-                public Object getConnectionReference()
-                {
-                    return message.getConnectionReference();
-                }
-            };
+            return new MessageFilterable(message, properties);
         }
     }
 }
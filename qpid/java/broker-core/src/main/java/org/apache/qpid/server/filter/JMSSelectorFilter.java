@@ -26,6 +26,8 @@ import org.apache.commons.lang.builder.ToStringBuilder;
 import org.apache.commons.lang.builder.ToStringStyle;
 import org.apache.log4j.Logger;
 import org.apache.qpid.filter.BooleanExpression;
+import org.apache.qpid.filter.CompiledSelector;
+import org.apache.qpid.filter.EqualityCondition;
 import org.apache.qpid.filter.FilterableMessage;
 import org.apache.qpid.filter.SelectorParsingException;
 import org.apache.qpid.filter.selector.ParseException;
@@ -39,17 +41,22 @@ public class JMSSelectorFilter implements MessageFilter
 
     private String _selector;
     private BooleanExpression _matcher;
+    private EqualityCondition _equalityCondition;
 
     public JMSSelectorFilter(String selector) throws ParseException, TokenMgrError, SelectorParsingException
     {
         _selector = selector;
-        _matcher = new SelectorParser().parse(selector);
+        BooleanExpression expression = new SelectorParser().parse(selector);
+        _matcher = new CompiledSelector(expression);
+        _equalityCondition = EqualityCondition.of(expression);
     }
 
     public boolean matches(Filterable message)
     {
 
-        boolean match = _matcher.matches(wrap(message));
+        boolean match = _matcher.matches(message instanceof FilterableMessage
+                                                 ? (FilterableMessage) message
+                                                 : wrap(message));
         if(_logger.isDebugEnabled())
         {
             _logger.debug(message + " match(" + match + ") selector(" + System.identityHashCode(_selector) + "):" + _selector);
@@ -57,6 +64,14 @@ public class JMSSelectorFilter implements MessageFilter
         return match;
     }
 
+    /**
+     * @return a condition on a single property met by every message matching the selector, or null if there is none
+     */
+    public EqualityCondition getEqualityCondition()
+    {
+        return _equalityCondition;
+    }
+
     private FilterableMessage wrap(final Filterable message)
     {
         return new FilterableMessage()
@@ -0,0 +1,157 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package org.apache.qpid.server.filter;
+
+import java.util.Arrays;
+
+import org.apache.qpid.filter.FilterableMessage;
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * Presents a message instance to filters, both as a {@link Filterable} and as the {@link FilterableMessage} against
+ * which selectors are evaluated.
+ *
+ * The values of the headers looked up by selectors are remembered, so that a message evaluated against the selectors
+ * of many consumers fetches each header only once. Selectors look up headers by interned name, so the remembered
+ * values are found by identity where possible.
+ */
+final class MessageFilterable implements Filterable, FilterableMessage
+{
+    private static final Object NULL_VALUE = new Object();
+    private static final int MAXIMUM_CACHED_HEADERS = 16;
+
+    private final ServerMessage _message;
+    private final InstanceProperties _properties;
+
+    // alternating header names and values, replaced rather than updated as headers are added
+    private volatile Object[] _headerCache;
+
+    MessageFilterable(final ServerMessage message, final InstanceProperties properties)
+    {
+        _message = message;
+        _properties = properties;
+    }
+
+    @Override
+    public AMQMessageHeader getMessageHeader()
+    {
+        return _message.getMessageHeader();
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return Boolean.TRUE.equals(_properties.getProperty(InstanceProperties.Property.PERSISTENT));
+    }
+
+    @Override
+    public boolean isRedelivered()
+    {
+        return Boolean.TRUE.equals(_properties.getProperty(InstanceProperties.Property.REDELIVERED));
+    }
+
+    @Override
+    public Object getConnectionReference()
+    {
+        return _message.getConnectionReference();
+    }
+
+    @Override
+    public Object getHeader(final String name)
+    {
+        final Object[] headerCache = _headerCache;
+        if(headerCache != null)
+        {
+            for(int i = 0; i < headerCache.length; i += 2)
+            {
+                if(headerCache[i] == name)
+                {
+                    return headerCache[i + 1] == NULL_VALUE ? null : headerCache[i + 1];
+                }
+            }
+            for(int i = 0; i < headerCache.length; i += 2)
+            {
+                if(headerCache[i].equals(name))
+                {
+                    return headerCache[i + 1] == NULL_VALUE ? null : headerCache[i + 1];
+                }
+            }
+        }
+
+        final Object value = getMessageHeader().getHeader(name);
+
+        // a header cached concurrently by another thread may be lost, in which case it is simply fetched again
+        final int length = headerCache == null ? 0 : headerCache.length;
+        if(length < 2 * MAXIMUM_CACHED_HEADERS)
+        {
+            final Object[] newHeaderCache =
+                    headerCache == null ? new Object[2] : Arrays.copyOf(headerCache, length + 2);
+            newHeaderCache[length] = name;
+            newHeaderCache[length + 1] = value == null ? NULL_VALUE : value;
+            _headerCache = newHeaderCache;
+        }
+        return value;
+    }
+
+    @Override
+    public String getReplyTo()
+    {
+        return getMessageHeader().getReplyTo();
+    }
+
+    @Override
+    public String getType()
+    {
+        return getMessageHeader().getType();
+    }
+
+    @Override
+    public byte getPriority()
+    {
+        return getMessageHeader().getPriority();
+    }
+
+    @Override
+    public String getMessageId()
+    {
+        return getMessageHeader().getMessageId();
+    }
+
+    @Override
+    public long getTimestamp()
+    {
+        return getMessageHeader().getTimestamp();
+    }
+
+    @Override
+    public String getCorrelationId()
+    {
+        return getMessageHeader().getCorrelationId();
+    }
+
+    @Override
+    public long getExpiration()
+    {
+        return getMessageHeader().getExpiration();
+    }
+}
@@ -56,6 +56,9 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     String CONNECTION_HEART_BEAT_DELAY = "connection.heartBeatDelay";
     String CONNECTION_CLOSE_WHEN_NO_ROUTE = "connection.closeWhenNoRoute";
 
+    String FLOW_TO_DISK_THRESHOLD = "broker.flowToDiskThreshold";
+    String FLOW_TO_DISK_CHECK_PERIOD = "broker.flowToDiskCheckPeriod";
+
 
     String QPID_AMQP_PORT = "qpid.amqp_port";
     String QPID_HTTP_PORT = "qpid.http_port";
@@ -74,6 +77,11 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     @ManagedContextDefault(name = QPID_JMX_PORT)
     public static final String DEFAULT_JMX_PORT_NUMBER  = "9099";
 
+    @ManagedContextDefault(name = FLOW_TO_DISK_THRESHOLD)
+    long DEFAULT_FLOW_TO_DISK_THRESHOLD = 0l;
+    @ManagedContextDefault(name = FLOW_TO_DISK_CHECK_PERIOD)
+    long DEFAULT_FLOW_TO_DISK_CHECK_PERIOD = 1000l;
+
     @ManagedAttribute( derived = true )
     String getBuildVersion();
 
@@ -134,6 +142,24 @@ public interface Broker<X extends Broker<X>> extends ConfiguredObject<X>, EventL
     @ManagedStatistic
     long getMessagesOut();
 
+    @ManagedStatistic
+    long getBufferPoolAcquisitions();
+
+    @ManagedStatistic
+    long getBufferPoolAllocations();
+
+    @ManagedStatistic
+    long getBufferPoolPooledBytes();
+
+    @ManagedStatistic
+    long getInMemoryMessageContentSize();
+
+    @ManagedStatistic
+    long getBytesFlowedToDisk();
+
+    @ManagedStatistic
+    long getMessagesFlowedToDisk();
+
 
     //children
     Collection<VirtualHostNode<?>> getVirtualHostNodes();
@@ -55,6 +55,13 @@ public interface Exchange<X extends Exchange<X>> extends ConfiguredObject<X>, Me
     @ManagedStatistic
     long getMessagesIn();
 
+    /**
+     * @return the number of states of the state machine matching routing keys to bindings, for exchanges which use
+     *         one
+     */
+    @ManagedStatistic
+    long getRoutingStateCount();
+
 
     //operations
     Binding createBinding(String bindingKey,
@@ -43,9 +43,12 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     String SUPPORTED_EXCHANGE_TYPES             = "supportedExchangeTypes";
     String SUPPORTED_QUEUE_TYPES                = "supportedQueueTypes";
     String HOUSE_KEEPING_THREAD_COUNT           = "houseKeepingThreadCount";
+    String DELIVERY_THREAD_COUNT                = "deliveryThreadCount";
     String MESSAGE_STORE_SETTINGS               = "messageStoreSettings";
     String MODEL_VERSION                        = "modelVersion";
 
+    String RECOVERY_THREAD_COUNT                = "virtualhost.recoveryThreadCount";
+
     // TODO - this isn't really an attribute
     @ManagedAttribute( derived = true )
     Collection<String> getSupportedExchangeTypes();
@@ -104,6 +107,32 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     @ManagedAttribute( automate = true, defaultValue = "${virtualhost.housekeepingThreadCount}")
     int getHousekeepingThreadCount();
 
+    @ManagedContextDefault( name = "virtualhost.deliveryThreadCount")
+    public static final RuntimeDefault<Integer> DEFAULT_DELIVERY_THREAD_COUNT =
+            new RuntimeDefault<Integer>()
+            {
+                @Override
+                public Integer value()
+                {
+                    return Integer.getInteger("amqj.read_write_pool_size",
+                                              Math.max(Runtime.getRuntime().availableProcessors(), 4));
+                }
+            };
+
+    @ManagedAttribute( automate = true, defaultValue = "${virtualhost.deliveryThreadCount}")
+    int getDeliveryThreadCount();
+
+    @ManagedContextDefault( name = RECOVERY_THREAD_COUNT)
+    public static final RuntimeDefault<Integer> DEFAULT_RECOVERY_THREAD_COUNT =
+            new RuntimeDefault<Integer>()
+            {
+                @Override
+                public Integer value()
+                {
+                    return Runtime.getRuntime().availableProcessors();
+                }
+            };
+
     @ManagedAttribute( automate = true )
     Map<String, Object> getMessageStoreSettings();
 
@@ -131,6 +160,15 @@ public interface VirtualHost<X extends VirtualHost<X, Q, E>, Q extends Queue<?>,
     @ManagedStatistic
     long getMessagesOut();
 
+    @ManagedStatistic
+    int getDeliveryThreadPoolSize();
+
+    @ManagedStatistic
+    long getDeliveryRunQueueDepth();
+
+    @ManagedStatistic
+    long getMessageInstancesRecovered();
+
     //children
     Collection<VirtualHostAlias> getAliases();
     Collection<Connection> getConnections();
@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.server.model.adapter;
 
+import java.io.File;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.security.AccessControlException;
@@ -49,13 +50,16 @@ import org.apache.qpid.server.model.*;
 import org.apache.qpid.server.model.port.AbstractPortWithAuthProvider;
 import org.apache.qpid.server.model.port.AmqpPort;
 import org.apache.qpid.server.plugin.MessageStoreFactory;
+import org.apache.qpid.server.queue.FlowToDiskManager;
 import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.SubjectCreator;
 import org.apache.qpid.server.security.access.Operation;
 import org.apache.qpid.server.security.auth.manager.SimpleAuthenticationManager;
 import org.apache.qpid.server.stats.StatisticsCounter;
 import org.apache.qpid.server.stats.StatisticsGatherer;
+import org.apache.qpid.server.store.SpillFile;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+import org.apache.qpid.util.ByteBufferPool;
 import org.apache.qpid.util.SystemUtils;
 
 public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> implements Broker<BrokerAdapter>, ConfigurationChangeListener, StatisticsGatherer
@@ -67,6 +71,8 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
 
     public static final String MANAGEMENT_MODE_AUTHENTICATION = "MANAGEMENT_MODE_AUTHENTICATION";
 
+    private static final long SPILL_FILE_SEGMENT_SIZE = 16l * 1024l * 1024l;
+
     private String[] POSITIVE_NUMERIC_ATTRIBUTES = { CONNECTION_SESSION_COUNT_LIMIT,
             CONNECTION_HEART_BEAT_DELAY, STATISTICS_REPORTING_PERIOD };
 
@@ -85,6 +91,7 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
     private BrokerOptions _brokerOptions;
 
     private Timer _reportingTimer;
+    private volatile FlowToDiskManager _flowToDiskManager;
     private StatisticsCounter _messagesDelivered, _dataDelivered, _messagesReceived, _dataReceived;
 
     @ManagedAttributeField
@@ -256,6 +263,17 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
 
 
 
+    private void initialiseFlowToDisk()
+    {
+        long threshold = getContextValue(Long.class, FLOW_TO_DISK_THRESHOLD);
+        if (threshold > 0L)
+        {
+            File spillDirectory = new File(getContextValue(String.class, BrokerOptions.QPID_WORK_DIR), "flowToDisk");
+            _flowToDiskManager = new FlowToDiskManager(this, threshold, new SpillFile(spillDirectory, SPILL_FILE_SEGMENT_SIZE));
+            _flowToDiskManager.start(getContextValue(Long.class, FLOW_TO_DISK_CHECK_PERIOD));
+        }
+    }
+
     @Override
     public String getBuildVersion()
     {
@@ -448,6 +466,45 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
         return getMessageDeliveryStatistics().getTotal();
     }
 
+    @Override
+    public long getBufferPoolAcquisitions()
+    {
+        return ByteBufferPool.getHeapPool().getAcquisitions() + ByteBufferPool.getDirectPool().getAcquisitions();
+    }
+
+    @Override
+    public long getBufferPoolAllocations()
+    {
+        return ByteBufferPool.getHeapPool().getAllocations() + ByteBufferPool.getDirectPool().getAllocations();
+    }
+
+    @Override
+    public long getBufferPoolPooledBytes()
+    {
+        return ByteBufferPool.getHeapPool().getPooledBytes() + ByteBufferPool.getDirectPool().getPooledBytes();
+    }
+
+    @Override
+    public long getInMemoryMessageContentSize()
+    {
+        FlowToDiskManager flowToDiskManager = _flowToDiskManager;
+        return flowToDiskManager == null ? 0L : flowToDiskManager.getInMemoryContentSize();
+    }
+
+    @Override
+    public long getBytesFlowedToDisk()
+    {
+        FlowToDiskManager flowToDiskManager = _flowToDiskManager;
+        return flowToDiskManager == null ? 0L : flowToDiskManager.getBytesFlowed();
+    }
+
+    @Override
+    public long getMessagesFlowedToDisk()
+    {
+        FlowToDiskManager flowToDiskManager = _flowToDiskManager;
+        return flowToDiskManager == null ? 0L : flowToDiskManager.getMessagesFlowed();
+    }
+
     @SuppressWarnings("unchecked")
     @Override
     public <C extends ConfiguredObject> C addChild(final Class<C> childClass, final Map<String, Object> attributes, final ConfiguredObject... otherParents)
@@ -720,6 +777,7 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
         if (desiredState == State.ACTIVE)
         {
             initialiseStatisticsReporting();
+            initialiseFlowToDisk();
             changeChildState(currentState, State.ACTIVE, false);
             if (isManagementMode())
             {
@@ -735,8 +793,20 @@ public class BrokerAdapter extends AbstractConfiguredObject<BrokerAdapter> imple
             {
                 _reportingTimer.cancel();
             }
+            // no more content is flowed to disk, but the queues may still read back spilled content until stopped
+            FlowToDiskManager flowToDiskManager = _flowToDiskManager;
+            if (flowToDiskManager != null)
+            {
+                flowToDiskManager.stop();
+            }
 
             changeChildState(currentState, State.STOPPED, true);
+
+            if (flowToDiskManager != null)
+            {
+                flowToDiskManager.close();
+                _flowToDiskManager = null;
+            }
             return true;
         }
         return false;
@@ -22,8 +22,10 @@ package org.apache.qpid.server.model.port;
 
 import org.apache.qpid.server.model.AuthenticationProvider;
 import org.apache.qpid.server.model.ManagedAttribute;
+import org.apache.qpid.server.model.ManagedContextDefault;
 import org.apache.qpid.server.model.ManagedObject;
 import org.apache.qpid.server.model.Port;
+import org.apache.qpid.server.model.RuntimeDefault;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 @ManagedObject( category = false, type = "AMQP")
@@ -55,5 +57,25 @@ public interface AmqpPort<X extends AmqpPort<X>> extends Port<X>
     @ManagedAttribute( automate = true, mandatory = true )
     AuthenticationProvider getAuthenticationProvider();
 
+    @ManagedContextDefault( name = "port.amqp.nonBlockingIo")
+    boolean DEFAULT_AMQP_NON_BLOCKING_IO = false;
+
+    @ManagedAttribute( automate = true, defaultValue = "${port.amqp.nonBlockingIo}")
+    boolean isNonBlockingIo();
+
+    @ManagedContextDefault( name = "port.amqp.ioThreadCount")
+    RuntimeDefault<Integer> DEFAULT_AMQP_IO_THREAD_COUNT =
+            new RuntimeDefault<Integer>()
+            {
+                @Override
+                public Integer value()
+                {
+                    return Runtime.getRuntime().availableProcessors();
+                }
+            };
+
+    @ManagedAttribute( automate = true, defaultValue = "${port.amqp.ioThreadCount}")
+    int getIoThreadCount();
+
     VirtualHostImpl getVirtualHost(String name);
 }
@@ -64,6 +64,12 @@ public class AmqpPortImpl extends AbstractPortWithAuthProvider<AmqpPortImpl> imp
     @ManagedAttributeField
     private int _receiveBufferSize;
 
+    @ManagedAttributeField
+    private boolean _nonBlockingIo;
+
+    @ManagedAttributeField
+    private int _ioThreadCount;
+
     private final Broker<?> _broker;
     private AcceptingTransport _transport;
 
@@ -92,6 +98,30 @@ public class AmqpPortImpl extends AbstractPortWithAuthProvider<AmqpPortImpl> imp
         return _receiveBufferSize;
     }
 
+    @Override
+    public void validate()
+    {
+        super.validate();
+
+        if(isNonBlockingIo() && getIoThreadCount() < 1)
+        {
+            throw new IllegalConfigurationException("The number of I/O threads of AMQP port '" + getName()
+                                                    + "' must be positive: " + getIoThreadCount());
+        }
+    }
+
+    @Override
+    public boolean isNonBlockingIo()
+    {
+        return _nonBlockingIo;
+    }
+
+    @Override
+    public int getIoThreadCount()
+    {
+        return _ioThreadCount;
+    }
+
     @Override
     public VirtualHostImpl getVirtualHost(String name)
     {
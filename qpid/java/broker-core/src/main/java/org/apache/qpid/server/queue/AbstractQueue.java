@@ -37,18 +37,19 @@ import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.security.auth.Subject;
 
 import org.apache.log4j.Logger;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.binding.BindingImpl;
 import org.apache.qpid.server.configuration.IllegalConfigurationException;
 import org.apache.qpid.server.connection.SessionPrincipal;
 import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.consumer.ConsumerTarget;
 import org.apache.qpid.server.exchange.ExchangeImpl;
+import org.apache.qpid.filter.EqualityCondition;
 import org.apache.qpid.server.filter.FilterManager;
 import org.apache.qpid.server.logging.EventLogger;
 import org.apache.qpid.server.logging.LogMessage;
@@ -57,7 +58,6 @@ import org.apache.qpid.server.logging.messages.QueueMessages;
 import org.apache.qpid.server.logging.subjects.QueueLogSubject;
 import org.apache.qpid.server.message.InstanceProperties;
 import org.apache.qpid.server.message.MessageInstance;
-import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.MessageSource;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.AbstractConfiguredObject;
@@ -77,6 +77,7 @@ import org.apache.qpid.server.security.SecurityManager;
 import org.apache.qpid.server.security.auth.AuthenticatedPrincipal;
 import org.apache.qpid.server.store.StorableMessageMetaData;
 import org.apache.qpid.server.txn.AutoCommitTransaction;
+import org.apache.qpid.server.txn.EnqueueAction;
 import org.apache.qpid.server.txn.LocalTransaction;
 import org.apache.qpid.server.txn.ServerTransaction;
 import org.apache.qpid.server.util.Action;
@@ -124,6 +125,11 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private final AtomicInteger _atomicQueueCount = new AtomicInteger(0);
 
     private final AtomicLong _atomicQueueSize = new AtomicLong(0L);
+    private final AtomicLong _flowedToDiskSize = new AtomicLong(0L);
+    /** the last entry examined by {@link #flowToDisk}, from which the next flow to disk resumes */
+    private volatile QueueEntry _flowToDiskPosition;
+    /** the earliest entry made available before the flow to disk position since it was last resumed */
+    private final AtomicReference<QueueEntry> _flowToDiskReleasedEntry = new AtomicReference<QueueEntry>();
 
     private final AtomicInteger _activeSubscriberCount = new AtomicInteger();
 
@@ -179,10 +185,12 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     static final int MAX_ASYNC_DELIVERIES = 80;
 
+    /** the span of expiration times, in milliseconds, grouped together by the expiry index */
+    private static final long EXPIRY_INDEX_GRANULARITY = 1000L;
+
 
     private final AtomicLong _stateChangeCount = new AtomicLong(Long.MIN_VALUE);
 
-    private final Executor _asyncDelivery;
     private AtomicInteger _deliveredMessages = new AtomicInteger();
     private AtomicBoolean _stopped = new AtomicBoolean(false);
 
@@ -214,6 +222,9 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     private QueueNotificationListener  _notificationListener;
     private final long[] _lastNotificationTimes = new long[NotificationCheck.values().length];
 
+    private final MessageExpiryIndex _expiryIndex = new MessageExpiryIndex(EXPIRY_INDEX_GRANULARITY);
+    private final ConsumerSelectorIndex _selectorIndex = new ConsumerSelectorIndex();
+
     @ManagedAttributeField
     private String _messageGroupKey;
     @ManagedAttributeField
@@ -228,7 +239,6 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         super(parentsMap(virtualHost), attributes);
 
         _virtualHost = virtualHost;
-        _asyncDelivery = ReferenceCountingExecutorService.getInstance().acquireExecutorService();
 
     }
 
@@ -433,11 +443,26 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     // ------ Getters and Setters
 
+    /**
+     * The executor is looked up as each piece of work is submitted, rather than when the queue is constructed, as
+     * durable queues are recovered before the virtual host is activated and creates its executor, and survive the
+     * virtual host being restarted with a new one.
+     */
+    private Executor getDeliveryExecutor()
+    {
+        Executor executor = _virtualHost.getDeliveryExecutor();
+        if(executor == null)
+        {
+            throw new RejectedExecutionException("Virtual host " + _virtualHost.getName() + " is not active");
+        }
+        return executor;
+    }
+
     public void execute(Runnable runnable)
     {
         try
         {
-            _asyncDelivery.execute(runnable);
+            getDeliveryExecutor().execute(runnable);
         }
         catch (RejectedExecutionException ree)
         {
@@ -645,7 +670,14 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
 
         consumer.setStateListener(this);
-        consumer.setQueueContext(new QueueContext(getEntries().getHead()));
+        // browsers are not indexed, as moving them back to newly indexed entries could show them an entry twice
+        final EqualityCondition condition = consumer.acquires() ? ConsumerSelectorIndex.getCondition(filters) : null;
+        final QueueContext queueContext = new QueueContext(getEntries().getHead(), condition);
+        if(condition != null)
+        {
+            _selectorIndex.add(queueContext, getEntries());
+        }
+        consumer.setQueueContext(queueContext);
 
         if (!isDeleted())
         {
@@ -693,6 +725,11 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             // No longer can the queue have an exclusive consumer
             setExclusiveSubscriber(null);
 
+            final QueueContext queueContext = consumer.getQueueContext();
+            if(queueContext != null && queueContext.getCondition() != null)
+            {
+                _selectorIndex.remove(queueContext);
+            }
             consumer.setQueueContext(null);
 
             if(_exclusive == ExclusivityPolicy.LINK)
@@ -833,84 +870,92 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public void enqueue(ServerMessage message, Action<? super MessageInstance> action)
     {
-        incrementQueueCount();
-        incrementQueueSize(message);
-
-        _totalMessagesReceived.incrementAndGet();
-
-
-
         final QueueConsumer<?> exclusiveSub = _exclusiveSubscriber;
-        final QueueEntry entry = getEntries().add(message);
+        final QueueEntry entry = addEntry(message);
 
         if(action != null || (exclusiveSub == null  && _queueRunner.isIdle()))
         {
-            /*
-            * iterate over consumers and if any is at the end of the queue and can deliver this message,
-             * then deliver the message
-             */
-
             Subject.doAs(SecurityManager.getSystemTaskSubject("Immediate Delivery"),
                          new PrivilegedAction<Object>()
                          {
                              @Override
                              public Object run()
                              {
+                                 attemptImmediateDelivery(entry);
+                                 return null;
+                             }
+                         });
+        }
 
-                                 QueueConsumerList.ConsumerNode node = _consumerList.getMarkedNode();
-                                 QueueConsumerList.ConsumerNode nextNode = node.findNext();
-                                 if (nextNode == null)
-                                 {
-                                     nextNode = _consumerList.getHead().findNext();
-                                 }
-                                 while (nextNode != null)
-                                 {
-                                     if (_consumerList.updateMarkedNode(node, nextNode))
-                                     {
-                                         break;
-                                     }
-                                     else
-                                     {
-                                         node = _consumerList.getMarkedNode();
-                                         nextNode = node.findNext();
-                                         if (nextNode == null)
-                                         {
-                                             nextNode = _consumerList.getHead().findNext();
-                                         }
-                                     }
-                                 }
-                                 // always do one extra loop after we believe we've finished
-                                 // this catches the case where we *just* miss an update
-                                 int loops = 2;
 
-                                 while (entry.isAvailable() && loops != 0)
-                                 {
-                                     if (nextNode == null)
-                                     {
-                                         loops--;
-                                         nextNode = _consumerList.getHead();
-                                     }
-                                     else
-                                     {
-                                         // if consumer at end, and active, offer
-                                         final QueueConsumer<?> sub = nextNode.getConsumer();
-                                         deliverToConsumer(sub, entry);
+        if (entry.isAvailable())
+        {
+            checkConsumersNotAheadOfDelivery(entry);
 
+            if (exclusiveSub != null)
+            {
+                deliverAsync(exclusiveSub);
+            }
+            else
+            {
+                deliverAsync();
+           }
+        }
 
-                                     }
-                                     nextNode = nextNode.findNext();
+        checkForNotification(entry.getMessage());
 
-                                 }
+        if(action != null)
+        {
+            action.performAction(entry);
+        }
 
+    }
+
+    public void enqueue(List<? extends ServerMessage> messages, Action<? super MessageInstance> action)
+    {
+        if(messages.size() == 1)
+        {
+            enqueue(messages.get(0), action);
+            return;
+        }
+
+        final QueueConsumer<?> exclusiveSub = _exclusiveSubscriber;
+        final List<QueueEntry> entries = new ArrayList<QueueEntry>(messages.size());
+        for(ServerMessage message : messages)
+        {
+            entries.add(addEntry(message));
+        }
+
+        if(action != null || (exclusiveSub == null  && _queueRunner.isIdle()))
+        {
+            Subject.doAs(SecurityManager.getSystemTaskSubject("Immediate Delivery"),
+                         new PrivilegedAction<Object>()
+                         {
+                             @Override
+                             public Object run()
+                             {
+                                 for(QueueEntry entry : entries)
+                                 {
+                                     attemptImmediateDelivery(entry);
+                                 }
                                  return null;
                              }
                          });
         }
 
+        // consumers need only be moved back to the earliest of the entries which remain available
+        QueueEntry earliestAvailable = null;
+        for(QueueEntry entry : entries)
+        {
+            if(entry.isAvailable() && (earliestAvailable == null || entry.compareTo(earliestAvailable) < 0))
+            {
+                earliestAvailable = entry;
+            }
+        }
 
-        if (entry.isAvailable())
+        if (earliestAvailable != null)
         {
-            checkConsumersNotAheadOfDelivery(entry);
+            checkConsumersNotAheadOfDelivery(earliestAvailable);
 
             if (exclusiveSub != null)
             {
@@ -919,20 +964,97 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             else
             {
                 deliverAsync();
-           }
+            }
         }
 
-        checkForNotification(entry.getMessage());
+        checkForNotification(messages);
 
         if(action != null)
         {
-            action.performAction(entry);
+            for(QueueEntry entry : entries)
+            {
+                action.performAction(entry);
+            }
+        }
+    }
+
+    private QueueEntry addEntry(final ServerMessage message)
+    {
+        incrementQueueCount();
+        incrementQueueSize(message);
+
+        _totalMessagesReceived.incrementAndGet();
+
+        final QueueEntry entry = getEntries().add(message);
+        updateFlowToDiskReleasedEntry(entry);
+        _expiryIndex.add(entry);
+        _selectorIndex.entryAdded(entry);
+        if(_messageGroupManager != null)
+        {
+            _messageGroupManager.entryEnqueued(entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Offers the entry to the consumers in turn, starting after the consumer last offered a new entry, until one
+     * of them acquires it.
+     */
+    private void attemptImmediateDelivery(final QueueEntry entry)
+    {
+        QueueConsumerList.ConsumerNode node = _consumerList.getMarkedNode();
+        QueueConsumerList.ConsumerNode nextNode = node.findNext();
+        if (nextNode == null)
+        {
+            nextNode = _consumerList.getHead().findNext();
+        }
+        while (nextNode != null)
+        {
+            if (_consumerList.updateMarkedNode(node, nextNode))
+            {
+                break;
+            }
+            else
+            {
+                node = _consumerList.getMarkedNode();
+                nextNode = node.findNext();
+                if (nextNode == null)
+                {
+                    nextNode = _consumerList.getHead().findNext();
+                }
+            }
         }
+        // always do one extra loop after we believe we've finished
+        // this catches the case where we *just* miss an update
+        int loops = 2;
+
+        while (entry.isAvailable() && loops != 0)
+        {
+            if (nextNode == null)
+            {
+                loops--;
+                nextNode = _consumerList.getHead();
+            }
+            else
+            {
+                // if consumer at end, and active, offer
+                final QueueConsumer<?> sub = nextNode.getConsumer();
+                deliverToConsumer(sub, entry);
+
+
+            }
+            nextNode = nextNode.findNext();
 
+        }
     }
 
     private void deliverToConsumer(final QueueConsumer<?> sub, final QueueEntry entry)
     {
+        final QueueContext context = sub.getQueueContext();
+        if(context != null && !ConsumerSelectorIndex.mayInterest(context, entry))
+        {
+            return;
+        }
 
         if(sub.trySendLock())
         {
@@ -1026,6 +1148,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
         _deliveredMessages.incrementAndGet();
         incrementUnackedMsgCount(entry);
+        clearFlowedToDisk(entry);
 
         sub.send(entry, batch);
     }
@@ -1071,6 +1194,12 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public void requeue(QueueEntry entry)
     {
+        if(_messageGroupManager != null)
+        {
+            _messageGroupManager.entryRequeued(entry);
+        }
+        updateFlowToDiskReleasedEntry(entry);
+
         QueueConsumerList.ConsumerNodeIterator subscriberIter = _consumerList.iterator();
         // iterate over all the subscribers, and if they are in advance of this queue entry then move them backwards
         while (subscriberIter.advance() && entry.isAvailable())
@@ -1091,8 +1220,15 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     @Override
     public void dequeue(QueueEntry entry)
     {
+        _expiryIndex.remove(entry);
+        _selectorIndex.entryRemoved(entry);
+        if(_messageGroupManager != null)
+        {
+            _messageGroupManager.entryDequeued(entry);
+        }
         decrementQueueCount();
         decrementQueueSize(entry);
+        clearFlowedToDisk(entry);
         if (entry.acquiredByConsumer())
         {
             _deliveredMessages.decrementAndGet();
@@ -1115,6 +1251,86 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
     }
 
+    private void clearFlowedToDisk(final QueueEntry entry)
+    {
+        if (entry.clearFlowedToDisk())
+        {
+            _flowedToDiskSize.addAndGet(-entry.getSize());
+        }
+    }
+
+    /**
+     * @return the size of the content of the messages on the queue, excluding those whose content the queue has
+     *         flowed to disk
+     */
+    long getInMemoryContentSize()
+    {
+        return Math.max(0L, getAtomicQueueSize().get() - _flowedToDiskSize.get());
+    }
+
+    /**
+     * Flows the content of the oldest available messages on the queue to disk, until the content of at least the
+     * given number of bytes of messages has been flowed or there are no more available messages.
+     *
+     * Each call resumes from the last entry examined by the previous one, rather than from the head of the queue,
+     * unless an entry has since been made available before that point.
+     *
+     * @return the size of the messages whose content was flowed
+     */
+    long flowToDisk(final long size, final FlowToDiskManager manager)
+    {
+        final QueueEntryList entries = getEntries();
+        final QueueEntry position = _flowToDiskPosition;
+        final QueueEntry released = _flowToDiskReleasedEntry.getAndSet(null);
+
+        QueueEntry entry;
+        if (released != null && (position == null || released.compareTo(position) <= 0))
+        {
+            entry = released;
+        }
+        else
+        {
+            entry = entries.next(position == null ? entries.getHead() : position);
+        }
+
+        long flowed = 0L;
+        while (flowed < size && entry != null)
+        {
+            _flowToDiskPosition = entry;
+            if (entry.isAvailable() && entry.setFlowedToDisk())
+            {
+                long entrySize = entry.getSize();
+                _flowedToDiskSize.addAndGet(entrySize);
+                if (manager.flowToDisk(entry))
+                {
+                    flowed += entrySize;
+                }
+                else
+                {
+                    clearFlowedToDisk(entry);
+                }
+            }
+            entry = entries.next(entry);
+        }
+        return flowed;
+    }
+
+    private void updateFlowToDiskReleasedEntry(final QueueEntry entry)
+    {
+        final QueueEntry position = _flowToDiskPosition;
+        if (position != null && entry.compareTo(position) <= 0)
+        {
+            QueueEntry oldEntry;
+            while ((oldEntry = _flowToDiskReleasedEntry.get()) == null || oldEntry.compareTo(entry) > 0)
+            {
+                if (_flowToDiskReleasedEntry.compareAndSet(oldEntry, entry))
+                {
+                    break;
+                }
+            }
+        }
+    }
+
     void decrementQueueCount()
     {
         getAtomicQueueCount().decrementAndGet();
@@ -1539,6 +1755,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             }
 
             _deleteTaskList.clear();
+            _expiryIndex.clear();
+            _selectorIndex.clear();
             stop();
             deleted();
             //Log Queue Deletion
@@ -1551,10 +1769,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public void stop()
     {
-        if (!_stopped.getAndSet(true))
-        {
-            ReferenceCountingExecutorService.getInstance().releaseExecutorService();
-        }
+        _stopped.set(true);
     }
 
     public void checkCapacity(AMQSessionModel channel)
@@ -1617,7 +1832,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
     {
         _stateChangeCount.incrementAndGet();
 
-        _queueRunner.execute(_asyncDelivery);
+        _queueRunner.execute(getDeliveryExecutor());
 
     }
 
@@ -1630,7 +1845,7 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         else
         {
             SubFlushRunner flusher = sub.getRunner();
-            flusher.execute(_asyncDelivery);
+            flusher.execute(getDeliveryExecutor());
         }
 
     }
@@ -1787,8 +2002,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
             QueueEntry lastSeen = context.getLastSeenEntry();
             QueueEntry releasedNode = context.getReleasedEntry();
 
-            QueueEntry node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : getEntries()
-                    .next(lastSeen);
+            QueueEntry node = (releasedNode != null && lastSeen.compareTo(releasedNode)>=0) ? releasedNode : getNextEntry(
+                    context, lastSeen);
 
             boolean expired = false;
             while (node != null && (!node.isAvailable() || (expired = node.expired()) || !sub.hasInterest(node) ||
@@ -1810,8 +2025,8 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
                 lastSeen = context.getLastSeenEntry();
                 releasedNode = context.getReleasedEntry();
-                node = (releasedNode != null && lastSeen.compareTo(releasedNode)>0) ? releasedNode : getEntries().next(
-                        lastSeen);
+                node = (releasedNode != null && lastSeen.compareTo(releasedNode)>0) ? releasedNode : getNextEntry(
+                        context, lastSeen);
             }
             return node;
         }
@@ -1821,6 +2036,17 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
     }
 
+    /**
+     * @return the entry after the given one which the consumer should next consider, passing over any entries which
+     * do not meet the condition of its selector
+     */
+    private QueueEntry getNextEntry(final QueueContext context, final QueueEntry lastSeen)
+    {
+        return context.getCondition() == null
+                ? getEntries().next(lastSeen)
+                : _selectorIndex.next(context, lastSeen);
+    }
+
     public boolean isEntryAheadOfConsumer(QueueEntry entry, QueueConsumer<?> sub)
     {
         QueueContext context = sub.getQueueContext();
@@ -1983,38 +2209,35 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
 
     public void checkMessageStatus()
     {
-        QueueEntryIterator queueListIterator = getEntries().iterator();
-
-        while (queueListIterator.advance())
+        _expiryIndex.removeDue(System.currentTimeMillis(), new QueueEntryVisitor()
         {
-            QueueEntry node = queueListIterator.getNode();
-            // Only process nodes that are not currently deleted and not dequeued
-            if (!node.isDeleted())
+            @Override
+            public boolean visit(final QueueEntry node)
             {
-                // If the node has expired then acquire it
-                if (node.expired() && node.acquire())
+                // Only process nodes that are not currently deleted and not dequeued
+                if (!node.isDeleted())
                 {
-                    if (_logger.isDebugEnabled())
+                    // If the node has expired then acquire it
+                    if (node.expired() && node.acquire())
                     {
-                        _logger.debug("Dequeuing expired node " + node);
+                        if (_logger.isDebugEnabled())
+                        {
+                            _logger.debug("Dequeuing expired node " + node);
+                        }
+                        // Then dequeue it.
+                        dequeueEntry(node);
                     }
-                    // Then dequeue it.
-                    dequeueEntry(node);
-                }
-                else
-                {
-                    // There is a chance that the node could be deleted by
-                    // the time the check actually occurs. So verify we
-                    // can actually get the message to perform the check.
-                    ServerMessage msg = node.getMessage();
-                    if (msg != null)
+                    else
                     {
-                        checkForNotification(msg);
+                        // not yet due, or currently acquired, so check it again later
+                        _expiryIndex.add(node);
                     }
                 }
+                return false;
             }
-        }
+        });
 
+        checkForQueueNotification();
     }
 
     public long getAlertRepeatGap()
@@ -2241,38 +2464,84 @@ public abstract class AbstractQueue<X extends AbstractQueue<X>>
         }
     }
 
-    public void setNotificationListener(QueueNotificationListener  listener)
+    /**
+     * Performs the checks which concern the queue as a whole, rather than an individual message.
+     */
+    private void checkForQueueNotification()
     {
-        _notificationListener = listener;
+        final Set<NotificationCheck> notificationChecks = getNotificationChecks();
+        QueueNotificationListener  listener = _notificationListener;
+        if(listener == null)
+        {
+            listener = NULL_NOTIFICATION_LISTENER;
+        }
+        if(!notificationChecks.isEmpty())
+        {
+            final long currentTime = System.currentTimeMillis();
+            final long thresholdTime = currentTime - getAlertRepeatGap();
+
+            for (NotificationCheck check : notificationChecks)
+            {
+                if (!check.isMessageSpecific() && (_lastNotificationTimes[check.ordinal()] < thresholdTime))
+                {
+                    if (check.notifyIfNecessary(null, this, listener))
+                    {
+                        _lastNotificationTimes[check.ordinal()] = currentTime;
+                    }
+                }
+            }
+        }
     }
 
-    public final  <M extends ServerMessage<? extends StorableMessageMetaData>> int send(final M message,
-                                                                                        final String routingAddress,
-                                                                                        final InstanceProperties instanceProperties,
-                                                                                        final ServerTransaction txn,
-                                                                                        final Action<? super MessageInstance> postEnqueueAction)
+    private void checkForNotification(List<? extends ServerMessage> messages)
     {
-            txn.enqueue(this,message, new ServerTransaction.Action()
-            {
-                MessageReference _reference = message.newReference();
+        final Set<NotificationCheck> notificationChecks = getNotificationChecks();
+        QueueNotificationListener  listener = _notificationListener;
+        if(listener == null)
+        {
+            listener = NULL_NOTIFICATION_LISTENER;
+        }
+        if(listener != null && !notificationChecks.isEmpty())
+        {
+            final long currentTime = System.currentTimeMillis();
+            final long thresholdTime = currentTime - getAlertRepeatGap();
 
-                public void postCommit()
+            for (NotificationCheck check : notificationChecks)
+            {
+                if (check.isMessageSpecific())
                 {
-                    try
+                    for (ServerMessage<?> msg : messages)
                     {
-                        AbstractQueue.this.enqueue(message, postEnqueueAction);
+                        if (check.notifyIfNecessary(msg, this, listener))
+                        {
+                            _lastNotificationTimes[check.ordinal()] = currentTime;
+                        }
                     }
-                    finally
+                }
+                else if (_lastNotificationTimes[check.ordinal()] < thresholdTime)
+                {
+                    // the state of the queue after the whole batch is what matters
+                    if (check.notifyIfNecessary(messages.get(messages.size() - 1), this, listener))
                     {
-                        _reference.release();
+                        _lastNotificationTimes[check.ordinal()] = currentTime;
                     }
                 }
+            }
+        }
+    }
 
-                public void onRollback()
-                {
-                    _reference.release();
-                }
-            });
+    public void setNotificationListener(QueueNotificationListener  listener)
+    {
+        _notificationListener = listener;
+    }
+
+    public final  <M extends ServerMessage<? extends StorableMessageMetaData>> int send(final M message,
+                                                                                        final String routingAddress,
+                                                                                        final InstanceProperties instanceProperties,
+                                                                                        final ServerTransaction txn,
+                                                                                        final Action<? super MessageInstance> postEnqueueAction)
+    {
+            txn.enqueue(this,message, new EnqueueAction(new BaseQueue[] { this }, message, postEnqueueAction));
             return 1;
 
     }
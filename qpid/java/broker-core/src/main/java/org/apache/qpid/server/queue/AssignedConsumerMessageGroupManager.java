@@ -24,6 +24,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 
 
@@ -35,6 +36,7 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
     private final String _groupId;
     private final ConcurrentHashMap<Integer, QueueConsumer<?>> _groupMap = new ConcurrentHashMap<Integer, QueueConsumer<?>>();
     private final int _groupMask;
+    private final MessageGroupEntryIndex _entryIndex = new MessageGroupEntryIndex();
 
     public AssignedConsumerMessageGroupManager(final String groupId, final int maxGroups)
     {
@@ -60,7 +62,16 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
 
     public boolean acceptMessage(QueueConsumer<?> sub, QueueEntry entry)
     {
-        return assignMessage(sub, entry) && entry.acquire(sub);
+        if(assignMessage(sub, entry) && entry.acquire(sub))
+        {
+            Object groupVal = entry.getMessage().getMessageHeader().getHeader(_groupId);
+            if(groupVal != null)
+            {
+                _entryIndex.removeAcquired(groupVal.hashCode() & _groupMask, entry);
+            }
+            return true;
+        }
+        return false;
     }
 
     private boolean assignMessage(QueueConsumer<?> sub, QueueEntry entry)
@@ -99,51 +110,19 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
     
     public QueueEntry findEarliestAssignedAvailableEntry(QueueConsumer<?> sub)
     {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
-    }
-
-    private class EntryFinder implements QueueEntryVisitor
-    {
-        private QueueEntry _entry;
-        private QueueConsumer<?> _sub;
-
-        public EntryFinder(final QueueConsumer<?> sub)
+        QueueEntry earliest = null;
+        for(Map.Entry<Integer, QueueConsumer<?>> assignment : _groupMap.entrySet())
         {
-            _sub = sub;
-        }
-
-        public boolean visit(final QueueEntry entry)
-        {
-            if(!entry.isAvailable())
-            {
-                return false;
-            }
-
-            Object groupId = entry.getMessage().getMessageHeader().getHeader(_groupId);
-            if(groupId == null)
-            {
-                return false;
-            }
-
-            Integer group = groupId.hashCode() & _groupMask;
-            QueueConsumer<?> assignedSub = _groupMap.get(group);
-            if(assignedSub == _sub)
-            {
-                _entry = entry;
-                return true;
-            }
-            else
+            if(assignment.getValue() == sub)
             {
-                return false;
+                QueueEntry entry = _entryIndex.getEarliestAvailableEntry(assignment.getKey());
+                if(entry != null && (earliest == null || entry.compareTo(earliest) < 0))
+                {
+                    earliest = entry;
+                }
             }
         }
-
-        public QueueEntry getEntry()
-        {
-            return _entry;
-        }
+        return earliest;
     }
 
     public void clearAssignments(QueueConsumer<?> sub)
@@ -157,4 +136,27 @@ public class AssignedConsumerMessageGroupManager implements MessageGroupManager
             }
         }
     }
+
+    public void entryEnqueued(final QueueEntry entry)
+    {
+        Object groupVal = entry.getMessage().getMessageHeader().getHeader(_groupId);
+        if(groupVal != null)
+        {
+            _entryIndex.add(groupVal.hashCode() & _groupMask, entry);
+        }
+    }
+
+    public void entryRequeued(final QueueEntry entry)
+    {
+        entryEnqueued(entry);
+    }
+
+    public void entryDequeued(final QueueEntry entry)
+    {
+        Object groupVal = entry.getMessage().getMessageHeader().getHeader(_groupId);
+        if(groupVal != null)
+        {
+            _entryIndex.remove(groupVal.hashCode() & _groupMask, entry);
+        }
+    }
 }
@@ -21,6 +21,8 @@
 
 package org.apache.qpid.server.queue;
 
+import java.util.List;
+
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.store.TransactionLogResource;
@@ -30,6 +32,12 @@ public interface BaseQueue extends TransactionLogResource
 {
     void enqueue(ServerMessage message, Action<? super MessageInstance> action);
 
+    /**
+     * Enqueues the given messages in order, performing the given action (if any) on each of the resulting entries.
+     * Consumers are notified once for the whole batch rather than once per message.
+     */
+    void enqueue(List<? extends ServerMessage> messages, Action<? super MessageInstance> action);
+
     boolean isDurable();
     boolean isDeleted();
 
@@ -0,0 +1,312 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+import org.apache.qpid.filter.EqualityCondition;
+import org.apache.qpid.server.filter.FilterManager;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.MessageFilter;
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * Indexes the entries of a queue by the values of the message properties on which the selectors of its consumers
+ * test for equality, so that a consumer whose selector requires a property to hold one of a few values can find the
+ * next entry which may interest it without evaluating its selector against every entry in between.
+ *
+ * Only properties named in the condition of some consumer are indexed. When a new entry is indexed, each consumer
+ * whose condition it meets is moved back to the entry, as if it had been released, in case the consumer had looked
+ * up its next entry before this one was indexed and so passed over it.
+ */
+final class ConsumerSelectorIndex
+{
+    private final Map<String, Property> _properties = new HashMap<String, Property>();
+    private volatile Property[] _indexedProperties = new Property[0];
+
+    /**
+     * @return the condition of the first of the given filters whose selector implies one, or null
+     */
+    static EqualityCondition getCondition(final FilterManager filters)
+    {
+        if(filters != null)
+        {
+            final Iterator<MessageFilter> iterator = filters.filters();
+            while(iterator.hasNext())
+            {
+                final MessageFilter filter = iterator.next();
+                if(filter instanceof JMSSelectorFilter && ((JMSSelectorFilter) filter).getEqualityCondition() != null)
+                {
+                    return ((JMSSelectorFilter) filter).getEqualityCondition();
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Registers the context of a consumer having a condition, indexing the entries already on the queue by the
+     * property of the condition if no other consumer has a condition on that property.
+     */
+    synchronized void add(final QueueContext context, final QueueEntryList entries)
+    {
+        final EqualityCondition condition = context.getCondition();
+        Property property = _properties.get(condition.getPropertyName());
+        if(property == null)
+        {
+            property = new Property(condition.getPropertyName());
+            _properties.put(property._name, property);
+
+            // entries added to the queue from now on are indexed as they are added, so those added before must be
+            // on the queue by the time it is walked
+            _indexedProperties = _properties.values().toArray(new Property[_properties.size()]);
+            final QueueEntryIterator iterator = entries.iterator();
+            while(iterator.advance())
+            {
+                final QueueEntry entry = iterator.getNode();
+                if(!entry.isDeleted())
+                {
+                    property.addEntry(entry);
+                }
+            }
+        }
+        property._consumers++;
+        for(String value : condition.getValues())
+        {
+            Set<QueueContext> contexts = property._contexts.get(value);
+            if(contexts == null)
+            {
+                contexts = Collections.newSetFromMap(new ConcurrentHashMap<QueueContext, Boolean>());
+                property._contexts.put(value, contexts);
+            }
+            contexts.add(context);
+        }
+    }
+
+    synchronized void remove(final QueueContext context)
+    {
+        final EqualityCondition condition = context.getCondition();
+        final Property property = _properties.get(condition.getPropertyName());
+        if(property != null)
+        {
+            for(String value : condition.getValues())
+            {
+                final Set<QueueContext> contexts = property._contexts.get(value);
+                if(contexts != null && contexts.remove(context) && contexts.isEmpty())
+                {
+                    property._contexts.remove(value);
+                }
+            }
+            if(--property._consumers == 0)
+            {
+                _properties.remove(property._name);
+                _indexedProperties = _properties.values().toArray(new Property[_properties.size()]);
+            }
+        }
+    }
+
+    void entryAdded(final QueueEntry entry)
+    {
+        for(Property property : _indexedProperties)
+        {
+            final String value = property.addEntry(entry);
+            if(value != null)
+            {
+                final Set<QueueContext> contexts = property._contexts.get(value);
+                if(contexts != null)
+                {
+                    for(QueueContext context : contexts)
+                    {
+                        release(context, entry);
+                    }
+                }
+            }
+        }
+    }
+
+    void entryRemoved(final QueueEntry entry)
+    {
+        for(Property property : _indexedProperties)
+        {
+            property.removeEntry(entry);
+        }
+    }
+
+    /**
+     * @return the earliest entry after the given one which meets the condition of the consumer, or null if there is
+     * none
+     */
+    QueueEntry next(final QueueContext context, final QueueEntry after)
+    {
+        final EqualityCondition condition = context.getCondition();
+        final Property property = getProperty(condition.getPropertyName());
+        QueueEntry next = null;
+        if(property != null)
+        {
+            for(String value : condition.getValues())
+            {
+                final QueueEntry entry = property.nextEntry(value, after);
+                if(entry != null && (next == null || entry.compareTo(next) < 0))
+                {
+                    next = entry;
+                }
+            }
+        }
+        return next;
+    }
+
+    /**
+     * @return false if the consumer has a condition which the entry does not meet
+     */
+    static boolean mayInterest(final QueueContext context, final QueueEntry entry)
+    {
+        final EqualityCondition condition = context.getCondition();
+        return condition == null || condition.isSatisfiedBy(getValue(entry, condition.getPropertyName()));
+    }
+
+    void clear()
+    {
+        for(Property property : _indexedProperties)
+        {
+            property._entries.clear();
+        }
+    }
+
+    private Property getProperty(final String name)
+    {
+        for(Property property : _indexedProperties)
+        {
+            if(property._name.equals(name))
+            {
+                return property;
+            }
+        }
+        return null;
+    }
+
+    private static void release(final QueueContext context, final QueueEntry entry)
+    {
+        QueueEntry released = context.getReleasedEntry();
+        while(!entry.isAcquired() && (released == null || released.compareTo(entry) > 0))
+        {
+            if(QueueContext._releasedUpdater.compareAndSet(context, released, entry))
+            {
+                break;
+            }
+            released = context.getReleasedEntry();
+        }
+    }
+
+    private static Object getValue(final QueueEntry entry, final String name)
+    {
+        final ServerMessage message = entry.getMessage();
+        return message == null ? null : message.getMessageHeader().getHeader(name);
+    }
+
+    private static final class Property
+    {
+        private final String _name;
+        private final ConcurrentHashMap<String, ConcurrentSkipListSet<QueueEntry>> _entries =
+                new ConcurrentHashMap<String, ConcurrentSkipListSet<QueueEntry>>();
+        private final ConcurrentHashMap<String, Set<QueueContext>> _contexts =
+                new ConcurrentHashMap<String, Set<QueueContext>>();
+        private int _consumers;
+
+        private Property(final String name)
+        {
+            _name = name;
+        }
+
+        /**
+         * @return the value under which the entry was indexed, or null if the property of its message is not a string
+         */
+        private String addEntry(final QueueEntry entry)
+        {
+            final Object value = getValue(entry, _name);
+            if(!(value instanceof String))
+            {
+                return null;
+            }
+            final String key = (String) value;
+            while(true)
+            {
+                ConcurrentSkipListSet<QueueEntry> entries = _entries.get(key);
+                if(entries == null)
+                {
+                    entries = new ConcurrentSkipListSet<QueueEntry>();
+                    final ConcurrentSkipListSet<QueueEntry> existing = _entries.putIfAbsent(key, entries);
+                    if(existing != null)
+                    {
+                        entries = existing;
+                    }
+                }
+                entries.add(entry);
+
+                // the set may have been found empty and discarded by removeEntry() before the entry was added
+                if(_entries.get(key) == entries)
+                {
+                    return key;
+                }
+                entries.remove(entry);
+            }
+        }
+
+        private void removeEntry(final QueueEntry entry)
+        {
+            final Object value = getValue(entry, _name);
+            if(value instanceof String)
+            {
+                final ConcurrentSkipListSet<QueueEntry> entries = _entries.get(value);
+                if(entries != null && entries.remove(entry) && entries.isEmpty() && _entries.remove(value, entries))
+                {
+                    // entries added to the set after it was found empty must be kept
+                    for(QueueEntry added : entries)
+                    {
+                        addEntry(added);
+                    }
+                }
+            }
+        }
+
+        private QueueEntry nextEntry(final String value, final QueueEntry after)
+        {
+            final ConcurrentSkipListSet<QueueEntry> entries = _entries.get(value);
+            if(entries != null)
+            {
+                QueueEntry entry = entries.higher(after);
+                // entries deleted without being dequeued are discarded when found
+                while(entry != null && entry.isDeleted())
+                {
+                    entries.remove(entry);
+                    entry = entries.higher(entry);
+                }
+                return entry;
+            }
+            return null;
+        }
+    }
+}
@@ -20,7 +20,6 @@
  */
 package org.apache.qpid.server.queue;
 
-import org.apache.qpid.server.consumer.ConsumerImpl;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.util.StateChangeListener;
 import org.slf4j.Logger;
@@ -29,23 +28,33 @@ import org.slf4j.LoggerFactory;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.ServerMessage;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 public class DefinedGroupMessageGroupManager implements MessageGroupManager
 {
     private static final Logger _logger = LoggerFactory.getLogger(DefinedGroupMessageGroupManager.class);
 
+    /** the key of the group of messages without a group, when no default group is defined */
+    private static final Object NO_GROUP = new Object();
+
     private final String _groupId;
     private final String _defaultGroup;
-    private final Map<Object, Group> _groupMap = new HashMap<Object, Group>();
+    private final ConcurrentHashMap<Object, Group> _groupMap = new ConcurrentHashMap<Object, Group>();
+    private final ConcurrentHashMap<QueueConsumer<?>, Set<Object>> _consumerGroups =
+            new ConcurrentHashMap<QueueConsumer<?>, Set<Object>>();
+    private final MessageGroupEntryIndex _entryIndex = new MessageGroupEntryIndex();
     private final ConsumerResetHelper _resetHelper;
 
+    /**
+     * The assignment of a group to a consumer. Changes to the assignment are made holding the lock on the group.
+     */
     private final class Group
     {
         private final Object _group;
-        private QueueConsumer<?> _consumer;
-        private int _activeCount;
+        private volatile QueueConsumer<?> _consumer;
+        private volatile int _activeCount;
 
         private Group(final Object key, final QueueConsumer<?> consumer)
         {
@@ -71,8 +80,13 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
             if(--_activeCount == 0)
             {
                 _resetHelper.resetSubPointersForGroups(_consumer, false);
+                final Set<Object> consumerGroups = _consumerGroups.get(_consumer);
+                if(consumerGroups != null)
+                {
+                    consumerGroups.remove(_group);
+                }
                 _consumer = null;
-                _groupMap.remove(_group);
+                _groupMap.remove(_group, this);
             }
         }
 
@@ -101,7 +115,8 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
 
         public boolean isValid()
         {
-            return !(_consumer == null || (_activeCount == 0 && _consumer.isClosed()));
+            final QueueConsumer<?> consumer = _consumer;
+            return !(consumer == null || (_activeCount == 0 && consumer.isClosed()));
         }
 
         public QueueConsumer<?> getConsumer()
@@ -127,7 +142,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         _resetHelper = resetHelper;
     }
     
-    public synchronized QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
+    public QueueConsumer<?> getAssignedConsumer(final QueueEntry entry)
     {
         Object groupId = getKey(entry);
 
@@ -135,93 +150,120 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         return group == null || !group.isValid() ? null : group.getConsumer();
     }
 
-    public synchronized boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
-    {
-        return assignMessage(sub, entry) && entry.acquire(sub);
-    }
-
-    private boolean assignMessage(final QueueConsumer<?> sub, final QueueEntry entry)
+    public boolean acceptMessage(final QueueConsumer<?> sub, final QueueEntry entry)
     {
         Object groupId = getKey(entry);
-        Group group = _groupMap.get(groupId);
 
-        if(group == null || !group.isValid())
+        while(true)
         {
-            group = new Group(groupId, sub);
-
-            _groupMap.put(groupId, group);
+            Group group = _groupMap.get(groupId);
 
-            // there's a small change that the group became empty between the point at which getNextAvailable() was
-            // called on the consumer, and when accept message is called... in that case we want to avoid delivering
-            // out of order
-            if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+            if(group == null || !group.isValid())
             {
-                return false;
+                final Group newGroup = new Group(groupId, sub);
+                if(group == null
+                   ? _groupMap.putIfAbsent(groupId, newGroup) != null
+                   : !_groupMap.replace(groupId, group, newGroup))
+                {
+                    // another consumer has just been assigned the group
+                    continue;
+                }
+                group = newGroup;
+                addConsumerGroup(sub, groupId);
+
+                // there's a small change that the group became empty between the point at which getNextAvailable() was
+                // called on the consumer, and when accept message is called... in that case we want to avoid delivering
+                // out of order
+                if(_resetHelper.isEntryAheadOfConsumer(entry, sub))
+                {
+                    return false;
+                }
             }
-        }
 
-        ConsumerImpl assignedSub = group.getConsumer();
+            synchronized (group)
+            {
+                QueueConsumer<?> assignedSub = group.getConsumer();
+                if(assignedSub == null)
+                {
+                    // the group was released by its consumer after it was looked up
+                    continue;
+                }
 
-        if(assignedSub == sub)
-        {
-            entry.addStateChangeListener(new GroupStateChangeListener(group));
-            return true;
-        }
-        else
-        {
-            return false;            
+                if(assignedSub == sub)
+                {
+                    entry.addStateChangeListener(new GroupStateChangeListener(group));
+                    if(entry.acquire(sub))
+                    {
+                        _entryIndex.removeAcquired(groupId, entry);
+                        return true;
+                    }
+                    return false;
+                }
+                else
+                {
+                    return false;
+                }
+            }
         }
     }
 
-    public synchronized QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
-    {
-        EntryFinder visitor = new EntryFinder(sub);
-        sub.getQueue().visit(visitor);
-        return visitor.getEntry();
-    }
-
-    private class EntryFinder implements QueueEntryVisitor
+    private void addConsumerGroup(final QueueConsumer<?> sub, final Object groupId)
     {
-        private QueueEntry _entry;
-        private QueueConsumer _sub;
-
-        public EntryFinder(final QueueConsumer<?> sub)
+        Set<Object> groups = _consumerGroups.get(sub);
+        if(groups == null)
         {
-            _sub = sub;
+            groups = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+            final Set<Object> existing = _consumerGroups.putIfAbsent(sub, groups);
+            if(existing != null)
+            {
+                groups = existing;
+            }
         }
+        groups.add(groupId);
+    }
 
-        public boolean visit(final QueueEntry entry)
+    public QueueEntry findEarliestAssignedAvailableEntry(final QueueConsumer<?> sub)
+    {
+        QueueEntry earliest = null;
+        final Set<Object> groups = _consumerGroups.get(sub);
+        if(groups != null)
         {
-            if(!entry.isAvailable())
+            for(Object groupId : groups)
             {
-                return false;
+                Group group = _groupMap.get(groupId);
+                if(group != null && group.getConsumer() == sub)
+                {
+                    QueueEntry entry = _entryIndex.getEarliestAvailableEntry(groupId);
+                    if(entry != null && (earliest == null || entry.compareTo(earliest) < 0))
+                    {
+                        earliest = entry;
+                    }
+                }
             }
+        }
+        return earliest;
+    }
 
-            Object groupId = getKey(entry);
+    public void clearAssignments(final QueueConsumer<?> sub)
+    {
+        _consumerGroups.remove(sub);
+    }
 
-            Group group = _groupMap.get(groupId);
-            if(group != null && group.getConsumer() == _sub)
-            {
-                _entry = entry;
-                return true;
-            }
-            else
-            {
-                return false;
-            }
-        }
+    public void entryEnqueued(final QueueEntry entry)
+    {
+        _entryIndex.add(getKey(entry), entry);
+    }
 
-        public QueueEntry getEntry()
-        {
-            return _entry;
-        }
+    public void entryRequeued(final QueueEntry entry)
+    {
+        _entryIndex.add(getKey(entry), entry);
     }
 
-    
-    public void clearAssignments(final QueueConsumer<?> sub)
+    public void entryDequeued(final QueueEntry entry)
     {
+        _entryIndex.remove(getKey(entry), entry);
     }
-    
+
     private Object getKey(QueueEntry entry)
     {
         ServerMessage message = entry.getMessage();
@@ -229,7 +271,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
         Object groupVal = messageHeader == null ? _defaultGroup : messageHeader.getHeader(_groupId);
         if(groupVal == null)
         {
-            groupVal = _defaultGroup;
+            groupVal = _defaultGroup == null ? NO_GROUP : _defaultGroup;
         }
         return groupVal;
     }
@@ -247,7 +289,7 @@ public class DefinedGroupMessageGroupManager implements MessageGroupManager
                                  final MessageInstance.State oldState,
                                  final MessageInstance.State newState)
         {
-            synchronized (DefinedGroupMessageGroupManager.this)
+            synchronized (_group)
             {
                 if(_group.isValid())
                 {
@@ -0,0 +1,228 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.Broker;
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.model.State;
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.model.VirtualHostNode;
+import org.apache.qpid.server.store.FlowableStoredMessage;
+import org.apache.qpid.server.store.SpillFile;
+import org.apache.qpid.server.store.StoredMessage;
+
+/**
+ * Bounds the content of the messages held on the queues of all of the virtual hosts of a broker.
+ *
+ * The content held by each queue is checked periodically. While the total exceeds the threshold, the content of the
+ * oldest available messages is flowed to disk, starting with the queue whose oldest message has waited longest.
+ * Persistent messages are written to their message store, if not already stored, and transient messages to a spill
+ * file. The content is read back when the message is delivered.
+ */
+public final class FlowToDiskManager
+{
+    private static final Logger LOGGER = Logger.getLogger(FlowToDiskManager.class);
+
+    private final Broker<?> _broker;
+    private final long _threshold;
+    private final SpillFile _spillFile;
+    private final AtomicLong _bytesFlowed = new AtomicLong();
+    private final AtomicLong _messagesFlowed = new AtomicLong();
+    private volatile long _inMemoryContentSize;
+    private Timer _timer;
+
+    public FlowToDiskManager(final Broker<?> broker, final long threshold, final SpillFile spillFile)
+    {
+        _broker = broker;
+        _threshold = threshold;
+        _spillFile = spillFile;
+    }
+
+    public synchronized void start(final long checkPeriod)
+    {
+        _timer = new Timer("Flow-To-Disk", true);
+        _timer.schedule(new TimerTask()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    checkContentSize();
+                }
+                catch (RuntimeException e)
+                {
+                    LOGGER.error("Failed to flow message content to disk", e);
+                }
+            }
+        }, checkPeriod, checkPeriod);
+    }
+
+    /**
+     * Stops the periodic check, waiting for a check in progress to complete. Content already flowed to the spill file
+     * may still be read back until the manager is closed.
+     */
+    public synchronized void stop()
+    {
+        if (_timer != null)
+        {
+            _timer.cancel();
+            _timer = null;
+        }
+    }
+
+    /**
+     * Closes the spill file, which must only be done once the queues holding messages spilled to it have stopped.
+     */
+    public synchronized void close()
+    {
+        stop();
+        _spillFile.close();
+    }
+
+    /**
+     * Totals the content held on the queues of the active virtual hosts, flowing content to disk if the total exceeds
+     * the threshold.
+     */
+    public synchronized void checkContentSize()
+    {
+        List<QueueAge> queues = new ArrayList<QueueAge>();
+        long total = 0L;
+        for (VirtualHostNode<?> node : _broker.getVirtualHostNodes())
+        {
+            VirtualHost<?, ?, ?> host = node.getVirtualHost();
+            if (host != null && host.getState() == State.ACTIVE)
+            {
+                for (Queue<?> queue : host.getQueues())
+                {
+                    if (queue instanceof AbstractQueue)
+                    {
+                        AbstractQueue<?> abstractQueue = (AbstractQueue<?>) queue;
+                        long size = abstractQueue.getInMemoryContentSize();
+                        if (size > 0L)
+                        {
+                            total += size;
+                            queues.add(new QueueAge(abstractQueue));
+                        }
+                    }
+                }
+            }
+        }
+        _inMemoryContentSize = total;
+
+        if (total > _threshold)
+        {
+            Collections.sort(queues);
+            long excess = total - _threshold;
+            for (QueueAge queueAge : queues)
+            {
+                long flowed = queueAge._queue.flowToDisk(excess, this);
+                total -= flowed;
+                excess -= flowed;
+                if (excess <= 0L)
+                {
+                    break;
+                }
+            }
+            _inMemoryContentSize = total;
+
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Flowed message content to disk, " + total + " bytes of content remain in memory");
+            }
+        }
+    }
+
+    /**
+     * Flows the content of the message of the given entry to disk.
+     *
+     * @return false if the content of the message cannot be flowed to disk
+     */
+    boolean flowToDisk(final QueueEntry entry)
+    {
+        ServerMessage<?> message = entry.getMessage();
+        StoredMessage<?> storedMessage = message == null ? null : message.getStoredMessage();
+        if (storedMessage instanceof FlowableStoredMessage)
+        {
+            int released = ((FlowableStoredMessage<?>) storedMessage).flowToDisk(_spillFile);
+            if (released > 0)
+            {
+                _bytesFlowed.addAndGet(released);
+                _messagesFlowed.incrementAndGet();
+            }
+            return true;
+        }
+        return false;
+    }
+
+    public long getThreshold()
+    {
+        return _threshold;
+    }
+
+    /**
+     * @return the size of the content held on queues as of the last check
+     */
+    public long getInMemoryContentSize()
+    {
+        return _inMemoryContentSize;
+    }
+
+    public long getBytesFlowed()
+    {
+        return _bytesFlowed.get();
+    }
+
+    public long getMessagesFlowed()
+    {
+        return _messagesFlowed.get();
+    }
+
+    private static final class QueueAge implements Comparable<QueueAge>
+    {
+        private final AbstractQueue<?> _queue;
+        private final long _oldestMessageArrivalTime;
+
+        private QueueAge(final AbstractQueue<?> queue)
+        {
+            _queue = queue;
+            _oldestMessageArrivalTime = queue.getOldestMessageArrivalTime();
+        }
+
+        @Override
+        public int compareTo(final QueueAge other)
+        {
+            return _oldestMessageArrivalTime < other._oldestMessageArrivalTime
+                    ? -1
+                    : (_oldestMessageArrivalTime == other._oldestMessageArrivalTime ? 0 : 1);
+        }
+    }
+}
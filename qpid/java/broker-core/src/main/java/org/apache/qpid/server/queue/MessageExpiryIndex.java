@@ -0,0 +1,155 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentNavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+import org.apache.qpid.server.message.ServerMessage;
+
+/**
+ * Indexes the entries of a queue whose messages have an expiration time, so that the entries due to expire can be
+ * found without walking the whole queue.
+ *
+ * Entries are held in buckets each covering a fixed span of expiration times, ordered by time. Finding the entries
+ * due at a given time visits only the buckets whose span has started, so costs in proportion to the number of
+ * entries due rather than the depth of the queue.
+ */
+final class MessageExpiryIndex
+{
+    private final long _granularity;
+    private final ConcurrentSkipListMap<Long, Bucket> _buckets = new ConcurrentSkipListMap<Long, Bucket>();
+
+    MessageExpiryIndex(final long granularity)
+    {
+        _granularity = granularity;
+    }
+
+    /**
+     * Adds the entry to the index, if its message has an expiration time.
+     */
+    void add(final QueueEntry entry)
+    {
+        final long expiration = getExpiration(entry);
+        if(expiration != 0L)
+        {
+            final Long key = expiration / _granularity;
+            while(true)
+            {
+                Bucket bucket = _buckets.get(key);
+                if(bucket == null)
+                {
+                    bucket = new Bucket();
+                    final Bucket existing = _buckets.putIfAbsent(key, bucket);
+                    if(existing != null)
+                    {
+                        bucket = existing;
+                    }
+                }
+                bucket._entries.add(entry);
+
+                // if the bucket was taken from the index before the entry was added, and the entry has not been
+                // seen by the thread which took it, then add the entry to a new bucket instead
+                if(!bucket._taken || !bucket._entries.remove(entry))
+                {
+                    return;
+                }
+                _buckets.remove(key, bucket);
+            }
+        }
+    }
+
+    /**
+     * Removes the entry from the index, for instance once it has been dequeued.
+     */
+    void remove(final QueueEntry entry)
+    {
+        final long expiration = getExpiration(entry);
+        if(expiration != 0L)
+        {
+            final Bucket bucket = _buckets.get(expiration / _granularity);
+            if(bucket != null)
+            {
+                bucket._entries.remove(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes from the index all of the entries which are, or may be, due to expire at the given time and passes
+     * each to the visitor. Entries which are not yet due, or which the visitor could not expire, should be added to
+     * the index again.
+     */
+    void removeDue(final long currentTime, final QueueEntryVisitor visitor)
+    {
+        // take all of the due buckets before visiting any entry, so that entries added again by the visitor are
+        // left for the next call
+        final ConcurrentNavigableMap<Long, Bucket> due = _buckets.headMap(currentTime / _granularity, true);
+        final List<Bucket> taken = new ArrayList<Bucket>();
+        Map.Entry<Long, Bucket> first;
+        while((first = due.pollFirstEntry()) != null)
+        {
+            final Bucket bucket = first.getValue();
+            bucket._taken = true;
+            taken.add(bucket);
+        }
+
+        for(Bucket bucket : taken)
+        {
+            for(QueueEntry entry : bucket._entries)
+            {
+                if(bucket._entries.remove(entry))
+                {
+                    visitor.visit(entry);
+                }
+            }
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return _buckets.isEmpty();
+    }
+
+    void clear()
+    {
+        _buckets.clear();
+    }
+
+    private static long getExpiration(final QueueEntry entry)
+    {
+        final ServerMessage message = entry.getMessage();
+        return message == null ? 0L : message.getExpiration();
+    }
+
+    private static final class Bucket
+    {
+        private final Set<QueueEntry> _entries =
+                Collections.newSetFromMap(new ConcurrentHashMap<QueueEntry, Boolean>());
+        private volatile boolean _taken;
+    }
+}
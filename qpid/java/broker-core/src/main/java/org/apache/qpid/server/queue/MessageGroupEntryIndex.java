@@ -0,0 +1,107 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+
+/**
+ * Holds the entries on a queue belonging to each message group, in queue order, so that the earliest available
+ * entry of a group can be found without walking the queue.
+ *
+ * Entries are removed once acquired by a consumer of their group, and added again if released. Entries acquired or
+ * deleted by other means are discarded when next encountered by {@link #getEarliestAvailableEntry(Object)}, so the
+ * entries at the head of a group are available ones, however many unacknowledged entries the group has.
+ */
+final class MessageGroupEntryIndex
+{
+    private final ConcurrentHashMap<Object, ConcurrentSkipListSet<QueueEntry>> _groupEntries =
+            new ConcurrentHashMap<Object, ConcurrentSkipListSet<QueueEntry>>();
+
+    void add(final Object group, final QueueEntry entry)
+    {
+        while(true)
+        {
+            ConcurrentSkipListSet<QueueEntry> entries = _groupEntries.get(group);
+            if(entries == null)
+            {
+                entries = new ConcurrentSkipListSet<QueueEntry>();
+                final ConcurrentSkipListSet<QueueEntry> existing = _groupEntries.putIfAbsent(group, entries);
+                if(existing != null)
+                {
+                    entries = existing;
+                }
+            }
+            entries.add(entry);
+
+            // the set may have been found empty and discarded by remove() before the entry was added
+            if(_groupEntries.get(group) == entries)
+            {
+                return;
+            }
+            entries.remove(entry);
+        }
+    }
+
+    void remove(final Object group, final QueueEntry entry)
+    {
+        final ConcurrentSkipListSet<QueueEntry> entries = _groupEntries.get(group);
+        if(entries != null && entries.remove(entry) && entries.isEmpty() && _groupEntries.remove(group, entries))
+        {
+            // entries added to the set after it was found empty must be kept
+            for(QueueEntry added : entries)
+            {
+                add(group, added);
+            }
+        }
+    }
+
+    /**
+     * Removes an entry which has been acquired, unless it has already been released again.
+     */
+    void removeAcquired(final Object group, final QueueEntry entry)
+    {
+        remove(group, entry);
+
+        // a release made before the removal may have found the entry still indexed, and so not added it again
+        if(entry.isAvailable())
+        {
+            add(group, entry);
+        }
+    }
+
+    QueueEntry getEarliestAvailableEntry(final Object group)
+    {
+        final ConcurrentSkipListSet<QueueEntry> entries = _groupEntries.get(group);
+        if(entries != null)
+        {
+            for(QueueEntry entry : entries)
+            {
+                if(entry.isAvailable())
+                {
+                    return entry;
+                }
+                removeAcquired(group, entry);
+            }
+        }
+        return null;
+    }
+}
@@ -36,4 +36,10 @@ public interface MessageGroupManager
     QueueEntry findEarliestAssignedAvailableEntry(QueueConsumer<?> sub);
 
     void clearAssignments(QueueConsumer<?> sub);
+
+    void entryEnqueued(QueueEntry entry);
+
+    void entryRequeued(QueueEntry entry);
+
+    void entryDequeued(QueueEntry entry);
 }
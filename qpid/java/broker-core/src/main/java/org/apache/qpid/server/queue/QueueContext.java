@@ -23,10 +23,13 @@ package org.apache.qpid.server.queue;
 
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
+import org.apache.qpid.filter.EqualityCondition;
+
 final class QueueContext
 {
     private volatile QueueEntry _lastSeenEntry;
     private volatile QueueEntry _releasedEntry;
+    private final EqualityCondition _condition;
 
     static final AtomicReferenceFieldUpdater<QueueContext, QueueEntry>
             _lastSeenUpdater =
@@ -38,8 +41,14 @@ final class QueueContext
         (QueueContext.class, QueueEntry.class, "_releasedEntry");
 
     public QueueContext(QueueEntry head)
+    {
+        this(head, null);
+    }
+
+    QueueContext(QueueEntry head, EqualityCondition condition)
     {
         _lastSeenEntry = head;
+        _condition = condition;
     }
 
     public QueueEntry getLastSeenEntry()
@@ -53,6 +62,15 @@ final class QueueContext
         return _releasedEntry;
     }
 
+    /**
+     * @return the condition met by every entry of interest to the consumer, by which the entries it need consider
+     * are looked up in the queue's {@link ConsumerSelectorIndex}, or null if the consumer considers every entry
+     */
+    EqualityCondition getCondition()
+    {
+        return _condition;
+    }
+
     @Override
     public String toString()
     {
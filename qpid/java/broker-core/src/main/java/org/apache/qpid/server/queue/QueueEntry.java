@@ -35,5 +35,19 @@ public interface QueueEntry extends MessageInstance, Comparable<QueueEntry>
 
     QueueEntry getNextValidEntry();
 
+    /**
+     * Marks the entry as one whose message content has been flowed to disk by its queue.
+     *
+     * @return true if the entry was not already marked
+     */
+    boolean setFlowedToDisk();
+
+    /**
+     * Clears the mark set by {@link #setFlowedToDisk()}, once the content is expected to be back in memory or the entry
+     * has left the queue.
+     *
+     * @return true if the entry was marked
+     */
+    boolean clearFlowedToDisk();
 
 }
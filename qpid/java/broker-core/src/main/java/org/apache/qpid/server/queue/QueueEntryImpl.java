@@ -88,6 +88,13 @@ public abstract class QueueEntryImpl implements QueueEntry
                     .newUpdater(QueueEntryImpl.class, "_deliveryCount");
     private boolean _deliveredToConsumer;
 
+    private volatile int _flowedToDisk;
+    private static final AtomicIntegerFieldUpdater<QueueEntryImpl> _flowedToDiskUpdater = AtomicIntegerFieldUpdater
+                    .newUpdater(QueueEntryImpl.class, "_flowedToDisk");
+
+    /** Shared by the consumers evaluating their filters against this entry, so that headers are fetched only once */
+    private volatile Filterable _filterable;
+
 
     public QueueEntryImpl(QueueEntryList queueEntryList)
     {
@@ -152,6 +159,16 @@ public abstract class QueueEntryImpl implements QueueEntry
         return getMessage() == null ? 0 : getMessage().getSize();
     }
 
+    public boolean setFlowedToDisk()
+    {
+        return _flowedToDiskUpdater.compareAndSet(this, 0, 1);
+    }
+
+    public boolean clearFlowedToDisk()
+    {
+        return _flowedToDisk != 0 && _flowedToDiskUpdater.compareAndSet(this, 1, 0);
+    }
+
     public boolean getDeliveredToConsumer()
     {
         return _deliveredToConsumer;
@@ -481,7 +498,13 @@ public abstract class QueueEntryImpl implements QueueEntry
     @Override
     public Filterable asFilterable()
     {
-        return Filterable.Factory.newInstance(getMessage(), getInstanceProperties());
+        Filterable filterable = _filterable;
+        if(filterable == null)
+        {
+            filterable = Filterable.Factory.newInstance(getMessage(), getInstanceProperties());
+            _filterable = filterable;
+        }
+        return filterable;
     }
 
     public String toString()
@@ -21,20 +21,12 @@ package org.apache.qpid.server.queue;
 
 import java.util.Map;
 
-import org.apache.qpid.server.message.MessageInstance;
-import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.ManagedAttributeField;
 import org.apache.qpid.server.model.ManagedObjectFactoryConstructor;
-import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 
 public class SortedQueueImpl extends OutOfOrderQueue<SortedQueueImpl> implements SortedQueue<SortedQueueImpl>
 {
-    //Lock object to synchronize enqueue. Used instead of the object
-    //monitor to prevent lock order issues with consumer sendLocks
-    //and consumer updates in the super classes
-    private final Object _sortedQueueLock = new Object();
-
     @ManagedAttributeField
     private String _sortKey;
     private SortedQueueEntryList _entries;
@@ -52,16 +44,6 @@ public class SortedQueueImpl extends OutOfOrderQueue<SortedQueueImpl> implements
         _entries = new SortedQueueEntryList(this);
     }
 
-    @Override
-    public void enqueue(final ServerMessage message,
-                        final Action<? super MessageInstance> action)
-    {
-        synchronized (_sortedQueueLock)
-        {
-            super.enqueue(message, action);
-        }
-    }
-
     @Override
     SortedQueueEntryList getEntries()
     {
@@ -63,6 +63,7 @@ import org.apache.qpid.server.security.access.Operation;
 import org.apache.qpid.server.security.access.OperationLoggingDetails;
 import org.apache.qpid.server.security.auth.AuthenticatedPrincipal;
 import org.apache.qpid.server.security.auth.TaskPrincipal;
+import org.apache.qpid.server.util.BoundedCache;
 
 public class SecurityManager implements ConfigurationChangeListener
 {
@@ -75,7 +76,11 @@ public class SecurityManager implements ConfigurationChangeListener
     private final boolean _managementMode;
     private final Broker<?> _broker;
 
-    private final ConcurrentHashMap<PublishAccessCheckCacheEntry, PublishAccessCheck> _publishAccessCheckCache = new ConcurrentHashMap<SecurityManager.PublishAccessCheckCacheEntry, SecurityManager.PublishAccessCheck>();
+    /** The number of publish access checks retained, one per distinct exchange, routing key and virtual host */
+    private static final int PUBLISH_ACCESS_CHECK_CACHE_SIZE = 4096;
+
+    private final BoundedCache<PublishAccessCheckCacheEntry, PublishAccessCheck> _publishAccessCheckCache =
+            new BoundedCache<PublishAccessCheckCacheEntry, PublishAccessCheck>(PUBLISH_ACCESS_CHECK_CACHE_SIZE);
 
     public SecurityManager(Broker<?> broker, boolean managementMode)
     {
@@ -401,7 +406,7 @@ public class SecurityManager implements ConfigurationChangeListener
         if (check == null)
         {
             check = new PublishAccessCheck(new ObjectProperties(virtualHostName, exchangeName, routingKey, immediate));
-            _publishAccessCheckCache.putIfAbsent(key, check);
+            _publishAccessCheckCache.put(key, check);
         }
         if(!checkAllPlugins(check))
         {
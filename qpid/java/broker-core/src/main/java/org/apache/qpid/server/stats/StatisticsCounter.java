@@ -27,6 +27,12 @@ import java.util.concurrent.atomic.AtomicLong;
 /**
  * This class collects statistics and counts the total, rate per second and
  * peak rate per second values for the events that are registered with it. 
+ *
+ * Registering an event does not take a lock, as the same counters are shared by
+ * all of the connections of a virtual host and of the broker. The total is kept
+ * in a {@link StripedCounter}; the rate is the amount registered during the last
+ * completed sample period, and is computed by whichever thread first registers
+ * an event or reads the rate once a new sample period has started.
  */
 public class StatisticsCounter
 {
@@ -37,13 +43,13 @@ public class StatisticsCounter
     private static final String COUNTER = "counter";
     private static final AtomicLong _counterIds = new AtomicLong(0L);
     
-    private long _peak = 0L;
-    private long _total = 0L;
-    private long _temp = 0L;
-    private long _last = 0L;
-    private long _rate = 0L;
+    private final StripedCounter _total = new StripedCounter();
+    private final AtomicLong _sampleStartTotal = new AtomicLong();
+    private final AtomicLong _last = new AtomicLong();
+    private final AtomicLong _peak = new AtomicLong();
+    private volatile long _rate = 0L;
 
-    private long _start;
+    private volatile long _start;
     
     private final long _period;
     private final String _name;
@@ -78,21 +84,32 @@ public class StatisticsCounter
     public void registerEvent(long value, long timestamp)
     {
         long thisSample = (timestamp / _period);
-        synchronized (this)
+        long last = _last.get();
+        if (thisSample > last && _last.compareAndSet(last, thisSample))
+        {
+            completeSample();
+        }
+
+        if (value != 0L)
+        {
+            _total.add(value);
+        }
+    }
+
+    /**
+     * Records the amount registered since the previous sample was completed as
+     * the current rate, updating the peak if it has been exceeded.
+     */
+    private void completeSample()
+    {
+        long total = _total.sum();
+        long rate = Math.max(0L, total - _sampleStartTotal.getAndSet(total));
+        _rate = rate;
+
+        long peak;
+        while (rate > (peak = _peak.get()) && !_peak.compareAndSet(peak, rate))
         {
-            if (thisSample > _last)
-            {
-                _last = thisSample;
-                _rate = _temp;
-                _temp = 0L;
-                if (_rate > _peak)
-                {
-                    _peak = _rate;
-                }
-            }
-            
-            _total += value;
-            _temp += value;
+            // retry until the peak is at least this rate
         }
     }
     
@@ -111,17 +128,18 @@ public class StatisticsCounter
     public void reset()
     {
         _log.info("Resetting statistics for counter: " + _name);
-        _peak = 0L;
+        _peak.set(0L);
         _rate = 0L;
-        _total = 0L;
+        _total.reset();
+        _sampleStartTotal.set(0L);
         _start = System.currentTimeMillis();
-        _last = _start / _period;
+        _last.set(_start / _period);
     }
 
     public double getPeak()
     {
         update();
-        return (double) _peak / ((double) _period / 1000.0d);
+        return (double) _peak.get() / ((double) _period / 1000.0d);
     }
 
     public double getRate()
@@ -132,7 +150,7 @@ public class StatisticsCounter
 
     public long getTotal()
     {
-        return _total;
+        return _total.sum();
     }
 
     public long getStart()
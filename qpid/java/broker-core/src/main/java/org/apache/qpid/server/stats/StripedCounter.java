@@ -0,0 +1,102 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package org.apache.qpid.server.stats;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A sum which many threads may add to without contending with each other.
+ *
+ * Additions are made to a single value until two threads are first seen to collide, after which each thread adds
+ * to one of a number of stripes, chosen by its thread id, which are spaced a cache line apart. Reading the sum
+ * adds up all of the stripes, so is more expensive than adding to it, and is not an atomic snapshot when
+ * additions are made concurrently.
+ */
+public final class StripedCounter
+{
+    private static final int STRIPES = Math.min(64, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 2 - 1) * 2);
+
+    /** the number of longs between the stripes, so that each occupies a cache line of its own */
+    private static final int STRIPE_SPACING = 8;
+
+    private final AtomicLong _base = new AtomicLong();
+    private volatile AtomicLongArray _stripes;
+
+    public void add(long value)
+    {
+        AtomicLongArray stripes = _stripes;
+        if (stripes == null)
+        {
+            long base = _base.get();
+            if (_base.compareAndSet(base, base + value))
+            {
+                return;
+            }
+            stripes = createStripes();
+        }
+        stripes.getAndAdd(stripeIndex(), value);
+    }
+
+    public long sum()
+    {
+        long sum = _base.get();
+        AtomicLongArray stripes = _stripes;
+        if (stripes != null)
+        {
+            for (int i = 0; i < stripes.length(); i += STRIPE_SPACING)
+            {
+                sum += stripes.get(i);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Sets the sum to zero. Additions made concurrently may or may not survive the reset.
+     */
+    public void reset()
+    {
+        _base.set(0L);
+        AtomicLongArray stripes = _stripes;
+        if (stripes != null)
+        {
+            for (int i = 0; i < stripes.length(); i += STRIPE_SPACING)
+            {
+                stripes.set(i, 0L);
+            }
+        }
+    }
+
+    private synchronized AtomicLongArray createStripes()
+    {
+        if (_stripes == null)
+        {
+            _stripes = new AtomicLongArray(STRIPES * STRIPE_SPACING);
+        }
+        return _stripes;
+    }
+
+    private static int stripeIndex()
+    {
+        long id = Thread.currentThread().getId();
+        int hash = (int) (id ^ (id >>> 32)) * 0x9E3779B9;
+        return ((hash >>> 16) & (STRIPES - 1)) * STRIPE_SPACING;
+    }
+}
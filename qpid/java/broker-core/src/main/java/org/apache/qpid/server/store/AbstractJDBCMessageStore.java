@@ -41,7 +41,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -86,6 +88,9 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
 
     private static final int DEFAULT_CONFIG_VERSION = 0;
 
+    /** The greatest number of transactions the commit thread will commit together in one database transaction. */
+    private static final int MAX_GROUP_COMMIT_SIZE = 256;
+
     public static final Set<String> CONFIGURATION_STORE_TABLE_NAMES = new HashSet<String>(Arrays.asList(CONFIGURED_OBJECTS_TABLE_NAME, CONFIGURED_OBJECT_HIERARCHY_TABLE_NAME));
     public static final Set<String> MESSAGE_STORE_TABLE_NAMES = new HashSet<String>(Arrays.asList(DB_VERSION_TABLE_NAME,
                                                                                                   META_DATA_TABLE_NAME, MESSAGE_CONTENT_TABLE_NAME,
@@ -120,7 +125,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
     private static final String SELECT_FROM_META_DATA =
             "SELECT meta_data FROM " + META_DATA_TABLE_NAME + " WHERE message_id = ?";
     private static final String DELETE_FROM_META_DATA = "DELETE FROM " + META_DATA_TABLE_NAME + " WHERE message_id = ?";
-    private static final String SELECT_ALL_FROM_META_DATA = "SELECT message_id, meta_data FROM " + META_DATA_TABLE_NAME;
+    private static final String SELECT_ALL_MESSAGE_IDS_FROM_META_DATA = "SELECT message_id FROM " + META_DATA_TABLE_NAME;
 
     private static final String INSERT_INTO_XIDS =
             "INSERT INTO "+ XID_TABLE_NAME +" ( format, global_id, branch_id ) values (?, ?, ?)";
@@ -180,6 +185,8 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
     protected final EventManager _eventManager = new EventManager();
 
     private final AtomicBoolean _messageStoreOpen = new AtomicBoolean();
+    private volatile CommitThread _commitThread;
+    private volatile MessageContentCache _contentCache;
     private final AtomicBoolean _configurationStoreOpen = new AtomicBoolean();
 
     private boolean _initialized;
@@ -398,6 +405,11 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
                         return true;
                     }
                 });
+
+                _contentCache = MessageContentCache.createContentCache(messageStoreSettings);
+
+                _commitThread = new CommitThread("Commit-Thread-" + parent.getName());
+                _commitThread.start();
             }
             catch (SQLException e)
             {
@@ -917,6 +929,15 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
     {
         if (_messageStoreOpen.compareAndSet(true, false))
         {
+            if (_commitThread != null)
+            {
+                _commitThread.close();
+                _commitThread = null;
+            }
+            if (_contentCache != null)
+            {
+                _contentCache.clear();
+            }
             if (!_configurationStoreOpen.get())
             {
                 doClose();
@@ -1100,91 +1121,6 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         return new JDBCTransaction();
     }
 
-    private void enqueueMessage(ConnectionWrapper connWrapper, final TransactionLogResource queue, Long messageId) throws StoreException
-    {
-        Connection conn = connWrapper.getConnection();
-
-
-        try
-        {
-            if (getLogger().isDebugEnabled())
-            {
-                getLogger().debug("Enqueuing message "
-                                   + messageId
-                                   + " on queue "
-                                   + queue.getName()
-                                   + " with id " + queue.getId()
-                                   + " [Connection"
-                                   + conn
-                                   + "]");
-            }
-
-            PreparedStatement stmt = conn.prepareStatement(INSERT_INTO_QUEUE_ENTRY);
-            try
-            {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2,messageId);
-                stmt.executeUpdate();
-            }
-            finally
-            {
-                stmt.close();
-            }
-
-        }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to enqueue: " + e.getMessage(), e);
-            throw new StoreException("Error writing enqueued message with id " + messageId + " for queue " + queue.getName() + " with id " + queue.getId()
-                + " to database", e);
-        }
-
-    }
-
-    private void dequeueMessage(ConnectionWrapper connWrapper, final TransactionLogResource  queue, Long messageId) throws StoreException
-    {
-
-        Connection conn = connWrapper.getConnection();
-
-
-        try
-        {
-            PreparedStatement stmt = conn.prepareStatement(DELETE_FROM_QUEUE_ENTRY);
-            try
-            {
-                stmt.setString(1, queue.getId().toString());
-                stmt.setLong(2, messageId);
-                int results = stmt.executeUpdate();
-
-
-
-                if(results != 1)
-                {
-                    throw new StoreException("Unable to find message with id " + messageId + " on queue " + queue.getName()
-                           + " with id " + queue.getId());
-                }
-
-                if (getLogger().isDebugEnabled())
-                {
-                    getLogger().debug("Dequeuing message " + messageId + " on queue " + queue.getName()
-                                       + " with id " + queue.getId());
-                }
-            }
-            finally
-            {
-                stmt.close();
-            }
-
-        }
-        catch (SQLException e)
-        {
-            getLogger().error("Failed to dequeue: " + e.getMessage(), e);
-            throw new StoreException("Error deleting enqueued message with id " + messageId + " for queue " + queue.getName()
-                    + " with id " + queue.getId() + " from database", e);
-        }
-
-    }
-
     private void removeXid(ConnectionWrapper connWrapper, long format, byte[] globalId, byte[] branchId)
             throws StoreException
     {
@@ -1319,62 +1255,6 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
     }
 
 
-    private void commitTran(ConnectionWrapper connWrapper) throws StoreException
-    {
-
-        try
-        {
-            Connection conn = connWrapper.getConnection();
-            conn.commit();
-
-            if (getLogger().isDebugEnabled())
-            {
-                getLogger().debug("commit tran completed");
-            }
-
-            conn.close();
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error commit tx: " + e.getMessage(), e);
-        }
-        finally
-        {
-
-        }
-    }
-
-    private StoreFuture commitTranAsync(ConnectionWrapper connWrapper) throws StoreException
-    {
-        commitTran(connWrapper);
-        return StoreFuture.IMMEDIATE_FUTURE;
-    }
-
-    private void abortTran(ConnectionWrapper connWrapper) throws StoreException
-    {
-        if (connWrapper == null)
-        {
-            throw new StoreException("Fatal internal error: transactional context is empty at abortTran");
-        }
-
-        if (getLogger().isDebugEnabled())
-        {
-            getLogger().debug("abort tran called: " + connWrapper.getConnection());
-        }
-
-        try
-        {
-            Connection conn = connWrapper.getConnection();
-            conn.rollback();
-            conn.close();
-        }
-        catch (SQLException e)
-        {
-            throw new StoreException("Error aborting transaction: " + e.getMessage(), e);
-        }
-
-    }
-
     private void storeMetaData(Connection conn, long messageId, StorableMessageMetaData metaData)
         throws SQLException
     {
@@ -1632,22 +1512,18 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
     }
 
 
+    /**
+     * A transaction against the message store. The enqueues, dequeues and xid changes of the transaction are recorded
+     * rather than applied as they are made, and are applied by the commit thread of the store, which commits the
+     * transactions waiting for it together in a single database transaction.
+     */
     protected class JDBCTransaction implements Transaction
     {
-        private final ConnectionWrapper _connWrapper;
+        private final List<TransactionOperation> _operations = new ArrayList<TransactionOperation>();
         private int _storeSizeIncrease;
 
-
         protected JDBCTransaction()
         {
-            try
-            {
-                _connWrapper = new ConnectionWrapper(newConnection());
-            }
-            catch (SQLException e)
-            {
-                throw new StoreException(e);
-            }
         }
 
         @Override
@@ -1656,20 +1532,12 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             checkMessageStoreOpen();
 
             final StoredMessage storedMessage = message.getStoredMessage();
-            if(storedMessage instanceof StoredJDBCMessage)
-            {
-                try
-                {
-                    ((StoredJDBCMessage) storedMessage).store(_connWrapper.getConnection());
-                }
-                catch (SQLException e)
-                {
-                    throw new StoreException("Exception on enqueuing message into message store" + _messageId, e);
-                }
-            }
             _storeSizeIncrease += storedMessage.getMetaData().getContentSize();
-            AbstractJDBCMessageStore.this.enqueueMessage(_connWrapper, queue, message.getMessageNumber());
-
+            _operations.add(new EnqueueOperation(queue,
+                                                 message.getMessageNumber(),
+                                                 storedMessage instanceof StoredJDBCMessage
+                                                         ? (StoredJDBCMessage) storedMessage
+                                                         : null));
         }
 
         @Override
@@ -1677,7 +1545,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.dequeueMessage(_connWrapper, queue, message.getMessageNumber());
+            _operations.add(new DequeueOperation(queue, message.getMessageNumber()));
         }
 
         @Override
@@ -1685,7 +1553,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.commitTran(_connWrapper);
+            commit().waitForCompletion();
             storedSizeChange(_storeSizeIncrease);
         }
 
@@ -1694,37 +1562,501 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         {
             checkMessageStoreOpen();
 
-            StoreFuture storeFuture = AbstractJDBCMessageStore.this.commitTranAsync(_connWrapper);
+            StoreFuture storeFuture = commit();
             storedSizeChange(_storeSizeIncrease);
             return storeFuture;
         }
 
+        private StoreFuture commit()
+        {
+            if(_operations.isEmpty())
+            {
+                return StoreFuture.IMMEDIATE_FUTURE;
+            }
+            return _commitThread.commit(this);
+        }
+
         @Override
         public void abortTran()
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.abortTran(_connWrapper);
+            if (getLogger().isDebugEnabled())
+            {
+                getLogger().debug("abort tran called, discarding " + _operations.size() + " operation(s)");
+            }
+            _operations.clear();
         }
 
         @Override
-        public void removeXid(long format, byte[] globalId, byte[] branchId)
+        public void removeXid(final long format, final byte[] globalId, final byte[] branchId)
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.removeXid(_connWrapper, format, globalId, branchId);
+            _operations.add(new TransactionOperation()
+            {
+                @Override
+                public void execute(final GroupCommit group) throws SQLException
+                {
+                    group.executeBatches();
+                    AbstractJDBCMessageStore.this.removeXid(group.getConnectionWrapper(), format, globalId, branchId);
+                }
+            });
         }
 
         @Override
-        public void recordXid(long format, byte[] globalId, byte[] branchId, Record[] enqueues, Record[] dequeues)
+        public void recordXid(final long format,
+                              final byte[] globalId,
+                              final byte[] branchId,
+                              final Record[] enqueues,
+                              final Record[] dequeues)
         {
             checkMessageStoreOpen();
 
-            AbstractJDBCMessageStore.this.recordXid(_connWrapper, format, globalId, branchId, enqueues, dequeues);
+            _operations.add(new TransactionOperation()
+            {
+                @Override
+                public void execute(final GroupCommit group) throws SQLException
+                {
+                    group.executeBatches();
+                    AbstractJDBCMessageStore.this.recordXid(group.getConnectionWrapper(),
+                                                            format, globalId, branchId, enqueues, dequeues);
+                }
+            });
+        }
+
+        private void execute(final GroupCommit group) throws SQLException
+        {
+            for(TransactionOperation operation : _operations)
+            {
+                operation.execute(group);
+            }
         }
     }
 
-    private class StoredJDBCMessage implements StoredMessage
+    private interface TransactionOperation
+    {
+        void execute(GroupCommit group) throws SQLException;
+    }
+
+    private static final class EnqueueOperation implements TransactionOperation
+    {
+        private final TransactionLogResource _queue;
+        private final long _messageId;
+        private final StoredJDBCMessage _message;
+
+        private EnqueueOperation(final TransactionLogResource queue, final long messageId, final StoredJDBCMessage message)
+        {
+            _queue = queue;
+            _messageId = messageId;
+            _message = message;
+        }
+
+        @Override
+        public void execute(final GroupCommit group) throws SQLException
+        {
+            if(_message != null)
+            {
+                group.store(_message);
+            }
+            group.enqueue(this);
+        }
+    }
+
+    private static final class DequeueOperation implements TransactionOperation
+    {
+        private final TransactionLogResource _queue;
+        private final long _messageId;
+
+        private DequeueOperation(final TransactionLogResource queue, final long messageId)
+        {
+            _queue = queue;
+            _messageId = messageId;
+        }
+
+        @Override
+        public void execute(final GroupCommit group) throws SQLException
+        {
+            group.dequeue(this);
+        }
+    }
+
+    /**
+     * The database transaction in which the commit thread applies a group of {@link JDBCTransaction}s. The operations
+     * of the transactions are applied in order, with each run of consecutive enqueues, or of consecutive dequeues,
+     * sent to the database as a single batch.
+     */
+    private final class GroupCommit
+    {
+        private final ConnectionWrapper _connWrapper;
+        private final List<EnqueueOperation> _batchedEnqueues = new ArrayList<EnqueueOperation>();
+        private final List<DequeueOperation> _batchedDequeues = new ArrayList<DequeueOperation>();
+        private final List<StoredJDBCMessage> _storedMessages = new ArrayList<StoredJDBCMessage>();
+        private PreparedStatement _insertStatement;
+        private PreparedStatement _deleteStatement;
+        private boolean _committed;
+
+        private GroupCommit(final Connection conn)
+        {
+            _connWrapper = new ConnectionWrapper(conn);
+        }
+
+        private ConnectionWrapper getConnectionWrapper()
+        {
+            return _connWrapper;
+        }
+
+        private void store(final StoredJDBCMessage message) throws SQLException
+        {
+            if(message.store(_connWrapper.getConnection()))
+            {
+                _storedMessages.add(message);
+            }
+        }
+
+        private void enqueue(final EnqueueOperation enqueue) throws SQLException
+        {
+            executeDequeues();
+
+            if (getLogger().isDebugEnabled())
+            {
+                getLogger().debug("Enqueuing message "
+                                  + enqueue._messageId
+                                  + " on queue "
+                                  + enqueue._queue.getName()
+                                  + " with id " + enqueue._queue.getId()
+                                  + " [Connection"
+                                  + _connWrapper.getConnection()
+                                  + "]");
+            }
+
+            if(_insertStatement == null)
+            {
+                _insertStatement = _connWrapper.getConnection().prepareStatement(INSERT_INTO_QUEUE_ENTRY);
+            }
+            _insertStatement.setString(1, enqueue._queue.getId().toString());
+            _insertStatement.setLong(2, enqueue._messageId);
+            _insertStatement.addBatch();
+            _batchedEnqueues.add(enqueue);
+        }
+
+        private void dequeue(final DequeueOperation dequeue) throws SQLException
+        {
+            executeEnqueues();
+
+            if(_deleteStatement == null)
+            {
+                _deleteStatement = _connWrapper.getConnection().prepareStatement(DELETE_FROM_QUEUE_ENTRY);
+            }
+            _deleteStatement.setString(1, dequeue._queue.getId().toString());
+            _deleteStatement.setLong(2, dequeue._messageId);
+            _deleteStatement.addBatch();
+            _batchedDequeues.add(dequeue);
+        }
+
+        private void executeBatches() throws SQLException
+        {
+            executeEnqueues();
+            executeDequeues();
+        }
+
+        private void executeEnqueues() throws SQLException
+        {
+            if(!_batchedEnqueues.isEmpty())
+            {
+                _insertStatement.executeBatch();
+                _batchedEnqueues.clear();
+            }
+        }
+
+        private void executeDequeues() throws SQLException
+        {
+            if(!_batchedDequeues.isEmpty())
+            {
+                int[] results = _deleteStatement.executeBatch();
+                for(int i = 0; i < results.length; i++)
+                {
+                    DequeueOperation dequeue = _batchedDequeues.get(i);
+                    if(results[i] != 1 && results[i] != Statement.SUCCESS_NO_INFO)
+                    {
+                        throw new StoreException("Unable to find message with id " + dequeue._messageId
+                                                 + " on queue " + dequeue._queue.getName()
+                                                 + " with id " + dequeue._queue.getId());
+                    }
+
+                    if (getLogger().isDebugEnabled())
+                    {
+                        getLogger().debug("Dequeuing message " + dequeue._messageId
+                                          + " on queue " + dequeue._queue.getName()
+                                          + " with id " + dequeue._queue.getId());
+                    }
+                }
+                _batchedDequeues.clear();
+            }
+        }
+
+        private void commit() throws SQLException
+        {
+            executeBatches();
+            _connWrapper.getConnection().commit();
+            _committed = true;
+
+            for(StoredJDBCMessage message : _storedMessages)
+            {
+                message.storeCommitted();
+            }
+        }
+
+        private void close()
+        {
+            closePreparedStatement(_insertStatement);
+            closePreparedStatement(_deleteStatement);
+            if(!_committed)
+            {
+                try
+                {
+                    _connWrapper.getConnection().rollback();
+                }
+                catch (SQLException e)
+                {
+                    getLogger().error("Problem rolling back transaction", e);
+                }
+
+                for(StoredJDBCMessage message : _storedMessages)
+                {
+                    message.storeRolledBack();
+                }
+            }
+            closeConnection(_connWrapper.getConnection());
+        }
+    }
+
+    private static final class JDBCCommitFuture implements StoreFuture
+    {
+        private final JDBCTransaction _transaction;
+        private boolean _complete;
+        private RuntimeException _exception;
+
+        private JDBCCommitFuture(final JDBCTransaction transaction)
+        {
+            _transaction = transaction;
+        }
+
+        private synchronized void complete()
+        {
+            _complete = true;
+            notifyAll();
+        }
+
+        private synchronized void abort(final RuntimeException exception)
+        {
+            _complete = true;
+            _exception = exception;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean isComplete()
+        {
+            return _complete;
+        }
+
+        @Override
+        public synchronized void waitForCompletion()
+        {
+            while(!_complete)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new StoreException("Interrupted whilst waiting for transaction to commit", e);
+                }
+            }
+
+            if(_exception != null)
+            {
+                throw _exception;
+            }
+        }
+    }
+
+    /**
+     * Commits the transactions of the store. Transactions committed while the thread is busy wait for it, and are
+     * then committed together in a single database transaction, completing their futures once it commits.
+     */
+    private final class CommitThread extends Thread
+    {
+        private final AtomicBoolean _stopped = new AtomicBoolean(false);
+        private final Queue<JDBCCommitFuture> _jobQueue = new ConcurrentLinkedQueue<JDBCCommitFuture>();
+        private final Object _lock = new Object();
+
+        private CommitThread(final String name)
+        {
+            super(name);
+        }
+
+        private StoreFuture commit(final JDBCTransaction transaction)
+        {
+            JDBCCommitFuture future = new JDBCCommitFuture(transaction);
+            synchronized (_lock)
+            {
+                if (_stopped.get())
+                {
+                    throw new IllegalStateException("Commit thread is stopped");
+                }
+                _jobQueue.add(future);
+                _lock.notifyAll();
+            }
+            return future;
+        }
+
+        @Override
+        public void run()
+        {
+            while (!_stopped.get())
+            {
+                synchronized (_lock)
+                {
+                    while (!_stopped.get() && _jobQueue.isEmpty())
+                    {
+                        try
+                        {
+                            _lock.wait(1000);
+                        }
+                        catch (InterruptedException e)
+                        {
+                        }
+                    }
+                }
+                processJobs();
+            }
+        }
+
+        private void processJobs()
+        {
+            List<JDBCCommitFuture> group = new ArrayList<JDBCCommitFuture>();
+            JDBCCommitFuture job;
+            while(group.size() < MAX_GROUP_COMMIT_SIZE && (job = _jobQueue.poll()) != null)
+            {
+                group.add(job);
+            }
+
+            if(group.isEmpty())
+            {
+                return;
+            }
+
+            RuntimeException failure = commit(group);
+            if(failure != null)
+            {
+                if(group.size() == 1)
+                {
+                    abort(group, failure);
+                }
+                else
+                {
+                    // the group has been rolled back: commit its transactions one at a time so that only those
+                    // which fail by themselves are aborted
+                    getLogger().warn("Failed to commit group of " + group.size()
+                                     + " transaction(s), committing them individually", failure);
+                    for(JDBCCommitFuture commit : group)
+                    {
+                        List<JDBCCommitFuture> single = Collections.singletonList(commit);
+                        RuntimeException e = commit(single);
+                        if(e != null)
+                        {
+                            abort(single, e);
+                        }
+                    }
+                }
+            }
+        }
+
+        /**
+         * Applies the given transactions in a single database transaction, completing their futures if it commits.
+         *
+         * @return null if the transactions were committed, otherwise the reason they were not, in which case the
+         *         database transaction has been rolled back
+         */
+        private RuntimeException commit(final List<JDBCCommitFuture> group)
+        {
+            GroupCommit groupCommit = null;
+            try
+            {
+                groupCommit = new GroupCommit(newConnection());
+                for(JDBCCommitFuture commit : group)
+                {
+                    commit._transaction.execute(groupCommit);
+                }
+                groupCommit.commit();
+
+                if (getLogger().isDebugEnabled())
+                {
+                    getLogger().debug("commit tran completed for group of " + group.size() + " transaction(s)");
+                }
+
+                for(JDBCCommitFuture commit : group)
+                {
+                    commit.complete();
+                }
+                return null;
+            }
+            catch (SQLException e)
+            {
+                return new StoreException("Error commit tx: " + e.getMessage(), e);
+            }
+            catch (RuntimeException e)
+            {
+                return e;
+            }
+            finally
+            {
+                if(groupCommit != null)
+                {
+                    groupCommit.close();
+                }
+            }
+        }
+
+        private void abort(final List<JDBCCommitFuture> group, final RuntimeException e)
+        {
+            getLogger().error("Failed to commit group of " + group.size() + " transaction(s)", e);
+            for(JDBCCommitFuture commit : group)
+            {
+                commit.abort(e);
+            }
+        }
+
+        private void close()
+        {
+            RuntimeException e = new StoreException("Commit thread has been closed, transaction aborted");
+            synchronized (_lock)
+            {
+                _stopped.set(true);
+                JDBCCommitFuture commit;
+                while ((commit = _jobQueue.poll()) != null)
+                {
+                    commit.abort(e);
+                }
+                _lock.notifyAll();
+            }
+            try
+            {
+                join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Commit thread has not shutdown", ie);
+            }
+        }
+    }
+
+    private class StoredJDBCMessage implements FlowableStoredMessage, MessageContentCache.ContentLoader
     {
 
         private final long _messageId;
@@ -1734,6 +2066,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
         private byte[] _data;
         private volatile SoftReference<byte[]> _dataRef;
+        private boolean _storePending;
 
 
         StoredJDBCMessage(long messageId, StorableMessageMetaData metaData)
@@ -1818,7 +2151,10 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             else
             {
                 checkMessageStoreOpen();
-                return AbstractJDBCMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+
+                MessageContentCache contentCache = _contentCache;
+                int length = contentCache == null ? -1 : contentCache.getContent(_messageId, this, offsetInMessage, dst);
+                return length == -1 ? loadContent(offsetInMessage, dst) : length;
             }
         }
 
@@ -1826,6 +2162,15 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
         @Override
         public ByteBuffer getContent(int offsetInMessage, int size)
         {
+            byte[] data = _dataRef == null ? null : _dataRef.get();
+            MessageContentCache contentCache = _contentCache;
+            ByteBuffer content;
+            if(data == null && contentCache != null
+               && (content = contentCache.getContent(_messageId, this, offsetInMessage, size)) != null)
+            {
+                return content;
+            }
+
             ByteBuffer buf = ByteBuffer.allocate(size);
             int length = getContent(offsetInMessage, buf);
             buf.position(0);
@@ -1841,6 +2186,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             Connection conn = null;
             try
             {
+                waitForPendingStore();
                 if(!stored())
                 {
                     conn = newConnection();
@@ -1848,6 +2194,7 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
                     store(conn);
 
                     conn.commit();
+                    storeCommitted();
                     storedSizeChange(getMetaData().getContentSize());
                 }
             }
@@ -1861,11 +2208,28 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             }
             finally
             {
+                if(_storePending)
+                {
+                    storeRolledBack();
+                }
                 closeConnection(conn);
             }
             return StoreFuture.IMMEDIATE_FUTURE;
         }
 
+        @Override
+        public synchronized int flowToDisk(final SpillFile spillFile)
+        {
+            if(!stored())
+            {
+                flushToStore();
+            }
+
+            byte[] data = _dataRef == null ? null : _dataRef.get();
+            _dataRef = null;
+            return data == null ? 0 : data.length;
+        }
+
         @Override
         public void remove()
         {
@@ -1874,27 +2238,86 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             int delta = getMetaData().getContentSize();
             AbstractJDBCMessageStore.this.removeMessage(_messageId);
             storedSizeChange(-delta);
+
+            MessageContentCache contentCache = _contentCache;
+            if(contentCache != null)
+            {
+                contentCache.remove(_messageId);
+            }
         }
 
-        private synchronized void store(final Connection conn) throws SQLException
+        @Override
+        public int getContentSize()
         {
-            if (!stored())
+            checkMessageStoreOpen();
+            return getMetaData().getContentSize();
+        }
+
+        @Override
+        public int loadContent(final int offsetInMessage, final ByteBuffer dst)
+        {
+            return AbstractJDBCMessageStore.this.getContent(_messageId, offsetInMessage, dst);
+        }
+
+        /**
+         * Writes the message to the store within the given database transaction. The message is not treated as stored
+         * until {@link #storeCommitted()} is called once the database transaction commits.
+         *
+         * @return true if the message was written, false if it was already stored or awaiting a commit
+         */
+        private synchronized boolean store(final Connection conn) throws SQLException
+        {
+            if (stored() || _storePending)
+            {
+                return false;
+            }
+
+            storeMetaData(conn, _messageId, _metaData);
+            AbstractJDBCMessageStore.this.addContent(conn, _messageId,
+                                                     _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+            _storePending = true;
+
+            if(getLogger().isDebugEnabled())
+            {
+                getLogger().debug("Storing message " + _messageId + " to store");
+            }
+            return true;
+        }
+
+        private synchronized void storeCommitted()
+        {
+            MessageContentCache contentCache = _contentCache;
+            if(_data != null && contentCache != null && contentCache.isCacheable(_data.length))
+            {
+                // large content is held off-heap once stored, rather than softly referenced
+                contentCache.put(_messageId, ByteBuffer.wrap(_data));
+                _dataRef = null;
+            }
+
+            _metaData = null;
+            _data = null;
+            _storePending = false;
+            notifyAll();
+        }
+
+        private synchronized void storeRolledBack()
+        {
+            _storePending = false;
+            notifyAll();
+        }
+
+        private synchronized void waitForPendingStore()
+        {
+            while(_storePending)
             {
                 try
                 {
-                    storeMetaData(conn, _messageId, _metaData);
-                    AbstractJDBCMessageStore.this.addContent(conn, _messageId,
-                                                      _data == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(_data));
+                    wait();
                 }
-                finally
+                catch (InterruptedException e)
                 {
-                    _metaData = null;
-                    _data = null;
-                }
-
-                if(getLogger().isDebugEnabled())
-                {
-                    getLogger().debug("Storing message " + _messageId + " to store");
+                    Thread.currentThread().interrupt();
+                    throw new StoreException("Interrupted whilst waiting for message " + _messageId + " to be stored", e);
                 }
             }
         }
@@ -2222,19 +2645,14 @@ abstract public class AbstractJDBCMessageStore implements MessageStore, DurableC
             Statement stmt = conn.createStatement();
             try
             {
-                ResultSet rs = stmt.executeQuery(SELECT_ALL_FROM_META_DATA);
+                // only the message ids are read, the meta-data of a recovered message is read when first needed
+                ResultSet rs = stmt.executeQuery(SELECT_ALL_MESSAGE_IDS_FROM_META_DATA);
                 try
                 {
                     while (rs.next())
                     {
                         long messageId = rs.getLong(1);
-                        byte[] dataAsBytes = getBlobAsBytes(rs, 2);
-                        ByteBuffer buf = ByteBuffer.wrap(dataAsBytes);
-                        buf.position(1);
-                        buf = buf.slice();
-                        MessageMetaDataType<?> type = MessageMetaDataTypeRegistry.fromOrdinal(dataAsBytes[0]);
-                        StorableMessageMetaData metaData = type.createMetaData(buf);
-                        StoredJDBCMessage message = new StoredJDBCMessage(messageId, metaData, true);
+                        StoredJDBCMessage message = new StoredJDBCMessage(messageId, null, true);
                         if (!handler.handle(message))
                         {
                             break;
@@ -0,0 +1,36 @@
+/*
+*
+* Licensed to the Apache Software Foundation (ASF) under one
+* or more contributor license agreements.  See the NOTICE file
+* distributed with this work for additional information
+* regarding copyright ownership.  The ASF licenses this file
+* to you under the Apache License, Version 2.0 (the
+* "License"); you may not use this file except in compliance
+* with the License.  You may obtain a copy of the License at
+*
+*   http://www.apache.org/licenses/LICENSE-2.0
+*
+* Unless required by applicable law or agreed to in writing,
+* software distributed under the License is distributed on an
+* "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+* KIND, either express or implied.  See the License for the
+* specific language governing permissions and limitations
+* under the License.
+*
+*/
+package org.apache.qpid.server.store;
+
+/**
+ * A stored message whose content can be released from memory while the message waits on a queue, to be read back
+ * from disk when it is next required.
+ */
+public interface FlowableStoredMessage<M extends StorableMessageMetaData> extends StoredMessage<M>
+{
+    /**
+     * Releases the content of the message from memory. The content is first written to the message store if it is
+     * not already stored, or to the given spill file if the message is not held by a message store at all.
+     *
+     * @return the number of bytes of content released, which is zero if the content was not held in memory
+     */
+    int flowToDisk(SpillFile spillFile);
+}
@@ -0,0 +1,243 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Holds the content of large stored messages in direct (off-heap) buffers, so that it can be read again without
+ * going back to the store and without occupying the heap.
+ *
+ * Only content of at least the threshold size is cached. The total size of the cached content is bounded, the least
+ * recently used content being evicted to make room. Evicted buffers are not freed explicitly: a reader may still hold
+ * a slice of one, so the memory is released once the buffer is no longer referenced. The maximum size should
+ * therefore be comfortably within the direct memory limit of the JVM.
+ */
+public final class MessageContentCache
+{
+    private final int _threshold;
+    private final long _maximumSize;
+    private final LinkedHashMap<Long, ByteBuffer> _content = new LinkedHashMap<Long, ByteBuffer>(16, 0.75f, true);
+    private long _size;
+
+    public MessageContentCache(final int threshold, final long maximumSize)
+    {
+        _threshold = threshold;
+        _maximumSize = maximumSize;
+    }
+
+    /**
+     * Creates a cache from the {@link MessageStore#CONTENT_CACHE_THRESHOLD} and
+     * {@link MessageStore#CONTENT_CACHE_SIZE} store settings.
+     *
+     * @return the cache, or null if the settings do not enable one
+     */
+    public static MessageContentCache createContentCache(final Map<String, Object> messageStoreSettings)
+    {
+        Object thresholdAttr = messageStoreSettings.get(MessageStore.CONTENT_CACHE_THRESHOLD);
+        Object sizeAttr = messageStoreSettings.get(MessageStore.CONTENT_CACHE_SIZE);
+        if(thresholdAttr == null || sizeAttr == null)
+        {
+            return null;
+        }
+
+        int threshold = thresholdAttr instanceof Number ? ((Number) thresholdAttr).intValue()
+                                                        : Integer.parseInt(thresholdAttr.toString());
+        long size = sizeAttr instanceof Number ? ((Number) sizeAttr).longValue() : Long.parseLong(sizeAttr.toString());
+        if(threshold <= 0 || size < threshold)
+        {
+            return null;
+        }
+        return new MessageContentCache(threshold, size);
+    }
+
+    /**
+     * @return true if content of the given size should be held in the cache
+     */
+    public boolean isCacheable(final int contentSize)
+    {
+        return contentSize >= _threshold && contentSize <= _maximumSize;
+    }
+
+    /**
+     * Adds the content of a message to the cache, evicting the least recently used content as necessary. The
+     * remaining bytes of the given buffer are copied into a direct buffer unless it already is one, in which case the
+     * cache takes ownership of it.
+     */
+    public void put(final long messageId, final ByteBuffer content)
+    {
+        ByteBuffer buffer = content.slice();
+        if(!buffer.isDirect())
+        {
+            buffer = ByteBuffer.allocateDirect(content.remaining());
+            buffer.put(content.duplicate());
+            buffer.flip();
+        }
+
+        synchronized (_content)
+        {
+            ByteBuffer previous = _content.put(messageId, buffer);
+            if(previous != null)
+            {
+                _size -= previous.capacity();
+            }
+            _size += buffer.capacity();
+
+            Iterator<ByteBuffer> iterator = _content.values().iterator();
+            while(_size > _maximumSize && iterator.hasNext())
+            {
+                _size -= iterator.next().capacity();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Reads content of a message from the cache, first loading all of the content of the message into the cache if
+     * it is large enough to be held there.
+     *
+     * @return the number of bytes read, or -1 if the content is not held in the cache
+     */
+    public int getContent(final long messageId,
+                          final ContentLoader loader,
+                          final int offsetInMessage,
+                          final ByteBuffer dst)
+    {
+        ByteBuffer content = getOrLoad(messageId, loader);
+        if(content == null)
+        {
+            return -1;
+        }
+        content.position(offsetInMessage);
+        int length = Math.min(dst.remaining(), content.remaining());
+        content.limit(offsetInMessage + length);
+        dst.put(content);
+        return length;
+    }
+
+    /**
+     * Returns a read-only slice of the content of a message from the cache, first loading all of the content of the
+     * message into the cache if it is large enough to be held there.
+     *
+     * @return the slice, or null if the content is not held in the cache
+     */
+    public ByteBuffer getContent(final long messageId,
+                                 final ContentLoader loader,
+                                 final int offsetInMessage,
+                                 final int size)
+    {
+        ByteBuffer content = getOrLoad(messageId, loader);
+        if(content == null)
+        {
+            return null;
+        }
+        content.position(offsetInMessage);
+        content.limit(Math.min(content.limit(), offsetInMessage + size));
+        return content.slice();
+    }
+
+    private ByteBuffer getOrLoad(final long messageId, final ContentLoader loader)
+    {
+        ByteBuffer content = get(messageId);
+        if(content == null)
+        {
+            int contentSize = loader.getContentSize();
+            if(isCacheable(contentSize))
+            {
+                content = ByteBuffer.allocateDirect(contentSize);
+                if(loader.loadContent(0, content) == contentSize)
+                {
+                    content.flip();
+                    put(messageId, content);
+                    content = content.asReadOnlyBuffer();
+                }
+                else
+                {
+                    content = null;
+                }
+            }
+        }
+        return content;
+    }
+
+    /**
+     * @return a read-only view of the cached content of the message, or null if it is not in the cache
+     */
+    public ByteBuffer get(final long messageId)
+    {
+        ByteBuffer content;
+        synchronized (_content)
+        {
+            content = _content.get(messageId);
+        }
+        return content == null ? null : content.asReadOnlyBuffer();
+    }
+
+    public void remove(final long messageId)
+    {
+        synchronized (_content)
+        {
+            ByteBuffer content = _content.remove(messageId);
+            if(content != null)
+            {
+                _size -= content.capacity();
+            }
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (_content)
+        {
+            _content.clear();
+            _size = 0l;
+        }
+    }
+
+    public long getSize()
+    {
+        synchronized (_content)
+        {
+            return _size;
+        }
+    }
+
+    /**
+     * Loads the content of a message from the store when it is not held in the cache.
+     */
+    public interface ContentLoader
+    {
+        /**
+         * @return the size of the content of the message
+         */
+        int getContentSize();
+
+        /**
+         * Reads content of the message from the store into the given buffer.
+         *
+         * @return the number of bytes read
+         */
+        int loadContent(int offsetInMessage, ByteBuffer dst);
+    }
+}
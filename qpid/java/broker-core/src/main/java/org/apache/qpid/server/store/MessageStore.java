@@ -37,6 +37,8 @@ public interface MessageStore
     String STORE_PATH                           = "storePath";
     String UNDERFULL_SIZE                       = "storeUnderfullSize";
     String OVERFULL_SIZE                        = "storeOverfullSize";
+    String CONTENT_CACHE_THRESHOLD              = "storeContentCacheThreshold";
+    String CONTENT_CACHE_SIZE                   = "storeContentCacheSize";
 
     /**
      * Called after instantiation in order to open and initialize the message store. A particular implementation can define
@@ -0,0 +1,233 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import org.apache.qpid.util.FileUtils;
+
+/**
+ * Holds the content of messages which are not held by a message store while their content is flowed to disk.
+ *
+ * Content is appended to a sequence of segment files in a directory. A segment is deleted once all of the content
+ * written to it has been released, so the space used is bounded by the span between the oldest and newest content
+ * still spilled. Nothing is forced to disk, as the content does not outlive the broker, and the directory is
+ * emptied when the spill file is created and when it is closed.
+ */
+public final class SpillFile
+{
+    private static final Logger LOGGER = Logger.getLogger(SpillFile.class);
+
+    private final File _directory;
+    private final long _segmentSize;
+    private final Set<Segment> _segments = new LinkedHashSet<Segment>();
+    private Segment _currentSegment;
+    private long _nextSegmentNumber;
+    private boolean _closed;
+
+    public SpillFile(final File directory, final long segmentSize)
+    {
+        _directory = directory;
+        _segmentSize = segmentSize;
+
+        if (_directory.exists())
+        {
+            FileUtils.delete(_directory, true);
+        }
+        if (!_directory.mkdirs())
+        {
+            throw new StoreException("Cannot create spill directory " + _directory.getAbsolutePath());
+        }
+    }
+
+    /**
+     * Writes the remaining bytes of the given buffer to the spill file.
+     *
+     * @return the location of the content, to be passed to {@link #read} and {@link #release}
+     */
+    public synchronized Location write(final ByteBuffer content)
+    {
+        if (_closed)
+        {
+            throw new StoreException("Spill file " + _directory.getAbsolutePath() + " is closed");
+        }
+
+        final int length = content.remaining();
+        try
+        {
+            if (_currentSegment == null || (_currentSegment._size != 0l && _currentSegment._size + length > _segmentSize))
+            {
+                Segment previous = _currentSegment;
+                _currentSegment = new Segment(new File(_directory, String.format("%020d.spill", _nextSegmentNumber++)));
+                _segments.add(_currentSegment);
+                if (previous != null && previous._liveCount == 0)
+                {
+                    _segments.remove(previous);
+                    previous.delete();
+                }
+            }
+
+            final Segment segment = _currentSegment;
+            final long position = segment._size;
+            ByteBuffer src = content.duplicate();
+            while (src.hasRemaining())
+            {
+                segment._channel.write(src, position + length - src.remaining());
+            }
+            segment._size += length;
+            segment._liveCount++;
+            return new Location(segment, position, length);
+        }
+        catch (IOException e)
+        {
+            throw new StoreException("Cannot write to spill directory " + _directory.getAbsolutePath(), e);
+        }
+    }
+
+    /**
+     * Reads spilled content, from the given offset within it, into the destination buffer.
+     *
+     * @return the number of bytes read
+     */
+    public int read(final Location location, final int offset, final ByteBuffer dst)
+    {
+        final int length = Math.min(dst.remaining(), location._length - offset);
+        if (length <= 0)
+        {
+            return 0;
+        }
+
+        ByteBuffer buf = dst.duplicate();
+        buf.limit(buf.position() + length);
+        try
+        {
+            while (buf.hasRemaining())
+            {
+                int read = location._segment._channel.read(buf, location._position + offset + buf.position() - dst.position());
+                if (read < 0)
+                {
+                    throw new StoreException("Unexpected end of spill file " + location._segment._file.getAbsolutePath());
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new StoreException("Cannot read from spill file " + location._segment._file.getAbsolutePath(), e);
+        }
+        dst.position(dst.position() + length);
+        return length;
+    }
+
+    /**
+     * Releases spilled content which is no longer required, deleting its segment if it holds no other content.
+     * Content released after the spill file is closed, whose segment has already been deleted, is ignored.
+     */
+    public synchronized void release(final Location location)
+    {
+        final Segment segment = location._segment;
+        if (--segment._liveCount == 0 && segment != _currentSegment && _segments.remove(segment))
+        {
+            segment.delete();
+        }
+    }
+
+    /**
+     * Deletes every segment, including those still holding content which has not been released.
+     */
+    public synchronized void close()
+    {
+        if (!_closed)
+        {
+            _closed = true;
+            for (Segment segment : _segments)
+            {
+                segment.delete();
+            }
+            _segments.clear();
+            _currentSegment = null;
+            FileUtils.delete(_directory, true);
+        }
+    }
+
+    public File getDirectory()
+    {
+        return _directory;
+    }
+
+    public static final class Location
+    {
+        private final Segment _segment;
+        private final long _position;
+        private final int _length;
+
+        private Location(final Segment segment, final long position, final int length)
+        {
+            _segment = segment;
+            _position = position;
+            _length = length;
+        }
+
+        public int getLength()
+        {
+            return _length;
+        }
+    }
+
+    private static final class Segment
+    {
+        private final File _file;
+        private final RandomAccessFile _randomAccessFile;
+        private final FileChannel _channel;
+        private long _size;
+        private int _liveCount;
+
+        private Segment(final File file) throws IOException
+        {
+            _file = file;
+            _randomAccessFile = new RandomAccessFile(file, "rw");
+            _channel = _randomAccessFile.getChannel();
+        }
+
+        private void delete()
+        {
+            try
+            {
+                _randomAccessFile.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.warn("Cannot close spill file " + _file.getAbsolutePath(), e);
+            }
+            if (!_file.delete())
+            {
+                LOGGER.warn("Cannot delete spill file " + _file.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -23,11 +23,13 @@ package org.apache.qpid.server.store;
 
 import java.nio.ByteBuffer;
 
-public class StoredMemoryMessage implements StoredMessage
+public class StoredMemoryMessage implements FlowableStoredMessage
 {
     private final long _messageNumber;
-    private ByteBuffer _content;
+    private volatile ByteBuffer _content;
     private final StorableMessageMetaData _metaData;
+    private SpillFile _spillFile;
+    private SpillFile.Location _spilledContent;
 
     public StoredMemoryMessage(long messageNumber, StorableMessageMetaData metaData)
     {
@@ -84,11 +86,12 @@ public class StoredMemoryMessage implements StoredMessage
 
     public int getContent(int offset, ByteBuffer dst)
     {
-        if(_content == null)
+        ByteBuffer content = getContent();
+        if(content == null)
         {
             return 0;
         }
-        ByteBuffer src = _content.duplicate();
+        ByteBuffer src = content.duplicate();
 
         int oldPosition = src.position();
 
@@ -106,11 +109,12 @@ public class StoredMemoryMessage implements StoredMessage
 
     public ByteBuffer getContent(int offsetInMessage, int size)
     {
-        if(_content == null)
+        ByteBuffer content = getContent();
+        if(content == null)
         {
             return null;
         }
-        ByteBuffer buf = _content.duplicate();
+        ByteBuffer buf = content.duplicate();
 
         if(offsetInMessage != 0)
         {
@@ -133,7 +137,48 @@ public class StoredMemoryMessage implements StoredMessage
         return _metaData;
     }
 
-    public void remove()
+    public synchronized int flowToDisk(final SpillFile spillFile)
+    {
+        ByteBuffer content = _content;
+        if(content == null || _spilledContent != null)
+        {
+            return 0;
+        }
+
+        _spilledContent = spillFile.write(content);
+        _spillFile = spillFile;
+        _content = null;
+        return content.remaining();
+    }
+
+    private ByteBuffer getContent()
     {
+        ByteBuffer content = _content;
+        if(content == null)
+        {
+            synchronized (this)
+            {
+                content = _content;
+                if(content == null && _spilledContent != null)
+                {
+                    content = ByteBuffer.allocate(_spilledContent.getLength());
+                    _spillFile.read(_spilledContent, 0, content);
+                    content.flip();
+                    _spillFile.release(_spilledContent);
+                    _spilledContent = null;
+                    _content = content;
+                }
+            }
+        }
+        return content;
+    }
+
+    public synchronized void remove()
+    {
+        if(_spilledContent != null)
+        {
+            _spillFile.release(_spilledContent);
+            _spilledContent = null;
+        }
     }
 }
@@ -31,9 +31,11 @@ import org.apache.qpid.server.model.Broker;
 import org.apache.qpid.server.model.Port;
 import org.apache.qpid.server.model.Protocol;
 import org.apache.qpid.server.model.Transport;
+import org.apache.qpid.server.model.port.AmqpPort;
 import org.apache.qpid.server.protocol.MultiVersionProtocolEngineFactory;
 import org.apache.qpid.transport.NetworkTransportConfiguration;
 import org.apache.qpid.transport.network.IncomingNetworkTransport;
+import org.apache.qpid.transport.network.nio.NioNetworkTransport;
 
 class TCPandSSLTransport implements AcceptingTransport
 {
@@ -77,7 +79,7 @@ class TCPandSSLTransport implements AcceptingTransport
         }
 
         final NetworkTransportConfiguration settings = new ServerNetworkTransportConfiguration();
-        _networkTransport = org.apache.qpid.transport.network.Transport.getIncomingTransportInstance();
+        _networkTransport = createNetworkTransport();
         final MultiVersionProtocolEngineFactory protocolEngineFactory =
                 new MultiVersionProtocolEngineFactory(
                 _port.getParent(Broker.class), _transports.contains(Transport.TCP) ? _sslContext : null,
@@ -96,6 +98,15 @@ class TCPandSSLTransport implements AcceptingTransport
         _networkTransport.close();
     }
 
+    private IncomingNetworkTransport createNetworkTransport()
+    {
+        if(_port instanceof AmqpPort && ((AmqpPort<?>)_port).isNonBlockingIo())
+        {
+            return new NioNetworkTransport(((AmqpPort<?>)_port).getIoThreadCount());
+        }
+        return org.apache.qpid.transport.network.Transport.getIncomingTransportInstance();
+    }
+
     class ServerNetworkTransportConfiguration implements NetworkTransportConfiguration
     {
         public ServerNetworkTransportConfiguration()
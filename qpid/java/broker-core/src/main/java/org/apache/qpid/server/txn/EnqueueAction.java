@@ -0,0 +1,141 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.txn;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.server.message.MessageInstance;
+import org.apache.qpid.server.message.MessageReference;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.queue.BaseQueue;
+import org.apache.qpid.server.util.Action;
+
+/**
+ * The post transaction action which enqueues a routed message on its queues once the transaction has committed.
+ *
+ * A transaction committing a run of these actions may enqueue them together with {@link #postCommit(List)}, so
+ * that each queue receives all of its messages from the run in a single batch.
+ */
+public final class EnqueueAction implements ServerTransaction.Action
+{
+    private final BaseQueue[] _queues;
+    private final ServerMessage<?> _message;
+    private final Action<? super MessageInstance> _postEnqueueAction;
+    private final MessageReference _reference;
+
+    public EnqueueAction(final BaseQueue[] queues,
+                         final ServerMessage<?> message,
+                         final Action<? super MessageInstance> postEnqueueAction)
+    {
+        _queues = queues;
+        _message = message;
+        _postEnqueueAction = postEnqueueAction;
+        _reference = message.newReference();
+    }
+
+    public void postCommit()
+    {
+        try
+        {
+            for(int i = 0; i < _queues.length; i++)
+            {
+                _queues[i].enqueue(_message, _postEnqueueAction);
+            }
+        }
+        finally
+        {
+            _reference.release();
+        }
+    }
+
+    public void onRollback()
+    {
+        _reference.release();
+    }
+
+    /**
+     * Performs the post commit work of the given actions, enqueueing the messages destined for each queue in a single
+     * batch per queue. The messages are enqueued on each queue in the order of the actions; consecutive messages with
+     * a different post enqueue action are enqueued in separate batches.
+     */
+    public static void postCommit(final List<EnqueueAction> actions)
+    {
+        if(actions.size() == 1)
+        {
+            actions.get(0).postCommit();
+            return;
+        }
+
+        try
+        {
+            final Map<BaseQueue, Batch> batches = new LinkedHashMap<BaseQueue, Batch>();
+            for(EnqueueAction action : actions)
+            {
+                for(BaseQueue queue : action._queues)
+                {
+                    Batch batch = batches.get(queue);
+                    if(batch != null && batch._postEnqueueAction != action._postEnqueueAction)
+                    {
+                        batch.enqueue(queue);
+                        batch = null;
+                    }
+                    if(batch == null)
+                    {
+                        batch = new Batch(action._postEnqueueAction);
+                        batches.put(queue, batch);
+                    }
+                    batch._messages.add(action._message);
+                }
+            }
+
+            for(Map.Entry<BaseQueue, Batch> entry : batches.entrySet())
+            {
+                entry.getValue().enqueue(entry.getKey());
+            }
+        }
+        finally
+        {
+            for(EnqueueAction action : actions)
+            {
+                action._reference.release();
+            }
+        }
+    }
+
+    private static final class Batch
+    {
+        private final Action<? super MessageInstance> _postEnqueueAction;
+        private final List<ServerMessage> _messages = new ArrayList<ServerMessage>();
+
+        private Batch(final Action<? super MessageInstance> postEnqueueAction)
+        {
+            _postEnqueueAction = postEnqueueAction;
+        }
+
+        private void enqueue(final BaseQueue queue)
+        {
+            queue.enqueue(_messages, _postEnqueueAction);
+        }
+    }
+}
@@ -377,9 +377,28 @@ public class LocalTransaction implements ServerTransaction
             _logger.debug("Beginning " + _postTransactionActions.size() + " post transaction actions");
         }
 
+        // runs of enqueues are performed together, so that each queue is notified once per run
+        final List<EnqueueAction> enqueueActions = new ArrayList<EnqueueAction>();
         for(int i = 0; i < _postTransactionActions.size(); i++)
         {
-            _postTransactionActions.get(i).postCommit();
+            final Action action = _postTransactionActions.get(i);
+            if(action instanceof EnqueueAction)
+            {
+                enqueueActions.add((EnqueueAction) action);
+            }
+            else
+            {
+                if(!enqueueActions.isEmpty())
+                {
+                    EnqueueAction.postCommit(enqueueActions);
+                    enqueueActions.clear();
+                }
+                action.postCommit();
+            }
+        }
+        if(!enqueueActions.isEmpty())
+        {
+            EnqueueAction.postCommit(enqueueActions);
         }
 
         if(_logger.isDebugEnabled())
@@ -0,0 +1,89 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.util;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A concurrent cache holding at most a given number of entries, evicting those least recently used.
+ *
+ * Entries are held in two generations. New entries, and entries found in the older generation, are put in the
+ * newer; once the newer generation is full the older is discarded and the newer takes its place. Entries used at
+ * least once per generation are therefore retained, without the bookkeeping of a strict least recently used policy.
+ */
+public final class BoundedCache<K, V>
+{
+    private final int _generationSize;
+    private volatile Generation<K, V> _current = new Generation<K, V>();
+    private volatile Generation<K, V> _previous = new Generation<K, V>();
+
+    public BoundedCache(final int maximumSize)
+    {
+        if(maximumSize < 2)
+        {
+            throw new IllegalArgumentException("Maximum size must be at least 2: " + maximumSize);
+        }
+        _generationSize = maximumSize / 2;
+    }
+
+    public V get(final K key)
+    {
+        V value = _current._entries.get(key);
+        if(value == null)
+        {
+            value = _previous._entries.get(key);
+            if(value != null)
+            {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public void put(final K key, final V value)
+    {
+        Generation<K, V> current = _current;
+        if(current._entries.put(key, value) == null && current._size.incrementAndGet() >= _generationSize)
+        {
+            synchronized (this)
+            {
+                if(_current == current)
+                {
+                    _previous = current;
+                    _current = new Generation<K, V>();
+                }
+            }
+        }
+    }
+
+    public synchronized void clear()
+    {
+        _previous = new Generation<K, V>();
+        _current = new Generation<K, V>();
+    }
+
+    private static final class Generation<K, V>
+    {
+        private final ConcurrentHashMap<K, V> _entries = new ConcurrentHashMap<K, V>();
+        private final AtomicInteger _size = new AtomicInteger();
+    }
+}
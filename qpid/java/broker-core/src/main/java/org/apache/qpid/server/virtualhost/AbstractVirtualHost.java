@@ -33,10 +33,12 @@ import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.ScheduledThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.security.auth.Subject;
 
@@ -97,8 +99,11 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     private static final Logger _logger = Logger.getLogger(AbstractVirtualHost.class);
 
     private static final int HOUSEKEEPING_SHUTDOWN_TIMEOUT = 5;
+    private static final int DELIVERY_SHUTDOWN_TIMEOUT = 5;
 
     private ScheduledThreadPoolExecutor _houseKeepingTasks;
+    private volatile DeliveryExecutor _deliveryExecutor;
+    private final AtomicLong _messageInstancesRecovered = new AtomicLong();
 
     private final Broker<?> _broker;
 
@@ -154,6 +159,9 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     @ManagedAttributeField
     private int _housekeepingThreadCount;
 
+    @ManagedAttributeField
+    private int _deliveryThreadCount;
+
     private MessageDestination _defaultDestination;
 
     public AbstractVirtualHost(final Map<String, Object> attributes, VirtualHostNode<?> virtualHostNode)
@@ -504,6 +512,28 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         }
     }
 
+    private void shutdownDelivery()
+    {
+        DeliveryExecutor deliveryExecutor = _deliveryExecutor;
+        if(deliveryExecutor != null)
+        {
+            deliveryExecutor.shutdown();
+
+            try
+            {
+                if (!deliveryExecutor.awaitTermination(DELIVERY_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS))
+                {
+                    deliveryExecutor.shutdownNow();
+                }
+            }
+            catch (InterruptedException e)
+            {
+                _logger.warn("Interrupted during delivery shutdown:", e);
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     protected void removeHouseKeepingTasks()
     {
         BlockingQueue<Runnable> taskQueue = _houseKeepingTasks.getQueue();
@@ -556,6 +586,12 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         return _houseKeepingTasks.getActiveCount();
     }
 
+    @Override
+    public Executor getDeliveryExecutor()
+    {
+        return _deliveryExecutor;
+    }
+
     @Override
     public AMQQueue<?> getQueue(String name)
     {
@@ -712,6 +748,7 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         //Stop Connections
         _connectionRegistry.close();
         _dtxRegistry.close();
+        shutdownDelivery();
         closeStorage();
         shutdownHouseKeeping();
 
@@ -1245,6 +1282,32 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
         return _housekeepingThreadCount;
     }
 
+    @Override
+    public int getDeliveryThreadCount()
+    {
+        return _deliveryThreadCount;
+    }
+
+    @Override
+    public int getDeliveryThreadPoolSize()
+    {
+        DeliveryExecutor deliveryExecutor = _deliveryExecutor;
+        return deliveryExecutor == null ? 0 : deliveryExecutor.getPoolSize();
+    }
+
+    @Override
+    public long getDeliveryRunQueueDepth()
+    {
+        DeliveryExecutor deliveryExecutor = _deliveryExecutor;
+        return deliveryExecutor == null ? 0L : deliveryExecutor.getQueueDepth();
+    }
+
+    @Override
+    public long getMessageInstancesRecovered()
+    {
+        return _messageInstancesRecovered.get();
+    }
+
 
 
     @Override
@@ -1453,6 +1516,7 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
     protected void activate()
     {
         _houseKeepingTasks = new ScheduledThreadPoolExecutor(getHousekeepingThreadCount());
+        _deliveryExecutor = new DeliveryExecutor("Delivery - " + getName(), getDeliveryThreadCount());
 
         boolean nodeIsMessageStoreProvider = _virtualHostNode.isMessageStoreProvider();
 
@@ -1475,7 +1539,11 @@ public abstract class AbstractVirtualHost<X extends AbstractVirtualHost<X>> exte
             createDefaultExchanges();
         }
 
-        new MessageStoreRecoverer(this, getMessageStoreLogSubject()).recover();
+        _messageInstancesRecovered.set(0L);
+        MessageStoreRecoverer recoverer = new MessageStoreRecoverer(this, getMessageStoreLogSubject(),
+                                                                    getContextValue(Integer.class, RECOVERY_THREAD_COUNT),
+                                                                    _messageInstancesRecovered);
+        recoverer.recover();
 
         VirtualHostState finalState = VirtualHostState.ERRORED;
         try
@@ -0,0 +1,150 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.virtualhost;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the asynchronous delivery work (queue runners and consumer flushers) of the queues of a single virtual host.
+ *
+ * The executor is backed by a work-stealing {@link ForkJoinPool} in asynchronous mode. Work submitted from outside
+ * the pool, for instance by connection threads, is shared between all of its threads, whereas a runner which
+ * reschedules itself is queued on the thread which ran it, and so keeps to that thread (and its cache) unless
+ * another thread is idle and steals it. Each thread processes its own work in submission order, so a runner which
+ * reschedules itself goes behind the work of the other queues already waiting on that thread.
+ */
+public final class DeliveryExecutor implements Executor
+{
+    private final ForkJoinPool _pool;
+
+    public DeliveryExecutor(final String name, final int threadCount)
+    {
+        _pool = new ForkJoinPool(threadCount, new DeliveryThreadFactory(name), null, true);
+    }
+
+    @Override
+    public void execute(final Runnable command)
+    {
+        _pool.execute(new DeliveryTask(command));
+    }
+
+    /**
+     * @return the number of threads currently started by the executor
+     */
+    public int getPoolSize()
+    {
+        return _pool.getPoolSize();
+    }
+
+    /**
+     * @return an estimate of the number of runners waiting to be run
+     */
+    public long getQueueDepth()
+    {
+        return _pool.getQueuedSubmissionCount() + _pool.getQueuedTaskCount();
+    }
+
+    public void shutdown()
+    {
+        _pool.shutdown();
+    }
+
+    public void shutdownNow()
+    {
+        _pool.shutdownNow();
+    }
+
+    public boolean awaitTermination(final long timeout, final TimeUnit unit) throws InterruptedException
+    {
+        return _pool.awaitTermination(timeout, unit);
+    }
+
+    public boolean isShutdown()
+    {
+        return _pool.isShutdown();
+    }
+
+    /**
+     * Runs a runnable, passing anything it throws to the uncaught exception handler of the thread as the threads
+     * of a {@link java.util.concurrent.ThreadPoolExecutor} would, rather than keeping it within the task.
+     */
+    private static final class DeliveryTask extends ForkJoinTask<Void>
+    {
+        private final Runnable _runnable;
+
+        private DeliveryTask(final Runnable runnable)
+        {
+            _runnable = runnable;
+        }
+
+        @Override
+        public Void getRawResult()
+        {
+            return null;
+        }
+
+        @Override
+        protected void setRawResult(final Void value)
+        {
+        }
+
+        @Override
+        protected boolean exec()
+        {
+            try
+            {
+                _runnable.run();
+            }
+            catch (Throwable t)
+            {
+                Thread thread = Thread.currentThread();
+                thread.getUncaughtExceptionHandler().uncaughtException(thread, t);
+            }
+            return true;
+        }
+    }
+
+    private static final class DeliveryThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory
+    {
+        private final String _name;
+        private final AtomicInteger _threadCount = new AtomicInteger();
+
+        private DeliveryThreadFactory(final String name)
+        {
+            _name = name;
+        }
+
+        @Override
+        public ForkJoinWorkerThread newThread(final ForkJoinPool pool)
+        {
+            ForkJoinWorkerThread thread = new ForkJoinWorkerThread(pool)
+            {
+            };
+            thread.setName(_name + "-" + _threadCount.incrementAndGet());
+            return thread;
+        }
+    }
+}
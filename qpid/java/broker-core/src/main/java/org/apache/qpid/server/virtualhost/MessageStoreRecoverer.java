@@ -20,10 +20,19 @@
  */
 package org.apache.qpid.server.virtualhost;
 
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.server.logging.EventLogger;
@@ -48,13 +57,25 @@ import org.apache.qpid.server.store.handler.MessageInstanceHandler;
 import org.apache.qpid.server.txn.DtxBranch;
 import org.apache.qpid.server.txn.DtxRegistry;
 import org.apache.qpid.server.txn.ServerTransaction;
+import org.apache.qpid.server.util.ServerScopedRuntimeException;
 import org.apache.qpid.transport.Xid;
 import org.apache.qpid.transport.util.Functions;
 
+/**
+ * Recovers the messages held in the message store of a virtual host onto its queues.
+ *
+ * The server message for a stored message is only created, and its meta-data loaded, when an instance of it is
+ * recovered. If more than one recovery thread is requested, the message instances read from the store are handed in
+ * batches to a thread chosen by queue, so that the queues are recovered in parallel while the instances on each queue
+ * are enqueued in store order.
+ */
 public class MessageStoreRecoverer
 {
     private static final Logger _logger = Logger.getLogger(MessageStoreRecoverer.class);
 
+    private static final int RECOVERY_BATCH_SIZE = 1000;
+    private static final int MAXIMUM_PENDING_BATCHES = 16;
+
     private final VirtualHostImpl _virtualHost;
 
     private final Map<String, Integer> _queueRecoveries = new TreeMap<String, Integer>();
@@ -65,24 +86,80 @@ public class MessageStoreRecoverer
     private final MessageStoreLogSubject _logSubject;
     private final MessageStore _store;
 
+    private final int _recoveryThreadCount;
+    private final AtomicLong _messageInstancesRecovered;
+    private final AtomicReference<RuntimeException> _recoveryFailure = new AtomicReference<RuntimeException>();
+    private final Map<AMQQueue<?>, List<ServerMessage<?>>> _pendingBatches = new HashMap<AMQQueue<?>, List<ServerMessage<?>>>();
+    private ThreadPoolExecutor[] _recoveryExecutors;
+
 
     public MessageStoreRecoverer(VirtualHostImpl virtualHost, MessageStoreLogSubject logSubject)
+    {
+        this(virtualHost, logSubject, 1);
+    }
+
+    public MessageStoreRecoverer(VirtualHostImpl virtualHost, MessageStoreLogSubject logSubject, int recoveryThreadCount)
+    {
+        this(virtualHost, logSubject, recoveryThreadCount, new AtomicLong());
+    }
+
+    /**
+     * @param messageInstancesRecovered incremented as each message instance is enqueued, allowing the progress of
+     *                                  the recovery to be followed without holding on to the recoverer
+     */
+    public MessageStoreRecoverer(VirtualHostImpl virtualHost,
+                                 MessageStoreLogSubject logSubject,
+                                 int recoveryThreadCount,
+                                 AtomicLong messageInstancesRecovered)
     {
         super();
         _virtualHost = virtualHost;
         _eventLogger = virtualHost.getEventLogger();
         _logSubject = logSubject;
         _store = virtualHost.getMessageStore();
+        _recoveryThreadCount = Math.max(1, recoveryThreadCount);
+        _messageInstancesRecovered = messageInstancesRecovered;
     }
 
 
     public void recover()
+    {
+        try
+        {
+            recoverMessages();
+        }
+        finally
+        {
+            // the recovered messages are now referenced by their queues alone
+            _recoveredMessages.clear();
+            _unusedMessages.clear();
+            _pendingBatches.clear();
+        }
+    }
+
+    private void recoverMessages()
     {
         _eventLogger.message(_logSubject, MessageStoreMessages.RECOVERY_START());
         _store.visitMessages(messageVisitor);
 
         _eventLogger.message(_logSubject, TransactionLogMessages.RECOVERY_START(null, false));
-        _store.visitMessageInstances(messageAndMessageInstanceRecoverer);
+        if(_recoveryThreadCount > 1)
+        {
+            startRecoveryExecutors();
+        }
+        boolean instancesVisited = false;
+        try
+        {
+            _store.visitMessageInstances(messageAndMessageInstanceRecoverer);
+            instancesVisited = true;
+        }
+        finally
+        {
+            if(_recoveryExecutors != null)
+            {
+                stopRecoveryExecutors(instancesVisited);
+            }
+        }
 
         for(Map.Entry<String,Integer> entry : _queueRecoveries.entrySet())
         {
@@ -101,27 +178,203 @@ public class MessageStoreRecoverer
         }
         _eventLogger.message(_logSubject, TransactionLogMessages.RECOVERY_COMPLETE(null, false));
 
-        _eventLogger.message(_logSubject, MessageStoreMessages.RECOVERED(_recoveredMessages.size() - _unusedMessages.size()));
+        _eventLogger.message(_logSubject, MessageStoreMessages.RECOVERED(_recoveredMessages.size()));
         _eventLogger.message(_logSubject, MessageStoreMessages.RECOVERY_COMPLETE());
 
 
     }
 
-    MessageHandler messageVisitor = new MessageHandler()
+    /**
+     * @return the number of message instances enqueued so far
+     */
+    public long getMessageInstancesRecovered()
     {
+        return _messageInstancesRecovered.get();
+    }
 
-        @Override
-        public boolean handle(StoredMessage<?> message)
+    private ServerMessage<?> getRecoveredMessage(long messageId)
+    {
+        ServerMessage<?> serverMessage = _recoveredMessages.get(messageId);
+        if(serverMessage == null)
         {
-            StorableMessageMetaData metaData = message.getMetaData();
+            StoredMessage<?> message = _unusedMessages.remove(messageId);
+            if(message != null)
+            {
+                StorableMessageMetaData metaData = message.getMetaData();
+
+                @SuppressWarnings("rawtypes")
+                MessageMetaDataType type = metaData.getType();
+
+                @SuppressWarnings("unchecked")
+                ServerMessage<?> createdMessage = type.createMessage(message);
+
+                serverMessage = createdMessage;
+                _recoveredMessages.put(messageId, serverMessage);
+            }
+        }
+        return serverMessage;
+    }
 
-            @SuppressWarnings("rawtypes")
-            MessageMetaDataType type = metaData.getType();
+    private void recoverMessageInstance(AMQQueue<?> queue, ServerMessage<?> message)
+    {
+        if(_recoveryExecutors == null)
+        {
+            queue.enqueue(message, null);
+            _messageInstancesRecovered.incrementAndGet();
+        }
+        else
+        {
+            List<ServerMessage<?>> batch = _pendingBatches.get(queue);
+            if(batch == null)
+            {
+                batch = new ArrayList<ServerMessage<?>>(RECOVERY_BATCH_SIZE);
+                _pendingBatches.put(queue, batch);
+            }
+            batch.add(message);
+            if(batch.size() == RECOVERY_BATCH_SIZE)
+            {
+                _pendingBatches.remove(queue);
+                submitBatch(queue, batch);
+            }
+        }
+    }
 
-            @SuppressWarnings("unchecked")
-            ServerMessage<?> serverMessage  = type.createMessage(message);
+    private void submitBatch(final AMQQueue<?> queue, final List<ServerMessage<?>> batch)
+    {
+        RuntimeException failure = _recoveryFailure.get();
+        if(failure != null)
+        {
+            throw failure;
+        }
 
-            _recoveredMessages.put(message.getMessageNumber(), serverMessage);
+        // all of the batches of a queue go to the same single threaded executor, so are enqueued in order
+        int executor = (queue.getId().hashCode() & Integer.MAX_VALUE) % _recoveryExecutors.length;
+        _recoveryExecutors[executor].execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                if(_recoveryFailure.get() == null)
+                {
+                    try
+                    {
+                        for(ServerMessage<?> message : batch)
+                        {
+                            queue.enqueue(message, null);
+                            _messageInstancesRecovered.incrementAndGet();
+                        }
+                    }
+                    catch(RuntimeException e)
+                    {
+                        _logger.error("Failed to recover messages onto queue " + queue.getName(), e);
+                        _recoveryFailure.compareAndSet(null, e);
+                    }
+                }
+            }
+        });
+    }
+
+    private void startRecoveryExecutors()
+    {
+        _recoveryExecutors = new ThreadPoolExecutor[_recoveryThreadCount];
+        for(int i = 0; i < _recoveryExecutors.length; i++)
+        {
+            final String threadName = "Recovery-" + _virtualHost.getName() + "-" + i;
+            _recoveryExecutors[i] = new ThreadPoolExecutor(1, 1, 0l, TimeUnit.MILLISECONDS,
+                                                           new ArrayBlockingQueue<Runnable>(MAXIMUM_PENDING_BATCHES),
+                                                           new ThreadFactory()
+                                                           {
+                                                               @Override
+                                                               public Thread newThread(final Runnable r)
+                                                               {
+                                                                   return new Thread(r, threadName);
+                                                               }
+                                                           },
+                                                           new WaitForSpaceRejectedExecutionHandler());
+        }
+    }
+
+    /**
+     * Stops the recovery threads once they have enqueued the batches handed to them.
+     *
+     * @param instancesVisited false if the visit of the message instances failed, in which case the partially filled
+     *                         batches are discarded and the original failure is left to propagate
+     */
+    private void stopRecoveryExecutors(final boolean instancesVisited)
+    {
+        try
+        {
+            if(instancesVisited)
+            {
+                for(Map.Entry<AMQQueue<?>, List<ServerMessage<?>>> entry : _pendingBatches.entrySet())
+                {
+                    submitBatch(entry.getKey(), entry.getValue());
+                }
+            }
+        }
+        finally
+        {
+            _pendingBatches.clear();
+            for(ThreadPoolExecutor executor : _recoveryExecutors)
+            {
+                executor.shutdown();
+            }
+            try
+            {
+                for(ThreadPoolExecutor executor : _recoveryExecutors)
+                {
+                    while(!executor.awaitTermination(1, TimeUnit.MINUTES))
+                    {
+                        _logger.info("Waiting for recovery of " + _virtualHost.getName() + " to complete, "
+                                     + _messageInstancesRecovered.get() + " message instances recovered");
+                    }
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                if(instancesVisited)
+                {
+                    throw new ServerScopedRuntimeException("Interrupted whilst recovering messages", e);
+                }
+            }
+            finally
+            {
+                _recoveryExecutors = null;
+            }
+        }
+
+        RuntimeException failure = _recoveryFailure.get();
+        if(failure != null && instancesVisited)
+        {
+            throw failure;
+        }
+    }
+
+    private static class WaitForSpaceRejectedExecutionHandler implements RejectedExecutionHandler
+    {
+        @Override
+        public void rejectedExecution(final Runnable r, final ThreadPoolExecutor executor)
+        {
+            // holds back the reading of the store while the queues catch up
+            try
+            {
+                executor.getQueue().put(r);
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                throw new ServerScopedRuntimeException("Interrupted whilst recovering messages", e);
+            }
+        }
+    }
+
+    MessageHandler messageVisitor = new MessageHandler()
+    {
+
+        @Override
+        public boolean handle(StoredMessage<?> message)
+        {
             _unusedMessages.put(message.getMessageNumber(), message);
             return true;
         }
@@ -137,8 +390,7 @@ public class MessageStoreRecoverer
             if(queue != null)
             {
                 String queueName = queue.getName();
-                ServerMessage<?> message = _recoveredMessages.get(messageId);
-                _unusedMessages.remove(messageId);
+                ServerMessage<?> message = getRecoveredMessage(messageId);
 
                 if(message != null)
                 {
@@ -153,7 +405,7 @@ public class MessageStoreRecoverer
                         count = 0;
                     }
 
-                    queue.enqueue(message,null);
+                    recoverMessageInstance(queue, message);
 
                     _queueRecoveries.put(queueName, ++count);
                 }
@@ -217,8 +469,7 @@ public class MessageStoreRecoverer
                 if(queue != null)
                 {
                     final long messageId = record.getMessage().getMessageNumber();
-                    final ServerMessage<?> message = _recoveredMessages.get(messageId);
-                    _unusedMessages.remove(messageId);
+                    final ServerMessage<?> message = getRecoveredMessage(messageId);
 
                     if(message != null)
                     {
@@ -264,8 +515,7 @@ public class MessageStoreRecoverer
                 if(queue != null)
                 {
                     final long messageId = record.getMessage().getMessageNumber();
-                    final ServerMessage<?> message = _recoveredMessages.get(messageId);
-                    _unusedMessages.remove(messageId);
+                    final ServerMessage<?> message = getRecoveredMessage(messageId);
 
                     if(message != null)
                     {
@@ -23,6 +23,7 @@ package org.apache.qpid.server.virtualhost;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 
 import org.apache.qpid.common.Closeable;
@@ -103,6 +104,11 @@ public interface VirtualHostImpl< X extends VirtualHostImpl<X,Q,E>, Q extends AM
 
     int getHouseKeepingActiveCount();
 
+    /**
+     * @return the executor running the asynchronous delivery work of the queues of this virtual host
+     */
+    Executor getDeliveryExecutor();
+
     DtxRegistry getDtxRegistry();
 
     LinkRegistry getLinkRegistry(String remoteContainerId);
@@ -0,0 +1,237 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.exchange;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.apache.qpid.server.configuration.updater.CurrentThreadTaskExecutor;
+import org.apache.qpid.server.configuration.updater.TaskExecutor;
+import org.apache.qpid.server.logging.EventLogger;
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.model.BrokerModel;
+import org.apache.qpid.server.model.ConfiguredObjectFactoryImpl;
+import org.apache.qpid.server.model.Exchange;
+import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.queue.AMQQueue;
+import org.apache.qpid.server.security.SecurityManager;
+import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+
+/**
+ * Measures the rate at which a headers exchange routes messages when it holds a large number of bindings, half of
+ * them matching all of their headers and half any of them.
+ *
+ * Run with: HeadersExchangeBenchmark [bindings] [messages]
+ */
+public class HeadersExchangeBenchmark
+{
+    private static final int DEFAULT_BINDING_COUNT = 20000;
+    private static final int DEFAULT_MESSAGE_COUNT = 1000000;
+    private static final int HEADER_VALUES = 100;
+
+    public static void main(String[] args) throws Exception
+    {
+        int bindingCount = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_BINDING_COUNT;
+        int messageCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_MESSAGE_COUNT;
+
+        TaskExecutor taskExecutor = new CurrentThreadTaskExecutor();
+        taskExecutor.start();
+        try
+        {
+            ConfiguredObjectFactoryImpl factory = new ConfiguredObjectFactoryImpl(BrokerModel.getInstance());
+            VirtualHostImpl virtualHost = mock(VirtualHostImpl.class);
+            when(virtualHost.getSecurityManager()).thenReturn(mock(SecurityManager.class));
+            when(virtualHost.getEventLogger()).thenReturn(new EventLogger());
+            when(virtualHost.getCategoryClass()).thenReturn(VirtualHost.class);
+            when(virtualHost.getTaskExecutor()).thenReturn(taskExecutor);
+            when(virtualHost.getObjectFactory()).thenReturn(factory);
+            when(virtualHost.getModel()).thenReturn(factory.getModel());
+
+            Map<String,Object> attributes = new HashMap<String, Object>();
+            attributes.put(Exchange.ID, UUID.randomUUID());
+            attributes.put(Exchange.NAME, "benchmark");
+            attributes.put(Exchange.DURABLE, false);
+            HeadersExchange exchange = new HeadersExchange(attributes, virtualHost);
+
+            for(int i = 0; i < bindingCount; i++)
+            {
+                AMQQueue queue = mock(AMQQueue.class);
+                when(queue.getName()).thenReturn("Q" + i);
+                when(queue.getVirtualHost()).thenReturn(virtualHost);
+                when(queue.getCategoryClass()).thenReturn(Queue.class);
+                when(queue.getObjectFactory()).thenReturn(factory);
+                when(queue.getModel()).thenReturn(factory.getModel());
+
+                Map<String, Object> arguments = new HashMap<String, Object>();
+                arguments.put("region", "region" + (i % HEADER_VALUES));
+                arguments.put("product", "product" + (i / HEADER_VALUES));
+                arguments.put("X-match", i % 2 == 0 ? "all" : "any");
+                exchange.addBinding("B" + i, queue, arguments);
+            }
+
+            ServerMessage[] messages = new ServerMessage[HEADER_VALUES];
+            for(int i = 0; i < messages.length; i++)
+            {
+                Map<String, Object> headers = new HashMap<String, Object>();
+                headers.put("region", "region" + i);
+                headers.put("product", "product" + i);
+                headers.put("customer", "customer" + i);
+                messages[i] = mock(ServerMessage.class);
+                when(messages[i].getMessageHeader()).thenReturn(new MapMessageHeader(headers));
+            }
+
+            // warm up
+            route(exchange, messages, messageCount / 10);
+
+            long start = System.nanoTime();
+            long routes = route(exchange, messages, messageCount);
+            long elapsed = System.nanoTime() - start;
+
+            System.out.println(bindingCount + " bindings: " + messageCount + " messages routed in "
+                               + (elapsed / 1000000L) + "ms ("
+                               + (messageCount * 1000000000L / elapsed) + " messages/s, "
+                               + ((double) routes / messageCount) + " queues per message)");
+        }
+        finally
+        {
+            taskExecutor.stop();
+        }
+    }
+
+    private static long route(final HeadersExchange exchange, final ServerMessage[] messages, final int count)
+    {
+        long routes = 0L;
+        for(int i = 0; i < count; i++)
+        {
+            routes += exchange.route(messages[i % messages.length], "", InstanceProperties.EMPTY).size();
+        }
+        return routes;
+    }
+
+    private static final class MapMessageHeader implements AMQMessageHeader
+    {
+        private final Map<String, Object> _headers;
+
+        private MapMessageHeader(final Map<String, Object> headers)
+        {
+            _headers = headers;
+        }
+
+        @Override
+        public String getCorrelationId()
+        {
+            return null;
+        }
+
+        @Override
+        public long getExpiration()
+        {
+            return 0L;
+        }
+
+        @Override
+        public String getUserId()
+        {
+            return null;
+        }
+
+        @Override
+        public String getAppId()
+        {
+            return null;
+        }
+
+        @Override
+        public String getMessageId()
+        {
+            return null;
+        }
+
+        @Override
+        public String getMimeType()
+        {
+            return null;
+        }
+
+        @Override
+        public String getEncoding()
+        {
+            return null;
+        }
+
+        @Override
+        public byte getPriority()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getTimestamp()
+        {
+            return 0L;
+        }
+
+        @Override
+        public String getType()
+        {
+            return null;
+        }
+
+        @Override
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        @Override
+        public Object getHeader(final String name)
+        {
+            return _headers.get(name);
+        }
+
+        @Override
+        public boolean containsHeaders(final Set<String> names)
+        {
+            return _headers.keySet().containsAll(names);
+        }
+
+        @Override
+        public boolean containsHeader(final String name)
+        {
+            return _headers.containsKey(name);
+        }
+
+        @Override
+        public Collection<String> getHeaderNames()
+        {
+            return _headers.keySet();
+        }
+    }
+}
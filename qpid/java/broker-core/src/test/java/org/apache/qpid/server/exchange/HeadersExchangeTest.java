@@ -233,6 +233,25 @@ public class HeadersExchangeTest extends TestCase
 
     }
 
+    public void testManyBindings() throws Exception
+    {
+        AMQQueue[] queues = new AMQQueue[100];
+        for(int i = 0; i < queues.length; i++)
+        {
+            queues[i] = createAndBind("Q" + i, "F0000=" + i, "F0001=" + (i % 10));
+        }
+        AMQQueue any = createAndBind("Q", "F0000=50", "F0002", "X-match=any");
+
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=42", "F0001=2")), queues[42]);
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=42", "F0001=3")));
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=50", "F0001=0")), queues[50], any);
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0001=2", "F0002")), any);
+
+        _exchange.deleteBinding("Q42", queues[42]);
+
+        routeAndTest(mockMessage(getArgsMapFromStrings("F0000=42", "F0001=2")));
+    }
+
     private ServerMessage mockMessage(final Map<String, Object> headerValues)
     {
         final AMQMessageHeader header = mock(AMQMessageHeader.class);
@@ -370,6 +370,69 @@ public class TopicExchangeTest extends QpidTestCase
 
     }
 
+    public void testRoutingFollowsBindingChanges() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("queue1");
+        AMQQueue<?> queue2 = createQueue("queue2");
+        BindingImpl binding1 = createBinding(UUID.randomUUID(), "a.*", queue1, _exchange, null);
+        _exchange.registerQueue(binding1);
+
+        Assert.assertEquals("Message should route to one queue", 1, routeMessage("a.b", 0l));
+
+        _exchange.registerQueue(createBinding(UUID.randomUUID(), "a.b", queue2, _exchange, null));
+
+        Assert.assertEquals("Message should route to both queues", 2, routeMessage("a.b", 1l));
+
+        _exchange.onUnbind(binding1);
+
+        Assert.assertEquals("Message should route to one queue", 1, routeMessage("a.b", 2l));
+        Assert.assertEquals(1, queue1.getQueueDepthMessages());
+        Assert.assertEquals(2, queue2.getQueueDepthMessages());
+    }
+
+    public void testCachedRouteNotChangedByCaller() throws Exception
+    {
+        AMQQueue<?> queue1 = createQueue("queue1");
+        AMQQueue<?> queue2 = createQueue("queue2");
+        _exchange.registerQueue(createBinding(UUID.randomUUID(), "a.*", queue1, _exchange, null));
+        _exchange.registerQueue(createBinding(UUID.randomUUID(), "a.b", queue2, _exchange, null));
+        ServerMessage message = mock(ServerMessage.class);
+
+        // the first routing with the key is not yet cached, so the caller is given a list of its own
+        List<? extends BaseQueue> queues = _exchange.doRoute(message, "a.b", InstanceProperties.EMPTY);
+        Assert.assertEquals("Message should route to both queues", 2, queues.size());
+        queues.remove(queue1);
+
+        // later routings share the cached list, which the caller must not be able to change
+        for(int i = 0; i < 2; i++)
+        {
+            queues = _exchange.doRoute(message, "a.b", InstanceProperties.EMPTY);
+            Assert.assertEquals("Message should route to both queues", 2, queues.size());
+            try
+            {
+                queues.remove(queue1);
+                fail("Cached route should not be modifiable by the caller");
+            }
+            catch (UnsupportedOperationException e)
+            {
+                // pass
+            }
+            Assert.assertEquals("Cached route changed by the caller", 2, queues.size());
+        }
+    }
+
+    public void testEmptyWords() throws Exception
+    {
+        AMQQueue<?> queue = createQueue("a");
+        _exchange.registerQueue(createBinding(UUID.randomUUID(), "a.*.b", queue, _exchange, null));
+
+        Assert.assertEquals("Empty word should match *", 1, routeMessage("a..b", 0l));
+        Assert.assertEquals("Trailing delimiters should be ignored", 1, routeMessage("a.c.b..", 1l));
+        Assert.assertEquals("Message should not route to any queues", 0, routeMessage("a..", 2l));
+
+        Assert.assertEquals(2, queue.getQueueDepthMessages());
+    }
+
     private static BindingImpl createBinding(UUID id,
                                                 final String bindingKey,
                                                 final AMQQueue queue,
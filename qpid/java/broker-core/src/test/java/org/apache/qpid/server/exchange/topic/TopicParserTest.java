@@ -0,0 +1,106 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ *
+ */
+package org.apache.qpid.server.exchange.topic;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class TopicParserTest extends QpidTestCase
+{
+    private TopicParser _parser;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _parser = new TopicParser();
+    }
+
+    public void testRemovedBindingNoLongerMatches()
+    {
+        TestResult ab = new TestResult();
+        TestResult aStar = new TestResult();
+        _parser.addBinding("a.b", ab);
+        _parser.addBinding("a.*", aStar);
+
+        assertMatches("a.b", ab, aStar);
+
+        _parser.removeBinding("a.*");
+
+        assertMatches("a.b", ab);
+        assertMatches("a.c");
+    }
+
+    public void testBindingKeyIsReferenceCounted()
+    {
+        TestResult result = new TestResult();
+        _parser.addBinding("a.#", result);
+        _parser.addBinding("a.#", result);
+
+        _parser.removeBinding("a.#");
+        assertMatches("a.b.c", result);
+
+        _parser.removeBinding("a.#");
+        assertMatches("a.b.c");
+        assertEquals("Unexpected state count", 0, _parser.getStateCount());
+    }
+
+    public void testCompaction()
+    {
+        TestResult remaining = new TestResult();
+        _parser.addBinding("x.*.y", remaining);
+        int initialStateCount = _parser.getStateCount();
+
+        for(int i = 0; i < 64; i++)
+        {
+            _parser.addBinding("x.*.y." + i + ".#", new TestResult());
+        }
+        for(int i = 0; i < 64; i++)
+        {
+            _parser.removeBinding("x.*.y." + i + ".#");
+        }
+
+        assertTrue("Compaction should be due", _parser.isCompactionDue());
+        assertTrue("Removed states should remain until compaction", _parser.getStateCount() > initialStateCount);
+
+        assertTrue("Compaction should have replaced the state machine", _parser.compact());
+
+        assertFalse("Compaction should no longer be due", _parser.isCompactionDue());
+        assertEquals("Unexpected state count", initialStateCount, _parser.getStateCount());
+        assertMatches("x.a.y", remaining);
+        assertMatches("x.a.y.1.z");
+    }
+
+    private void assertMatches(String routingKey, TopicMatcherResult... expected)
+    {
+        Collection<TopicMatcherResult> results = _parser.parse(routingKey);
+        HashSet<TopicMatcherResult> expectedResults = new HashSet<TopicMatcherResult>();
+        Collections.addAll(expectedResults, expected);
+        assertEquals("Unexpected results for " + routingKey, expectedResults, new HashSet<TopicMatcherResult>(results));
+    }
+
+    private static class TestResult implements TopicMatcherResult
+    {
+    }
+}
@@ -18,8 +18,17 @@
  */
 package org.apache.qpid.server.filter;
 
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
 import junit.framework.TestCase;
 
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.InstanceProperties;
+import org.apache.qpid.server.message.ServerMessage;
+
 public class JMSSelectorFilterTest extends TestCase
 {
     public void testEqualsAndHashCodeUsingSelectorString() throws Exception
@@ -37,6 +46,27 @@ public class JMSSelectorFilterTest extends TestCase
         assertNotEqual(filter1, differentFilter);
     }
 
+    public void testHeaderFetchedOnceForManySelectors() throws Exception
+    {
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader("colour")).thenReturn("red");
+        when(header.getHeader("size")).thenReturn(3);
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getMessageHeader()).thenReturn(header);
+
+        Filterable filterable = Filterable.Factory.newInstance(message, mock(InstanceProperties.class));
+
+        assertTrue(new JMSSelectorFilter("colour = 'red'").matches(filterable));
+        assertFalse(new JMSSelectorFilter("colour = 'blue'").matches(filterable));
+        assertTrue(new JMSSelectorFilter("colour = 'red' AND size > 2").matches(filterable));
+        assertFalse(new JMSSelectorFilter("shape IS NOT NULL").matches(filterable));
+        assertTrue(new JMSSelectorFilter("shape IS NULL").matches(filterable));
+
+        verify(header, times(1)).getHeader("colour");
+        verify(header, times(1)).getHeader("size");
+        verify(header, times(1)).getHeader("shape");
+    }
+
     private void assertEqualsAndHashCodeMatch(JMSSelectorFilter filter1, JMSSelectorFilter filter2)
     {
         String message = filter1 + " and " + filter2 + " should be equal";
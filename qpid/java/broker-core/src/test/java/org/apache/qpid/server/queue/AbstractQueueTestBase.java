@@ -39,6 +39,8 @@ import org.apache.qpid.server.model.LifetimePolicy;
 import org.apache.qpid.server.model.Queue;
 import org.apache.qpid.exchange.ExchangeDefaults;
 import org.apache.qpid.server.exchange.DirectExchange;
+import org.apache.qpid.server.filter.JMSSelectorFilter;
+import org.apache.qpid.server.filter.SimpleFilterManager;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.message.MessageInstance;
 import org.apache.qpid.server.message.MessageReference;
@@ -46,6 +48,7 @@ import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.model.QueueNotificationListener;
 import org.apache.qpid.server.model.UUIDGenerator;
 import org.apache.qpid.server.queue.AbstractQueue.QueueEntryFilter;
+import org.apache.qpid.server.store.FlowableStoredMessage;
 import org.apache.qpid.server.consumer.MockConsumer;
 import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.util.BrokerTestHelper;
@@ -221,6 +224,47 @@ abstract class AbstractQueueTestBase extends QpidTestCase
                    _consumer.getQueueContext().getReleasedEntry());
     }
 
+    public void testEnqueueBatchThenRegisterConsumer() throws Exception
+    {
+        ServerMessage messageA = createMessage(new Long(24));
+        ServerMessage messageB = createMessage(new Long(25));
+        _queue.enqueue(Arrays.asList(messageA, messageB), null);
+
+        assertEquals("Unexpected queue depth", 2, _queue.getQueueDepthMessages());
+
+        _consumer = (QueueConsumer<?>) _queue.addConsumer(_consumerTarget, null, messageA.getClass(), "test",
+                                       EnumSet.of(ConsumerImpl.Option.ACQUIRES,
+                                                  ConsumerImpl.Option.SEES_REQUEUES));
+        Thread.sleep(150);
+        assertEquals(messageB, _consumer.getQueueContext().getLastSeenEntry().getMessage());
+    }
+
+    public void testRegisterConsumerThenEnqueueBatch() throws Exception
+    {
+        ServerMessage messageA = createMessage(new Long(24));
+        ServerMessage messageB = createMessage(new Long(25));
+        _consumer = (QueueConsumer<?>) _queue.addConsumer(_consumerTarget, null, messageA.getClass(), "test",
+                                       EnumSet.of(ConsumerImpl.Option.ACQUIRES,
+                                                  ConsumerImpl.Option.SEES_REQUEUES));
+
+        final List<MessageInstance> enqueued = new ArrayList<MessageInstance>();
+        _queue.enqueue(Arrays.asList(messageA, messageB), new Action<MessageInstance>()
+        {
+            @Override
+            public void performAction(final MessageInstance entry)
+            {
+                enqueued.add(entry);
+            }
+        });
+        Thread.sleep(150);
+
+        assertEquals("Action not performed for each message", 2, enqueued.size());
+        assertEquals(messageA, enqueued.get(0).getMessage());
+        assertEquals(messageB, enqueued.get(1).getMessage());
+        assertEquals("Unexpected number of messages sent", 2, _consumerTarget.getMessages().size());
+        assertEquals(messageB, _consumer.getQueueContext().getLastSeenEntry().getMessage());
+    }
+
     /**
      * Tests that a released queue entry is resent to the subscriber.  Verifies also that the
      * QueueContext._releasedEntry is reset to null after the entry has been reset.
@@ -707,6 +751,89 @@ abstract class AbstractQueueTestBase extends QpidTestCase
         verifyReceivedMessages(Collections.singletonList((MessageInstance)msg5), sub3.getMessages());
     }
 
+    /**
+     * Tests that consumers whose selectors test a property for equality, and so are found the entries which may
+     * interest them through the queue's selector index, receive exactly the matching messages, whether those were
+     * enqueued before or after the consumer was registered.
+     */
+    public void testProcessQueueWithEqualitySelectors() throws Exception
+    {
+        AbstractQueue testQueue = createNonAsyncDeliverQueue();
+        testQueue.open();
+
+        ServerMessage eu1 = createMessage(1L, "EU");
+        ServerMessage us1 = createMessage(2L, "US");
+        ServerMessage eu2 = createMessage(3L, "EU");
+        ServerMessage asia1 = createMessage(4L, "ASIA");
+        ServerMessage us2 = createMessage(5L, "US");
+        ServerMessage eu3 = createMessage(6L, "EU");
+
+        MockConsumer europe = new MockConsumer();
+        MockConsumer america = new MockConsumer();
+        MockConsumer asia = new MockConsumer();
+
+        testQueue.enqueue(eu1, null);
+        testQueue.enqueue(us1, null);
+
+        testQueue.addConsumer(europe, new SimpleFilterManager(new JMSSelectorFilter("region = 'EU'")),
+                              eu1.getClass(), "europe",
+                              EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+        testQueue.addConsumer(america, new SimpleFilterManager(new JMSSelectorFilter("region IN ('US', 'CA')")),
+                              eu1.getClass(), "america",
+                              EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+
+        testQueue.enqueue(eu2, null);
+        testQueue.enqueue(asia1, null);
+        testQueue.enqueue(us2, null);
+        testQueue.enqueue(eu3, null);
+
+        testQueue.addConsumer(asia, new SimpleFilterManager(new JMSSelectorFilter("region = 'ASIA' AND 1 = 1")),
+                              eu1.getClass(), "asia",
+                              EnumSet.of(ConsumerImpl.Option.ACQUIRES, ConsumerImpl.Option.SEES_REQUEUES));
+
+        testQueue.processQueue(new QueueRunner(testQueue)
+        {
+            @Override
+            public void run()
+            {
+                // we don't actually want/need this runner to do any work
+                // because we we are already doing it!
+            }
+        });
+
+        // deliveries may also have been made by a queue runner started by an enqueue
+        long deadline = System.currentTimeMillis() + 5000L;
+        while(europe.getMessages().size() + america.getMessages().size() + asia.getMessages().size() < 6
+              && System.currentTimeMillis() < deadline)
+        {
+            Thread.sleep(10L);
+        }
+
+        assertEquals("Unexpected messages for EU consumer",
+                     Arrays.asList(eu1, eu2, eu3), getDeliveredMessages(europe));
+        assertEquals("Unexpected messages for US consumer",
+                     Arrays.asList(us1, us2), getDeliveredMessages(america));
+        assertEquals("Unexpected messages for ASIA consumer",
+                     Collections.singletonList(asia1), getDeliveredMessages(asia));
+    }
+
+    private List<ServerMessage> getDeliveredMessages(final MockConsumer consumer)
+    {
+        List<ServerMessage> messages = new ArrayList<ServerMessage>();
+        for(MessageInstance instance : consumer.getMessages())
+        {
+            messages.add(instance.getMessage());
+        }
+        return messages;
+    }
+
+    private ServerMessage createMessage(final Long id, final String region)
+    {
+        ServerMessage message = createMessage(id);
+        when(message.getMessageHeader().getHeader("region")).thenReturn(region);
+        return message;
+    }
+
     private AbstractQueue createNonAsyncDeliverQueue()
     {
         return new NonAsyncDeliverQueue(getVirtualHost());
@@ -859,6 +986,107 @@ abstract class AbstractQueueTestBase extends QpidTestCase
         verify(listener, atLeastOnce()).notifyClients(eq(NotificationCheck.MESSAGE_COUNT_ALERT), eq(_queue), contains("Maximum count on queue threshold"));
     }
 
+    public void testCheckMessageStatusDequeuesExpiredMessages() throws Exception
+    {
+        ServerMessage expiredMessage = createMessage(24l);
+        when(expiredMessage.getExpiration()).thenReturn(System.currentTimeMillis() - 1000l);
+        ServerMessage unexpiredMessage = createMessage(25l);
+        when(unexpiredMessage.getExpiration()).thenReturn(System.currentTimeMillis() + 60000l);
+        ServerMessage nonExpiringMessage = createMessage(26l);
+
+        _queue.enqueue(expiredMessage, null);
+        _queue.enqueue(unexpiredMessage, null);
+        _queue.enqueue(nonExpiringMessage, null);
+
+        _queue.checkMessageStatus();
+
+        List<? extends QueueEntry> entries = _queue.getMessagesOnTheQueue();
+        assertEquals("Expired message should have been dequeued", 2, entries.size());
+        assertEquals(unexpiredMessage, entries.get(0).getMessage());
+        assertEquals(nonExpiringMessage, entries.get(1).getMessage());
+
+        _queue.checkMessageStatus();
+        assertEquals("Unexpired message should remain", 2, _queue.getQueueDepthMessages());
+    }
+
+    public void testFlowToDiskFlowsOldestAvailableMessages() throws Exception
+    {
+        ServerMessage acquiredMessage = createFlowableMessage(27l);
+        ServerMessage firstAvailableMessage = createFlowableMessage(28l);
+        ServerMessage secondAvailableMessage = createFlowableMessage(29l);
+
+        _queue.enqueue(acquiredMessage, null);
+        _queue.enqueue(firstAvailableMessage, null);
+        _queue.enqueue(secondAvailableMessage, null);
+
+        List<? extends QueueEntry> entries = _queue.getMessagesOnTheQueue();
+        entries.get(0).acquire();
+
+        AbstractQueue<?> queue = (AbstractQueue<?>) _queue;
+        assertEquals("Unexpected content size", 300l, queue.getInMemoryContentSize());
+
+        FlowToDiskManager manager = new FlowToDiskManager(null, 0l, null);
+        assertEquals("Unexpected size flowed", 100l, queue.flowToDisk(50l, manager));
+        assertEquals("Unexpected content size", 200l, queue.getInMemoryContentSize());
+        verify((FlowableStoredMessage<?>) firstAvailableMessage.getStoredMessage()).flowToDisk(null);
+        verifyZeroInteractions(acquiredMessage.getStoredMessage(), secondAvailableMessage.getStoredMessage());
+
+        assertEquals("Unexpected size flowed", 100l, queue.flowToDisk(500l, manager));
+        assertEquals("Unexpected content size", 100l, queue.getInMemoryContentSize());
+        assertEquals("Unexpected number of messages flowed", 2l, manager.getMessagesFlowed());
+        assertEquals("Unexpected number of bytes flowed", 200l, manager.getBytesFlowed());
+
+        entries.get(1).acquire();
+        entries.get(1).delete();
+        assertEquals("Unexpected content size", 100l, queue.getInMemoryContentSize());
+
+        entries.get(0).delete();
+        assertEquals("Unexpected content size", 0l, queue.getInMemoryContentSize());
+    }
+
+    public void testFlowToDiskResumesFromLastEntryExamined() throws Exception
+    {
+        ServerMessage releasedMessage = createFlowableMessage(30l);
+        ServerMessage firstAvailableMessage = createFlowableMessage(31l);
+        ServerMessage secondAvailableMessage = createFlowableMessage(32l);
+
+        _queue.enqueue(releasedMessage, null);
+        _queue.enqueue(firstAvailableMessage, null);
+        _queue.enqueue(secondAvailableMessage, null);
+
+        List<? extends QueueEntry> entries = _queue.getMessagesOnTheQueue();
+        entries.get(0).acquire();
+
+        AbstractQueue<?> queue = (AbstractQueue<?>) _queue;
+        FlowToDiskManager manager = new FlowToDiskManager(null, 0l, null);
+        assertEquals("Unexpected size flowed", 100l, queue.flowToDisk(50l, manager));
+
+        // the entry behind the position from which flowing resumes is made available again
+        entries.get(0).release();
+        assertEquals("Unexpected size flowed", 200l, queue.flowToDisk(500l, manager));
+        verify((FlowableStoredMessage<?>) releasedMessage.getStoredMessage()).flowToDisk(null);
+        verify((FlowableStoredMessage<?>) secondAvailableMessage.getStoredMessage()).flowToDisk(null);
+
+        ServerMessage laterMessage = createFlowableMessage(33l);
+        _queue.enqueue(laterMessage, null);
+        assertEquals("Unexpected size flowed", 100l, queue.flowToDisk(500l, manager));
+        assertEquals("Unexpected size flowed", 0l, queue.flowToDisk(500l, manager));
+
+        verify((FlowableStoredMessage<?>) firstAvailableMessage.getStoredMessage()).flowToDisk(null);
+        assertEquals("Unexpected number of messages flowed", 4l, manager.getMessagesFlowed());
+        assertEquals("Unexpected content size", 0l, queue.getInMemoryContentSize());
+    }
+
+    private ServerMessage createFlowableMessage(Long id)
+    {
+        ServerMessage message = createMessage(id);
+        when(message.getSize()).thenReturn(100l);
+        FlowableStoredMessage<?> storedMessage = mock(FlowableStoredMessage.class);
+        when(storedMessage.flowToDisk(null)).thenReturn(100);
+        when(message.getStoredMessage()).thenReturn(storedMessage);
+        return message;
+    }
+
     /**
      * A helper method to put given number of messages into queue
      * <p>
@@ -0,0 +1,140 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import org.mockito.ArgumentCaptor;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.qpid.server.message.AMQMessageHeader;
+import org.apache.qpid.server.message.MessageInstance;
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.server.util.StateChangeListener;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class DefinedGroupMessageGroupManagerTest extends QpidTestCase
+{
+    private static final String GROUP_KEY = "group";
+
+    private final Map<QueueEntry, Long> _positions = new IdentityHashMap<QueueEntry, Long>();
+    private final Map<QueueEntry, Boolean> _available = new IdentityHashMap<QueueEntry, Boolean>();
+    private final MessageGroupManager.ConsumerResetHelper _resetHelper =
+            mock(MessageGroupManager.ConsumerResetHelper.class);
+    private final DefinedGroupMessageGroupManager _manager =
+            new DefinedGroupMessageGroupManager(GROUP_KEY, null, _resetHelper);
+
+    @SuppressWarnings("unchecked")
+    public void testConsumerTakingOverGroupIsOfferedEarliestAvailableEntry()
+    {
+        QueueEntry first = createEntry(1l, "A");
+        QueueEntry second = createEntry(2l, "A");
+        QueueEntry third = createEntry(3l, "A");
+        QueueConsumer<?> consumer1 = mock(QueueConsumer.class);
+        QueueConsumer<?> consumer2 = mock(QueueConsumer.class);
+
+        assertTrue(_manager.acceptMessage(consumer1, first));
+        ArgumentCaptor<StateChangeListener> listenerCaptor = ArgumentCaptor.forClass(StateChangeListener.class);
+        verify(first).addStateChangeListener(listenerCaptor.capture());
+        StateChangeListener<MessageInstance, MessageInstance.State> listener = listenerCaptor.getValue();
+        listener.stateChanged(first, MessageInstance.State.AVAILABLE, MessageInstance.State.ACQUIRED);
+
+        assertSame(second, _manager.findEarliestAssignedAvailableEntry(consumer1));
+
+        // the consumer closes, and the release of its entry frees the group
+        when(consumer1.isClosed()).thenReturn(true);
+        _manager.clearAssignments(consumer1);
+        _available.put(first, true);
+        _manager.entryRequeued(first);
+        listener.stateChanged(first, MessageInstance.State.ACQUIRED, MessageInstance.State.AVAILABLE);
+
+        verify(_resetHelper).resetSubPointersForGroups(consumer1, false);
+        assertNull(_manager.getAssignedConsumer(first));
+
+        assertTrue(_manager.acceptMessage(consumer2, second));
+
+        assertSame(consumer2, _manager.getAssignedConsumer(third));
+        assertSame(first, _manager.findEarliestAssignedAvailableEntry(consumer2));
+        assertNull(_manager.findEarliestAssignedAvailableEntry(consumer1));
+    }
+
+    public void testDequeuedEntryIsNotOffered()
+    {
+        QueueEntry first = createEntry(1l, "A");
+        QueueEntry second = createEntry(2l, "A");
+        QueueConsumer<?> consumer = mock(QueueConsumer.class);
+
+        assertTrue(_manager.acceptMessage(consumer, second));
+        assertSame(first, _manager.findEarliestAssignedAvailableEntry(consumer));
+
+        _available.put(first, false);
+        _manager.entryDequeued(first);
+
+        assertNull(_manager.findEarliestAssignedAvailableEntry(consumer));
+    }
+
+    private QueueEntry createEntry(final long position, final String group)
+    {
+        AMQMessageHeader header = mock(AMQMessageHeader.class);
+        when(header.getHeader(GROUP_KEY)).thenReturn(group);
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getMessageHeader()).thenReturn(header);
+
+        final QueueEntry entry = mock(QueueEntry.class);
+        when(entry.getMessage()).thenReturn(message);
+        when(entry.isAvailable()).thenAnswer(new Answer<Boolean>()
+        {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation)
+            {
+                return _available.get(entry);
+            }
+        });
+        when(entry.acquire(any(QueueConsumer.class))).thenAnswer(new Answer<Boolean>()
+        {
+            @Override
+            public Boolean answer(final InvocationOnMock invocation)
+            {
+                return _available.put(entry, false);
+            }
+        });
+        when(entry.compareTo(any(QueueEntry.class))).thenAnswer(new Answer<Integer>()
+        {
+            @Override
+            public Integer answer(final InvocationOnMock invocation)
+            {
+                return Long.compare(position, _positions.get(invocation.getArguments()[0]));
+            }
+        });
+        _positions.put(entry, position);
+        _available.put(entry, true);
+
+        _manager.entryEnqueued(entry);
+        return entry;
+    }
+}
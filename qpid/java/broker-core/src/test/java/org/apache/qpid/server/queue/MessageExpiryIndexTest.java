@@ -0,0 +1,133 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import org.apache.qpid.server.message.ServerMessage;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageExpiryIndexTest extends QpidTestCase
+{
+    private static final long GRANULARITY = 1000l;
+
+    private MessageExpiryIndex _index = new MessageExpiryIndex(GRANULARITY);
+    private List<QueueEntry> _visited = new ArrayList<QueueEntry>();
+    private QueueEntryVisitor _visitor = new QueueEntryVisitor()
+    {
+        @Override
+        public boolean visit(final QueueEntry entry)
+        {
+            _visited.add(entry);
+            return false;
+        }
+    };
+
+    public void testEntriesWithoutExpirationAreNotIndexed()
+    {
+        _index.add(createEntry(0l));
+
+        assertTrue(_index.isEmpty());
+    }
+
+    public void testOnlyDueEntriesAreVisited()
+    {
+        QueueEntry due1 = createEntry(10000l);
+        QueueEntry due2 = createEntry(20500l);
+        _index.add(due1);
+        _index.add(createEntry(30000l));
+        _index.add(due2);
+
+        _index.removeDue(20999l, _visitor);
+
+        assertEquals(new HashSet<QueueEntry>(Arrays.asList(due1, due2)), new HashSet<QueueEntry>(_visited));
+        assertFalse(_index.isEmpty());
+
+        _visited.clear();
+        _index.removeDue(20999l, _visitor);
+        assertTrue(_visited.isEmpty());
+    }
+
+    public void testRemovedEntryIsNotVisited()
+    {
+        QueueEntry entry = createEntry(10000l);
+        _index.add(entry);
+        _index.remove(entry);
+
+        _index.removeDue(20000l, _visitor);
+
+        assertTrue(_visited.isEmpty());
+    }
+
+    public void testEntryAddedAgainByVisitorIsLeftForNextCall()
+    {
+        final QueueEntry entry = createEntry(20500l);
+        _index.add(entry);
+
+        _index.removeDue(20000l, new QueueEntryVisitor()
+        {
+            @Override
+            public boolean visit(final QueueEntry visited)
+            {
+                _visited.add(visited);
+                _index.add(visited);
+                return false;
+            }
+        });
+
+        assertEquals(Collections.singletonList(entry), _visited);
+
+        _visited.clear();
+        _index.removeDue(21000l, _visitor);
+        assertEquals(Collections.singletonList(entry), _visited);
+        assertTrue(_index.isEmpty());
+    }
+
+    public void testCostOfFindingDueEntriesIsIndependentOfBacklog()
+    {
+        for(int i = 0; i < 10000; i++)
+        {
+            _index.add(createEntry(1000000l + i));
+        }
+        QueueEntry due = createEntry(5000l);
+        _index.add(due);
+
+        _index.removeDue(5000l, _visitor);
+
+        assertEquals(Collections.singletonList(due), _visited);
+    }
+
+    private QueueEntry createEntry(final long expiration)
+    {
+        ServerMessage message = mock(ServerMessage.class);
+        when(message.getExpiration()).thenReturn(expiration);
+        QueueEntry entry = mock(QueueEntry.class);
+        when(entry.getMessage()).thenReturn(message);
+        return entry;
+    }
+}
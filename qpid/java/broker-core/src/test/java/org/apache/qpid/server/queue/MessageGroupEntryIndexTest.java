@@ -0,0 +1,192 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.queue;
+
+import static org.mockito.Matchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.CyclicBarrier;
+
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class MessageGroupEntryIndexTest extends QpidTestCase
+{
+    private static final String GROUP = "group";
+
+    private final Map<QueueEntry, Long> _positions = new IdentityHashMap<QueueEntry, Long>();
+    private final MessageGroupEntryIndex _index = new MessageGroupEntryIndex();
+
+    public void testEarliestAvailableEntryIsInQueueOrder()
+    {
+        QueueEntry first = createEntry(1l);
+        QueueEntry second = createEntry(2l);
+        _index.add(GROUP, second);
+        _index.add("other", createEntry(0l));
+        _index.add(GROUP, first);
+
+        assertSame(first, _index.getEarliestAvailableEntry(GROUP));
+        assertNull(_index.getEarliestAvailableEntry("unknown"));
+    }
+
+    public void testAcquiredEntryIsRemovedUntilReleased()
+    {
+        QueueEntry first = createEntry(1l);
+        QueueEntry second = createEntry(2l);
+        _index.add(GROUP, first);
+        _index.add(GROUP, second);
+
+        when(first.isAvailable()).thenReturn(false);
+        _index.removeAcquired(GROUP, first);
+
+        assertSame(second, _index.getEarliestAvailableEntry(GROUP));
+        verify(first, times(1)).isAvailable();
+
+        when(first.isAvailable()).thenReturn(true);
+        _index.add(GROUP, first);
+
+        assertSame(first, _index.getEarliestAvailableEntry(GROUP));
+    }
+
+    public void testAcquiredEntryReleasedBeforeRemovalIsKept()
+    {
+        QueueEntry first = createEntry(1l);
+        QueueEntry second = createEntry(2l);
+        _index.add(GROUP, first);
+        _index.add(GROUP, second);
+
+        // the entry was released, and found still indexed, before its acquisition was recorded
+        _index.removeAcquired(GROUP, first);
+
+        assertSame(first, _index.getEarliestAvailableEntry(GROUP));
+    }
+
+    public void testDeletedAndAcquiredEntriesAreDiscardedByLookup()
+    {
+        QueueEntry deleted = createEntry(1l);
+        QueueEntry acquired = createEntry(2l);
+        QueueEntry available = createEntry(3l);
+        _index.add(GROUP, deleted);
+        _index.add(GROUP, acquired);
+        _index.add(GROUP, available);
+
+        when(deleted.isAvailable()).thenReturn(false);
+        when(deleted.isDeleted()).thenReturn(true);
+        when(acquired.isAvailable()).thenReturn(false);
+
+        assertSame(available, _index.getEarliestAvailableEntry(GROUP));
+        assertSame(available, _index.getEarliestAvailableEntry(GROUP));
+
+        // each was examined by the first lookup only
+        verify(deleted, times(2)).isAvailable();
+        verify(acquired, times(2)).isAvailable();
+
+        when(available.isAvailable()).thenReturn(false);
+        assertNull(_index.getEarliestAvailableEntry(GROUP));
+    }
+
+    public void testLookupDoesNotWalkUnacknowledgedEntries()
+    {
+        QueueEntry[] unacknowledged = new QueueEntry[10000];
+        for(int i = 0; i < unacknowledged.length; i++)
+        {
+            unacknowledged[i] = createEntry(i);
+            _index.add(GROUP, unacknowledged[i]);
+        }
+        QueueEntry available = createEntry(unacknowledged.length);
+        _index.add(GROUP, available);
+
+        for(QueueEntry entry : unacknowledged)
+        {
+            when(entry.isAvailable()).thenReturn(false);
+            _index.removeAcquired(GROUP, entry);
+        }
+
+        assertSame(available, _index.getEarliestAvailableEntry(GROUP));
+        verify(unacknowledged[0], times(1)).isAvailable();
+    }
+
+    public void testEntryAddedWhileLastEntryOfGroupIsRemovedIsKept() throws Exception
+    {
+        final QueueEntry removed = createEntry(1l);
+        final QueueEntry added = createEntry(2l);
+
+        for(int i = 0; i < 1000; i++)
+        {
+            final MessageGroupEntryIndex index = new MessageGroupEntryIndex();
+            index.add(GROUP, removed);
+
+            final CyclicBarrier barrier = new CyclicBarrier(2);
+            Thread remover = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    await(barrier);
+                    index.remove(GROUP, removed);
+                }
+            });
+            remover.start();
+
+            await(barrier);
+            index.add(GROUP, added);
+            remover.join();
+
+            assertSame("Unexpected earliest entry after " + i + " iterations",
+                       added, index.getEarliestAvailableEntry(GROUP));
+        }
+    }
+
+    private static void await(final CyclicBarrier barrier)
+    {
+        try
+        {
+            barrier.await();
+        }
+        catch (Exception e)
+        {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private QueueEntry createEntry(final long position)
+    {
+        QueueEntry entry = mock(QueueEntry.class);
+        when(entry.isAvailable()).thenReturn(true);
+        when(entry.compareTo(any(QueueEntry.class))).thenAnswer(new Answer<Integer>()
+        {
+            @Override
+            public Integer answer(final InvocationOnMock invocation)
+            {
+                return Long.compare(position, _positions.get(invocation.getArguments()[0]));
+            }
+        });
+        _positions.put(entry, position);
+        return entry;
+    }
+}
@@ -20,15 +20,23 @@
  */
 package org.apache.qpid.server.queue;
 
-import org.apache.qpid.pool.ReferenceCountingExecutorService;
 import org.apache.qpid.server.model.Queue;
+import org.apache.qpid.server.model.State;
 import org.apache.qpid.server.model.UUIDGenerator;
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.store.ConfiguredObjectRecord;
+import org.apache.qpid.server.store.ConfiguredObjectRecordImpl;
 import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.server.virtualhost.DeliveryExecutor;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
 import org.apache.qpid.test.utils.QpidTestCase;
 
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
 
 public class QueueThreadPoolTest extends QpidTestCase
 {
@@ -49,27 +57,83 @@ public class QueueThreadPoolTest extends QpidTestCase
 
     public void test() throws Exception
     {
-        int initialCount = ReferenceCountingExecutorService.getInstance().getReferenceCount();
         VirtualHostImpl test = BrokerTestHelper.createVirtualHost("test");
+        DeliveryExecutor deliveryExecutor = (DeliveryExecutor) test.getDeliveryExecutor();
 
         try
         {
+            assertNotNull("Activation did not start pool", deliveryExecutor);
+            assertFalse("Activation did not start pool", deliveryExecutor.isShutdown());
+
             Map<String,Object> attributes = new HashMap<String, Object>();
             attributes.put(Queue.ID, UUIDGenerator.generateRandomUUID());
             attributes.put(Queue.NAME, "test");
-            AMQQueue queue = test.createQueue(attributes);
-
-            assertFalse("Creation did not start Pool.", ReferenceCountingExecutorService.getInstance().getPool().isShutdown());
+            AbstractQueue<?> queue = (AbstractQueue<?>) test.createQueue(attributes);
 
-            assertEquals("References not increased", initialCount + 1, ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertExecutedByPool(queue);
+            assertTrue("Unexpected pool size " + test.getDeliveryThreadPoolSize(),
+                       test.getDeliveryThreadPoolSize() > 0);
 
             queue.stop();
 
-            assertEquals("References not decreased", initialCount , ReferenceCountingExecutorService.getInstance().getReferenceCount());
+            assertFalse("Stopping a queue shut down the pool", deliveryExecutor.isShutdown());
         }
         finally
         {
             test.close();
         }
+
+        assertTrue("Closing the virtual host did not shut down the pool", deliveryExecutor.isShutdown());
+    }
+
+    public void testRecoveredQueueUsesPoolOfActivatedVirtualHost() throws Exception
+    {
+        VirtualHostImpl<?,?,?> test = BrokerTestHelper.createInactiveVirtualHost("test");
+
+        try
+        {
+            // a durable queue is recovered from the configuration store before its virtual host is activated
+            Map<String,Object> attributes = new HashMap<String, Object>();
+            attributes.put(Queue.NAME, "recovered");
+            attributes.put(Queue.DURABLE, true);
+            ConfiguredObjectRecord record =
+                    new ConfiguredObjectRecordImpl(UUIDGenerator.generateRandomUUID(),
+                                                   Queue.class.getSimpleName(),
+                                                   attributes,
+                                                   Collections.singletonMap(VirtualHost.class.getSimpleName(),
+                                                                            test.asObjectRecord()));
+            test.getObjectFactory().recover(record, test).resolve();
+
+            test.setDesiredState(test.getState(), State.ACTIVE);
+
+            AbstractQueue<?> queue = (AbstractQueue<?>) test.getQueue("recovered");
+            assertNotNull("Queue was not recovered", queue);
+            assertExecutedByPool(queue);
+
+            queue.deliverAsync();
+        }
+        finally
+        {
+            test.close();
+        }
+    }
+
+    private void assertExecutedByPool(final AbstractQueue<?> queue) throws InterruptedException
+    {
+        final CountDownLatch executed = new CountDownLatch(1);
+        final AtomicReference<String> threadName = new AtomicReference<String>();
+        queue.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                threadName.set(Thread.currentThread().getName());
+                executed.countDown();
+            }
+        });
+
+        assertTrue("Queue work was not executed", executed.await(5, TimeUnit.SECONDS));
+        assertTrue("Queue work not executed by the virtual host pool: " + threadName.get(),
+                   threadName.get().startsWith("Delivery - test"));
     }
 }
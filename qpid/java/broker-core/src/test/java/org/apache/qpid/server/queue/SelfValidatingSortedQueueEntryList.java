@@ -22,7 +22,6 @@ package org.apache.qpid.server.queue;
 import org.junit.Assert;
 
 import org.apache.qpid.server.message.ServerMessage;
-import org.apache.qpid.server.queue.SortedQueueEntry.Colour;
 
 /**
  * Test extension of SortedQueueEntryList that provides data structure validation tests.
@@ -60,108 +59,21 @@ public class SelfValidatingSortedQueueEntryList extends SortedQueueEntryList
 
     public void assertQueueProperties()
     {
-        assertRootIsBlack();
-        assertTreeIntegrity();
-        assertChildrenOfRedAreBlack();
-        assertLeavesSameBlackPath();
+        assertEntriesInOrder();
     }
 
-    public void assertRootIsBlack()
+    public void assertEntriesInOrder()
     {
-        if(!isNodeColour(getRoot(), Colour.BLACK))
+        SortedQueueEntry previous = getHead();
+        SortedQueueEntry entry = next(previous);
+        while(entry != null)
         {
-            Assert.fail("Root Not Black");
-        }
-    }
-
-    public void assertTreeIntegrity()
-    {
-        assertTreeIntegrity(getRoot());
-    }
-
-    public void assertTreeIntegrity(final SortedQueueEntry node)
-    {
-        if(node == null)
-        {
-            return;
-        }
-        if(node.getLeft() != null)
-        {
-            if(node.getLeft().getParent() == node)
-            {
-                assertTreeIntegrity(node.getLeft());
-            }
-            else
-            {
-                Assert.fail("Tree integrity compromised");
-            }
-        }
-        if(node.getRight() != null)
-        {
-            if(node.getRight().getParent() == node)
-            {
-                assertTreeIntegrity(node.getRight());
-            }
-            else
-            {
-                Assert.fail("Tree integrity compromised");
-            }
-
-        }
-    }
-
-    public void assertLeavesSameBlackPath()
-    {
-        assertLeavesSameBlackPath(getRoot());
-    }
-
-    public int assertLeavesSameBlackPath(final SortedQueueEntry node)
-    {
-        if(node == null)
-        {
-            return 1;
-        }
-        final int left = assertLeavesSameBlackPath(node.getLeft());
-        final int right = assertLeavesSameBlackPath(node.getLeft());
-        if(left == right)
-        {
-            return isNodeColour(node, Colour.BLACK) ? 1 + left : left;
-        }
-        else
-        {
-            Assert.fail("Unequal paths to leaves");
-            return 1; //compiler
-        }
-    }
-
-    public void assertChildrenOfRedAreBlack()
-    {
-        assertChildrenOfRedAreBlack(getRoot());
-    }
-
-    public void assertChildrenOfRedAreBlack(final SortedQueueEntry node)
-    {
-        if(node == null)
-        {
-            return;
-        }
-        else if(node.getColour() == Colour.BLACK)
-        {
-            assertChildrenOfRedAreBlack(node.getLeft());
-            assertChildrenOfRedAreBlack(node.getRight());
-        }
-        else
-        {
-            if(isNodeColour(node.getLeft(), Colour.BLACK)
-                    && isNodeColour(node.getRight(), Colour.BLACK))
-            {
-                assertChildrenOfRedAreBlack(node.getLeft());
-                assertChildrenOfRedAreBlack(node.getRight());
-            }
-            else
+            if(previous != getHead() && previous.compareTo(entry) >= 0)
             {
-                Assert.fail("Children of Red are not both black");
+                Assert.fail("Entries out of order");
             }
+            previous = entry;
+            entry = next(entry);
         }
     }
 }
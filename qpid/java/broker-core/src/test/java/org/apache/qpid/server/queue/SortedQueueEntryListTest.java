@@ -28,6 +28,9 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicReference;
 
 import org.apache.qpid.server.logging.EventLogger;
 import org.apache.qpid.server.message.AMQMessageHeader;
@@ -89,6 +92,7 @@ public class SortedQueueEntryListTest extends QueueEntryListTestBase
         final VirtualHostImpl virtualHost = mock(VirtualHostImpl.class);
         when(virtualHost.getSecurityManager()).thenReturn(mock(SecurityManager.class));
         when(virtualHost.getEventLogger()).thenReturn(new EventLogger());
+        when(virtualHost.getDeliveryExecutor()).thenReturn(mock(Executor.class));
         ConfiguredObjectFactory factory = new ConfiguredObjectFactoryImpl(BrokerModel.getInstance());
         when(virtualHost.getObjectFactory()).thenReturn(factory);
         when(virtualHost.getModel()).thenReturn(factory.getModel());
@@ -413,6 +417,77 @@ public class SortedQueueEntryListTest extends QueueEntryListTestBase
         validateEntry(entry, "D", 2);
     }
 
+    public void testConcurrentAddAndDelete() throws Exception
+    {
+        final SortedQueueEntryList list = new SortedQueueEntryList(_testQueue);
+        final int threadCount = 8;
+        final int messagesPerThread = 500;
+
+        final ServerMessage[][] messages = new ServerMessage[threadCount][messagesPerThread];
+        for(int i = 0; i < threadCount; i++)
+        {
+            for(int j = 0; j < messagesPerThread; j++)
+            {
+                messages[i][j] = generateTestMessage(i * messagesPerThread + j, keys[j % keys.length]);
+            }
+        }
+
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<Throwable>();
+        Thread[] threads = new Thread[threadCount];
+        for(int i = 0; i < threadCount; i++)
+        {
+            final ServerMessage[] threadMessages = messages[i];
+            threads[i] = new Thread(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    try
+                    {
+                        start.await();
+                        for(int j = 0; j < threadMessages.length; j++)
+                        {
+                            QueueEntry entry = list.add(threadMessages[j]);
+                            // delete every other entry this thread adds
+                            if(j % 2 == 1)
+                            {
+                                entry.delete();
+                            }
+                        }
+                    }
+                    catch(Throwable t)
+                    {
+                        failure.compareAndSet(null, t);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        start.countDown();
+        for(Thread thread : threads)
+        {
+            thread.join(10000);
+        }
+        assertNull("Unexpected failure " + failure.get(), failure.get());
+
+        int count = 0;
+        QueueEntry previous = null;
+        QueueEntryIterator iter = list.iterator();
+        while(iter.advance())
+        {
+            QueueEntry entry = iter.getNode();
+            assertFalse("Deleted entry found", entry.isDeleted());
+            if(previous != null)
+            {
+                assertTrue("Entries out of order", previous.compareTo(entry) < 0);
+            }
+            previous = entry;
+            count++;
+        }
+        assertEquals("Unexpected number of entries", threadCount * messagesPerThread / 2, count);
+    }
+
     private void validateEntry(final SortedQueueEntry entry, final String expectedSortKey, final long expectedMessageId)
     {
         assertEquals("Sorted queue entry value is not as expected",
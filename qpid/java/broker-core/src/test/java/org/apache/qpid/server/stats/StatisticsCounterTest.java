@@ -146,4 +146,37 @@ public class StatisticsCounterTest extends TestCase
         Thread.sleep(1000);
         assertEquals(0.0, counter.getRate());
     }
+
+    /**
+     * Check that totals add up correctly when events are registered by many
+     * threads at once.
+     */
+    public void testTotalConcurrent() throws Exception
+    {
+        final StatisticsCounter counter = new StatisticsCounter("test", 1000L);
+        final int threadCount = 8;
+        final int events = 50000;
+
+        Thread[] threads = new Thread[threadCount];
+        for (int i = 0; i < threadCount; i++)
+        {
+            threads[i] = new Thread(new Runnable()
+            {
+                public void run()
+                {
+                    for (int j = 0; j < events; j++)
+                    {
+                        counter.registerEvent(3L);
+                    }
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads)
+        {
+            thread.join(10000L);
+        }
+
+        assertEquals(3L * threadCount * events, counter.getTotal());
+    }
 }
@@ -0,0 +1,175 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.nio.ByteBuffer;
+import java.util.HashMap;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+public class MessageContentCacheTest extends TestCase
+{
+    private MessageContentCache _cache = new MessageContentCache(10, 100);
+
+    public void testIsCacheable()
+    {
+        assertFalse("Content below the threshold is cacheable", _cache.isCacheable(9));
+        assertTrue("Content at the threshold is not cacheable", _cache.isCacheable(10));
+        assertTrue("Content at the maximum size is not cacheable", _cache.isCacheable(100));
+        assertFalse("Content above the maximum size is cacheable", _cache.isCacheable(101));
+    }
+
+    public void testPutAndGet()
+    {
+        _cache.put(1l, ByteBuffer.wrap(createContent(20, (byte) 1)));
+
+        ByteBuffer content = _cache.get(1l);
+        assertNotNull("Content is not cached", content);
+        assertTrue("Content is not held in a direct buffer", content.isDirect());
+        assertTrue("Cached content is writable", content.isReadOnly());
+        assertEquals("Unexpected content size", 20, content.remaining());
+        assertEquals("Unexpected content", 1, content.get(19));
+        assertEquals("Unexpected cache size", 20l, _cache.getSize());
+
+        assertNull("Unexpected content", _cache.get(2l));
+    }
+
+    public void testLeastRecentlyUsedContentIsEvicted()
+    {
+        _cache.put(1l, ByteBuffer.wrap(createContent(40, (byte) 1)));
+        _cache.put(2l, ByteBuffer.wrap(createContent(40, (byte) 2)));
+        _cache.get(1l);
+
+        _cache.put(3l, ByteBuffer.wrap(createContent(40, (byte) 3)));
+
+        assertNotNull("Recently used content was evicted", _cache.get(1l));
+        assertNull("Least recently used content was not evicted", _cache.get(2l));
+        assertNotNull("Added content was evicted", _cache.get(3l));
+        assertEquals("Unexpected cache size", 80l, _cache.getSize());
+    }
+
+    public void testRemoveAndClear()
+    {
+        _cache.put(1l, ByteBuffer.wrap(createContent(20, (byte) 1)));
+        _cache.put(2l, ByteBuffer.wrap(createContent(30, (byte) 2)));
+
+        _cache.remove(1l);
+        assertNull("Removed content is cached", _cache.get(1l));
+        assertEquals("Unexpected cache size", 30l, _cache.getSize());
+
+        _cache.clear();
+        assertNull("Content is cached after clear", _cache.get(2l));
+        assertEquals("Unexpected cache size", 0l, _cache.getSize());
+    }
+
+    public void testGetContentLoadsContentOnce()
+    {
+        byte[] bytes = createContent(20, (byte) 1);
+        bytes[5] = 5;
+        ArrayContentLoader loader = new ArrayContentLoader(bytes);
+
+        ByteBuffer dst = ByteBuffer.allocate(10);
+        assertEquals("Unexpected length", 10, _cache.getContent(1l, loader, 5, dst));
+        assertEquals("Unexpected content", 5, dst.get(0));
+        assertEquals("Unexpected loads", 1, loader._loadCount);
+
+        ByteBuffer content = _cache.getContent(1l, loader, 5, 30);
+        assertEquals("Unexpected slice size", 15, content.remaining());
+        assertEquals("Unexpected content", 5, content.get(0));
+        assertTrue("Slice is writable", content.isReadOnly());
+        assertEquals("Unexpected loads", 1, loader._loadCount);
+    }
+
+    public void testGetContentNotCachedBelowThreshold()
+    {
+        ArrayContentLoader loader = new ArrayContentLoader(createContent(9, (byte) 1));
+
+        assertEquals("Unexpected length", -1, _cache.getContent(1l, loader, 0, ByteBuffer.allocate(10)));
+        assertNull("Unexpected slice", _cache.getContent(1l, loader, 0, 10));
+        assertEquals("Unexpected loads", 0, loader._loadCount);
+        assertNull("Content is cached", _cache.get(1l));
+    }
+
+    public void testGetContentNotCachedWhenIncompletelyLoaded()
+    {
+        ArrayContentLoader loader = new ArrayContentLoader(createContent(20, (byte) 1))
+        {
+            @Override
+            public int getContentSize()
+            {
+                return 30;
+            }
+        };
+
+        assertNull("Unexpected slice", _cache.getContent(1l, loader, 0, 10));
+        assertNull("Content is cached", _cache.get(1l));
+    }
+
+    public void testCreateContentCache()
+    {
+        Map<String, Object> settings = new HashMap<String, Object>();
+        assertNull("Cache created without settings", MessageContentCache.createContentCache(settings));
+
+        settings.put(MessageStore.CONTENT_CACHE_THRESHOLD, "1024");
+        settings.put(MessageStore.CONTENT_CACHE_SIZE, 1024l * 1024l);
+        MessageContentCache cache = MessageContentCache.createContentCache(settings);
+        assertNotNull("Cache not created", cache);
+        assertFalse("Unexpected threshold", cache.isCacheable(1023));
+        assertTrue("Unexpected threshold", cache.isCacheable(1024));
+
+        settings.put(MessageStore.CONTENT_CACHE_THRESHOLD, 0);
+        assertNull("Cache created with zero threshold", MessageContentCache.createContentCache(settings));
+    }
+
+    private static class ArrayContentLoader implements MessageContentCache.ContentLoader
+    {
+        private final byte[] _content;
+        private int _loadCount;
+
+        private ArrayContentLoader(final byte[] content)
+        {
+            _content = content;
+        }
+
+        public int getContentSize()
+        {
+            return _content.length;
+        }
+
+        public int loadContent(final int offsetInMessage, final ByteBuffer dst)
+        {
+            _loadCount++;
+            int length = Math.min(dst.remaining(), _content.length - offsetInMessage);
+            dst.put(_content, offsetInMessage, length);
+            return length;
+        }
+    }
+
+    private byte[] createContent(final int size, final byte value)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = value;
+        }
+        return content;
+    }
+}
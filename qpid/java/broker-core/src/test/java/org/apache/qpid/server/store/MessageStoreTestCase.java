@@ -28,7 +28,11 @@ import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.UUID;
@@ -146,6 +150,34 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         verify(handler, times(2)).handle(any(StoredMessage.class));
     }
 
+    public void testVisitedMessagesReadMetaData() throws Exception
+    {
+        long messageId = 1;
+        int contentSize = 0;
+        TestMessageMetaData metaData = new TestMessageMetaData(messageId, contentSize);
+        final StoredMessage<TestMessageMetaData> message = _store.addMessage(metaData);
+        StoreFuture flushFuture = message.flushToStore();
+        flushFuture.waitForCompletion();
+
+        final List<StoredMessage<?>> visited = new ArrayList<StoredMessage<?>>();
+        _store.visitMessages(new MessageHandler()
+        {
+            @Override
+            public boolean handle(StoredMessage<?> storedMessage)
+            {
+                visited.add(storedMessage);
+                return true;
+            }
+        });
+
+        assertEquals("Unexpected number of messages visited", 1, visited.size());
+        StorableMessageMetaData visitedMetaData = visited.get(0).getMetaData();
+        assertNotNull("Meta-data of visited message not read", visitedMetaData);
+        assertEquals("Unexpected meta-data type", metaData.getType(), visitedMetaData.getType());
+        assertEquals("Unexpected content size", contentSize, visitedMetaData.getContentSize());
+        assertTrue("Visited message should be persistent", visitedMetaData.isPersistent());
+    }
+
     public void testReopenedMessageStoreUsesLastMessageId() throws Exception
     {
         int contentSize = 0;
@@ -235,6 +267,128 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         assertTrue("Message with id " + messageId2 + " is not found", enqueuedIds.contains(messageId2));
     }
 
+    public void testCommitTransactionsAsynchronously() throws Exception
+    {
+        final UUID mockQueueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource mockQueue = createTransactionLogResource(mockQueueId);
+
+        List<EnqueueableMessage> messages = new ArrayList<EnqueueableMessage>();
+        List<StoreFuture> futures = new ArrayList<StoreFuture>();
+        for (long messageId = 40L; messageId < 50L; messageId++)
+        {
+            EnqueueableMessage enqueueableMessage = createEnqueueableMessage(messageId);
+            messages.add(enqueueableMessage);
+
+            Transaction txn = getStore().newTransaction();
+            txn.enqueueMessage(mockQueue, enqueueableMessage);
+            futures.add(txn.commitTranAsync());
+        }
+
+        for (int i = 0; i < messages.size(); i += 2)
+        {
+            Transaction txn = getStore().newTransaction();
+            txn.dequeueMessage(mockQueue, messages.get(i));
+            futures.add(txn.commitTranAsync());
+        }
+
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+            assertTrue("Future is not complete", future.isComplete());
+        }
+
+        QueueFilteringMessageInstanceHandler filter = new QueueFilteringMessageInstanceHandler(mockQueueId);
+        getStore().visitMessageInstances(filter);
+        Set<Long> enqueuedIds = filter.getEnqueuedIds();
+
+        assertEquals("Number of enqueued messages is incorrect", 5, enqueuedIds.size());
+        for (int i = 1; i < messages.size(); i += 2)
+        {
+            long messageId = messages.get(i).getMessageNumber();
+            assertTrue("Message with id " + messageId + " is not found", enqueuedIds.contains(messageId));
+        }
+    }
+
+    public void testFailedTransactionDoesNotAbortTransactionsCommittedWithIt() throws Exception
+    {
+        final UUID mockQueueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource mockQueue = createTransactionLogResource(mockQueueId);
+
+        // stored, but never enqueued, so dequeuing it fails
+        EnqueueableMessage notEnqueuedMessage = createEnqueueableMessage(70L);
+
+        List<StoreFuture> futures = new ArrayList<StoreFuture>();
+        StoreFuture failingFuture = null;
+        for (long messageId = 71L; messageId < 81L; messageId++)
+        {
+            final StoredMessage<TestMessageMetaData> message = _store.addMessage(new TestMessageMetaData(messageId, 8));
+            message.addContent(0, createContent(messageId));
+
+            Transaction txn = getStore().newTransaction();
+            txn.enqueueMessage(mockQueue, createMockEnqueueableMessage(messageId, message));
+            futures.add(txn.commitTranAsync());
+
+            if (messageId == 75L)
+            {
+                Transaction failingTxn = getStore().newTransaction();
+                try
+                {
+                    failingTxn.dequeueMessage(mockQueue, notEnqueuedMessage);
+                    failingFuture = failingTxn.commitTranAsync();
+                }
+                catch (StoreException e)
+                {
+                    // some stores detect the missing entry as soon as the dequeue is made
+                    failingTxn.abortTran();
+                }
+            }
+        }
+
+        for (StoreFuture future : futures)
+        {
+            future.waitForCompletion();
+        }
+
+        if (failingFuture != null)
+        {
+            try
+            {
+                failingFuture.waitForCompletion();
+            }
+            catch (StoreException e)
+            {
+                // expected by stores which check the dequeue on commit
+            }
+        }
+
+        reopenStore();
+
+        QueueFilteringMessageInstanceHandler filter = new QueueFilteringMessageInstanceHandler(mockQueueId);
+        getStore().visitMessageInstances(filter);
+        Set<Long> enqueuedIds = filter.getEnqueuedIds();
+        assertEquals("Number of enqueued messages is incorrect", 10, enqueuedIds.size());
+
+        final Map<Long, StoredMessage<?>> storedMessages = new HashMap<Long, StoredMessage<?>>();
+        getStore().visitMessages(new MessageHandler()
+        {
+            @Override
+            public boolean handle(StoredMessage<?> storedMessage)
+            {
+                storedMessages.put(storedMessage.getMessageNumber(), storedMessage);
+                return true;
+            }
+        });
+
+        for (long messageId = 71L; messageId < 81L; messageId++)
+        {
+            assertTrue("Message with id " + messageId + " is not enqueued", enqueuedIds.contains(messageId));
+            StoredMessage<?> storedMessage = storedMessages.get(messageId);
+            assertNotNull("Message with id " + messageId + " is not found", storedMessage);
+            assertEquals("Unexpected content for message with id " + messageId,
+                         createContent(messageId), storedMessage.getContent(0, 8));
+        }
+    }
+
     public void testRollbackTransactionBeforeCommit() throws Exception
     {
         final UUID mockQueueId = UUIDGenerator.generateRandomUUID();
@@ -356,7 +510,7 @@ public abstract class MessageStoreTestCase extends QpidTestCase
     }
 
 
-    private TransactionLogResource createTransactionLogResource(UUID queueId)
+    protected TransactionLogResource createTransactionLogResource(UUID queueId)
     {
         TransactionLogResource queue = mock(TransactionLogResource.class);
         when(queue.getId()).thenReturn(queueId);
@@ -365,7 +519,7 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         return queue;
     }
 
-    private EnqueueableMessage createMockEnqueueableMessage(long messageId, final StoredMessage<TestMessageMetaData> message)
+    protected EnqueueableMessage createMockEnqueueableMessage(long messageId, final StoredMessage<TestMessageMetaData> message)
     {
         EnqueueableMessage enqueueableMessage = mock(EnqueueableMessage.class);
         when(enqueueableMessage.isPersistent()).thenReturn(true);
@@ -389,6 +543,14 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         return enqueueRecord;
     }
 
+    protected ByteBuffer createContent(long messageId)
+    {
+        ByteBuffer content = ByteBuffer.allocate(8);
+        content.putLong(messageId);
+        content.flip();
+        return content;
+    }
+
     private EnqueueableMessage createEnqueueableMessage(long messageId1)
     {
         final StoredMessage<TestMessageMetaData> message1 = _store.addMessage(new TestMessageMetaData(messageId1, 0));
@@ -414,7 +576,7 @@ public abstract class MessageStoreTestCase extends QpidTestCase
         }
     }
 
-    private class QueueFilteringMessageInstanceHandler implements MessageInstanceHandler
+    protected class QueueFilteringMessageInstanceHandler implements MessageInstanceHandler
     {
         private final UUID _queueId;
         private final Set<Long> _enqueuedIds = new HashSet<Long>();
@@ -0,0 +1,136 @@
+/*
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+
+public class SpillFileTest extends QpidTestCase
+{
+    private File _directory;
+    private SpillFile _spillFile;
+
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        _directory = new File(TMP_FOLDER, getTestName());
+        _spillFile = new SpillFile(_directory, 100);
+    }
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            _spillFile.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testWriteAndRead()
+    {
+        SpillFile.Location location = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 1)));
+        assertEquals("Unexpected length", 60, location.getLength());
+
+        ByteBuffer dst = ByteBuffer.allocate(100);
+        assertEquals("Unexpected number of bytes read", 50, _spillFile.read(location, 10, dst));
+        assertEquals("Unexpected position", 50, dst.position());
+        assertEquals("Unexpected content", 1, dst.get(49));
+    }
+
+    public void testSegmentDeletedOnceContentReleased()
+    {
+        SpillFile.Location first = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 1)));
+        SpillFile.Location second = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 2)));
+        SpillFile.Location third = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 3)));
+        assertEquals("Unexpected number of segments", 3, _directory.list().length);
+
+        _spillFile.release(second);
+        assertEquals("Segment not deleted after content released", 2, _directory.list().length);
+        assertEquals("Unexpected number of bytes read", 60, _spillFile.read(first, 0, ByteBuffer.allocate(60)));
+
+        _spillFile.release(first);
+        assertEquals("Segment not deleted after content released", 1, _directory.list().length);
+
+        _spillFile.release(third);
+        assertEquals("Current segment deleted", 1, _directory.list().length);
+
+        _spillFile.close();
+        assertFalse("Spill directory exists after close", _directory.exists());
+    }
+
+    public void testCloseDeletesSegmentsHoldingLiveContent()
+    {
+        SpillFile.Location first = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 1)));
+        SpillFile.Location second = _spillFile.write(ByteBuffer.wrap(createContent(60, (byte) 2)));
+        assertEquals("Unexpected number of segments", 2, _directory.list().length);
+
+        _spillFile.close();
+        assertFalse("Spill directory exists after close", _directory.exists());
+
+        try
+        {
+            _spillFile.read(first, 0, ByteBuffer.allocate(60));
+            fail("Segment still open after close");
+        }
+        catch (StoreException e)
+        {
+            // pass
+        }
+
+        // content may still be released by messages removed after the spill file is closed
+        _spillFile.release(first);
+        _spillFile.release(second);
+    }
+
+    public void testStoredMemoryMessageFlowedToDisk()
+    {
+        StoredMemoryMessage message = new StoredMemoryMessage(1l, new TestMessageMetaData(1l, 50));
+        message.addContent(0, ByteBuffer.wrap(createContent(50, (byte) 7)));
+
+        assertEquals("Unexpected number of bytes flowed", 50, message.flowToDisk(_spillFile));
+        assertEquals("Content flowed twice", 0, message.flowToDisk(_spillFile));
+        assertEquals("Unexpected number of segments", 1, _directory.list().length);
+
+        ByteBuffer content = message.getContent(0, 50);
+        assertEquals("Unexpected content size", 50, content.remaining());
+        assertEquals("Unexpected content", 7, content.get(49));
+
+        assertEquals("Unexpected number of bytes flowed", 50, message.flowToDisk(_spillFile));
+        message.remove();
+        assertEquals("Unexpected number of segments", 1, _directory.list().length);
+    }
+
+    private byte[] createContent(final int size, final byte value)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = value;
+        }
+        return content;
+    }
+}
@@ -21,19 +21,26 @@
 package org.apache.qpid.server.txn;
 
 import org.apache.qpid.server.message.MessageInstance;
+import org.apache.qpid.server.message.MessageReference;
 import org.apache.qpid.server.message.ServerMessage;
 import org.apache.qpid.server.queue.BaseQueue;
 import org.apache.qpid.server.queue.MockMessageInstance;
 import org.apache.qpid.server.store.MessageStore;
 import org.apache.qpid.server.store.TransactionLogResource;
 import org.apache.qpid.server.txn.MockStoreTransaction.TransactionState;
+import org.apache.qpid.server.util.Action;
 import org.apache.qpid.test.utils.QpidTestCase;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import static org.mockito.Matchers.any;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 /**
@@ -462,6 +469,28 @@ public class LocalTransactionTest extends QpidTestCase
         assertFalse("Rollback action2 must not be fired", _action1.isRollbackActionFired());
     }
 
+    /**
+     * Tests that the enqueues of a transaction are performed as one batch per queue on commit.
+     */
+    public void testCommitEnqueuesMessagesForEachQueueTogether() throws Exception
+    {
+        BaseQueue queue1 = createQueue(false);
+        BaseQueue queue2 = createQueue(false);
+        ServerMessage message1 = createReferenceableMessage();
+        ServerMessage message2 = createReferenceableMessage();
+
+        _transaction.enqueue(Arrays.asList(queue1, queue2), message1,
+                             new EnqueueAction(new BaseQueue[] { queue1, queue2 }, message1, null));
+        _transaction.enqueue(queue1, message2, new EnqueueAction(new BaseQueue[] { queue1 }, message2, null));
+        _transaction.commit();
+
+        verify(queue1).enqueue(Arrays.asList(message1, message2), null);
+        verify(queue2).enqueue(Collections.singletonList(message1), null);
+        verify(queue1, never()).enqueue(any(ServerMessage.class), any(Action.class));
+        verify(message1.newReference()).release();
+        verify(message2.newReference()).release();
+    }
+
     /**
      * Variation of testRollbackWork with an additional post transaction action.
      * 
@@ -660,6 +689,14 @@ public class LocalTransactionTest extends QpidTestCase
         return new MockServerMessage(persistent);
     }
 
+    private ServerMessage createReferenceableMessage()
+    {
+        ServerMessage message = mock(ServerMessage.class);
+        MessageReference reference = mock(MessageReference.class);
+        when(message.newReference()).thenReturn(reference);
+        return message;
+    }
+
     private void assertNotFired(MockAction action)
     {
         assertFalse("Rollback action must not be fired", action.isRollbackActionFired());
@@ -113,6 +113,19 @@ public class BrokerTestHelper
     public static VirtualHostImpl<?,?,?> createVirtualHost(Map<String, Object> attributes)
             throws Exception
     {
+        VirtualHostImpl<?,?,?> host = createInactiveVirtualHost(attributes);
+        host.setDesiredState(host.getState(), State.ACTIVE);
+
+        return host;
+    }
+
+    /**
+     * Creates a virtual host which has not yet been activated, as when its children are recovered from the
+     * configuration store.
+     */
+    public static VirtualHostImpl<?,?,?> createInactiveVirtualHost(Map<String, Object> attributes)
+            throws Exception
+    {
 
         Broker<?> broker = createBrokerMock();
         ConfiguredObjectFactory objectFactory = broker.getObjectFactory();
@@ -126,13 +139,20 @@ public class BrokerTestHelper
         when(virtualHostNode.getModel()).thenReturn(objectFactory.getModel());
         when(virtualHostNode.getObjectFactory()).thenReturn(objectFactory);
         when(virtualHostNode.getCategoryClass()).thenReturn(VirtualHostNode.class);
-        AbstractVirtualHost host = (AbstractVirtualHost) objectFactory.create(VirtualHost.class, attributes, virtualHostNode );
-        host.setDesiredState(host.getState(), State.ACTIVE);
-
-        return host;
+        return (AbstractVirtualHost) objectFactory.create(VirtualHost.class, attributes, virtualHostNode );
     }
 
     public static VirtualHostImpl<?,?,?> createVirtualHost(String name) throws Exception
+    {
+        return createVirtualHost(createVirtualHostAttributes(name));
+    }
+
+    public static VirtualHostImpl<?,?,?> createInactiveVirtualHost(String name) throws Exception
+    {
+        return createInactiveVirtualHost(createVirtualHostAttributes(name));
+    }
+
+    private static Map<String, Object> createVirtualHostAttributes(String name)
     {
         Map<String,Object> attributes = new HashMap<String, Object>();
         attributes.put(org.apache.qpid.server.model.VirtualHost.TYPE, StandardVirtualHost.TYPE);
@@ -143,7 +163,7 @@ public class BrokerTestHelper
         attributes.put(org.apache.qpid.server.model.VirtualHost.MESSAGE_STORE_SETTINGS, messageStoreSettings);
         attributes.put(org.apache.qpid.server.model.VirtualHost.NAME, name);
 
-        return createVirtualHost(attributes);
+        return attributes;
     }
 
     public static AMQSessionModel<?,?> createSession(int channelId, AMQConnectionModel<?,?> connection)
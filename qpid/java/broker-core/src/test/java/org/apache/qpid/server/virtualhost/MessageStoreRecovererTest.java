@@ -25,13 +25,18 @@ import static org.mockito.Matchers.argThat;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Matchers.isNull;
 import static org.mockito.Matchers.same;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 
 import junit.framework.TestCase;
 
@@ -59,6 +64,8 @@ import org.apache.qpid.server.txn.DtxRegistry;
 import org.apache.qpid.server.util.Action;
 import org.apache.qpid.transport.Xid;
 import org.mockito.ArgumentMatcher;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class MessageStoreRecovererTest extends TestCase
 {
@@ -211,6 +218,106 @@ public class MessageStoreRecovererTest extends TestCase
         verify(storedMessage, times(1)).remove();
     }
 
+    @SuppressWarnings("unchecked")
+    public void testParallelRecoveryEnqueuesInstancesOnEachQueueInOrder()
+    {
+        final int messageCount = 2500;
+        final AMQQueue<?> queue1 = createRegisteredMockQueue();
+        final AMQQueue<?> queue2 = createRegisteredMockQueue();
+        final List<Long> queue1Messages = Collections.synchronizedList(new ArrayList<Long>());
+        final List<Long> queue2Messages = Collections.synchronizedList(new ArrayList<Long>());
+        doAnswer(new EnqueueRecorder(queue1Messages)).when(queue1).enqueue(any(ServerMessage.class),
+                                                                       (Action<? super MessageInstance>) isNull());
+        doAnswer(new EnqueueRecorder(queue2Messages)).when(queue2).enqueue(any(ServerMessage.class),
+                                                                       (Action<? super MessageInstance>) isNull());
+
+        final List<StoredMessage<StorableMessageMetaData>> storedMessages =
+                new ArrayList<StoredMessage<StorableMessageMetaData>>();
+        final List<Long> expectedMessages = new ArrayList<Long>();
+        for (long messageId = 1; messageId <= messageCount; messageId++)
+        {
+            storedMessages.add(createMockStoredMessage(messageId));
+            expectedMessages.add(messageId);
+        }
+
+        MessageStore store = new NullMessageStore()
+        {
+            @Override
+            public void visitMessages(MessageHandler handler) throws StoreException
+            {
+                for (StoredMessage<StorableMessageMetaData> storedMessage : storedMessages)
+                {
+                    handler.handle(storedMessage);
+                }
+            }
+
+            @Override
+            public void visitMessageInstances(MessageInstanceHandler handler) throws StoreException
+            {
+                for (long messageId = 1; messageId <= messageCount; messageId++)
+                {
+                    handler.handle(queue1.getId(), messageId);
+                    handler.handle(queue2.getId(), messageId);
+                }
+            }
+        };
+
+        when(_virtualHost.getMessageStore()).thenReturn(store);
+
+        MessageStoreRecoverer recoverer = new MessageStoreRecoverer(_virtualHost, mock(MessageStoreLogSubject.class), 3);
+        recoverer.recover();
+
+        assertEquals("Unexpected messages on queue 1", expectedMessages, queue1Messages);
+        assertEquals("Unexpected messages on queue 2", expectedMessages, queue2Messages);
+        assertEquals("Unexpected number of message instances recovered", 2 * messageCount,
+                     recoverer.getMessageInstancesRecovered());
+    }
+
+    @SuppressWarnings("unchecked")
+    public void testParallelRecoveryFailureDiscardsPartialBatches()
+    {
+        final AMQQueue<?> queue = createRegisteredMockQueue();
+        final List<Long> queueMessages = Collections.synchronizedList(new ArrayList<Long>());
+        doAnswer(new EnqueueRecorder(queueMessages)).when(queue).enqueue(any(ServerMessage.class),
+                                                                     (Action<? super MessageInstance>) isNull());
+
+        final StoredMessage<StorableMessageMetaData> storedMessage = createMockStoredMessage(1);
+        final StoreException visitFailure = new StoreException("Failed to read message instances");
+        MessageStore store = new NullMessageStore()
+        {
+            @Override
+            public void visitMessages(MessageHandler handler) throws StoreException
+            {
+                handler.handle(storedMessage);
+            }
+
+            @Override
+            public void visitMessageInstances(MessageInstanceHandler handler) throws StoreException
+            {
+                handler.handle(queue.getId(), storedMessage.getMessageNumber());
+                throw visitFailure;
+            }
+        };
+
+        when(_virtualHost.getMessageStore()).thenReturn(store);
+
+        AtomicLong messageInstancesRecovered = new AtomicLong();
+        MessageStoreRecoverer recoverer = new MessageStoreRecoverer(_virtualHost, mock(MessageStoreLogSubject.class), 3,
+                                                                    messageInstancesRecovered);
+        try
+        {
+            recoverer.recover();
+            fail("Exception not thrown");
+        }
+        catch (StoreException e)
+        {
+            assertSame("Unexpected exception", visitFailure, e);
+        }
+
+        assertTrue("Partial batch should not have been enqueued", queueMessages.isEmpty());
+        assertEquals("Unexpected number of message instances recovered", 0, messageInstancesRecovered.get());
+    }
+
     @SuppressWarnings("unchecked")
     public void testRecoveryOfSingleEnqueueWithDistributedTransaction()
     {
@@ -381,6 +488,23 @@ public class MessageStoreRecovererTest extends TestCase
     }
 
 
+    private static final class EnqueueRecorder implements Answer<Void>
+    {
+        private final List<Long> _messageIds;
+
+        private EnqueueRecorder(List<Long> messageIds)
+        {
+            _messageIds = messageIds;
+        }
+
+        @Override
+        public Void answer(InvocationOnMock invocation)
+        {
+            _messageIds.add(((ServerMessage<?>) invocation.getArguments()[0]).getMessageNumber());
+            return null;
+        }
+    }
+
     private final class QueueIdMatcher extends ArgumentMatcher<TransactionLogResource>
     {
         private UUID _queueId;
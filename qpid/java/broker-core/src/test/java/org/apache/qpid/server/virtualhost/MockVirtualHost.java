@@ -24,6 +24,7 @@ import java.security.AccessControlException;
 import java.util.Collection;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ScheduledFuture;
 
 import org.apache.qpid.server.configuration.updater.TaskExecutor;
@@ -101,6 +102,12 @@ public class MockVirtualHost implements VirtualHostImpl<MockVirtualHost, AMQQueu
         return 0;
     }
 
+    @Override
+    public Executor getDeliveryExecutor()
+    {
+        return null;
+    }
+
     public MessageStore getMessageStore()
     {
         return null;
@@ -273,6 +280,30 @@ public class MockVirtualHost implements VirtualHostImpl<MockVirtualHost, AMQQueu
         return 0;
     }
 
+    @Override
+    public int getDeliveryThreadCount()
+    {
+        return 0;
+    }
+
+    @Override
+    public int getDeliveryThreadPoolSize()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getDeliveryRunQueueDepth()
+    {
+        return 0;
+    }
+
+    @Override
+    public long getMessageInstancesRecovered()
+    {
+        return 0;
+    }
+
     @Override
     public Map<String, Object> getMessageStoreSettings()
     {
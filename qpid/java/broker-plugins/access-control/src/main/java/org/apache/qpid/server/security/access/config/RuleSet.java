@@ -20,18 +20,17 @@ package org.apache.qpid.server.security.access.config;
 
 import java.net.InetAddress;
 import java.security.Principal;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
-import java.util.EnumMap;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.WeakHashMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 
 import javax.security.auth.Subject;
 
@@ -46,6 +45,7 @@ import org.apache.qpid.server.security.access.ObjectProperties;
 import org.apache.qpid.server.security.access.ObjectType;
 import org.apache.qpid.server.security.access.Operation;
 import org.apache.qpid.server.security.access.Permission;
+import org.apache.qpid.server.util.BoundedCache;
 
 /**
  * Models the rule configuration for the access control plugin.
@@ -67,9 +67,14 @@ public class RuleSet implements EventLoggerProvider
 
     private static final Integer _increment = 10;
 
+    /** The number of access decisions retained, each for an identity, operation, object type and properties */
+    private static final int DECISION_CACHE_SIZE = 4096;
+
     private final SortedMap<Integer, Rule> _rules = new TreeMap<Integer, Rule>();
-    private final Map<Subject, Map<Operation, Map<ObjectType, List<Rule>>>> _cache =
-                        new WeakHashMap<Subject, Map<Operation, Map<ObjectType, List<Rule>>>>();
+    private final Set<String> _ruleIdentities = new TreeSet<String>(String.CASE_INSENSITIVE_ORDER);
+    private final ConcurrentHashMap<RuleListKey, RuleList> _cache = new ConcurrentHashMap<RuleListKey, RuleList>();
+    private final BoundedCache<DecisionKey, Decision> _decisionCache =
+            new BoundedCache<DecisionKey, Decision>(DECISION_CACHE_SIZE);
     private final Map<String, Boolean> _config = new HashMap<String, Boolean>();
     private final EventLoggerProvider _eventLogger;
 
@@ -86,8 +91,9 @@ public class RuleSet implements EventLoggerProvider
     public void clear()
     {
         _rules.clear();
-        _cache.clear();
+        _ruleIdentities.clear();
         _config.clear();
+        invalidateCaches();
     }
 
     public int getRuleCount()
@@ -103,14 +109,26 @@ public class RuleSet implements EventLoggerProvider
      */
     public List<Rule> getRules(final Subject subject, final Operation operation, final ObjectType objectType)
     {
-        final Map<ObjectType, List<Rule>> objects = getObjectToRuleCache(subject, operation);
+        final RuleList rules = getRuleList(getIdentities(subject), operation, objectType);
+        if(_logger.isDebugEnabled())
+        {
+            _logger.debug("Returning RuleList: " + rules);
+        }
+        return rules == null ? null : rules.getRules();
+    }
 
-        // Lookup object type rules for the operation
-        if (!objects.containsKey(objectType))
+    /**
+     * @return the rules for the identities, operation and object type, or null if there are no rules at all for the
+     * operation and object type
+     */
+    private RuleList getRuleList(final Set<String> identities, final Operation operation, final ObjectType objectType)
+    {
+        final RuleListKey key = new RuleListKey(identities, operation, objectType);
+        RuleList rules = _cache.get(key);
+        if (rules == null)
         {
-            final Set<Principal> principals = subject.getPrincipals();
             boolean controlled = false;
-            List<Rule> filtered = new LinkedList<Rule>();
+            List<Rule> filtered = new ArrayList<Rule>();
             for (Rule rule : _rules.values())
             {
                 final Action ruleAction = rule.getAction();
@@ -120,7 +138,7 @@ public class RuleSet implements EventLoggerProvider
                 {
                     controlled = true;
 
-                    if (isRelevant(principals,rule))
+                    if (isRelevant(identities, rule))
                     {
                         filtered.add(rule);
                     }
@@ -130,24 +148,20 @@ public class RuleSet implements EventLoggerProvider
             // Return null if there are no rules at all for this operation and object type
             if (filtered.isEmpty() && controlled == false)
             {
-                filtered = null;
+                return null;
             }
 
-            // Save the rules we selected
-            objects.put(objectType, filtered);
+            rules = new RuleList(filtered);
+            final RuleList existing = _cache.putIfAbsent(key, rules);
+            if (existing != null)
+            {
+                rules = existing;
+            }
             if(_logger.isDebugEnabled())
             {
-                _logger.debug("Cached " + objectType + " RulesList: " + filtered);
+                _logger.debug("Cached " + objectType + " RulesList: " + rules);
             }
         }
-
-        // Return the cached rules
-        List<Rule> rules = objects.get(objectType);
-        if(_logger.isDebugEnabled())
-        {
-            _logger.debug("Returning RuleList: " + rules);
-        }
-
         return rules;
     }
 
@@ -213,18 +227,30 @@ public class RuleSet implements EventLoggerProvider
         }
 
         // save rule
-        _cache.clear();
         _rules.put(rule.getNumber(), rule);
+        if (!rule.getIdentity().equalsIgnoreCase(Rule.ALL))
+        {
+            _ruleIdentities.add(rule.getIdentity());
+        }
+        invalidateCaches();
     }
 
     public void enableRule(int ruleNumber)
     {
         _rules.get(Integer.valueOf(ruleNumber)).enable();
+        invalidateCaches();
     }
 
     public void disableRule(int ruleNumber)
     {
         _rules.get(Integer.valueOf(ruleNumber)).disable();
+        invalidateCaches();
+    }
+
+    private void invalidateCaches()
+    {
+        _cache.clear();
+        _decisionCache.clear();
     }
 
     /** Return true if the name is well-formed (contains legal characters). */
@@ -299,7 +325,8 @@ public class RuleSet implements EventLoggerProvider
         }
 
         // get the list of rules relevant for this request
-        List<Rule> rules = getRules(subject, operation, objectType);
+        final Set<String> identities = getIdentities(subject);
+        final RuleList rules = getRuleList(identities, operation, objectType);
         if (rules == null)
         {
             if(_logger.isDebugEnabled())
@@ -309,38 +336,52 @@ public class RuleSet implements EventLoggerProvider
             return getDefault();
         }
 
-        // Iterate through a filtered set of rules dealing with this identity and operation
-        for (Rule rule : rules)
+        // the rule matched depends on the address of the client only if some rule is restricted by address
+        final Rule rule;
+        if (rules.hasFirewallRules())
         {
-            if(_logger.isDebugEnabled())
+            rule = rules.getMatchingRule(action, addressOfClient);
+        }
+        else
+        {
+            final DecisionKey key = new DecisionKey(identities, operation, objectType, properties);
+            Decision decision = _decisionCache.get(key);
+            if (decision == null)
             {
-                _logger.debug("Checking against rule: " + rule);
+                decision = new Decision(rules.getMatchingRule(action, null));
+                // the properties are copied as those of the request may later be changed by the caller
+                _decisionCache.put(new DecisionKey(identities,
+                                                   operation,
+                                                   objectType,
+                                                   properties == null ? null : new ObjectProperties(properties)),
+                                   decision);
             }
+            rule = decision._rule;
+        }
 
-            if (action.matches(rule.getAclAction(), addressOfClient))
-            {
-                Permission permission = rule.getPermission();
-
-                switch (permission)
-                {
-                    case ALLOW_LOG:
-                        getEventLogger().message(AccessControlMessages.ALLOWED(
-                                action.getOperation().toString(),
-                                action.getObjectType().toString(),
-                                action.getProperties().toString()));
-                    case ALLOW:
-                        return Result.ALLOWED;
-                    case DENY_LOG:
-                        getEventLogger().message(AccessControlMessages.DENIED(
-                                action.getOperation().toString(),
-                                action.getObjectType().toString(),
-                                action.getProperties().toString()));
-                    case DENY:
-                        return Result.DENIED;
-                }
+        if (rule != null)
+        {
+            Permission permission = rule.getPermission();
 
-                return Result.DENIED;
+            switch (permission)
+            {
+                case ALLOW_LOG:
+                    getEventLogger().message(AccessControlMessages.ALLOWED(
+                            action.getOperation().toString(),
+                            action.getObjectType().toString(),
+                            action.getProperties().toString()));
+                case ALLOW:
+                    return Result.ALLOWED;
+                case DENY_LOG:
+                    getEventLogger().message(AccessControlMessages.DENIED(
+                            action.getOperation().toString(),
+                            action.getObjectType().toString(),
+                            action.getProperties().toString()));
+                case DENY:
+                    return Result.DENIED;
             }
+
+            return Result.DENIED;
         }
 
         // Defer to the next plugin of this type, if it exists
@@ -399,7 +440,25 @@ public class RuleSet implements EventLoggerProvider
          return Collections.unmodifiableMap(_rules);
      }
 
-    private boolean isRelevant(final Set<Principal> principals, final Rule rule)
+    /**
+     * @return the names of the principals of the subject which are the identities of some rules, so that subjects
+     * whose principals differ only in names that no rule mentions share their cached rules and decisions
+     */
+    private Set<String> getIdentities(final Subject subject)
+    {
+        final Set<String> identities = new TreeSet<String>();
+        for (Principal principal : subject.getPrincipals())
+        {
+            final String name = principal.getName();
+            if (name != null && _ruleIdentities.contains(name))
+            {
+                identities.add(name);
+            }
+        }
+        return identities;
+    }
+
+    private boolean isRelevant(final Set<String> identities, final Rule rule)
     {
         if (rule.getIdentity().equalsIgnoreCase(Rule.ALL))
         {
@@ -407,11 +466,9 @@ public class RuleSet implements EventLoggerProvider
         }
         else
         {
-            for (Iterator<Principal> iterator = principals.iterator(); iterator.hasNext();)
+            for (String identity : identities)
             {
-                final Principal principal = iterator.next();
-
-                if (rule.getIdentity().equalsIgnoreCase(principal.getName()))
+                if (rule.getIdentity().equalsIgnoreCase(identity))
                 {
                     return true;
                 }
@@ -421,28 +478,219 @@ public class RuleSet implements EventLoggerProvider
         return false;
     }
 
-    private Map<ObjectType, List<Rule>> getObjectToRuleCache(final Subject subject, final Operation operation)
+    public EventLogger getEventLogger()
+    {
+        return _eventLogger.getEventLogger();
+    }
+
+    /**
+     * The rules relevant to a set of identities for an operation and object type, in rule order, indexed by the object
+     * name to which they are restricted so that only the rules which might match a given object need be checked.
+     */
+    private static final class RuleList
+    {
+        private final List<Rule> _rules;
+        private final List<Rule> _unnamedRules = new ArrayList<Rule>();
+        private final Map<String, List<Rule>> _namedRules = new HashMap<String, List<Rule>>();
+        private final boolean _firewallRules;
+
+        private RuleList(final List<Rule> rules)
+        {
+            _rules = Collections.unmodifiableList(rules);
+            boolean firewallRules = false;
+            for (Rule rule : rules)
+            {
+                firewallRules |= rule.getAclAction().getFirewallRule() != null;
+
+                final String name = getObjectName(rule);
+                if (name == null)
+                {
+                    _unnamedRules.add(rule);
+                }
+                else
+                {
+                    List<Rule> namedRules = _namedRules.get(name);
+                    if (namedRules == null)
+                    {
+                        namedRules = new ArrayList<Rule>();
+                        _namedRules.put(name, namedRules);
+                    }
+                    namedRules.add(rule);
+                }
+            }
+            _firewallRules = firewallRules;
+        }
+
+        private List<Rule> getRules()
+        {
+            return _rules;
+        }
+
+        private boolean hasFirewallRules()
+        {
+            return _firewallRules;
+        }
+
+        /**
+         * @return the first rule matching the action, or null if none does
+         */
+        private Rule getMatchingRule(final ClientAction action, final InetAddress addressOfClient)
+        {
+            final ObjectProperties properties = action.getProperties();
+            final String name = properties == null ? null : properties.getName();
+            final List<Rule> namedRules = name == null ? null : _namedRules.get(name);
+            final List<Rule> unnamedRules = _unnamedRules;
+
+            // merge the rules restricted to the name of the object with those which are not, in rule order
+            int namedIndex = 0;
+            int unnamedIndex = 0;
+            final int namedCount = namedRules == null ? 0 : namedRules.size();
+            final int unnamedCount = unnamedRules.size();
+            while (namedIndex < namedCount || unnamedIndex < unnamedCount)
+            {
+                final Rule rule;
+                if (unnamedIndex == unnamedCount
+                    || (namedIndex < namedCount
+                        && namedRules.get(namedIndex).getNumber() < unnamedRules.get(unnamedIndex).getNumber()))
+                {
+                    rule = namedRules.get(namedIndex++);
+                }
+                else
+                {
+                    rule = unnamedRules.get(unnamedIndex++);
+                }
+
+                if(_logger.isDebugEnabled())
+                {
+                    _logger.debug("Checking against rule: " + rule);
+                }
+
+                if (action.matches(rule.getAclAction(), addressOfClient))
+                {
+                    return rule;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * @return the name to which the rule restricts the object, or null if the rule may match objects of any name
+         */
+        private static String getObjectName(final Rule rule)
+        {
+            final ObjectProperties properties = rule.getAction().getProperties();
+            final String name = properties == null ? null : properties.get(ObjectProperties.Property.NAME);
+            if (name == null || name.length() == 0 || name.endsWith(ObjectProperties.WILD_CARD))
+            {
+                return null;
+            }
+            return name;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _rules.toString();
+        }
+    }
+
+    private static final class RuleListKey
     {
-        // Lookup identity in cache and create empty operation map if required
-        Map<Operation, Map<ObjectType, List<Rule>>> operations = _cache.get(subject);
-        if (operations == null)
+        private final Set<String> _identities;
+        private final Operation _operation;
+        private final ObjectType _objectType;
+
+        private RuleListKey(final Set<String> identities, final Operation operation, final ObjectType objectType)
         {
-            operations = new EnumMap<Operation, Map<ObjectType, List<Rule>>>(Operation.class);
-            _cache.put(subject, operations);
+            _identities = identities;
+            _operation = operation;
+            _objectType = objectType;
         }
 
-        // Lookup operation and create empty object type map if required
-        Map<ObjectType, List<Rule>> objects = operations.get(operation);
-        if (objects == null)
+        @Override
+        public boolean equals(final Object o)
         {
-            objects = new EnumMap<ObjectType, List<Rule>>(ObjectType.class);
-            operations.put(operation, objects);
+            if (this == o)
+            {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass())
+            {
+                return false;
+            }
+            final RuleListKey that = (RuleListKey) o;
+            return _operation == that._operation
+                   && _objectType == that._objectType
+                   && _identities.equals(that._identities);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = _identities.hashCode();
+            result = 31 * result + _operation.hashCode();
+            result = 31 * result + _objectType.hashCode();
+            return result;
         }
-        return objects;
     }
 
-    public EventLogger getEventLogger()
+    private static final class DecisionKey
     {
-        return _eventLogger.getEventLogger();
+        private final Set<String> _identities;
+        private final Operation _operation;
+        private final ObjectType _objectType;
+        private final ObjectProperties _properties;
+
+        private DecisionKey(final Set<String> identities,
+                            final Operation operation,
+                            final ObjectType objectType,
+                            final ObjectProperties properties)
+        {
+            _identities = identities;
+            _operation = operation;
+            _objectType = objectType;
+            _properties = properties;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (o == null || getClass() != o.getClass())
+            {
+                return false;
+            }
+            final DecisionKey that = (DecisionKey) o;
+            return _operation == that._operation
+                   && _objectType == that._objectType
+                   && _identities.equals(that._identities)
+                   && (_properties == null ? that._properties == null : _properties.equals(that._properties));
+        }
+
+        @Override
+        public int hashCode()
+        {
+            int result = _identities.hashCode();
+            result = 31 * result + _operation.hashCode();
+            result = 31 * result + _objectType.hashCode();
+            result = 31 * result + (_properties == null ? 0 : _properties.hashCode());
+            return result;
+        }
+    }
+
+    /**
+     * The rule matched by a cached access check, if any.
+     */
+    private static final class Decision
+    {
+        private final Rule _rule;
+
+        private Decision(final Rule rule)
+        {
+            _rule = rule;
+        }
     }
 }
@@ -466,4 +466,48 @@ public class RuleSetTest extends QpidTestCase
 
         assertEquals(Result.ALLOWED, _ruleSet.check(subjectInAllowedGroupAndOneOther,Operation.ACCESS, ObjectType.VIRTUALHOST, ObjectProperties.EMPTY));
     }
+
+    public void testNamedRulesCheckedInRuleOrderWithUnnamedRules()
+    {
+        for (int i = 0; i < 1000; i++)
+        {
+            _ruleSet.grant(10 + i, TEST_USER, Permission.ALLOW, Operation.CONSUME, ObjectType.QUEUE,
+                           new ObjectProperties("queue" + i));
+        }
+        _ruleSet.grant(5, TEST_USER, Permission.DENY, Operation.CONSUME, ObjectType.QUEUE,
+                       new ObjectProperties("queue1*"));
+        _ruleSet.grant(2000, TEST_USER, Permission.DENY, Operation.CONSUME, ObjectType.QUEUE, ObjectProperties.EMPTY);
+
+        assertEquals(Result.ALLOWED, _ruleSet.check(_testSubject, Operation.CONSUME, ObjectType.QUEUE, new ObjectProperties("queue0")));
+        assertEquals(Result.ALLOWED, _ruleSet.check(_testSubject, Operation.CONSUME, ObjectType.QUEUE, new ObjectProperties("queue999")));
+        assertEquals(Result.DENIED, _ruleSet.check(_testSubject, Operation.CONSUME, ObjectType.QUEUE, new ObjectProperties("queue10")));
+        assertEquals(Result.DENIED, _ruleSet.check(_testSubject, Operation.CONSUME, ObjectType.QUEUE, new ObjectProperties("queue1000")));
+        assertEquals(Result.DENIED, _ruleSet.check(_testSubject, Operation.CONSUME, ObjectType.QUEUE, ObjectProperties.EMPTY));
+    }
+
+    public void testCachedDecisionInvalidatedByRuleChanges()
+    {
+        ObjectProperties properties = new ObjectProperties(ALLOWED_VH);
+        _ruleSet.grant(10, TEST_USER, Permission.ALLOW, Operation.ACCESS, ObjectType.VIRTUALHOST, properties);
+        assertEquals(Result.ALLOWED, _ruleSet.check(_testSubject, Operation.ACCESS, ObjectType.VIRTUALHOST, properties));
+
+        _ruleSet.grant(5, TEST_USER, Permission.DENY, Operation.ACCESS, ObjectType.VIRTUALHOST, properties);
+        assertEquals(Result.DENIED, _ruleSet.check(_testSubject, Operation.ACCESS, ObjectType.VIRTUALHOST, properties));
+
+        _ruleSet.disableRule(5);
+        assertEquals(Result.ALLOWED, _ruleSet.check(_testSubject, Operation.ACCESS, ObjectType.VIRTUALHOST, properties));
+    }
+
+    public void testCachedDecisionNotSharedBetweenIdentities()
+    {
+        String group = "aclgroup";
+        _ruleSet.grant(1, group, Permission.ALLOW, Operation.ACCESS, ObjectType.VIRTUALHOST, ObjectProperties.EMPTY);
+
+        Subject member = TestPrincipalUtils.createTestSubject("usera", group);
+        Subject nonMember = TestPrincipalUtils.createTestSubject("userb");
+
+        assertEquals(Result.ALLOWED, _ruleSet.check(member, Operation.ACCESS, ObjectType.VIRTUALHOST, ObjectProperties.EMPTY));
+        assertEquals(Result.DEFER, _ruleSet.check(nonMember, Operation.ACCESS, ObjectType.VIRTUALHOST, ObjectProperties.EMPTY));
+        assertEquals(Result.ALLOWED, _ruleSet.check(member, Operation.ACCESS, ObjectType.VIRTUALHOST, ObjectProperties.EMPTY));
+    }
 }
@@ -25,6 +25,7 @@ import org.apache.qpid.server.logging.EventLogger;
 import org.apache.qpid.server.logging.messages.ConnectionMessages;
 import org.apache.qpid.server.model.Port;
 import org.apache.qpid.server.model.Transport;
+import org.apache.qpid.transport.GatheringSender;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.network.Assembler;
 import org.apache.qpid.transport.network.Disassembler;
@@ -87,7 +88,8 @@ public class ProtocolEngine_0_10  extends InputHandler implements ServerProtocol
             _network = network;
 
             _connection.setNetworkConnection(network);
-            _connection.setSender(new Disassembler(wrapSender(sender), MAX_FRAME_SIZE));
+            // message bodies are held by the store and never modified, so they can be written without copying
+            _connection.setSender(new Disassembler(wrapSender(sender), MAX_FRAME_SIZE, true));
             // FIXME Two log messages to maintain compatibility with earlier protocol versions
             _connection.getEventLogger().message(ConnectionMessages.OPEN(null, "0-10", null, null, false, true, false, false));
 
@@ -96,6 +98,11 @@ public class ProtocolEngine_0_10  extends InputHandler implements ServerProtocol
 
     private Sender<ByteBuffer> wrapSender(final Sender<ByteBuffer> sender)
     {
+        if(sender instanceof GatheringSender)
+        {
+            return wrapGatheringSender((GatheringSender) sender);
+        }
+
         return new Sender<ByteBuffer>()
         {
             @Override
@@ -129,6 +136,44 @@ public class ProtocolEngine_0_10  extends InputHandler implements ServerProtocol
         };
     }
 
+    private GatheringSender wrapGatheringSender(final GatheringSender sender)
+    {
+        return new GatheringSender()
+        {
+            @Override
+            public void setIdleTimeout(int i)
+            {
+                sender.setIdleTimeout(i);
+            }
+
+            @Override
+            public void send(ByteBuffer msg)
+            {
+                _lastWriteTime = System.currentTimeMillis();
+                sender.send(msg);
+            }
+
+            @Override
+            public void sendWithoutCopy(ByteBuffer... buffers)
+            {
+                _lastWriteTime = System.currentTimeMillis();
+                sender.sendWithoutCopy(buffers);
+            }
+
+            @Override
+            public void flush()
+            {
+                sender.flush();
+            }
+
+            @Override
+            public void close()
+            {
+                sender.close();
+            }
+        };
+    }
+
     @Override
     public long getLastReadTime()
     {
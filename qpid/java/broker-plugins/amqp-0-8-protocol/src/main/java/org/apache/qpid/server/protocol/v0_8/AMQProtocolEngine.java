@@ -80,9 +80,11 @@ import org.apache.qpid.server.util.Action;
 import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
 import org.apache.qpid.server.util.ServerScopedRuntimeException;
 import org.apache.qpid.server.virtualhost.VirtualHostImpl;
+import org.apache.qpid.transport.GatheringSender;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.util.ByteBufferPool;
 import org.apache.qpid.util.BytesDataOutput;
 
 public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSession<AMQProtocolEngine>
@@ -93,6 +95,8 @@ public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSessi
     // channels.  This value must be of the form 2^x - 1.
     private static final int CHANNEL_CACHE_SIZE = 0xff;
     private static final int REUSABLE_BYTE_BUFFER_CAPACITY = 65 * 1024;
+    private static final int CONTENT_FRAME_HEADER_SIZE = 1 + 2 + 4;
+    private static final ByteBuffer FRAME_END = ByteBuffer.wrap(new byte[] { AMQFrame.FRAME_END_BYTE });
     private final Port _port;
 
     private AMQShortString _contextKey;
@@ -531,27 +535,29 @@ public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSessi
     }
 
 
+    private final ByteBufferPool _bufferPool = ByteBufferPool.getHeapPool();
     private final byte[] _reusableBytes = new byte[REUSABLE_BYTE_BUFFER_CAPACITY];
     private final ByteBuffer _reusableByteBuffer = ByteBuffer.wrap(_reusableBytes);
     private final BytesDataOutput _reusableDataOutput = new BytesDataOutput(_reusableBytes);
 
+    /**
+     * Encodes the given block into the reusable buffer, or for blocks too large for it into a buffer drawn from
+     * the shared heap buffer pool, which the caller should return by {@link #releaseBuffer(ByteBuffer)} once sent.
+     */
     private ByteBuffer asByteBuffer(AMQDataBlock block)
     {
         final int size = (int) block.getSize();
 
-        final byte[] data;
-
-
+        final ByteBuffer buf;
         if(size > REUSABLE_BYTE_BUFFER_CAPACITY)
         {
-            data= new byte[size];
+            buf = _bufferPool.acquire(size);
         }
         else
         {
-
-            data = _reusableBytes;
+            buf = _reusableByteBuffer;
         }
-        _reusableDataOutput.setBuffer(data);
+        _reusableDataOutput.setBuffer(buf.array());
 
         try
         {
@@ -562,22 +568,20 @@ public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSessi
             throw new ServerScopedRuntimeException(e);
         }
 
-        final ByteBuffer buf;
-
-        if(size <= REUSABLE_BYTE_BUFFER_CAPACITY)
-        {
-            buf = _reusableByteBuffer;
-            buf.position(0);
-        }
-        else
-        {
-            buf = ByteBuffer.wrap(data);
-        }
+        buf.position(0);
         buf.limit(_reusableDataOutput.length());
 
         return buf;
     }
 
+    private void releaseBuffer(ByteBuffer buf)
+    {
+        if(buf != _reusableByteBuffer)
+        {
+            _bufferPool.release(buf);
+        }
+    }
+
     public void methodFrameReceived(int channelId, AMQMethodBody methodBody)
     {
         final AMQMethodEvent<AMQMethodBody> evt = new AMQMethodEvent<AMQMethodBody>(channelId, methodBody);
@@ -678,6 +682,60 @@ public class AMQProtocolEngine implements ServerProtocolEngine, AMQProtocolSessi
         }
 
         _sender.send(buf);
+        releaseBuffer(buf);
+        final long time = System.currentTimeMillis();
+        _lastIoTime = time;
+        _lastWriteTime.set(time);
+
+        if(!_deferFlush)
+        {
+            _sender.flush();
+        }
+    }
+
+    public synchronized void writeContentFrame(AMQDataBlock frames, int channelId, ByteBuffer content)
+    {
+        final int contentSize = content.remaining();
+        final int headerSize = (frames == null ? 0 : (int) frames.getSize()) + CONTENT_FRAME_HEADER_SIZE;
+
+        // the header is not encoded into the reusable buffer as the sender may keep hold of it
+        final byte[] header = new byte[headerSize];
+        final BytesDataOutput headerOutput = new BytesDataOutput(header);
+        try
+        {
+            if(frames != null)
+            {
+                frames.writePayload(headerOutput);
+            }
+            headerOutput.writeByte(ContentBody.TYPE);
+            EncodingUtils.writeUnsignedShort(headerOutput, channelId);
+            EncodingUtils.writeUnsignedInteger(headerOutput, contentSize);
+        }
+        catch (IOException e)
+        {
+            throw new ServerScopedRuntimeException(e);
+        }
+
+        _writtenBytes += headerSize + contentSize + 1;
+
+        if(_logger.isDebugEnabled())
+        {
+            _logger.debug("SEND: " + (frames == null ? "" : frames + " ")
+                          + "content body frame on channel " + channelId + " of " + contentSize + " bytes");
+        }
+
+        final ByteBuffer[] buffers = { ByteBuffer.wrap(header), content, FRAME_END.duplicate() };
+        if(_sender instanceof GatheringSender)
+        {
+            ((GatheringSender) _sender).sendWithoutCopy(buffers);
+        }
+        else
+        {
+            for(ByteBuffer buf : buffers)
+            {
+                _sender.send(buf);
+            }
+        }
         final long time = System.currentTimeMillis();
         _lastIoTime = time;
         _lastWriteTime.set(time);
@@ -21,6 +21,7 @@
 package org.apache.qpid.server.protocol.v0_8;
 
 import java.net.SocketAddress;
+import java.nio.ByteBuffer;
 import java.security.Principal;
 import java.util.List;
 import java.util.concurrent.locks.Lock;
@@ -29,6 +30,7 @@ import javax.security.auth.Subject;
 import javax.security.sasl.SaslServer;
 
 import org.apache.qpid.AMQException;
+import org.apache.qpid.framing.AMQDataBlock;
 import org.apache.qpid.framing.AMQShortString;
 import org.apache.qpid.framing.FieldTable;
 import org.apache.qpid.framing.MethodDispatcher;
@@ -58,6 +60,17 @@ public interface AMQProtocolSession<T extends AMQProtocolSession<T>>
 
     ClientDeliveryMethod createDeliveryMethod(int channelId);
 
+    /**
+     * Writes the given frames followed by a content body frame carrying the given message content. The content
+     * is passed to the network without being copied where the transport allows it, so it must not be modified
+     * afterwards.
+     *
+     * @param frames the frames to write ahead of the content body frame, may be null
+     * @param channelId the channel of the content body frame
+     * @param content the message content
+     */
+    void writeContentFrame(AMQDataBlock frames, int channelId, ByteBuffer content);
+
     long getLastReceivedTime();
 
     /**
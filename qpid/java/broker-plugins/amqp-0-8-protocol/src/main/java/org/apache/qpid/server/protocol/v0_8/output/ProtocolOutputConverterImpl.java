@@ -43,7 +43,6 @@ import org.apache.qpid.server.protocol.v0_8.AMQProtocolSession;
 
 import java.io.DataOutput;
 import java.io.IOException;
-import java.nio.ByteBuffer;
 
 class ProtocolOutputConverterImpl implements ProtocolOutputConverter
 {
@@ -104,11 +103,10 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
 
         int bodySize = (int) message.getSize();
 
+        SmallCompositeAMQBodyBlock compositeBlock = new SmallCompositeAMQBodyBlock(channelId, deliverBody,
+                                                                                   contentHeaderBody);
         if(bodySize == 0)
         {
-            SmallCompositeAMQBodyBlock compositeBlock = new SmallCompositeAMQBodyBlock(channelId, deliverBody,
-                                                                             contentHeaderBody);
-
             writeFrame(compositeBlock);
         }
         else
@@ -120,72 +118,18 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
 
             int writtenSize = capacity;
 
-            AMQBody firstContentBody = new MessageContentSourceBody(message,0,capacity);
-
-            CompositeAMQBodyBlock
-                    compositeBlock = new CompositeAMQBodyBlock(channelId, deliverBody, contentHeaderBody, firstContentBody);
-            writeFrame(compositeBlock);
+            // the content is handed to the session as held by the store, rather than being encoded into the frame
+            getProtocolSession().writeContentFrame(compositeBlock, channelId, message.getContent(0, capacity));
 
             while(writtenSize < bodySize)
             {
                 capacity = bodySize - writtenSize > maxBodySize ? maxBodySize : bodySize - writtenSize;
-                MessageContentSourceBody body = new MessageContentSourceBody(message, writtenSize, capacity);
+                getProtocolSession().writeContentFrame(null, channelId, message.getContent(writtenSize, capacity));
                 writtenSize += capacity;
-
-                writeFrame(new AMQFrame(channelId, body));
             }
         }
     }
 
-    private class MessageContentSourceBody implements AMQBody
-    {
-        public static final byte TYPE = 3;
-        private int _length;
-        private MessageContentSource _message;
-        private int _offset;
-
-        public MessageContentSourceBody(MessageContentSource message, int offset, int length)
-        {
-            _message = message;
-            _offset = offset;
-            _length = length;
-        }
-
-        public byte getFrameType()
-        {
-            return TYPE;
-        }
-
-        public int getSize()
-        {
-            return _length;
-        }
-
-        public void writePayload(DataOutput buffer) throws IOException
-        {
-            ByteBuffer buf = _message.getContent(_offset, _length);
-
-            if(buf.hasArray())
-            {
-                buffer.write(buf.array(), buf.arrayOffset()+buf.position(), buf.remaining());
-            }
-            else
-            {
-
-                byte[] data = new byte[_length];
-
-                buf.get(data);
-
-                buffer.write(data);
-            }
-        }
-
-        public void handle(int channelId, AMQVersionAwareProtocolSession amqProtocolSession) throws AMQException
-        {
-            throw new UnsupportedOperationException();
-        }
-    }
-
     public void writeGetOk(final ServerMessage msg,
                            final InstanceProperties props,
                            int channelId,
@@ -348,48 +292,6 @@ class ProtocolOutputConverterImpl implements ProtocolOutputConverter
     }
 
 
-    public static final class CompositeAMQBodyBlock extends AMQDataBlock
-    {
-        public static final int OVERHEAD = 3 * AMQFrame.getFrameOverhead();
-
-        private final AMQBody _methodBody;
-        private final AMQBody _headerBody;
-        private final AMQBody _contentBody;
-        private final int _channel;
-
-
-        public CompositeAMQBodyBlock(int channel, AMQBody methodBody, AMQBody headerBody, AMQBody contentBody)
-        {
-            _channel = channel;
-            _methodBody = methodBody;
-            _headerBody = headerBody;
-            _contentBody = contentBody;
-        }
-
-        public long getSize()
-        {
-            return OVERHEAD + _methodBody.getSize() + _headerBody.getSize() + _contentBody.getSize();
-        }
-
-        public void writePayload(DataOutput buffer) throws IOException
-        {
-            AMQFrame.writeFrames(buffer, _channel, _methodBody, _headerBody, _contentBody);
-        }
-
-        @Override
-        public String toString()
-        {
-            StringBuilder builder = new StringBuilder();
-            builder.append("[").append(getClass().getSimpleName())
-                .append(" methodBody=").append(_methodBody)
-                .append(", headerBody=").append(_headerBody)
-                .append(", contentBody=").append(_contentBody)
-                .append(", channel=").append(_channel).append("]");
-            return builder.toString();
-        }
-
-    }
-
     public static final class SmallCompositeAMQBodyBlock extends AMQDataBlock
     {
         public static final int OVERHEAD = 2 * AMQFrame.getFrameOverhead();
@@ -0,0 +1,305 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v0_8.output;
+
+import static org.mockito.Mockito.mock;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.framing.AMQBody;
+import org.apache.qpid.framing.AMQFrame;
+import org.apache.qpid.framing.AMQShortString;
+import org.apache.qpid.framing.BasicContentHeaderProperties;
+import org.apache.qpid.framing.ContentBody;
+import org.apache.qpid.framing.ContentHeaderBody;
+import org.apache.qpid.framing.MethodRegistry;
+import org.apache.qpid.framing.ProtocolVersion;
+import org.apache.qpid.framing.abstraction.MessagePublishInfo;
+import org.apache.qpid.server.message.MessageContentSource;
+import org.apache.qpid.server.model.Broker;
+import org.apache.qpid.server.model.Port;
+import org.apache.qpid.server.model.Transport;
+import org.apache.qpid.server.protocol.v0_8.AMQProtocolEngine;
+import org.apache.qpid.server.protocol.v0_8.MockMessagePublishInfo;
+import org.apache.qpid.server.util.BrokerTestHelper;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.GatheringSender;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.network.NetworkConnection;
+
+/**
+ * Checks that message content handed to the session as held by the store is framed exactly as when it was encoded
+ * into a single buffer along with the delivery and header frames.
+ */
+public class ProtocolOutputConverterImplTest extends QpidTestCase
+{
+    private static final int CHANNEL = 1;
+    private static final int MAX_FRAME_SIZE = 512;
+    private static final int REPLY_CODE = 312;
+    private static final AMQShortString REPLY_TEXT = new AMQShortString("No route");
+
+    private final MethodRegistry _methodRegistry = MethodRegistry.getMethodRegistry(ProtocolVersion.v0_91);
+    private final MessagePublishInfo _publishInfo = new MockMessagePublishInfo();
+    private AMQProtocolEngine _engine;
+
+    public void setUp() throws Exception
+    {
+        super.setUp();
+        BrokerTestHelper.setUp();
+        Broker broker = BrokerTestHelper.createBrokerMock();
+        _engine = new AMQProtocolEngine(broker, mock(NetworkConnection.class), 0, mock(Port.class), Transport.TCP);
+        _engine.setMaxFrameSize(MAX_FRAME_SIZE);
+    }
+
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            super.tearDown();
+        }
+        finally
+        {
+            BrokerTestHelper.tearDown();
+        }
+    }
+
+    public void testEmptyContent() throws Exception
+    {
+        assertWrittenAsSingleBuffer(new byte[0]);
+    }
+
+    public void testSingleFrameContent() throws Exception
+    {
+        assertWrittenAsSingleBuffer(createContent(100));
+    }
+
+    public void testContentFillingSingleFrame() throws Exception
+    {
+        assertWrittenAsSingleBuffer(createContent(MAX_FRAME_SIZE - AMQFrame.getFrameOverhead()));
+    }
+
+    public void testMultiFrameContent() throws Exception
+    {
+        assertWrittenAsSingleBuffer(createContent(3 * MAX_FRAME_SIZE + 17));
+    }
+
+    public void testContentGatheredWithoutCopy() throws Exception
+    {
+        byte[] content = createContent(3 * MAX_FRAME_SIZE + 17);
+        RecordingSender gathering = new RecordingSender();
+        writeReturn(gathering, content);
+
+        assertEquals("Unexpected number of gathered content frames", 4, gathering._gathered.size());
+        int offset = 0;
+        for (ByteBuffer[] buffers : gathering._gathered)
+        {
+            assertEquals("Unexpected number of buffers per frame", 3, buffers.length);
+            ByteBuffer frameContent = buffers[1];
+            assertSame("Content was copied", content, frameContent.array());
+            assertEquals("Unexpected content offset", offset, frameContent.arrayOffset() + frameContent.position());
+            offset += frameContent.remaining();
+        }
+        assertEquals("Not all of the content was gathered", content.length, offset);
+    }
+
+    private void assertWrittenAsSingleBuffer(final byte[] content) throws IOException
+    {
+        byte[] expected = encodeAsSingleBuffer(content);
+
+        CopyingSender copying = new CopyingSender();
+        writeReturn(copying, content);
+        assertTrue("Unexpected encoding of " + content.length + " bytes of content when copied",
+                   Arrays.equals(expected, copying.toByteArray()));
+
+        RecordingSender gathering = new RecordingSender();
+        writeReturn(gathering, content);
+        assertTrue("Unexpected encoding of " + content.length + " bytes of content when gathered",
+                   Arrays.equals(expected, gathering.toByteArray()));
+    }
+
+    private void writeReturn(final Sender<ByteBuffer> sender, final byte[] content)
+    {
+        _engine.setNetworkConnection(mock(NetworkConnection.class), sender);
+        ProtocolOutputConverterImpl converter = new ProtocolOutputConverterImpl(_engine, _methodRegistry);
+        converter.writeReturn(_publishInfo, createHeader(content), new ArrayContentSource(content), CHANNEL,
+                              REPLY_CODE, REPLY_TEXT);
+    }
+
+    /**
+     * Encodes the frames as they were before content was handed to the session separately: the first content body
+     * in one block with the method and header frames, and each following content body as a frame of its own.
+     */
+    private byte[] encodeAsSingleBuffer(final byte[] content) throws IOException
+    {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream output = new DataOutputStream(bytes);
+
+        AMQBody returnBody = _methodRegistry.createBasicReturnBody(REPLY_CODE,
+                                                                   REPLY_TEXT,
+                                                                   _publishInfo.getExchange(),
+                                                                   _publishInfo.getRoutingKey());
+        ContentHeaderBody header = createHeader(content);
+        if (content.length == 0)
+        {
+            AMQFrame.writeFrames(output, CHANNEL, returnBody, header);
+        }
+        else
+        {
+            int maxBodySize = MAX_FRAME_SIZE - AMQFrame.getFrameOverhead();
+            int capacity = Math.min(maxBodySize, content.length);
+            AMQFrame.writeFrames(output, CHANNEL, returnBody, header,
+                                 new ContentBody(Arrays.copyOfRange(content, 0, capacity)));
+            for (int written = capacity; written < content.length; written += capacity)
+            {
+                capacity = Math.min(maxBodySize, content.length - written);
+                new AMQFrame(CHANNEL, new ContentBody(Arrays.copyOfRange(content, written, written + capacity)))
+                        .writePayload(output);
+            }
+        }
+        output.flush();
+        return bytes.toByteArray();
+    }
+
+    private ContentHeaderBody createHeader(final byte[] content)
+    {
+        BasicContentHeaderProperties properties = new BasicContentHeaderProperties();
+        properties.setContentType("application/octet-stream");
+        return new ContentHeaderBody(60, 0, properties, content.length);
+    }
+
+    private byte[] createContent(final int size)
+    {
+        byte[] content = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    private static class ArrayContentSource implements MessageContentSource
+    {
+        private final byte[] _content;
+
+        private ArrayContentSource(final byte[] content)
+        {
+            _content = content;
+        }
+
+        public int getContent(final ByteBuffer buf, final int offset)
+        {
+            int length = Math.min(buf.remaining(), _content.length - offset);
+            buf.put(_content, offset, length);
+            return length;
+        }
+
+        public ByteBuffer getContent(final int offset, final int size)
+        {
+            return ByteBuffer.wrap(_content, offset, size).slice();
+        }
+
+        public long getSize()
+        {
+            return _content.length;
+        }
+    }
+
+    /** Consumes each buffer sent by copying it, as the senders which do not gather do. */
+    private static class CopyingSender implements Sender<ByteBuffer>
+    {
+        private final ByteArrayOutputStream _output = new ByteArrayOutputStream();
+
+        public void send(final ByteBuffer msg)
+        {
+            byte[] bytes = new byte[msg.remaining()];
+            msg.get(bytes);
+            _output.write(bytes, 0, bytes.length);
+        }
+
+        public void setIdleTimeout(final int i)
+        {
+        }
+
+        public void flush()
+        {
+        }
+
+        public void close()
+        {
+        }
+
+        byte[] toByteArray()
+        {
+            return _output.toByteArray();
+        }
+    }
+
+    /** Records the buffers handed over without copy, which are read only once the whole delivery has been sent. */
+    private static class RecordingSender extends CopyingSender implements GatheringSender
+    {
+        private final List<Object> _sent = new ArrayList<Object>();
+        private final List<ByteBuffer[]> _gathered = new ArrayList<ByteBuffer[]>();
+
+        @Override
+        public void send(final ByteBuffer msg)
+        {
+            byte[] bytes = new byte[msg.remaining()];
+            msg.get(bytes);
+            _sent.add(bytes);
+        }
+
+        public void sendWithoutCopy(final ByteBuffer... buffers)
+        {
+            _gathered.add(buffers);
+            _sent.add(buffers);
+        }
+
+        @Override
+        byte[] toByteArray()
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            for (Object sent : _sent)
+            {
+                if (sent instanceof byte[])
+                {
+                    output.write((byte[]) sent, 0, ((byte[]) sent).length);
+                }
+                else
+                {
+                    for (ByteBuffer buffer : (ByteBuffer[]) sent)
+                    {
+                        ByteBuffer buf = buffer.duplicate();
+                        byte[] bytes = new byte[buf.remaining()];
+                        buf.get(bytes);
+                        output.write(bytes, 0, bytes.length);
+                    }
+                }
+            }
+            return output.toByteArray();
+        }
+    }
+}
@@ -20,11 +20,9 @@
  */
 package org.apache.qpid.server.protocol.v1_0;
 
-import org.apache.qpid.amqp_1_0.codec.ValueHandler;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
 import org.apache.qpid.amqp_1_0.transport.SendingLinkEndpoint;
-import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
 import org.apache.qpid.amqp_1_0.type.Binary;
 import org.apache.qpid.amqp_1_0.type.DeliveryState;
 import org.apache.qpid.amqp_1_0.type.Outcome;
@@ -45,7 +43,6 @@ import org.apache.qpid.server.protocol.AMQSessionModel;
 import org.apache.qpid.server.protocol.MessageConverterRegistry;
 import org.apache.qpid.server.consumer.AbstractConsumerTarget;
 import org.apache.qpid.server.txn.ServerTransaction;
-import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
 
 import java.nio.ByteBuffer;
 import java.util.List;
@@ -167,28 +164,12 @@ class ConsumerTarget_1_0 extends AbstractConsumerTarget
 
         if(queueEntry.getDeliveryCount() != 0)
         {
+            // the header (if any) is the first section of the message; replace it, forwarding the
+            // remaining sections unchanged
             payload = payload.duplicate();
-            ValueHandler valueHandler = new ValueHandler(_typeRegistry);
-
-            Header oldHeader = null;
-            try
-            {
-                ByteBuffer encodedBuf = payload.duplicate();
-                Object value = valueHandler.parse(payload);
-                if(value instanceof Header)
-                {
-                    oldHeader = (Header) value;
-                }
-                else
-                {
-                    payload.position(0);
-                }
-            }
-            catch (AmqpErrorException e)
-            {
-                //TODO
-                throw new ConnectionScopedRuntimeException(e);
-            }
+            MessageMetaData_1_0 metaData = message.getStoredMessage().getMetaData();
+            Header oldHeader = metaData.getHeader();
+            payload.position(payload.position() + metaData.getHeaderSize());
 
             Header header = new Header();
             if(oldHeader != null)
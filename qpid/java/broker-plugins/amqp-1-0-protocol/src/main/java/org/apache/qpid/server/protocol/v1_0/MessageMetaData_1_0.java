@@ -25,21 +25,17 @@ import java.util.*;
 
 import org.apache.log4j.Logger;
 import org.apache.qpid.amqp_1_0.codec.ValueHandler;
-import org.apache.qpid.amqp_1_0.messaging.SectionDecoder;
 import org.apache.qpid.amqp_1_0.messaging.SectionEncoder;
 import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
 import org.apache.qpid.amqp_1_0.type.Section;
 import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedLong;
 import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
-import org.apache.qpid.amqp_1_0.type.messaging.AmqpSequence;
-import org.apache.qpid.amqp_1_0.type.messaging.AmqpValue;
 import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
-import org.apache.qpid.amqp_1_0.type.messaging.Data;
-import org.apache.qpid.amqp_1_0.type.messaging.DeliveryAnnotations;
-import org.apache.qpid.amqp_1_0.type.messaging.Footer;
 import org.apache.qpid.amqp_1_0.type.messaging.Header;
 import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
 import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.amqp_1_0.type.transport.AmqpError;
 import org.apache.qpid.server.message.AMQMessageHeader;
 import org.apache.qpid.server.plugin.MessageMetaDataType;
 import org.apache.qpid.server.store.StorableMessageMetaData;
@@ -53,98 +49,101 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
     public static final MessageMetaDataType.Factory<MessageMetaData_1_0> FACTORY = new MetaDataFactory();
     private static final MessageMetaDataType_1_0 TYPE = new MessageMetaDataType_1_0();
 
-
-    private Header _header;
-    private Properties _properties;
-    private Map _deliveryAnnotations;
-    private Map _messageAnnotations;
-    private Map _appProperties;
-    private Map _footer;
-
-    private List<ByteBuffer> _encodedSections = new ArrayList<ByteBuffer>(3);
-
-    private volatile ByteBuffer _encoded;
-    private MessageHeader_1_0 _messageHeader;
-
-
-    public MessageMetaData_1_0(List<Section> sections, SectionEncoder encoder)
+    private static final AMQPDescribedTypeRegistry TYPE_REGISTRY = AMQPDescribedTypeRegistry.newInstance();
+    static
     {
-        this(sections, encodeSections(sections, encoder));
+        TYPE_REGISTRY.registerTransportLayer();
+        TYPE_REGISTRY.registerMessagingLayer();
+        TYPE_REGISTRY.registerTransactionLayer();
+        TYPE_REGISTRY.registerSecurityLayer();
     }
 
-    private static ArrayList<ByteBuffer> encodeSections(final List<Section> sections, final SectionEncoder encoder)
-    {
-        ArrayList<ByteBuffer> encodedSections = new ArrayList<ByteBuffer>(sections.size());
-        for(Section section : sections)
-        {
-            encoder.encodeObject(section);
-            encodedSections.add(encoder.getEncoding().asByteBuffer());
-            encoder.reset();
-        }
-        return encodedSections;
-    }
+    private static final byte DESCRIBED_TYPE = (byte) 0;
 
-    public MessageMetaData_1_0(ByteBuffer[] fragments, SectionDecoder decoder)
-    {
-        this(fragments, decoder, new ArrayList<ByteBuffer>(3));
-    }
+    private static final long HEADER = 0x70L;
+    private static final long DELIVERY_ANNOTATIONS = 0x71L;
+    private static final long MESSAGE_ANNOTATIONS = 0x72L;
+    private static final long PROPERTIES = 0x73L;
+    private static final long APPLICATION_PROPERTIES = 0x74L;
+    private static final long DATA = 0x75L;
+    private static final long AMQP_SEQUENCE = 0x76L;
+    private static final long AMQP_VALUE = 0x77L;
+    private static final long FOOTER = 0x78L;
 
-    public MessageMetaData_1_0(ByteBuffer[] fragments, SectionDecoder decoder, List<ByteBuffer> immutableSections)
+    private static final Map<Symbol, Long> SYMBOLIC_DESCRIPTORS = new HashMap<Symbol, Long>();
+    static
     {
-        this(constructSections(fragments, decoder,immutableSections), immutableSections);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:header:list"), HEADER);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:delivery-annotations:map"), DELIVERY_ANNOTATIONS);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:message-annotations:map"), MESSAGE_ANNOTATIONS);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:properties:list"), PROPERTIES);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:application-properties:map"), APPLICATION_PROPERTIES);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:data:binary"), DATA);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:amqp-sequence:list"), AMQP_SEQUENCE);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:amqp-value:*"), AMQP_VALUE);
+        SYMBOLIC_DESCRIPTORS.put(Symbol.valueOf("amqp:footer:map"), FOOTER);
     }
 
-    private MessageMetaData_1_0(List<Section> sections, List<ByteBuffer> encodedSections)
-    {
-        _encodedSections = encodedSections;
-
-        Iterator<Section> sectIter = sections.iterator();
+    // Encoded forms of the sections the broker may need to look inside.  Each is decoded only on first
+    // access; the message itself is always forwarded using the original bytes.
+    private ByteBuffer _encodedHeader;
+    private ByteBuffer _encodedMessageAnnotations;
+    private ByteBuffer _encodedProperties;
+    private ByteBuffer _encodedAppProperties;
 
-        Section section = sectIter.hasNext() ? sectIter.next() : null;
-        if(section instanceof Header)
-        {
-            _header = (Header) section;
-            section = sectIter.hasNext() ? sectIter.next() : null;
-        }
+    private volatile Header _header;
+    private volatile Properties _properties;
+    private volatile Map _messageAnnotations;
+    private volatile Map _appProperties;
 
-        if(section instanceof DeliveryAnnotations)
-        {
-            _deliveryAnnotations = ((DeliveryAnnotations) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
-        }
+    private List<ByteBuffer> _encodedSections = new ArrayList<ByteBuffer>(3);
 
-        if(section instanceof MessageAnnotations)
-        {
-            _messageAnnotations = ((MessageAnnotations) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
-        }
+    private volatile ByteBuffer _encoded;
+    private MessageHeader_1_0 _messageHeader;
 
-        if(section instanceof Properties)
-        {
-            _properties = (Properties) section;
-            section = sectIter.hasNext() ? sectIter.next() : null;
-        }
 
-        if(section instanceof ApplicationProperties)
+    public MessageMetaData_1_0(List<Section> sections, SectionEncoder encoder)
+    {
+        _encodedSections = new ArrayList<ByteBuffer>(sections.size());
+        for(Section section : sections)
         {
-            _appProperties = ((ApplicationProperties) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
-        }
+            encoder.encodeObject(section);
+            ByteBuffer encodedSection = encoder.getEncoding().asByteBuffer();
+            encoder.reset();
+            _encodedSections.add(encodedSection);
 
-        if(section instanceof Footer)
-        {
-            _footer = ((Footer) section).getValue();
-            section = sectIter.hasNext() ? sectIter.next() : null;
+            if(section instanceof Header)
+            {
+                _encodedHeader = encodedSection;
+                _header = (Header) section;
+            }
+            else if(section instanceof MessageAnnotations)
+            {
+                _encodedMessageAnnotations = encodedSection;
+                _messageAnnotations = ((MessageAnnotations) section).getValue();
+            }
+            else if(section instanceof Properties)
+            {
+                _encodedProperties = encodedSection;
+                _properties = (Properties) section;
+            }
+            else if(section instanceof ApplicationProperties)
+            {
+                _encodedAppProperties = encodedSection;
+                _appProperties = ((ApplicationProperties) section).getValue();
+            }
         }
 
         _messageHeader = new MessageHeader_1_0();
-
     }
 
-    private static List<Section> constructSections(final ByteBuffer[] fragments, final SectionDecoder decoder, List<ByteBuffer> encodedSections)
+    public MessageMetaData_1_0(ByteBuffer[] fragments)
     {
-        List<Section> sections = new ArrayList<Section>(3);
+        this(fragments, new ArrayList<ByteBuffer>(3));
+    }
 
+    public MessageMetaData_1_0(ByteBuffer[] fragments, List<ByteBuffer> immutableSections)
+    {
         ByteBuffer src;
         if(fragments.length == 1)
         {
@@ -163,127 +162,256 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
                 src.put(buf.duplicate());
             }
             src.flip();
-
         }
 
         try
         {
-            int startBarePos = -1;
-            int lastPos = src.position();
-            Section s = decoder.readSection(src);
+            // when the fragments had to be coalesced copy out the (small) sections we keep, so that the
+            // temporary copy of the whole message, body included, is not retained by the meta data
+            scanSections(src, fragments.length != 1);
+        }
+        catch (AmqpErrorException e)
+        {
+            _logger.error("Decoding read section error", e);
+            throw new IllegalArgumentException(e);
+        }
 
+        for(ByteBuffer buf : fragments)
+        {
+            immutableSections.add(buf.duplicate());
+        }
+        _encodedSections = immutableSections;
 
+        _messageHeader = new MessageHeader_1_0();
+    }
 
-            if(s instanceof Header)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+    private MessageMetaData_1_0(ByteBuffer encoded) throws AmqpErrorException
+    {
+        scanSections(encoded.duplicate(), false);
+        _encodedSections = Collections.singletonList(encoded.slice());
 
-            if(s instanceof DeliveryAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+        _messageHeader = new MessageHeader_1_0();
+    }
 
-            if(s instanceof MessageAnnotations)
-            {
-                sections.add(s);
-                lastPos = src.position();
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+    /**
+     * Walks the encoded sections, recording where the header, annotations and properties lie without
+     * decoding them.  Only the section descriptors are parsed; section values are skipped over using
+     * the size information carried by their format codes.
+     */
+    private void scanSections(final ByteBuffer src, final boolean copy) throws AmqpErrorException
+    {
+        ValueHandler valueHandler = new ValueHandler(TYPE_REGISTRY);
+        final int messageStart = src.position();
 
-            if(s instanceof Properties)
-            {
-                sections.add(s);
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
-            }
+        while(src.hasRemaining())
+        {
+            int start = src.position();
+            long sectionCode = readSectionCode(src, valueHandler);
+            skipValue(src);
+            int end = src.position();
 
-            if(s instanceof ApplicationProperties)
+            if(sectionCode == HEADER)
             {
-                sections.add(s);
-                if(startBarePos == -1)
+                // only a leading header is recognised, as senders replace it by skipping getHeaderSize() bytes
+                if(start == messageStart)
                 {
-                    startBarePos = lastPos;
+                    _encodedHeader = sectionBuffer(src, start, end, copy);
                 }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
             }
-
-            if(s instanceof AmqpValue)
+            else if(sectionCode == MESSAGE_ANNOTATIONS)
             {
-                if(startBarePos == -1)
+                if(_encodedMessageAnnotations == null)
                 {
-                    startBarePos = lastPos;
+                    _encodedMessageAnnotations = sectionBuffer(src, start, end, copy);
                 }
-                s = src.hasRemaining() ? decoder.readSection(src) : null;
             }
-            else if(s instanceof Data)
+            else if(sectionCode == PROPERTIES)
             {
-                if(startBarePos == -1)
+                if(_encodedProperties == null)
                 {
-                    startBarePos = lastPos;
+                    _encodedProperties = sectionBuffer(src, start, end, copy);
                 }
-                do
-                {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
-                } while(s instanceof Data);
             }
-            else if(s instanceof AmqpSequence)
+            else if(sectionCode == APPLICATION_PROPERTIES)
             {
-                if(startBarePos == -1)
-                {
-                    startBarePos = lastPos;
-                }
-                do
+                if(_encodedAppProperties == null)
                 {
-                    s = src.hasRemaining() ? decoder.readSection(src) : null;
+                    _encodedAppProperties = sectionBuffer(src, start, end, copy);
                 }
-                while(s instanceof AmqpSequence);
             }
+        }
+    }
 
-            if(s instanceof Footer)
-            {
-                sections.add(s);
-            }
+    private static long readSectionCode(final ByteBuffer src, final ValueHandler valueHandler)
+            throws AmqpErrorException
+    {
+        if(src.get() != DESCRIBED_TYPE)
+        {
+            throw new AmqpErrorException(AmqpError.DECODE_ERROR, "Message section is not a described type");
+        }
+        Object descriptor = valueHandler.parse(src);
+        Long sectionCode = null;
+        if(descriptor instanceof UnsignedLong)
+        {
+            sectionCode = ((UnsignedLong) descriptor).longValue();
+        }
+        else if(descriptor instanceof Symbol)
+        {
+            sectionCode = SYMBOLIC_DESCRIPTORS.get(descriptor);
+        }
 
+        if(sectionCode == null || sectionCode < HEADER || sectionCode > FOOTER)
+        {
+            throw new AmqpErrorException(AmqpError.DECODE_ERROR, "Unknown message section descriptor %s", descriptor);
+        }
+        return sectionCode;
+    }
 
-            int pos = 0;
-            for(ByteBuffer buf : fragments)
-            {
-/*
-                if(pos < startBarePos)
-                {
-                    if(pos + buf.remaining() > startBarePos)
-                    {
-                        ByteBuffer dup = buf.duplicate();
-                        dup.position(dup.position()+startBarePos-pos);
-                        dup.slice();
-                        encodedSections.add(dup);
-                    }
-                }
-                else
-*/
-                {
-                    encodedSections.add(buf.duplicate());
-                }
-                pos += buf.remaining();
-            }
+    private static void skipValue(final ByteBuffer src) throws AmqpErrorException
+    {
+        requireRemaining(src, 1);
+        byte formatCode = src.get();
+        if(formatCode == DESCRIBED_TYPE)
+        {
+            // descriptor followed by the described value
+            skipValue(src);
+            skipValue(src);
+            return;
+        }
+
+        int size;
+        switch((formatCode >> 4) & 0x0F)
+        {
+            case 0x4:
+                size = 0;
+                break;
+            case 0x5:
+                size = 1;
+                break;
+            case 0x6:
+                size = 2;
+                break;
+            case 0x7:
+                size = 4;
+                break;
+            case 0x8:
+                size = 8;
+                break;
+            case 0x9:
+                size = 16;
+                break;
+            case 0xA:
+            case 0xC:
+            case 0xE:
+                requireRemaining(src, 1);
+                size = src.get() & 0xFF;
+                break;
+            case 0xB:
+            case 0xD:
+            case 0xF:
+                requireRemaining(src, 4);
+                size = src.getInt();
+                break;
+            default:
+                throw new AmqpErrorException(AmqpError.DECODE_ERROR, "Unknown type format-code 0x%02x", formatCode);
+        }
+        requireRemaining(src, size);
+        src.position(src.position() + size);
+    }
 
-            return sections;
+    private static void requireRemaining(final ByteBuffer src, final int size) throws AmqpErrorException
+    {
+        if(size < 0 || src.remaining() < size)
+        {
+            throw new AmqpErrorException(AmqpError.DECODE_ERROR,
+                                         "Insufficient data - expected %d bytes, only %d remaining",
+                                         size, src.remaining());
+        }
+    }
+
+    private static ByteBuffer sectionBuffer(final ByteBuffer src, final int start, final int end, final boolean copy)
+    {
+        ByteBuffer dup = src.duplicate();
+        dup.limit(end);
+        dup.position(start);
+        if(copy)
+        {
+            ByteBuffer buf = ByteBuffer.allocate(end - start);
+            buf.put(dup);
+            buf.flip();
+            return buf;
+        }
+        return dup.slice();
+    }
+
+    private static Section decodeSection(final ByteBuffer encoded)
+    {
+        try
+        {
+            return (Section) new ValueHandler(TYPE_REGISTRY).parse(encoded.duplicate());
         }
         catch (AmqpErrorException e)
         {
             _logger.error("Decoding read section error", e);
-            throw new IllegalArgumentException(e);
+            throw new ConnectionScopedRuntimeException(e);
         }
     }
 
+    /**
+     * @return the message header, decoding it on first use, or null if the message has no header section
+     */
+    public Header getHeader()
+    {
+        Header header = _header;
+        if(header == null && _encodedHeader != null)
+        {
+            header = (Header) decodeSection(_encodedHeader);
+            _header = header;
+        }
+        return header;
+    }
+
+    /**
+     * @return the size in bytes of the encoded header section, or 0 if the message has no header section
+     */
+    public int getHeaderSize()
+    {
+        return _encodedHeader == null ? 0 : _encodedHeader.remaining();
+    }
+
+    private Properties getProperties()
+    {
+        Properties properties = _properties;
+        if(properties == null && _encodedProperties != null)
+        {
+            properties = (Properties) decodeSection(_encodedProperties);
+            _properties = properties;
+        }
+        return properties;
+    }
+
+    private Map getMessageAnnotations()
+    {
+        Map messageAnnotations = _messageAnnotations;
+        if(messageAnnotations == null && _encodedMessageAnnotations != null)
+        {
+            messageAnnotations = ((MessageAnnotations) decodeSection(_encodedMessageAnnotations)).getValue();
+            _messageAnnotations = messageAnnotations;
+        }
+        return messageAnnotations;
+    }
+
+    private Map getApplicationProperties()
+    {
+        Map appProperties = _appProperties;
+        if(appProperties == null && _encodedAppProperties != null)
+        {
+            appProperties = ((ApplicationProperties) decodeSection(_encodedAppProperties)).getValue();
+            _appProperties = appProperties;
+        }
+        return appProperties;
+    }
+
 
     public MessageMetaDataType getType()
     {
@@ -297,7 +425,7 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         for(ByteBuffer bin : _encodedSections)
         {
-            size += bin.limit();
+            size += bin.remaining();
         }
 
         return size;
@@ -351,7 +479,8 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
     public boolean isPersistent()
     {
-        return _header != null && Boolean.TRUE.equals(_header.getDurable());
+        Header header = getHeader();
+        return header != null && Boolean.TRUE.equals(header.getDurable());
     }
 
     public MessageHeader_1_0 getMessageHeader()
@@ -364,44 +493,19 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
     private static class MetaDataFactory implements MessageMetaDataType.Factory<MessageMetaData_1_0>
     {
-        private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance();
-
-        private MetaDataFactory()
-        {
-            _typeRegistry.registerTransportLayer();
-            _typeRegistry.registerMessagingLayer();
-            _typeRegistry.registerTransactionLayer();
-            _typeRegistry.registerSecurityLayer();
-        }
-
         public MessageMetaData_1_0 createMetaData(ByteBuffer buf)
         {
-            ValueHandler valueHandler = new ValueHandler(_typeRegistry);
-
-            ArrayList<Section> sections = new ArrayList<Section>(3);
-            ArrayList<ByteBuffer> encodedSections = new ArrayList<ByteBuffer>(3);
-
-            while(buf.hasRemaining())
+            try
             {
-                try
-                {
-                    ByteBuffer encodedBuf = buf.duplicate();
-                    Object parse = valueHandler.parse(buf);
-                    sections.add((Section) parse);
-                    encodedBuf.limit(buf.position());
-                    encodedSections.add(encodedBuf);
-
-                }
-                catch (AmqpErrorException e)
-                {
-                    //TODO
-                    throw new ConnectionScopedRuntimeException(e);
-                }
-
+                MessageMetaData_1_0 metaData = new MessageMetaData_1_0(buf);
+                buf.position(buf.limit());
+                return metaData;
+            }
+            catch (AmqpErrorException e)
+            {
+                //TODO
+                throw new ConnectionScopedRuntimeException(e);
             }
-
-            return new MessageMetaData_1_0(sections,encodedSections);
-
         }
     }
 
@@ -410,13 +514,14 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getCorrelationId()
         {
-            if(_properties == null || _properties.getCorrelationId() == null)
+            final Properties properties = getProperties();
+            if(properties == null || properties.getCorrelationId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getCorrelationId().toString();
+                return properties.getCorrelationId().toString();
             }
         }
 
@@ -427,26 +532,28 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public String getMessageId()
         {
-            if(_properties == null || _properties.getMessageId() == null)
+            final Properties properties = getProperties();
+            if(properties == null || properties.getMessageId() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getMessageId().toString();
+                return properties.getMessageId().toString();
             }
         }
 
         public String getMimeType()
         {
+            final Properties properties = getProperties();
 
-            if(_properties == null || _properties.getContentType() == null)
+            if(properties == null || properties.getContentType() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getContentType().toString();
+                return properties.getContentType().toString();
             }
         }
 
@@ -457,51 +564,55 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public byte getPriority()
         {
-            if(_header == null || _header.getPriority() == null)
+            final Header header = MessageMetaData_1_0.this.getHeader();
+            if(header == null || header.getPriority() == null)
             {
                 return 4; //javax.jms.Message.DEFAULT_PRIORITY;
             }
             else
             {
-                return _header.getPriority().byteValue();
+                return header.getPriority().byteValue();
             }
         }
 
         public long getTimestamp()
         {
-            if(_properties == null || _properties.getCreationTime() == null)
+            final Properties properties = getProperties();
+            if(properties == null || properties.getCreationTime() == null)
             {
                 return 0L;
             }
             else
             {
-                return _properties.getCreationTime().getTime();
+                return properties.getCreationTime().getTime();
             }
 
         }
 
         public String getType()
         {
+            final Map messageAnnotations = getMessageAnnotations();
 
-            if(_messageAnnotations == null || _messageAnnotations.get(JMS_TYPE) == null)
+            if(messageAnnotations == null || messageAnnotations.get(JMS_TYPE) == null)
             {
                 return null;
             }
             else
             {
-                return _messageAnnotations.get(JMS_TYPE).toString();
+                return messageAnnotations.get(JMS_TYPE).toString();
             }
         }
 
         public String getReplyTo()
         {
-            if(_properties == null || _properties.getReplyTo() == null)
+            final Properties properties = getProperties();
+            if(properties == null || properties.getReplyTo() == null)
             {
                 return null;
             }
             else
             {
-                return _properties.getReplyTo().toString();
+                return properties.getReplyTo().toString();
             }
         }
 
@@ -519,19 +630,21 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
 
         public Object getHeader(final String name)
         {
-            return _appProperties == null ? null : _appProperties.get(name);
+            final Map appProperties = getApplicationProperties();
+            return appProperties == null ? null : appProperties.get(name);
         }
 
         public boolean containsHeaders(final Set<String> names)
         {
-            if(_appProperties == null)
+            final Map appProperties = getApplicationProperties();
+            if(appProperties == null)
             {
                 return false;
             }
 
             for(String key : names)
             {
-                if(!_appProperties.containsKey(key))
+                if(!appProperties.containsKey(key))
                 {
                     return false;
                 }
@@ -542,31 +655,36 @@ public class MessageMetaData_1_0 implements StorableMessageMetaData
         @Override
         public Collection<String> getHeaderNames()
         {
-            if(_appProperties == null)
+            final Map appProperties = getApplicationProperties();
+            if(appProperties == null)
             {
                 return Collections.emptySet();
             }
-            return Collections.unmodifiableCollection(_appProperties.keySet());
+            return Collections.unmodifiableCollection(appProperties.keySet());
         }
 
         public boolean containsHeader(final String name)
         {
-            return _appProperties != null && _appProperties.containsKey(name);
+            final Map appProperties = getApplicationProperties();
+            return appProperties != null && appProperties.containsKey(name);
         }
 
         public String getSubject()
         {
-            return _properties == null ? null : _properties.getSubject();
+            final Properties properties = getProperties();
+            return properties == null ? null : properties.getSubject();
         }
 
         public String getTo()
         {
-            return _properties == null ? null : _properties.getTo();
+            final Properties properties = getProperties();
+            return properties == null ? null : properties.getTo();
         }
 
         public Map<String, Object> getHeadersAsMap()
         {
-            return new HashMap<String, Object>(_appProperties);
+            final Map appProperties = getApplicationProperties();
+            return new HashMap<String, Object>(appProperties);
         }
     }
 
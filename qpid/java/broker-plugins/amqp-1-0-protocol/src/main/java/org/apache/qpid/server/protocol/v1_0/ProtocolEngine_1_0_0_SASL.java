@@ -58,9 +58,11 @@ import org.apache.qpid.server.model.Transport;
 import org.apache.qpid.server.security.SubjectCreator;
 import org.apache.qpid.server.security.auth.UsernamePrincipal;
 import org.apache.qpid.server.util.ServerScopedRuntimeException;
+import org.apache.qpid.transport.GatheringSender;
 import org.apache.qpid.transport.Sender;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.util.ByteBufferPool;
 
 public class ProtocolEngine_1_0_0_SASL implements ServerProtocolEngine, FrameOutputHandler
 {
@@ -107,6 +109,7 @@ public class ProtocolEngine_1_0_0_SASL implements ServerProtocolEngine, FrameOut
 
 
     private FrameWriter _frameWriter;
+    private final ByteBufferPool _bufferPool = ByteBufferPool.getHeapPool();
     private ProtocolHandler _frameHandler;
     private ByteBuffer _buf = ByteBuffer.allocate(1024 * 1024);
     private Object _sendLock = new Object();
@@ -480,29 +483,65 @@ public class ProtocolEngine_1_0_0_SASL implements ServerProtocolEngine, FrameOut
                                    + amqFrame.getFrameBody());
             }
 
-            _frameWriter.setValue(amqFrame);
+            // the payload (message content held by the store) is handed to the network as is where possible,
+            // leaving only the frame header and performative to be encoded
+            final ByteBuffer payload = amqFrame.getPayload() == null ? null : amqFrame.getPayload().duplicate();
+            final boolean sendPayloadWithoutCopy = payload != null
+                                                   && payload.hasRemaining()
+                                                   && _sender instanceof GatheringSender;
 
-            ByteBuffer dup = ByteBuffer.allocate(_endpoint.getMaxFrameSize());
+            final int bufferSize;
+            if (sendPayloadWithoutCopy)
+            {
+                _frameWriter.setValueWithoutPayload(amqFrame);
+                bufferSize = Math.max(0, _endpoint.getMaxFrameSize() - payload.remaining());
+            }
+            else
+            {
+                _frameWriter.setValue(amqFrame);
+                bufferSize = _endpoint.getMaxFrameSize();
+            }
+
+            // the encoding buffer can be returned to the pool once sent, as the sender copies it
+            final ByteBuffer frameBuffer = _bufferPool.acquire(bufferSize);
+            ByteBuffer dup = frameBuffer.duplicate();
 
             int size = _frameWriter.writeToBuffer(dup);
             if (size > _endpoint.getMaxFrameSize())
             {
+                _bufferPool.release(frameBuffer);
                 throw new OversizeFrameException(amqFrame, size);
             }
 
             dup.flip();
-            _writtenBytes += dup.limit();
+            _writtenBytes += size;
 
             if (RAW_LOGGER.isDebugEnabled())
             {
                 ByteBuffer dup2 = dup.duplicate();
-                byte[] data = new byte[dup2.remaining()];
-                dup2.get(data);
+                ByteBuffer payloadDup = sendPayloadWithoutCopy ? payload.duplicate() : null;
+                byte[] data = new byte[dup2.remaining() + (payloadDup == null ? 0 : payloadDup.remaining())];
+                dup2.get(data, 0, dup2.remaining());
+                if (payloadDup != null)
+                {
+                    payloadDup.get(data, data.length - payloadDup.remaining(), payloadDup.remaining());
+                }
                 Binary bin = new Binary(data);
                 RAW_LOGGER.debug("SEND[" + getRemoteAddress() + "] : " + bin.toString());
             }
 
-            _sender.send(dup);
+            try
+            {
+                _sender.send(dup);
+                if (sendPayloadWithoutCopy)
+                {
+                    ((GatheringSender) _sender).sendWithoutCopy(payload);
+                }
+            }
+            finally
+            {
+                _bufferPool.release(frameBuffer);
+            }
             _sender.flush();
 
 
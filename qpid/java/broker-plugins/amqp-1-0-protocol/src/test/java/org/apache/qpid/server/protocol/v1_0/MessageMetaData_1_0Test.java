@@ -0,0 +1,432 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.protocol.v1_0;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.qpid.amqp_1_0.messaging.SectionDecoderImpl;
+import org.apache.qpid.amqp_1_0.messaging.SectionEncoderImpl;
+import org.apache.qpid.amqp_1_0.type.AmqpErrorException;
+import org.apache.qpid.amqp_1_0.type.Binary;
+import org.apache.qpid.amqp_1_0.type.Section;
+import org.apache.qpid.amqp_1_0.type.Symbol;
+import org.apache.qpid.amqp_1_0.type.UnsignedByte;
+import org.apache.qpid.amqp_1_0.type.codec.AMQPDescribedTypeRegistry;
+import org.apache.qpid.amqp_1_0.type.messaging.ApplicationProperties;
+import org.apache.qpid.amqp_1_0.type.messaging.Data;
+import org.apache.qpid.amqp_1_0.type.messaging.Header;
+import org.apache.qpid.amqp_1_0.type.messaging.MessageAnnotations;
+import org.apache.qpid.amqp_1_0.type.messaging.Properties;
+import org.apache.qpid.amqp_1_0.type.transport.AmqpError;
+import org.apache.qpid.server.util.ConnectionScopedRuntimeException;
+import org.apache.qpid.test.utils.QpidTestCase;
+
+/**
+ * Checks the sections found by scanning the encoded form of a message against those found by decoding every
+ * section of it, for each of the encodings a sender may choose for the descriptors and sizes of the sections.
+ */
+public class MessageMetaData_1_0Test extends QpidTestCase
+{
+    // header: durable
+    private static final byte[] HEADER = bytes(0x00, 0x53, 0x70, 0xC0, 0x02, 0x01, 0x41);
+    // properties: to "foo", subject "bar"
+    private static final byte[] PROPERTIES = concat(bytes(0x00, 0x53, 0x73, 0xC0, 0x0D, 0x04, 0x40, 0x40),
+                                                    str8("foo"), str8("bar"));
+    // application-properties: "k" = "v"
+    private static final byte[] APPLICATION_PROPERTIES = concat(bytes(0x00, 0x53, 0x74, 0xC1, 0x07, 0x02),
+                                                                str8("k"), str8("v"));
+    // message-annotations: x-opt-jms-type = "type"
+    private static final byte[] MESSAGE_ANNOTATIONS = concat(bytes(0x00, 0x53, 0x72, 0xC1, 0x17, 0x02),
+                                                             sym8("x-opt-jms-type"), str8("type"));
+    private static final byte[] DATA = bytes(0x00, 0x53, 0x75, 0xA0, 0x03, 0x01, 0x02, 0x03);
+    // footer: empty map
+    private static final byte[] FOOTER = bytes(0x00, 0x53, 0x78, 0xC1, 0x01, 0x00);
+
+    private final AMQPDescribedTypeRegistry _typeRegistry = AMQPDescribedTypeRegistry.newInstance()
+                                                                                     .registerTransportLayer()
+                                                                                     .registerMessagingLayer()
+                                                                                     .registerTransactionLayer()
+                                                                                     .registerSecurityLayer();
+
+    public void testNumericDescriptors() throws Exception
+    {
+        byte[] encoded = concat(HEADER, MESSAGE_ANNOTATIONS, PROPERTIES, APPLICATION_PROPERTIES, DATA, FOOTER);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertTrue("Message should be persistent", metaData.isPersistent());
+        assertEquals("Unexpected header size", HEADER.length, metaData.getHeaderSize());
+        assertEquals("Unexpected to", "foo", metaData.getMessageHeader().getTo());
+        assertEquals("Unexpected subject", "bar", metaData.getMessageHeader().getSubject());
+        assertEquals("Unexpected type", "type", metaData.getMessageHeader().getType());
+        assertEquals("Unexpected application property", "v", metaData.getMessageHeader().getHeader("k"));
+        assertMatchesSectionDecoder(encoded, metaData);
+    }
+
+    public void testSymbolicDescriptors() throws Exception
+    {
+        // header with a sym8 descriptor, properties with a sym32 descriptor
+        byte[] header = concat(bytes(0x00), sym8("amqp:header:list"), bytes(0xC0, 0x02, 0x01, 0x41));
+        byte[] properties = concat(bytes(0x00), sym32("amqp:properties:list"),
+                                   bytes(0xC0, 0x0D, 0x04, 0x40, 0x40), str8("foo"), str8("bar"));
+        byte[] applicationProperties = concat(bytes(0x00), sym8("amqp:application-properties:map"),
+                                              bytes(0xC1, 0x07, 0x02), str8("k"), str8("v"));
+        byte[] data = concat(bytes(0x00), sym8("amqp:data:binary"), bytes(0xA0, 0x01, 0x01));
+        byte[] encoded = concat(header, properties, applicationProperties, data);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertTrue("Message should be persistent", metaData.isPersistent());
+        assertEquals("Unexpected header size", header.length, metaData.getHeaderSize());
+        assertEquals("Unexpected to", "foo", metaData.getMessageHeader().getTo());
+        assertEquals("Unexpected subject", "bar", metaData.getMessageHeader().getSubject());
+        assertEquals("Unexpected application property", "v", metaData.getMessageHeader().getHeader("k"));
+        assertMatchesSectionDecoder(encoded, metaData);
+    }
+
+    public void testUnknownSymbolicDescriptor() throws Exception
+    {
+        byte[] encoded = concat(bytes(0x00), sym8("amqp:unknown:list"), bytes(0x45));
+        assertDecodeError(encoded);
+    }
+
+    public void testFourByteSizes() throws Exception
+    {
+        // ulong descriptor, list32 header: durable, priority 7
+        byte[] header = bytes(0x00, 0x80, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x70,
+                              0xD0, 0x00, 0x00, 0x00, 0x07, 0x00, 0x00, 0x00, 0x02, 0x41, 0x50, 0x07);
+        // map32 application-properties: "k" = "v"
+        byte[] applicationProperties = concat(bytes(0x00, 0x53, 0x74,
+                                                    0xD1, 0x00, 0x00, 0x00, 0x0A, 0x00, 0x00, 0x00, 0x02),
+                                              str8("k"), str8("v"));
+        // vbin32 data of 300 bytes
+        byte[] data = concat(bytes(0x00, 0x53, 0x75, 0xB0, 0x00, 0x00, 0x01, 0x2C), new byte[300]);
+        byte[] encoded = concat(header, applicationProperties, data, FOOTER);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertTrue("Message should be persistent", metaData.isPersistent());
+        assertEquals("Unexpected header size", header.length, metaData.getHeaderSize());
+        assertEquals("Unexpected priority", 7, metaData.getMessageHeader().getPriority());
+        assertEquals("Unexpected application property", "v", metaData.getMessageHeader().getHeader("k"));
+        assertMatchesSectionDecoder(encoded, metaData);
+    }
+
+    public void testArrays() throws Exception
+    {
+        // amqp-value holding an array8 of three smallints
+        byte[] array8 = bytes(0x00, 0x53, 0x77, 0xE0, 0x05, 0x03, 0x54, 0x01, 0x02, 0x03);
+        // amqp-value holding an array32 of two ints
+        byte[] array32 = bytes(0x00, 0x53, 0x77, 0xF0, 0x00, 0x00, 0x00, 0x0D, 0x00, 0x00, 0x00, 0x02, 0x71,
+                               0x00, 0x00, 0x00, 0x01, 0x00, 0x00, 0x00, 0x02);
+
+        for (byte[] body : Arrays.asList(array8, array32))
+        {
+            byte[] encoded = concat(HEADER, PROPERTIES, body, FOOTER);
+            MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+            assertEquals("Unexpected header size", HEADER.length, metaData.getHeaderSize());
+            assertEquals("Unexpected subject", "bar", metaData.getMessageHeader().getSubject());
+            assertMatchesSectionDecoder(encoded, metaData);
+        }
+    }
+
+    public void testDescribedValue() throws Exception
+    {
+        // amqp-value holding a value described by the symbol "foo", followed by application-properties
+        byte[] body = concat(bytes(0x00, 0x53, 0x77, 0x00), sym8("foo"), str8("bar"));
+        byte[] encoded = concat(HEADER, body, APPLICATION_PROPERTIES);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertEquals("Unexpected header size", HEADER.length, metaData.getHeaderSize());
+        assertEquals("Unexpected application property", "v", metaData.getMessageHeader().getHeader("k"));
+        assertMatchesSectionDecoder(encoded, metaData);
+    }
+
+    public void testMissingHeader() throws Exception
+    {
+        byte[] encoded = concat(PROPERTIES, DATA);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertNull("Message should have no header", metaData.getHeader());
+        assertEquals("Unexpected header size", 0, metaData.getHeaderSize());
+        assertFalse("Message should not be persistent", metaData.isPersistent());
+        assertEquals("Unexpected priority", 4, metaData.getMessageHeader().getPriority());
+        assertEquals("Unexpected subject", "bar", metaData.getMessageHeader().getSubject());
+    }
+
+    public void testHeaderNotLeading() throws Exception
+    {
+        // a header which does not lead the message cannot be replaced on redelivery, so is not recognised
+        byte[] encoded = concat(PROPERTIES, HEADER, DATA);
+        MessageMetaData_1_0 metaData = createMetaData(encoded);
+
+        assertNull("Header not leading the message should be ignored", metaData.getHeader());
+        assertEquals("Unexpected header size", 0, metaData.getHeaderSize());
+        assertFalse("Message should not be persistent", metaData.isPersistent());
+        assertEquals("Unexpected subject", "bar", metaData.getMessageHeader().getSubject());
+    }
+
+    public void testFragmentedMessage() throws Exception
+    {
+        byte[] encoded = concat(HEADER, MESSAGE_ANNOTATIONS, PROPERTIES, APPLICATION_PROPERTIES, DATA, FOOTER);
+
+        for (int split = 1; split < encoded.length; split++)
+        {
+            byte[] first = Arrays.copyOfRange(encoded, 0, split);
+            byte[] second = Arrays.copyOfRange(encoded, split, (split + encoded.length) / 2 + 1);
+            byte[] third = Arrays.copyOfRange(encoded, second.length + split, encoded.length);
+            MessageMetaData_1_0 metaData = new MessageMetaData_1_0(new ByteBuffer[] { ByteBuffer.wrap(first),
+                                                                                      ByteBuffer.wrap(second),
+                                                                                      ByteBuffer.wrap(third) });
+
+            // the fragments are coalesced before being scanned, so the sections are decoded from a copy of them
+            Arrays.fill(first, (byte) 0);
+            Arrays.fill(second, (byte) 0);
+            Arrays.fill(third, (byte) 0);
+
+            assertTrue("Message split at " + split + " should be persistent", metaData.isPersistent());
+            assertEquals("Unexpected header size for message split at " + split,
+                         HEADER.length, metaData.getHeaderSize());
+            assertEquals("Unexpected to for message split at " + split, "foo", metaData.getMessageHeader().getTo());
+            assertEquals("Unexpected subject for message split at " + split,
+                         "bar", metaData.getMessageHeader().getSubject());
+            assertEquals("Unexpected type for message split at " + split,
+                         "type", metaData.getMessageHeader().getType());
+            assertEquals("Unexpected application property for message split at " + split,
+                         "v", metaData.getMessageHeader().getHeader("k"));
+        }
+    }
+
+    public void testRecoveredMetaDataMatchesSectionDecoder() throws Exception
+    {
+        Header header = new Header();
+        header.setDurable(true);
+        header.setPriority(UnsignedByte.valueOf((byte) 6));
+        Properties properties = new Properties();
+        properties.setMessageId("id");
+        properties.setCorrelationId("correlation");
+        properties.setTo("queue");
+        properties.setSubject("subject");
+        properties.setReplyTo("reply");
+        properties.setContentType(Symbol.valueOf("text/plain"));
+        properties.setCreationTime(new Date(1234L));
+        Map<String, Object> applicationProperties = new LinkedHashMap<String, Object>();
+        applicationProperties.put("string", "value");
+        applicationProperties.put("int", 42);
+        List<Section> sections = Arrays.<Section>asList(
+                header,
+                new MessageAnnotations(Collections.singletonMap(MessageMetaData_1_0.JMS_TYPE, "type")),
+                properties,
+                new ApplicationProperties(applicationProperties),
+                new Data(new Binary(new byte[] { 1, 2, 3 })));
+
+        SectionEncoderImpl encoder = new SectionEncoderImpl(_typeRegistry);
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (Section section : sections)
+        {
+            encoder.encodeObject(section);
+            Binary encoding = encoder.getEncoding();
+            output.write(encoding.getArray(), encoding.getArrayOffset(), encoding.getLength());
+            encoder.reset();
+        }
+        byte[] encoded = output.toByteArray();
+
+        MessageMetaData_1_0 received = createMetaData(encoded);
+        ByteBuffer stored = ByteBuffer.allocate(received.getStorableSize());
+        received.writeToBuffer(stored);
+        stored.flip();
+
+        MessageMetaData_1_0 recovered = MessageMetaData_1_0.FACTORY.createMetaData(stored);
+
+        assertEquals("Recovery did not consume the stored meta-data", stored.limit(), stored.position());
+        assertEquals("Unexpected storable size", encoded.length, recovered.getStorableSize());
+        assertEquals("Unexpected header size", received.getHeaderSize(), recovered.getHeaderSize());
+        assertTrue("Recovered message should be persistent", recovered.isPersistent());
+        assertEquals("Unexpected message id", "id", recovered.getMessageHeader().getMessageId());
+        assertEquals("Unexpected correlation id", "correlation", recovered.getMessageHeader().getCorrelationId());
+        assertEquals("Unexpected reply to", "reply", recovered.getMessageHeader().getReplyTo());
+        assertEquals("Unexpected mime type", "text/plain", recovered.getMessageHeader().getMimeType());
+        assertEquals("Unexpected timestamp", 1234L, recovered.getMessageHeader().getTimestamp());
+        assertMatchesSectionDecoder(encoded, recovered);
+    }
+
+    public void testTruncatedOrNegativeSizes() throws Exception
+    {
+        // section descriptor missing
+        assertDecodeError(bytes(0x00));
+        // list8 header larger than the remaining data
+        assertDecodeError(bytes(0x00, 0x53, 0x70, 0xC0, 0x05, 0x01, 0x41));
+        // list8 size missing
+        assertDecodeError(bytes(0x00, 0x53, 0x70, 0xC0));
+        // list32 size truncated
+        assertDecodeError(bytes(0x00, 0x53, 0x70, 0xD0, 0x00, 0x00));
+        // list32 with a negative size
+        assertDecodeError(bytes(0x00, 0x53, 0x70, 0xD0, 0xFF, 0xFF, 0xFF, 0xFF, 0x00, 0x00, 0x00, 0x01, 0x41));
+        // vbin32 data larger than the remaining data
+        assertDecodeError(concat(HEADER, bytes(0x00, 0x53, 0x75, 0xB0, 0x00, 0x00, 0x01, 0x00, 0x01, 0x02)));
+        // vbin32 data with a negative size
+        assertDecodeError(concat(HEADER, bytes(0x00, 0x53, 0x75, 0xB0, 0x80, 0x00, 0x00, 0x00, 0x01, 0x02)));
+        // array8 larger than the remaining data
+        assertDecodeError(bytes(0x00, 0x53, 0x77, 0xE0, 0x09, 0x03, 0x54, 0x01, 0x02, 0x03));
+        // described value without its value
+        assertDecodeError(concat(bytes(0x00, 0x53, 0x77, 0x00), sym8("foo")));
+        // section value missing
+        assertDecodeError(bytes(0x00, 0x53, 0x75));
+        // section which is not a described type
+        assertDecodeError(bytes(0xA0, 0x01, 0x01));
+    }
+
+    private void assertDecodeError(final byte[] encoded)
+    {
+        try
+        {
+            new MessageMetaData_1_0(new ByteBuffer[] { ByteBuffer.wrap(encoded) });
+            fail("Received message " + Arrays.toString(encoded) + " should not be accepted");
+        }
+        catch (IllegalArgumentException e)
+        {
+            assertDecodeError(encoded, e.getCause());
+        }
+
+        try
+        {
+            MessageMetaData_1_0.FACTORY.createMetaData(ByteBuffer.wrap(encoded));
+            fail("Stored message " + Arrays.toString(encoded) + " should not be recovered");
+        }
+        catch (ConnectionScopedRuntimeException e)
+        {
+            assertDecodeError(encoded, e.getCause());
+        }
+    }
+
+    private void assertDecodeError(final byte[] encoded, final Throwable cause)
+    {
+        assertTrue("Unexpected cause for " + Arrays.toString(encoded) + ": " + cause,
+                   cause instanceof AmqpErrorException);
+        assertEquals("Unexpected error for " + Arrays.toString(encoded),
+                     AmqpError.DECODE_ERROR, ((AmqpErrorException) cause).getError().getCondition());
+    }
+
+    /**
+     * Compares the meta-data with the result of decoding every section of the message.
+     */
+    private void assertMatchesSectionDecoder(final byte[] encoded, final MessageMetaData_1_0 metaData)
+            throws AmqpErrorException
+    {
+        List<Section> sections = new SectionDecoderImpl(_typeRegistry).parseAll(ByteBuffer.wrap(encoded));
+        MessageMetaData_1_0.MessageHeader_1_0 messageHeader = metaData.getMessageHeader();
+
+        Header header = sections.get(0) instanceof Header ? (Header) sections.get(0) : null;
+        if (header == null)
+        {
+            assertNull("Unexpected header", metaData.getHeader());
+        }
+        else
+        {
+            assertEquals("Unexpected durable", header.getDurable(), metaData.getHeader().getDurable());
+            assertEquals("Unexpected priority", header.getPriority(), metaData.getHeader().getPriority());
+        }
+
+        boolean hasProperties = false;
+        boolean hasApplicationProperties = false;
+        boolean hasMessageAnnotations = false;
+        for (Section section : sections)
+        {
+            if (section instanceof Properties)
+            {
+                Properties properties = (Properties) section;
+                hasProperties = true;
+                assertEquals("Unexpected to", properties.getTo(), messageHeader.getTo());
+                assertEquals("Unexpected subject", properties.getSubject(), messageHeader.getSubject());
+            }
+            else if (section instanceof ApplicationProperties)
+            {
+                hasApplicationProperties = true;
+                assertEquals("Unexpected application properties",
+                             ((ApplicationProperties) section).getValue(), messageHeader.getHeadersAsMap());
+            }
+            else if (section instanceof MessageAnnotations)
+            {
+                hasMessageAnnotations = true;
+                Object type = ((MessageAnnotations) section).getValue().get(MessageMetaData_1_0.JMS_TYPE);
+                assertEquals("Unexpected type", type == null ? null : type.toString(), messageHeader.getType());
+            }
+        }
+
+        if (!hasProperties)
+        {
+            assertNull("Unexpected subject", messageHeader.getSubject());
+        }
+        if (!hasApplicationProperties)
+        {
+            assertTrue("Unexpected application properties", messageHeader.getHeaderNames().isEmpty());
+        }
+        if (!hasMessageAnnotations)
+        {
+            assertNull("Unexpected type", messageHeader.getType());
+        }
+    }
+
+    private MessageMetaData_1_0 createMetaData(final byte[] encoded)
+    {
+        return new MessageMetaData_1_0(new ByteBuffer[] { ByteBuffer.wrap(encoded) });
+    }
+
+    private static byte[] bytes(final int... values)
+    {
+        byte[] bytes = new byte[values.length];
+        for (int i = 0; i < values.length; i++)
+        {
+            bytes[i] = (byte) values[i];
+        }
+        return bytes;
+    }
+
+    private static byte[] str8(final String value)
+    {
+        return concat(bytes(0xA1, value.length()), value.getBytes());
+    }
+
+    private static byte[] sym8(final String value)
+    {
+        return concat(bytes(0xA3, value.length()), value.getBytes());
+    }
+
+    private static byte[] sym32(final String value)
+    {
+        return concat(bytes(0xB3), ByteBuffer.allocate(4).putInt(value.length()).array(), value.getBytes());
+    }
+
+    private static byte[] concat(final byte[]... arrays)
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        for (byte[] array : arrays)
+        {
+            output.write(array, 0, array.length);
+        }
+        return output.toByteArray();
+    }
+}
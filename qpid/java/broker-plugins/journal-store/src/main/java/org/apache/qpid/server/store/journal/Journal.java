@@ -0,0 +1,785 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.journal;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+
+import org.apache.log4j.Logger;
+import org.apache.qpid.server.store.StoreException;
+import org.apache.qpid.server.store.StoreFuture;
+
+/**
+ * A log of records held in a directory of append-only segment files.
+ *
+ * Records are appended by a single writer thread. Records appended while the thread is busy are written together
+ * and made durable by a single force of the segment, after which the futures of all of them are completed. Once a
+ * segment reaches the configured size, records are written to a new segment.
+ *
+ * The user of the journal accounts for the live bytes of each segment, that is the bytes of records which have not
+ * been superseded by later records. Segments are removed from the front of the journal only, so that the records
+ * which supersede records of a removed segment can never be replayed without them. When idle, the writer thread
+ * removes the oldest segment if it holds no live bytes, or, if few of its bytes are live, first appends the records
+ * still live to the end of the journal.
+ */
+final class Journal
+{
+    private static final Logger LOGGER = Logger.getLogger(Journal.class);
+
+    private static final String SEGMENT_SUFFIX = ".jnl";
+    private static final int SEGMENT_MAGIC = 0x514A4E4C;
+    private static final int SEGMENT_VERSION = 1;
+    private static final int SEGMENT_HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 8;
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    /** The interval at which an otherwise busy writer thread cleans the journal. */
+    private static final long CLEAN_INTERVAL = 1000l;
+
+    /** A segment is cleaned once no more than this fraction of its bytes are live. */
+    private static final int CLEAN_THRESHOLD_DIVISOR = 4;
+
+    interface RecordHandler
+    {
+        /**
+         * Called for each record, in the order of the journal, as the journal is recovered and once each appended
+         * record has been written.
+         */
+        void handle(ByteBuffer record, Location location);
+    }
+
+    interface Cleaner
+    {
+        /**
+         * Called with each record of a segment about to be removed. Adds to the list the records which must be
+         * appended again to keep the data of the record which is still live.
+         */
+        void relocate(ByteBuffer record, Location location, List<ByteBuffer> relocated);
+
+        /**
+         * Called once segments have been removed from the journal.
+         */
+        void segmentsRemoved();
+    }
+
+    private final File _directory;
+    private final long _segmentSize;
+    private final ConcurrentSkipListMap<Long, Segment> _segments = new ConcurrentSkipListMap<Long, Segment>();
+    private final List<ByteBuffer> _pendingWrites = new ArrayList<ByteBuffer>();
+
+    private RecordHandler _handler;
+    private Cleaner _cleaner;
+    private Segment _current;
+    private WriterThread _writerThread;
+
+    Journal(final File directory, final long segmentSize)
+    {
+        _directory = directory;
+        _segmentSize = segmentSize;
+    }
+
+    /**
+     * Replays the records of the journal to the handler, discarding an incompletely written record at the end of the
+     * last segment, and starts the writer thread.
+     */
+    void open(final String name, final RecordHandler handler, final Cleaner cleaner)
+    {
+        _handler = handler;
+        _cleaner = cleaner;
+
+        if (!_directory.exists() && !_directory.mkdirs())
+        {
+            throw new StoreException("Cannot create journal directory " + _directory.getAbsolutePath());
+        }
+
+        try
+        {
+            File[] files = _directory.listFiles(new FileFilter()
+            {
+                @Override
+                public boolean accept(final File file)
+                {
+                    return file.isFile() && file.getName().endsWith(SEGMENT_SUFFIX);
+                }
+            });
+            Arrays.sort(files, new Comparator<File>()
+            {
+                @Override
+                public int compare(final File file1, final File file2)
+                {
+                    long id1 = getSegmentId(file1);
+                    long id2 = getSegmentId(file2);
+                    return id1 < id2 ? -1 : id1 == id2 ? 0 : 1;
+                }
+            });
+
+            for (int i = 0; i < files.length; i++)
+            {
+                Segment segment = new Segment(getSegmentId(files[i]), files[i]);
+                _segments.put(segment._id, segment);
+                scan(segment, handler, i == files.length - 1);
+            }
+
+            if (_segments.isEmpty())
+            {
+                _current = createSegment(1l);
+            }
+            else
+            {
+                _current = _segments.lastEntry().getValue();
+                _current._channel.position(_current._size);
+            }
+        }
+        catch (IOException e)
+        {
+            close();
+            throw new StoreException("Cannot recover journal " + _directory.getAbsolutePath(), e);
+        }
+        catch (RuntimeException e)
+        {
+            close();
+            throw e;
+        }
+
+        _writerThread = new WriterThread("Journal-Writer-" + name);
+        _writerThread.start();
+    }
+
+    /**
+     * Appends the given records to the journal, returning a future which completes once all of them are durable.
+     */
+    StoreFuture append(final ByteBuffer... records)
+    {
+        JournalFuture future = new JournalFuture(records);
+        _writerThread.addJob(future);
+        return future;
+    }
+
+    /**
+     * Reads bytes of the record at the given location, starting at the given offset within the record, into the
+     * buffer.
+     *
+     * @return false if the segment holding the record has since been removed, in which case the record can be found
+     * at its new location
+     */
+    boolean read(final Location location, final int offset, final ByteBuffer dst) throws IOException
+    {
+        return location._segment.read(location._position + RECORD_HEADER_SIZE + offset, dst);
+    }
+
+    /**
+     * @return the number of bytes held in the segments of the journal
+     */
+    long getSize()
+    {
+        long size = 0l;
+        for (Segment segment : _segments.values())
+        {
+            size += segment._size;
+        }
+        return size;
+    }
+
+    File getDirectory()
+    {
+        return _directory;
+    }
+
+    /**
+     * Writes any records already appended, and stops the writer thread.
+     */
+    void close()
+    {
+        if (_writerThread != null)
+        {
+            _writerThread.close();
+            _writerThread = null;
+        }
+        for (Segment segment : _segments.values())
+        {
+            segment.close();
+        }
+        _segments.clear();
+    }
+
+    private static long getSegmentId(final File file)
+    {
+        String name = file.getName();
+        try
+        {
+            return Long.parseLong(name.substring(0, name.length() - SEGMENT_SUFFIX.length()));
+        }
+        catch (NumberFormatException e)
+        {
+            throw new StoreException("Unexpected file " + file.getAbsolutePath() + " in journal directory");
+        }
+    }
+
+    private Segment createSegment(final long id) throws IOException
+    {
+        Segment segment = new Segment(id, new File(_directory, String.format("%020d%s", id, SEGMENT_SUFFIX)));
+        ByteBuffer header = createSegmentHeader();
+        while (header.hasRemaining())
+        {
+            segment._channel.write(header);
+        }
+        segment._size = SEGMENT_HEADER_SIZE;
+        _segments.put(id, segment);
+        return segment;
+    }
+
+    private static ByteBuffer createSegmentHeader()
+    {
+        ByteBuffer header = ByteBuffer.allocate(SEGMENT_HEADER_SIZE);
+        header.putInt(SEGMENT_MAGIC);
+        header.putInt(SEGMENT_VERSION);
+        header.flip();
+        return header;
+    }
+
+    private void scan(final Segment segment, final RecordHandler handler, final boolean last) throws IOException
+    {
+        final long size = segment._channel.size();
+        DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segment._file),
+                                                                         READ_BUFFER_SIZE));
+        try
+        {
+            if (size < SEGMENT_HEADER_SIZE && last)
+            {
+                LOGGER.warn("Reinitialising incompletely created journal segment " + segment._file.getAbsolutePath());
+                segment._channel.truncate(0l);
+                ByteBuffer header = createSegmentHeader();
+                while (header.hasRemaining())
+                {
+                    segment._channel.write(header, SEGMENT_HEADER_SIZE - header.remaining());
+                }
+                segment._size = SEGMENT_HEADER_SIZE;
+                return;
+            }
+            if (size < SEGMENT_HEADER_SIZE || in.readInt() != SEGMENT_MAGIC || in.readInt() != SEGMENT_VERSION)
+            {
+                throw new StoreException("File " + segment._file.getAbsolutePath() + " is not a journal segment");
+            }
+
+            CRC32 crc = new CRC32();
+            long position = SEGMENT_HEADER_SIZE;
+            while (size - position >= RECORD_HEADER_SIZE)
+            {
+                int length = in.readInt();
+                int checksum = in.readInt();
+                if (length < 0 || size - position - RECORD_HEADER_SIZE < length)
+                {
+                    break;
+                }
+                byte[] record = new byte[length];
+                in.readFully(record);
+                crc.reset();
+                crc.update(record, 0, length);
+                if ((int) crc.getValue() != checksum)
+                {
+                    break;
+                }
+
+                handler.handle(ByteBuffer.wrap(record), new Location(segment, position, length));
+                position += RECORD_HEADER_SIZE + length;
+            }
+
+            if (position < size)
+            {
+                if (!last)
+                {
+                    throw new StoreException("Journal segment " + segment._file.getAbsolutePath()
+                                             + " is corrupt at position " + position);
+                }
+                LOGGER.warn("Discarding incomplete record at position " + position + " of journal segment "
+                            + segment._file.getAbsolutePath());
+                segment._channel.truncate(position);
+            }
+            segment._size = position;
+        }
+        finally
+        {
+            in.close();
+        }
+    }
+
+    private Location write(final ByteBuffer record) throws IOException
+    {
+        final int length = record.remaining();
+        if (_current._size > SEGMENT_HEADER_SIZE && _current._size + RECORD_HEADER_SIZE + length > _segmentSize)
+        {
+            flushPendingWrites();
+            _current._channel.force(false);
+            _current = createSegment(_current._id + 1);
+        }
+
+        CRC32 crc = new CRC32();
+        crc.update(record.array(), record.arrayOffset() + record.position(), length);
+        ByteBuffer header = ByteBuffer.allocate(RECORD_HEADER_SIZE);
+        header.putInt(length);
+        header.putInt((int) crc.getValue());
+        header.flip();
+        _pendingWrites.add(header);
+        _pendingWrites.add(record.duplicate());
+
+        Location location = new Location(_current, _current._size, length);
+        _current._size += RECORD_HEADER_SIZE + length;
+        return location;
+    }
+
+    private void flushPendingWrites() throws IOException
+    {
+        if (!_pendingWrites.isEmpty())
+        {
+            ByteBuffer[] buffers = _pendingWrites.toArray(new ByteBuffer[_pendingWrites.size()]);
+            _pendingWrites.clear();
+            ByteBuffer last = buffers[buffers.length - 1];
+            while (last.hasRemaining())
+            {
+                _current._channel.write(buffers);
+            }
+        }
+    }
+
+    /**
+     * Writes the records, makes them durable and passes each with its location to the handler.
+     */
+    private void writeRecords(final List<ByteBuffer> records) throws IOException
+    {
+        List<Location> locations = new ArrayList<Location>(records.size());
+        try
+        {
+            for (ByteBuffer record : records)
+            {
+                locations.add(write(record));
+            }
+            flushPendingWrites();
+        }
+        finally
+        {
+            _pendingWrites.clear();
+        }
+        _current._channel.force(false);
+
+        for (int i = 0; i < records.size(); i++)
+        {
+            _handler.handle(records.get(i).duplicate(), locations.get(i));
+        }
+    }
+
+    private void clean() throws IOException
+    {
+        boolean removed = false;
+        Segment oldest;
+        while ((oldest = _segments.firstEntry().getValue()) != _current)
+        {
+            if (oldest._liveBytes > 0)
+            {
+                if (oldest._liveBytes * CLEAN_THRESHOLD_DIVISOR > oldest._size)
+                {
+                    break;
+                }
+
+                final List<ByteBuffer> relocated = new ArrayList<ByteBuffer>();
+                scan(oldest, new RecordHandler()
+                {
+                    @Override
+                    public void handle(final ByteBuffer record, final Location location)
+                    {
+                        _cleaner.relocate(record, location, relocated);
+                    }
+                }, false);
+                writeRecords(relocated);
+
+                if (oldest._liveBytes > 0)
+                {
+                    LOGGER.warn("Journal segment " + oldest._file.getAbsolutePath() + " still holds "
+                                + oldest._liveBytes + " live bytes after relocation");
+                    break;
+                }
+
+                if (LOGGER.isDebugEnabled())
+                {
+                    LOGGER.debug("Relocated " + relocated.size() + " records from journal segment "
+                                 + oldest._file.getAbsolutePath());
+                }
+            }
+
+            _segments.remove(oldest._id);
+            oldest.delete();
+            removed = true;
+        }
+
+        if (removed)
+        {
+            _cleaner.segmentsRemoved();
+        }
+    }
+
+    /**
+     * The location of a record within the journal.
+     */
+    static final class Location
+    {
+        private final Segment _segment;
+        private final long _position;
+        private final int _length;
+
+        private Location(final Segment segment, final long position, final int length)
+        {
+            _segment = segment;
+            _position = position;
+            _length = length;
+        }
+
+        Segment getSegment()
+        {
+            return _segment;
+        }
+
+        /**
+         * @return the number of bytes the record occupies in its segment
+         */
+        int getSize()
+        {
+            return RECORD_HEADER_SIZE + _length;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof Location))
+            {
+                return false;
+            }
+            Location location = (Location) o;
+            return _segment == location._segment && _position == location._position;
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * (int) (_segment._id ^ (_segment._id >>> 32)) + (int) (_position ^ (_position >>> 32));
+        }
+    }
+
+    /**
+     * A segment file of the journal. The live bytes of the segment are accounted only by the thread recovering the
+     * journal and then by the writer thread.
+     */
+    static final class Segment
+    {
+        private final long _id;
+        private final File _file;
+        private final FileChannel _channel;
+        private volatile long _size;
+        private long _liveBytes;
+        private boolean _closed;
+
+        private Segment(final long id, final File file) throws IOException
+        {
+            _id = id;
+            _file = file;
+            _channel = new RandomAccessFile(file, "rw").getChannel();
+        }
+
+        void addLiveBytes(final int bytes)
+        {
+            _liveBytes += bytes;
+        }
+
+        void removeLiveBytes(final int bytes)
+        {
+            _liveBytes -= bytes;
+        }
+
+        private synchronized boolean read(long position, final ByteBuffer dst) throws IOException
+        {
+            if (_closed)
+            {
+                return false;
+            }
+            while (dst.hasRemaining())
+            {
+                int read = _channel.read(dst, position);
+                if (read < 0)
+                {
+                    throw new IOException("Unexpected end of journal segment " + _file.getAbsolutePath());
+                }
+                position += read;
+            }
+            return true;
+        }
+
+        private synchronized void close()
+        {
+            if (!_closed)
+            {
+                _closed = true;
+                try
+                {
+                    _channel.close();
+                }
+                catch (IOException e)
+                {
+                    LOGGER.error("Problem closing journal segment " + _file.getAbsolutePath(), e);
+                }
+            }
+        }
+
+        private synchronized void delete()
+        {
+            close();
+            if (!_file.delete())
+            {
+                LOGGER.warn("Cannot delete journal segment " + _file.getAbsolutePath());
+            }
+        }
+    }
+
+    private static final class JournalFuture implements StoreFuture
+    {
+        private final ByteBuffer[] _records;
+        private boolean _complete;
+        private RuntimeException _exception;
+
+        private JournalFuture(final ByteBuffer[] records)
+        {
+            _records = records;
+        }
+
+        private synchronized void complete()
+        {
+            _complete = true;
+            notifyAll();
+        }
+
+        private synchronized void abort(final RuntimeException exception)
+        {
+            _complete = true;
+            _exception = exception;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized boolean isComplete()
+        {
+            return _complete;
+        }
+
+        @Override
+        public synchronized void waitForCompletion()
+        {
+            while (!_complete)
+            {
+                try
+                {
+                    wait();
+                }
+                catch (InterruptedException e)
+                {
+                    Thread.currentThread().interrupt();
+                    throw new StoreException("Interrupted whilst waiting for journal write", e);
+                }
+            }
+
+            if (_exception != null)
+            {
+                throw _exception;
+            }
+        }
+    }
+
+    private final class WriterThread extends Thread
+    {
+        private final Queue<JournalFuture> _jobQueue = new ConcurrentLinkedQueue<JournalFuture>();
+        private final Object _lock = new Object();
+        private boolean _stopped;
+        private RuntimeException _failure;
+        private long _lastClean = System.currentTimeMillis();
+
+        private WriterThread(final String name)
+        {
+            super(name);
+        }
+
+        private void addJob(final JournalFuture job)
+        {
+            synchronized (_lock)
+            {
+                if (_stopped)
+                {
+                    throw new IllegalStateException("Journal writer thread is stopped");
+                }
+                if (_failure != null)
+                {
+                    job.abort(_failure);
+                    return;
+                }
+                _jobQueue.add(job);
+                _lock.notifyAll();
+            }
+        }
+
+        @Override
+        public void run()
+        {
+            while (true)
+            {
+                synchronized (_lock)
+                {
+                    long timeout;
+                    while (!_stopped && _jobQueue.isEmpty()
+                           && (timeout = _lastClean + CLEAN_INTERVAL - System.currentTimeMillis()) > 0)
+                    {
+                        try
+                        {
+                            _lock.wait(timeout);
+                        }
+                        catch (InterruptedException e)
+                        {
+                        }
+                    }
+                    if (_stopped && _jobQueue.isEmpty())
+                    {
+                        return;
+                    }
+                }
+
+                if (_failure == null
+                    && (_jobQueue.isEmpty() || System.currentTimeMillis() - _lastClean >= CLEAN_INTERVAL))
+                {
+                    _lastClean = System.currentTimeMillis();
+                    try
+                    {
+                        clean();
+                    }
+                    catch (IOException e)
+                    {
+                        fail(new StoreException("Error cleaning journal: " + e.getMessage(), e));
+                    }
+                    catch (RuntimeException e)
+                    {
+                        fail(e);
+                    }
+                }
+                processJobs();
+            }
+        }
+
+        private void processJobs()
+        {
+            List<JournalFuture> jobs = new ArrayList<JournalFuture>();
+            List<ByteBuffer> records = new ArrayList<ByteBuffer>();
+            JournalFuture job;
+            while ((job = _jobQueue.poll()) != null)
+            {
+                jobs.add(job);
+                records.addAll(Arrays.asList(job._records));
+            }
+
+            if (jobs.isEmpty())
+            {
+                return;
+            }
+
+            try
+            {
+                writeRecords(records);
+                for (JournalFuture written : jobs)
+                {
+                    written.complete();
+                }
+            }
+            catch (IOException e)
+            {
+                abort(jobs, fail(new StoreException("Error writing to journal: " + e.getMessage(), e)));
+            }
+            catch (RuntimeException e)
+            {
+                abort(jobs, fail(e));
+            }
+        }
+
+        private void abort(final List<JournalFuture> jobs, final RuntimeException e)
+        {
+            for (JournalFuture job : jobs)
+            {
+                job.abort(e);
+            }
+        }
+
+        /**
+         * Stops the journal accepting further records, as the state of its end is no longer known.
+         */
+        private RuntimeException fail(final RuntimeException e)
+        {
+            LOGGER.error("Journal " + _directory.getAbsolutePath() + " has failed", e);
+            synchronized (_lock)
+            {
+                _failure = e;
+                JournalFuture job;
+                while ((job = _jobQueue.poll()) != null)
+                {
+                    job.abort(e);
+                }
+            }
+            return e;
+        }
+
+        private void close()
+        {
+            synchronized (_lock)
+            {
+                _stopped = true;
+                _lock.notifyAll();
+            }
+            try
+            {
+                join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+                throw new StoreException("Journal writer thread has not shutdown", ie);
+            }
+        }
+    }
+}
@@ -0,0 +1,1076 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.journal;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.log4j.Logger;
+import org.apache.qpid.server.message.EnqueueableMessage;
+import org.apache.qpid.server.model.ConfiguredObject;
+import org.apache.qpid.server.plugin.MessageMetaDataType;
+import org.apache.qpid.server.store.Event;
+import org.apache.qpid.server.store.EventListener;
+import org.apache.qpid.server.store.EventManager;
+import org.apache.qpid.server.store.FlowableStoredMessage;
+import org.apache.qpid.server.store.MessageMetaDataTypeRegistry;
+import org.apache.qpid.server.store.MessageStore;
+import org.apache.qpid.server.store.SpillFile;
+import org.apache.qpid.server.store.StorableMessageMetaData;
+import org.apache.qpid.server.store.StoreException;
+import org.apache.qpid.server.store.StoreFuture;
+import org.apache.qpid.server.store.StoredMemoryMessage;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.Transaction;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.store.Xid;
+import org.apache.qpid.server.store.handler.DistributedTransactionHandler;
+import org.apache.qpid.server.store.handler.MessageHandler;
+import org.apache.qpid.server.store.handler.MessageInstanceHandler;
+import org.apache.qpid.util.FileUtils;
+
+/**
+ * A message store which writes messages, queue entries and distributed transactions as records appended to a
+ * {@link Journal} of segment files, rather than updating them in place.
+ *
+ * A message is written as a single record holding its meta data and content, and its removal as a further record.
+ * Each transaction is written as a single record holding all of its operations, so that it is recovered either whole
+ * or not at all. The locations of the records still live are held in memory, and are rebuilt by replaying the
+ * journal when the store is opened.
+ */
+public class JournalMessageStore implements MessageStore
+{
+    private static final Logger LOGGER = Logger.getLogger(JournalMessageStore.class);
+
+    public static final String TYPE = "JOURNAL";
+
+    public static final String SEGMENT_SIZE = "journalSegmentSize";
+    public static final long DEFAULT_SEGMENT_SIZE = 16l * 1024l * 1024l;
+
+    private static final byte MESSAGE_RECORD = 1;
+    private static final byte MESSAGE_REMOVED_RECORD = 2;
+    private static final byte TRANSACTION_RECORD = 3;
+
+    private static final byte ENQUEUE_OPERATION = 1;
+    private static final byte DEQUEUE_OPERATION = 2;
+    private static final byte RECORD_XID_OPERATION = 3;
+    private static final byte REMOVE_XID_OPERATION = 4;
+
+    private static final int MESSAGE_RECORD_META_DATA_OFFSET = 1 + 8;
+    private static final int QUEUE_ENTRY_OPERATION_SIZE = 1 + 8 + 8 + 8;
+
+    private final EventManager _eventManager = new EventManager();
+    private final AtomicBoolean _messageStoreOpen = new AtomicBoolean();
+    private final AtomicLong _messageId = new AtomicLong();
+
+    private final Map<Long, MessageLocation> _messages = new ConcurrentHashMap<Long, MessageLocation>();
+    private final Map<Long, StoredJournalMessage> _messagesBeingStored = new ConcurrentHashMap<Long, StoredJournalMessage>();
+    private final Map<QueueEntryKey, Journal.Location> _queueEntries = new ConcurrentHashMap<QueueEntryKey, Journal.Location>();
+    private final Map<Xid, XidEntry> _xids = new ConcurrentHashMap<Xid, XidEntry>();
+
+    private Journal _journal;
+    private String _storeLocation;
+    private long _highestMessageId;
+
+    private long _persistentSizeHighThreshold;
+    private long _persistentSizeLowThreshold;
+    private boolean _limitBusted;
+
+    @Override
+    public void openMessageStore(final ConfiguredObject<?> parent, final Map<String, Object> messageStoreSettings)
+    {
+        if (_messageStoreOpen.compareAndSet(false, true))
+        {
+            _storeLocation = (String) messageStoreSettings.get(MessageStore.STORE_PATH);
+            if (_storeLocation == null)
+            {
+                _messageStoreOpen.set(false);
+                throw new StoreException("Setting '" + MessageStore.STORE_PATH + "' is required");
+            }
+
+            long segmentSize = getLongSetting(messageStoreSettings, SEGMENT_SIZE, DEFAULT_SEGMENT_SIZE);
+            _persistentSizeHighThreshold = getLongSetting(messageStoreSettings, MessageStore.OVERFULL_SIZE, -1l);
+            _persistentSizeLowThreshold = getLongSetting(messageStoreSettings,
+                                                         MessageStore.UNDERFULL_SIZE,
+                                                         _persistentSizeHighThreshold);
+            if (_persistentSizeLowThreshold > _persistentSizeHighThreshold || _persistentSizeLowThreshold < 0l)
+            {
+                _persistentSizeLowThreshold = _persistentSizeHighThreshold;
+            }
+
+            _journal = new Journal(new File(_storeLocation), segmentSize);
+            try
+            {
+                _journal.open(parent.getName(), new Journal.RecordHandler()
+                {
+                    @Override
+                    public void handle(final ByteBuffer record, final Journal.Location location)
+                    {
+                        apply(record, location);
+                    }
+                }, new Journal.Cleaner()
+                {
+                    @Override
+                    public void relocate(final ByteBuffer record,
+                                         final Journal.Location location,
+                                         final List<ByteBuffer> relocated)
+                    {
+                        JournalMessageStore.this.relocate(record, location, relocated);
+                    }
+
+                    @Override
+                    public void segmentsRemoved()
+                    {
+                        checkStoreSize();
+                    }
+                });
+            }
+            catch (RuntimeException e)
+            {
+                clearState();
+                _messageStoreOpen.set(false);
+                throw e;
+            }
+            _messageId.set(_highestMessageId);
+
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Recovered journal " + _storeLocation + " holding " + _messages.size()
+                             + " messages and " + _queueEntries.size() + " queue entries");
+            }
+        }
+    }
+
+    private static long getLongSetting(final Map<String, Object> settings, final String name, final long defaultValue)
+    {
+        Object value = settings.get(name);
+        return value == null ? defaultValue
+                : value instanceof Number ? ((Number) value).longValue() : Long.parseLong(value.toString());
+    }
+
+    @Override
+    public void closeMessageStore()
+    {
+        if (_messageStoreOpen.compareAndSet(true, false))
+        {
+            _journal.close();
+            clearState();
+        }
+    }
+
+    private void clearState()
+    {
+        _messages.clear();
+        _messagesBeingStored.clear();
+        _queueEntries.clear();
+        _xids.clear();
+        _highestMessageId = 0l;
+    }
+
+    private void checkMessageStoreOpen()
+    {
+        if (!_messageStoreOpen.get())
+        {
+            throw new IllegalStateException("Message store is not open");
+        }
+    }
+
+    @Override
+    public StoredMessage addMessage(final StorableMessageMetaData metaData)
+    {
+        checkMessageStoreOpen();
+
+        if (metaData.isPersistent())
+        {
+            return new StoredJournalMessage(_messageId.incrementAndGet(), metaData);
+        }
+        else
+        {
+            return new StoredMemoryMessage(_messageId.incrementAndGet(), metaData);
+        }
+    }
+
+    @Override
+    public boolean isPersistent()
+    {
+        return true;
+    }
+
+    @Override
+    public Transaction newTransaction()
+    {
+        checkMessageStoreOpen();
+
+        return new JournalTransaction();
+    }
+
+    @Override
+    public void addEventListener(final EventListener eventListener, final Event... events)
+    {
+        _eventManager.addEventListener(eventListener, events);
+    }
+
+    @Override
+    public String getStoreLocation()
+    {
+        return _storeLocation;
+    }
+
+    @Override
+    public void onDelete()
+    {
+        if (_storeLocation != null)
+        {
+            if (LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("Deleting store " + _storeLocation);
+            }
+
+            File location = new File(_storeLocation);
+            if (location.exists() && !FileUtils.delete(location, true))
+            {
+                LOGGER.error("Cannot delete " + _storeLocation);
+            }
+        }
+    }
+
+    @Override
+    public void visitMessages(final MessageHandler handler) throws StoreException
+    {
+        checkMessageStoreOpen();
+
+        for (Long messageId : _messages.keySet())
+        {
+            if (!handler.handle(new StoredJournalMessage(messageId)))
+            {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void visitMessageInstances(final MessageInstanceHandler handler) throws StoreException
+    {
+        checkMessageStoreOpen();
+
+        for (QueueEntryKey queueEntry : _queueEntries.keySet())
+        {
+            if (!handler.handle(queueEntry._queueId, queueEntry._messageId))
+            {
+                break;
+            }
+        }
+    }
+
+    @Override
+    public void visitDistributedTransactions(final DistributedTransactionHandler handler) throws StoreException
+    {
+        checkMessageStoreOpen();
+
+        for (Map.Entry<Xid, XidEntry> entry : _xids.entrySet())
+        {
+            Xid xid = entry.getKey();
+            XidEntry xidEntry = entry.getValue();
+            if (!handler.handle(xid.getFormat(), xid.getGlobalId(), xid.getBranchId(),
+                                xidEntry._enqueues, xidEntry._dequeues))
+            {
+                break;
+            }
+        }
+    }
+
+    private void checkStoreSize()
+    {
+        if (_persistentSizeHighThreshold > 0)
+        {
+            long size = _journal.getSize();
+            synchronized (this)
+            {
+                if (!_limitBusted && size > _persistentSizeHighThreshold)
+                {
+                    _limitBusted = true;
+                    _eventManager.notifyEvent(Event.PERSISTENT_MESSAGE_SIZE_OVERFULL);
+                }
+                else if (_limitBusted && size < _persistentSizeLowThreshold)
+                {
+                    _limitBusted = false;
+                    _eventManager.notifyEvent(Event.PERSISTENT_MESSAGE_SIZE_UNDERFULL);
+                }
+            }
+        }
+    }
+
+    /**
+     * Applies a record to the state of the store. Called with every record of the journal in order, both as the
+     * journal is recovered and as records are written, by a single thread at a time.
+     */
+    private void apply(final ByteBuffer record, final Journal.Location location)
+    {
+        final Journal.Segment segment = location.getSegment();
+        switch (record.get())
+        {
+            case MESSAGE_RECORD:
+            {
+                long messageId = record.getLong();
+                record.get();
+                int metaDataLength = record.getInt();
+                record.position(record.position() + metaDataLength);
+                int contentLength = record.getInt();
+
+                release(_messages.put(messageId, new MessageLocation(location, metaDataLength, contentLength)));
+                segment.addLiveBytes(location.getSize());
+                if (messageId > _highestMessageId)
+                {
+                    _highestMessageId = messageId;
+                }
+
+                StoredJournalMessage message = _messagesBeingStored.remove(messageId);
+                if (message != null)
+                {
+                    message.stored();
+                }
+                break;
+            }
+            case MESSAGE_REMOVED_RECORD:
+                release(_messages.remove(record.getLong()));
+                break;
+            case TRANSACTION_RECORD:
+                int operationCount = record.getInt();
+                for (int i = 0; i < operationCount; i++)
+                {
+                    applyOperation(record, location);
+                }
+                break;
+            default:
+                throw new StoreException("Unknown journal record type");
+        }
+    }
+
+    private void applyOperation(final ByteBuffer record, final Journal.Location location)
+    {
+        final int start = record.position();
+        switch (record.get())
+        {
+            case ENQUEUE_OPERATION:
+            {
+                Journal.Location previous = _queueEntries.put(readQueueEntryKey(record), location);
+                if (previous != null)
+                {
+                    previous.getSegment().removeLiveBytes(QUEUE_ENTRY_OPERATION_SIZE);
+                }
+                location.getSegment().addLiveBytes(QUEUE_ENTRY_OPERATION_SIZE);
+                break;
+            }
+            case DEQUEUE_OPERATION:
+            {
+                Journal.Location previous = _queueEntries.remove(readQueueEntryKey(record));
+                if (previous != null)
+                {
+                    previous.getSegment().removeLiveBytes(QUEUE_ENTRY_OPERATION_SIZE);
+                }
+                break;
+            }
+            case RECORD_XID_OPERATION:
+            {
+                Xid xid = readXid(record);
+                Transaction.Record[] enqueues = readXidRecords(record);
+                Transaction.Record[] dequeues = readXidRecords(record);
+                XidEntry entry = new XidEntry(location, record.position() - start, enqueues, dequeues);
+                release(_xids.put(xid, entry));
+                location.getSegment().addLiveBytes(entry._size);
+                break;
+            }
+            case REMOVE_XID_OPERATION:
+                release(_xids.remove(readXid(record)));
+                break;
+            default:
+                throw new StoreException("Unknown journal operation type");
+        }
+    }
+
+    private static void release(final MessageLocation message)
+    {
+        if (message != null)
+        {
+            message._location.getSegment().removeLiveBytes(message._location.getSize());
+        }
+    }
+
+    private static void release(final XidEntry xid)
+    {
+        if (xid != null)
+        {
+            xid._location.getSegment().removeLiveBytes(xid._size);
+        }
+    }
+
+    /**
+     * Adds to the list the records needed to keep the data of the given record which is still live.
+     */
+    private void relocate(final ByteBuffer record, final Journal.Location location, final List<ByteBuffer> relocated)
+    {
+        final ByteBuffer original = record.duplicate();
+        switch (record.get())
+        {
+            case MESSAGE_RECORD:
+                MessageLocation message = _messages.get(record.getLong());
+                if (message != null && message._location.equals(location))
+                {
+                    relocated.add(original);
+                }
+                break;
+            case MESSAGE_REMOVED_RECORD:
+                break;
+            case TRANSACTION_RECORD:
+                RecordBuilder operations = new RecordBuilder();
+                int liveOperationCount = 0;
+                int operationCount = record.getInt();
+                for (int i = 0; i < operationCount; i++)
+                {
+                    int start = record.position();
+                    boolean live;
+                    switch (record.get())
+                    {
+                        case ENQUEUE_OPERATION:
+                            live = location.equals(_queueEntries.get(readQueueEntryKey(record)));
+                            break;
+                        case DEQUEUE_OPERATION:
+                            readQueueEntryKey(record);
+                            live = false;
+                            break;
+                        case RECORD_XID_OPERATION:
+                        {
+                            XidEntry entry = _xids.get(readXid(record));
+                            readXidRecords(record);
+                            readXidRecords(record);
+                            live = entry != null && entry._location.equals(location);
+                            break;
+                        }
+                        case REMOVE_XID_OPERATION:
+                            readXid(record);
+                            live = false;
+                            break;
+                        default:
+                            throw new StoreException("Unknown journal operation type");
+                    }
+
+                    if (live)
+                    {
+                        ByteBuffer operation = record.duplicate();
+                        operation.position(start);
+                        operation.limit(record.position());
+                        operations.putBytes(operation);
+                        liveOperationCount++;
+                    }
+                }
+
+                if (liveOperationCount != 0)
+                {
+                    relocated.add(new RecordBuilder().putByte(TRANSACTION_RECORD)
+                                                     .putInt(liveOperationCount)
+                                                     .putBytes(operations.toByteBuffer())
+                                                     .toByteBuffer());
+                }
+                break;
+            default:
+                throw new StoreException("Unknown journal record type");
+        }
+    }
+
+    private static QueueEntryKey readQueueEntryKey(final ByteBuffer record)
+    {
+        UUID queueId = new UUID(record.getLong(), record.getLong());
+        return new QueueEntryKey(queueId, record.getLong());
+    }
+
+    private static Xid readXid(final ByteBuffer record)
+    {
+        long format = record.getLong();
+        byte[] globalId = new byte[record.getInt()];
+        record.get(globalId);
+        byte[] branchId = new byte[record.getInt()];
+        record.get(branchId);
+        return new Xid(format, globalId, branchId);
+    }
+
+    private static Transaction.Record[] readXidRecords(final ByteBuffer record)
+    {
+        Transaction.Record[] records = new Transaction.Record[record.getInt()];
+        for (int i = 0; i < records.length; i++)
+        {
+            QueueEntryKey key = readQueueEntryKey(record);
+            records[i] = new RecordImpl(key._queueId, key._messageId);
+        }
+        return records;
+    }
+
+    private static void putXid(final RecordBuilder builder,
+                               final long format,
+                               final byte[] globalId,
+                               final byte[] branchId)
+    {
+        builder.putLong(format)
+               .putInt(globalId.length).putBytes(ByteBuffer.wrap(globalId))
+               .putInt(branchId.length).putBytes(ByteBuffer.wrap(branchId));
+    }
+
+    private static void putXidRecords(final RecordBuilder builder, final Transaction.Record[] records)
+    {
+        if (records == null)
+        {
+            builder.putInt(0);
+        }
+        else
+        {
+            builder.putInt(records.length);
+            for (Transaction.Record record : records)
+            {
+                putQueueEntry(builder, record.getResource().getId(), record.getMessage().getMessageNumber());
+            }
+        }
+    }
+
+    private static void putQueueEntry(final RecordBuilder builder, final UUID queueId, final long messageId)
+    {
+        builder.putLong(queueId.getMostSignificantBits())
+               .putLong(queueId.getLeastSignificantBits())
+               .putLong(messageId);
+    }
+
+    private MessageLocation getMessageLocation(final long messageId)
+    {
+        MessageLocation message = _messages.get(messageId);
+        if (message == null)
+        {
+            throw new StoreException("Message with id " + messageId + " is not in the store");
+        }
+        return message;
+    }
+
+    private StorableMessageMetaData readMetaData(final long messageId)
+    {
+        while (true)
+        {
+            MessageLocation message = getMessageLocation(messageId);
+            ByteBuffer buf = ByteBuffer.allocate(1 + 4 + message._metaDataLength);
+            try
+            {
+                if (_journal.read(message._location, MESSAGE_RECORD_META_DATA_OFFSET, buf))
+                {
+                    buf.flip();
+                    MessageMetaDataType type = MessageMetaDataTypeRegistry.fromOrdinal(buf.get());
+                    buf.getInt();
+                    return type.createMetaData(buf.slice());
+                }
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Error reading meta data of message with id " + messageId, e);
+            }
+        }
+    }
+
+    private int readContent(final long messageId, final int offsetInMessage, final ByteBuffer dst)
+    {
+        while (true)
+        {
+            MessageLocation message = getMessageLocation(messageId);
+            int length = Math.min(dst.remaining(), message._contentLength - offsetInMessage);
+            if (length <= 0)
+            {
+                return 0;
+            }
+
+            ByteBuffer buf = dst.duplicate();
+            buf.limit(buf.position() + length);
+            try
+            {
+                if (_journal.read(message._location, message.getContentOffset() + offsetInMessage, buf))
+                {
+                    dst.position(dst.position() + length);
+                    return length;
+                }
+            }
+            catch (IOException e)
+            {
+                throw new StoreException("Error reading content of message with id " + messageId, e);
+            }
+        }
+    }
+
+    private static ByteBuffer createMessageRecord(final long messageId,
+                                                  final StorableMessageMetaData metaData,
+                                                  final byte[] data)
+    {
+        final int metaDataLength = metaData.getStorableSize();
+        final int contentLength = data == null ? 0 : data.length;
+        ByteBuffer record = ByteBuffer.allocate(MESSAGE_RECORD_META_DATA_OFFSET + 1 + 4 + metaDataLength
+                                                + 4 + contentLength);
+        record.put(MESSAGE_RECORD);
+        record.putLong(messageId);
+        record.put((byte) metaData.getType().ordinal());
+        record.putInt(metaDataLength);
+        ByteBuffer metaDataBuf = record.slice();
+        metaDataBuf.limit(metaDataLength);
+        metaData.writeToBuffer(metaDataBuf);
+        record.position(record.position() + metaDataLength);
+        record.putInt(contentLength);
+        if (data != null)
+        {
+            record.put(data);
+        }
+        record.flip();
+        return record;
+    }
+
+    private final class JournalTransaction implements Transaction
+    {
+        private final List<StoredJournalMessage> _messagesToStore = new ArrayList<StoredJournalMessage>();
+        private RecordBuilder _operations = new RecordBuilder();
+        private int _operationCount;
+
+        @Override
+        public void enqueueMessage(final TransactionLogResource queue, final EnqueueableMessage message)
+        {
+            checkMessageStoreOpen();
+
+            final StoredMessage storedMessage = message.getStoredMessage();
+            if (storedMessage instanceof StoredJournalMessage)
+            {
+                _messagesToStore.add((StoredJournalMessage) storedMessage);
+            }
+            _operations.putByte(ENQUEUE_OPERATION);
+            putQueueEntry(_operations, queue.getId(), message.getMessageNumber());
+            _operationCount++;
+        }
+
+        @Override
+        public void dequeueMessage(final TransactionLogResource queue, final EnqueueableMessage message)
+        {
+            checkMessageStoreOpen();
+
+            _operations.putByte(DEQUEUE_OPERATION);
+            putQueueEntry(_operations, queue.getId(), message.getMessageNumber());
+            _operationCount++;
+        }
+
+        @Override
+        public void removeXid(final long format, final byte[] globalId, final byte[] branchId)
+        {
+            checkMessageStoreOpen();
+
+            _operations.putByte(REMOVE_XID_OPERATION);
+            putXid(_operations, format, globalId, branchId);
+            _operationCount++;
+        }
+
+        @Override
+        public void recordXid(final long format,
+                              final byte[] globalId,
+                              final byte[] branchId,
+                              final Record[] enqueues,
+                              final Record[] dequeues)
+        {
+            checkMessageStoreOpen();
+
+            _operations.putByte(RECORD_XID_OPERATION);
+            putXid(_operations, format, globalId, branchId);
+            putXidRecords(_operations, enqueues);
+            putXidRecords(_operations, dequeues);
+            _operationCount++;
+        }
+
+        @Override
+        public void commitTran()
+        {
+            commitTranAsync().waitForCompletion();
+        }
+
+        @Override
+        public StoreFuture commitTranAsync()
+        {
+            checkMessageStoreOpen();
+
+            if (_operationCount == 0)
+            {
+                return StoreFuture.IMMEDIATE_FUTURE;
+            }
+
+            // records of messages are appended before the transaction, so are durable once the transaction is
+            for (StoredJournalMessage message : _messagesToStore)
+            {
+                message.flushToStore();
+            }
+
+            StoreFuture future = _journal.append(new RecordBuilder().putByte(TRANSACTION_RECORD)
+                                                                    .putInt(_operationCount)
+                                                                    .putBytes(_operations.toByteBuffer())
+                                                                    .toByteBuffer());
+            checkStoreSize();
+            return future;
+        }
+
+        @Override
+        public void abortTran()
+        {
+            checkMessageStoreOpen();
+
+            _messagesToStore.clear();
+            _operations = new RecordBuilder();
+            _operationCount = 0;
+        }
+    }
+
+    private final class StoredJournalMessage implements FlowableStoredMessage<StorableMessageMetaData>
+    {
+        private final long _messageId;
+
+        private StorableMessageMetaData _metaData;
+        private volatile SoftReference<StorableMessageMetaData> _metaDataRef;
+        private byte[] _data;
+        private volatile SoftReference<byte[]> _dataRef;
+        private StoreFuture _storeFuture;
+
+        private StoredJournalMessage(final long messageId, final StorableMessageMetaData metaData)
+        {
+            _messageId = messageId;
+            _metaData = metaData;
+            _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
+        }
+
+        private StoredJournalMessage(final long messageId)
+        {
+            _messageId = messageId;
+            _metaDataRef = new SoftReference<StorableMessageMetaData>(null);
+            _storeFuture = StoreFuture.IMMEDIATE_FUTURE;
+        }
+
+        @Override
+        public StorableMessageMetaData getMetaData()
+        {
+            StorableMessageMetaData metaData = _metaData == null ? _metaDataRef.get() : _metaData;
+            if (metaData == null)
+            {
+                checkMessageStoreOpen();
+                metaData = readMetaData(_messageId);
+                _metaDataRef = new SoftReference<StorableMessageMetaData>(metaData);
+            }
+            return metaData;
+        }
+
+        @Override
+        public long getMessageNumber()
+        {
+            return _messageId;
+        }
+
+        @Override
+        public synchronized void addContent(final int offsetInMessage, ByteBuffer src)
+        {
+            src = src.slice();
+
+            if (_data == null)
+            {
+                _data = new byte[src.remaining()];
+                src.duplicate().get(_data);
+            }
+            else
+            {
+                byte[] oldData = _data;
+                _data = new byte[oldData.length + src.remaining()];
+                System.arraycopy(oldData, 0, _data, 0, oldData.length);
+                src.duplicate().get(_data, oldData.length, src.remaining());
+            }
+            _dataRef = new SoftReference<byte[]>(_data);
+        }
+
+        @Override
+        public int getContent(final int offsetInMessage, final ByteBuffer dst)
+        {
+            byte[] data = _dataRef == null ? null : _dataRef.get();
+            if (data != null)
+            {
+                int length = Math.min(dst.remaining(), data.length - offsetInMessage);
+                dst.put(data, offsetInMessage, length);
+                return length;
+            }
+            else
+            {
+                checkMessageStoreOpen();
+                return readContent(_messageId, offsetInMessage, dst);
+            }
+        }
+
+        @Override
+        public ByteBuffer getContent(final int offsetInMessage, final int size)
+        {
+            ByteBuffer buf = ByteBuffer.allocate(size);
+            int length = getContent(offsetInMessage, buf);
+            buf.position(0);
+            buf.limit(length);
+            return buf;
+        }
+
+        @Override
+        public synchronized StoreFuture flushToStore()
+        {
+            checkMessageStoreOpen();
+
+            if (_storeFuture == null)
+            {
+                _messagesBeingStored.put(_messageId, this);
+                _storeFuture = _journal.append(createMessageRecord(_messageId, _metaData, _data));
+            }
+            return _storeFuture;
+        }
+
+        @Override
+        public int flowToDisk(final SpillFile spillFile)
+        {
+            // not synchronized, as the message is marked as stored by the journal writer thread
+            flushToStore().waitForCompletion();
+
+            byte[] data = _dataRef == null ? null : _dataRef.get();
+            _dataRef = null;
+            return data == null ? 0 : data.length;
+        }
+
+        /**
+         * Called once the record of the message has been written, after which the meta data and content of the
+         * message need only be softly held.
+         */
+        private synchronized void stored()
+        {
+            _metaData = null;
+            _data = null;
+        }
+
+        @Override
+        public void remove()
+        {
+            checkMessageStoreOpen();
+
+            synchronized (this)
+            {
+                if (_storeFuture == null)
+                {
+                    return;
+                }
+            }
+            _journal.append(new RecordBuilder().putByte(MESSAGE_REMOVED_RECORD).putLong(_messageId).toByteBuffer());
+            checkStoreSize();
+        }
+    }
+
+    private static final class MessageLocation
+    {
+        private final Journal.Location _location;
+        private final int _metaDataLength;
+        private final int _contentLength;
+
+        private MessageLocation(final Journal.Location location, final int metaDataLength, final int contentLength)
+        {
+            _location = location;
+            _metaDataLength = metaDataLength;
+            _contentLength = contentLength;
+        }
+
+        private int getContentOffset()
+        {
+            return MESSAGE_RECORD_META_DATA_OFFSET + 1 + 4 + _metaDataLength + 4;
+        }
+    }
+
+    private static final class XidEntry
+    {
+        private final Journal.Location _location;
+        private final int _size;
+        private final Transaction.Record[] _enqueues;
+        private final Transaction.Record[] _dequeues;
+
+        private XidEntry(final Journal.Location location,
+                         final int size,
+                         final Transaction.Record[] enqueues,
+                         final Transaction.Record[] dequeues)
+        {
+            _location = location;
+            _size = size;
+            _enqueues = enqueues;
+            _dequeues = dequeues;
+        }
+    }
+
+    private static final class QueueEntryKey
+    {
+        private final UUID _queueId;
+        private final long _messageId;
+
+        private QueueEntryKey(final UUID queueId, final long messageId)
+        {
+            _queueId = queueId;
+            _messageId = messageId;
+        }
+
+        @Override
+        public boolean equals(final Object o)
+        {
+            if (this == o)
+            {
+                return true;
+            }
+            if (!(o instanceof QueueEntryKey))
+            {
+                return false;
+            }
+            QueueEntryKey that = (QueueEntryKey) o;
+            return _messageId == that._messageId && _queueId.equals(that._queueId);
+        }
+
+        @Override
+        public int hashCode()
+        {
+            return 31 * _queueId.hashCode() + (int) (_messageId ^ (_messageId >>> 32));
+        }
+    }
+
+    private static final class RecordImpl implements Transaction.Record, TransactionLogResource, EnqueueableMessage
+    {
+        private final UUID _queueId;
+        private final long _messageNumber;
+
+        private RecordImpl(final UUID queueId, final long messageNumber)
+        {
+            _queueId = queueId;
+            _messageNumber = messageNumber;
+        }
+
+        @Override
+        public TransactionLogResource getResource()
+        {
+            return this;
+        }
+
+        @Override
+        public EnqueueableMessage getMessage()
+        {
+            return this;
+        }
+
+        @Override
+        public long getMessageNumber()
+        {
+            return _messageNumber;
+        }
+
+        @Override
+        public boolean isPersistent()
+        {
+            return true;
+        }
+
+        @Override
+        public StoredMessage getStoredMessage()
+        {
+            throw new UnsupportedOperationException();
+        }
+
+        @Override
+        public String getName()
+        {
+            return _queueId.toString();
+        }
+
+        @Override
+        public UUID getId()
+        {
+            return _queueId;
+        }
+
+        @Override
+        public boolean isDurable()
+        {
+            return true;
+        }
+    }
+
+    /**
+     * Builds a record in a growing heap buffer.
+     */
+    private static final class RecordBuilder
+    {
+        private ByteBuffer _buffer = ByteBuffer.allocate(64);
+
+        private void ensureRemaining(final int size)
+        {
+            if (_buffer.remaining() < size)
+            {
+                ByteBuffer buffer = ByteBuffer.allocate(Math.max(_buffer.capacity() * 2, _buffer.position() + size));
+                _buffer.flip();
+                buffer.put(_buffer);
+                _buffer = buffer;
+            }
+        }
+
+        private RecordBuilder putByte(final byte value)
+        {
+            ensureRemaining(1);
+            _buffer.put(value);
+            return this;
+        }
+
+        private RecordBuilder putInt(final int value)
+        {
+            ensureRemaining(4);
+            _buffer.putInt(value);
+            return this;
+        }
+
+        private RecordBuilder putLong(final long value)
+        {
+            ensureRemaining(8);
+            _buffer.putLong(value);
+            return this;
+        }
+
+        private RecordBuilder putBytes(final ByteBuffer value)
+        {
+            ensureRemaining(value.remaining());
+            _buffer.put(value.duplicate());
+            return this;
+        }
+
+        private ByteBuffer toByteBuffer()
+        {
+            ByteBuffer buffer = _buffer.duplicate();
+            buffer.flip();
+            return buffer;
+        }
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.journal;
+
+import java.util.Map;
+
+import org.apache.qpid.server.model.VirtualHost;
+import org.apache.qpid.server.plugin.MessageStoreFactory;
+import org.apache.qpid.server.plugin.PluggableService;
+import org.apache.qpid.server.store.MessageStore;
+
+@PluggableService
+public class JournalMessageStoreFactory implements MessageStoreFactory
+{
+
+    @Override
+    public String getType()
+    {
+        return JournalMessageStore.TYPE;
+    }
+
+    @Override
+    public MessageStore createMessageStore()
+    {
+        return new JournalMessageStore();
+    }
+
+    @Override
+    public void validateAttributes(Map<String, Object> attributes)
+    {
+        @SuppressWarnings("unchecked")
+        Map<String, Object> messageStoreSettings = (Map<String, Object>) attributes.get(VirtualHost.MESSAGE_STORE_SETTINGS);
+
+        if(getType().equals(messageStoreSettings.get(MessageStore.STORE_TYPE)))
+        {
+            Object storePath = messageStoreSettings.get(MessageStore.STORE_PATH);
+            if(!(storePath instanceof String))
+            {
+                throw new IllegalArgumentException("Setting '"+ MessageStore.STORE_PATH
+                                                               +"' is required and must be of type String.");
+
+            }
+
+            Object segmentSize = messageStoreSettings.get(JournalMessageStore.SEGMENT_SIZE);
+            if(segmentSize != null)
+            {
+                try
+                {
+                    if(Long.parseLong(segmentSize.toString()) <= 0l)
+                    {
+                        throw new IllegalArgumentException("Setting '" + JournalMessageStore.SEGMENT_SIZE
+                                                           + "' must be positive.");
+                    }
+                }
+                catch (NumberFormatException e)
+                {
+                    throw new IllegalArgumentException("Setting '" + JournalMessageStore.SEGMENT_SIZE
+                                                       + "' must be a number.");
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,248 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.server.store.journal;
+
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.UUID;
+
+import org.apache.qpid.server.model.UUIDGenerator;
+import org.apache.qpid.server.store.MessageStore;
+import org.apache.qpid.server.store.MessageStoreTestCase;
+import org.apache.qpid.server.store.StoredMessage;
+import org.apache.qpid.server.store.TestMessageMetaData;
+import org.apache.qpid.server.store.Transaction;
+import org.apache.qpid.server.store.TransactionLogResource;
+import org.apache.qpid.server.store.handler.MessageHandler;
+import org.apache.qpid.util.FileUtils;
+
+public class JournalMessageStoreTest extends MessageStoreTestCase
+{
+    private static final int SEGMENT_SIZE = 4096;
+
+    private String _storeLocation;
+
+    @Override
+    public void tearDown() throws Exception
+    {
+        try
+        {
+            deleteStoreIfExists();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testOnDelete() throws Exception
+    {
+        File location = new File(_storeLocation);
+        assertTrue("Store does not exist at " + _storeLocation, location.exists());
+
+        getStore().closeMessageStore();
+        assertTrue("Store does not exist at " + _storeLocation, location.exists());
+
+        getStore().onDelete();
+        assertFalse("Store exists at " + _storeLocation, location.exists());
+    }
+
+    public void testSegmentsOfRemovedMessagesAreDeleted() throws Exception
+    {
+        byte[] content = new byte[SEGMENT_SIZE / 4];
+        for (int i = 0; i < 20; i++)
+        {
+            StoredMessage<TestMessageMetaData> message =
+                    getStore().addMessage(new TestMessageMetaData(i, content.length));
+            message.addContent(0, ByteBuffer.wrap(content));
+            message.flushToStore().waitForCompletion();
+            message.remove();
+        }
+
+        int segments = countSegments();
+        assertTrue("Unexpected number of segments " + segments, segments > 1);
+
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (countSegments() > 1 && System.currentTimeMillis() < timeout)
+        {
+            Thread.sleep(100);
+        }
+        assertEquals("Segments of removed messages were not deleted", 1, countSegments());
+    }
+
+    public void testLiveMessageIsRelocatedFromCleanedSegment() throws Exception
+    {
+        UUID queueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource queue = createTransactionLogResource(queueId);
+        StoredMessage<TestMessageMetaData> liveMessage = enqueueMessage(queue, 1l);
+        String firstSegment = getSegmentNames()[0];
+
+        byte[] content = new byte[SEGMENT_SIZE / 4];
+        for (long messageId = 2l; messageId < 20l; messageId++)
+        {
+            StoredMessage<TestMessageMetaData> message =
+                    getStore().addMessage(new TestMessageMetaData(messageId, content.length));
+            message.addContent(0, ByteBuffer.wrap(content));
+            message.flushToStore().waitForCompletion();
+            message.remove();
+        }
+
+        long timeout = System.currentTimeMillis() + 10000L;
+        while (Arrays.asList(getSegmentNames()).contains(firstSegment) && System.currentTimeMillis() < timeout)
+        {
+            Thread.sleep(100);
+        }
+        assertFalse("Segment holding the live message was not cleaned",
+                    Arrays.asList(getSegmentNames()).contains(firstSegment));
+
+        assertEquals("Unexpected content read after relocation", createContent(1l), liveMessage.getContent(0, 8));
+
+        reopenStore();
+
+        assertEnqueued(queueId, 1l);
+    }
+
+    public void testIncompleteLastRecordIsDiscardedOnRecovery() throws Exception
+    {
+        UUID queueId = UUIDGenerator.generateRandomUUID();
+        TransactionLogResource queue = createTransactionLogResource(queueId);
+        enqueueMessage(queue, 1l);
+        enqueueMessage(queue, 2l);
+        enqueueMessage(queue, 3l);
+
+        getStore().closeMessageStore();
+
+        String[] segments = getSegmentNames();
+        RandomAccessFile lastSegment = new RandomAccessFile(new File(_storeLocation, segments[segments.length - 1]), "rw");
+        try
+        {
+            // tear the last record, the enqueue of the last message
+            lastSegment.setLength(lastSegment.length() - 3);
+        }
+        finally
+        {
+            lastSegment.close();
+        }
+
+        reopenStore();
+
+        assertEnqueued(queueId, 1l, 2l);
+
+        enqueueMessage(queue, 4l);
+
+        reopenStore();
+
+        assertEnqueued(queueId, 1l, 2l, 4l);
+    }
+
+    private StoredMessage<TestMessageMetaData> enqueueMessage(final TransactionLogResource queue, final long messageId)
+    {
+        StoredMessage<TestMessageMetaData> message = getStore().addMessage(new TestMessageMetaData(messageId, 8));
+        message.addContent(0, createContent(messageId));
+
+        Transaction txn = getStore().newTransaction();
+        txn.enqueueMessage(queue, createMockEnqueueableMessage(messageId, message));
+        txn.commitTran();
+        return message;
+    }
+
+    private void assertEnqueued(final UUID queueId, final Long... messageIds)
+    {
+        QueueFilteringMessageInstanceHandler filter = new QueueFilteringMessageInstanceHandler(queueId);
+        getStore().visitMessageInstances(filter);
+        assertEquals("Unexpected enqueued messages",
+                     new HashSet<Long>(Arrays.asList(messageIds)), filter.getEnqueuedIds());
+
+        final Map<Long, StoredMessage<?>> storedMessages = new HashMap<Long, StoredMessage<?>>();
+        getStore().visitMessages(new MessageHandler()
+        {
+            @Override
+            public boolean handle(final StoredMessage<?> storedMessage)
+            {
+                storedMessages.put(storedMessage.getMessageNumber(), storedMessage);
+                return true;
+            }
+        });
+        for (long messageId : messageIds)
+        {
+            StoredMessage<?> storedMessage = storedMessages.get(messageId);
+            assertNotNull("Message with id " + messageId + " is not found", storedMessage);
+            assertEquals("Unexpected content for message with id " + messageId,
+                         createContent(messageId), storedMessage.getContent(0, 8));
+        }
+    }
+
+    private int countSegments()
+    {
+        return getSegmentNames().length;
+    }
+
+    private String[] getSegmentNames()
+    {
+        String[] names = new File(_storeLocation).list(new FilenameFilter()
+        {
+            @Override
+            public boolean accept(final File dir, final String name)
+            {
+                return name.endsWith(".jnl");
+            }
+        });
+        Arrays.sort(names);
+        return names;
+    }
+
+    @Override
+    protected Map<String, Object> getStoreSettings() throws Exception
+    {
+        _storeLocation = TMP_FOLDER + File.separator + getTestName();
+        deleteStoreIfExists();
+        Map<String, Object> messageStoreSettings = new HashMap<String, Object>();
+        messageStoreSettings.put(MessageStore.STORE_PATH, _storeLocation);
+        messageStoreSettings.put(JournalMessageStore.SEGMENT_SIZE, SEGMENT_SIZE);
+        return messageStoreSettings;
+    }
+
+    private void deleteStoreIfExists()
+    {
+        if (_storeLocation != null)
+        {
+            File location = new File(_storeLocation);
+            if (location.exists())
+            {
+                FileUtils.delete(location, true);
+            }
+        }
+    }
+
+    @Override
+    protected MessageStore createMessageStore()
+    {
+        return new JournalMessageStore();
+    }
+
+}
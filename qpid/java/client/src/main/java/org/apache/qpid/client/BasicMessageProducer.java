@@ -35,6 +35,7 @@ import javax.jms.Topic;
 import org.apache.qpid.AMQException;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 import org.apache.qpid.client.message.MessageConverter;
+import org.apache.qpid.jms.CompletionListener;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.util.UUIDGen;
 import org.apache.qpid.util.UUIDs;
@@ -389,6 +390,46 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
         }
     }
 
+    public void send(Message message, CompletionListener completionListener) throws JMSException
+    {
+        checkCompletionListener(completionListener);
+        checkPreConditions();
+        checkInitialDestination();
+
+        synchronized (_connection.getFailoverMutex())
+        {
+            sendImpl(_destination, message, _deliveryMode, _messagePriority, _timeToLive, _mandatory, _immediate,
+                     completionListener);
+        }
+    }
+
+    public void send(Destination destination, Message message, CompletionListener completionListener)
+            throws JMSException
+    {
+        checkCompletionListener(completionListener);
+        checkPreConditions();
+        checkDestination(destination);
+        synchronized (_connection.getFailoverMutex())
+        {
+            validateDestination(destination);
+            sendImpl((AMQDestination) destination, message, _deliveryMode, _messagePriority, _timeToLive,
+                    _mandatory == null
+                            ? destination instanceof Topic
+                                ? _defaultMandatoryTopicValue
+                                : _defaultMandatoryValue
+                            : _mandatory,
+                     _immediate, completionListener);
+        }
+    }
+
+    private void checkCompletionListener(CompletionListener completionListener)
+    {
+        if (completionListener == null)
+        {
+            throw new IllegalArgumentException("CompletionListener must not be null");
+        }
+    }
+
     private AbstractJMSMessage convertToNativeMessage(Message message) throws JMSException
     {
         if (message instanceof AbstractJMSMessage)
@@ -478,6 +519,21 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
      */
     protected void sendImpl(AMQDestination destination, Message origMessage, int deliveryMode, int priority, long timeToLive,
                             boolean mandatory, boolean immediate) throws JMSException
+    {
+        sendImpl(destination, origMessage, deliveryMode, priority, timeToLive, mandatory, immediate, null);
+    }
+
+    /**
+     * The caller of this method must hold the failover mutex.
+     *
+     * @param completionListener if not null, the listener to notify once the broker has completed the message, the
+     *                           send itself not waiting for it to do so
+     *
+     * @throws JMSException
+     */
+    protected void sendImpl(AMQDestination destination, Message origMessage, int deliveryMode, int priority, long timeToLive,
+                            boolean mandatory, boolean immediate, CompletionListener completionListener)
+            throws JMSException
     {
         checkTemporaryDestination(destination);
         origMessage.setJMSDestination(destination);
@@ -497,13 +553,27 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
 
         try
         {
-            sendMessage(destination, origMessage, message, messageId, deliveryMode, priority, timeToLive, mandatory, immediate);
+            sendMessage(destination, origMessage, message, messageId, deliveryMode, priority, timeToLive, mandatory, immediate,
+                        completionListener);
         }
         catch (TransportException e)
         {
             throw getSession().toJMSException("Exception whilst sending:" + e.getMessage(), e);
         }
 
+        updateOriginalMessage(origMessage, message);
+
+        if (_transacted)
+        {
+            _session.markDirty();
+        }
+    }
+
+    /**
+     * Copies the headers set while sending onto the message the application passed, if it was converted.
+     */
+    void updateOriginalMessage(Message origMessage, AbstractJMSMessage message) throws JMSException
+    {
         if (message != origMessage)
         {
             _logger.debug("Updating original message");
@@ -516,16 +586,15 @@ public abstract class BasicMessageProducer extends Closeable implements org.apac
             origMessage.setJMSExpiration(message.getJMSExpiration());
             origMessage.setJMSMessageID(message.getJMSMessageID());
         }
-
-        if (_transacted)
-        {
-            _session.markDirty();
-        }
     }
 
+    /**
+     * Sends the message. If a completion listener is given, the implementation must arrange for it to be notified once
+     * the broker has completed the message, after {@link #updateOriginalMessage} has been applied to it.
+     */
     abstract void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                               UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                              boolean immediate) throws JMSException;
+                              boolean immediate, CompletionListener completionListener) throws JMSException;
 
     private void checkTemporaryDestination(AMQDestination destination) throws JMSException
     {
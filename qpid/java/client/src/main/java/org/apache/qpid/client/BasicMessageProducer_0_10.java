@@ -27,6 +27,8 @@ import org.apache.qpid.client.message.AMQMessageDelegate_0_10;
 import org.apache.qpid.client.message.AbstractJMSMessage;
 import org.apache.qpid.client.message.QpidMessageProperties;
 import org.apache.qpid.client.messaging.address.Link.Reliability;
+import org.apache.qpid.configuration.ClientProperties;
+import org.apache.qpid.jms.CompletionListener;
 import org.apache.qpid.transport.DeliveryProperties;
 import org.apache.qpid.transport.Header;
 import org.apache.qpid.transport.MessageAcceptMode;
@@ -34,6 +36,8 @@ import org.apache.qpid.transport.MessageAcquireMode;
 import org.apache.qpid.transport.MessageDeliveryMode;
 import org.apache.qpid.transport.MessageDeliveryPriority;
 import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.MessageTransfer;
+import org.apache.qpid.transport.Method;
 import org.apache.qpid.transport.Option;
 import org.apache.qpid.transport.TransportException;
 import org.apache.qpid.util.Strings;
@@ -48,7 +52,15 @@ import javax.jms.Message;
 import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Queue;
 import java.util.UUID;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * This is a 0_10 message producer.
@@ -56,8 +68,22 @@ import java.util.UUID;
 public class BasicMessageProducer_0_10 extends BasicMessageProducer
 {
     private static final Logger _logger = LoggerFactory.getLogger(BasicMessageProducer_0_10.class);
+    private static final long ASYNC_SEND_TIMEOUT =
+            Long.getLong(ClientProperties.QPID_SYNC_OP_TIMEOUT,
+                         Long.getLong(ClientProperties.AMQJ_DEFAULT_SYNCWRITE_TIMEOUT,
+                                      ClientProperties.DEFAULT_SYNC_OPERATION_TIMEOUT));
     private byte[] userIDBytes;
 
+    /** Bounds the number of asynchronous sends awaiting completion by the broker. */
+    private final Semaphore _asyncSendPermits =
+            new Semaphore(Integer.getInteger(ClientProperties.QPID_MAX_IN_FLIGHT_ASYNC_SENDS,
+                                             ClientProperties.DEFAULT_MAX_IN_FLIGHT_ASYNC_SENDS));
+    /** The asynchronous sends awaiting completion, in the order they were sent. */
+    private final Queue<AsyncSend> _asyncSends = new ConcurrentLinkedQueue<AsyncSend>();
+    private final Object _completionExecutorLock = new Object();
+    private ExecutorService _completionExecutor;
+    private volatile Thread _completionThread;
+
     BasicMessageProducer_0_10(AMQConnection connection, AMQDestination destination, boolean transacted, int channelId,
                               AMQSession session, long producerId, Boolean immediate, Boolean mandatory) throws AMQException
     {
@@ -105,7 +131,7 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
      */
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode, int priority, long timeToLive, boolean mandatory,
-                     boolean immediate) throws JMSException
+                     boolean immediate, CompletionListener completionListener) throws JMSException
     {
         message.prepareForSending();
 
@@ -206,6 +232,13 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         ByteBuffer data = message.getData();
         messageProps.setContentLength(data == null ? 0 : data.remaining());
 
+        AsyncSend asyncSend = null;
+        if (completionListener != null)
+        {
+            asyncSend = beginAsyncSend(origMessage, completionListener);
+            updateOriginalMessage(origMessage, message);
+        }
+
         // send the message
         try
         {
@@ -226,20 +259,39 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
 
             ByteBuffer buffer = data == null ? ByteBuffer.allocate(0) : data.slice();
             
-            ssn.messageTransfer(destination.getExchangeName() == null ? "" : destination.getExchangeName().toString(), 
-                                MessageAcceptMode.NONE,
-                                MessageAcquireMode.PRE_ACQUIRED,
-                                new Header(deliveryProp, messageProps),
-                    buffer, sync ? SYNC : NONE, unreliable ? UNRELIABLE : NONE);
-            if (sync)
+            if (asyncSend != null)
             {
-                ssn.sync();
-                ((AMQSession_0_10) getSession()).getCurrentException();
+                // the broker completes the transfer once the message is routed and, if persistent, stored; the
+                // session keeps the transfer until then and notifies the listener, so there is no need to sync
+                MessageTransfer transfer =
+                        new MessageTransfer(destination.getExchangeName() == null ? "" : destination.getExchangeName().toString(),
+                                            MessageAcceptMode.NONE,
+                                            MessageAcquireMode.PRE_ACQUIRED,
+                                            new Header(deliveryProp, messageProps),
+                                            buffer, SYNC, unreliable ? UNRELIABLE : NONE);
+                transfer.setCompletionListener(asyncSend);
+                ssn.invoke(transfer);
+            }
+            else
+            {
+                ssn.messageTransfer(destination.getExchangeName() == null ? "" : destination.getExchangeName().toString(),
+                                    MessageAcceptMode.NONE,
+                                    MessageAcquireMode.PRE_ACQUIRED,
+                                    new Header(deliveryProp, messageProps),
+                        buffer, sync ? SYNC : NONE, unreliable ? UNRELIABLE : NONE);
+                if (sync)
+                {
+                    ssn.sync();
+                    ((AMQSession_0_10) getSession()).getCurrentException();
+                }
             }
-            
         }
         catch (Exception e)
         {
+            if (asyncSend != null)
+            {
+                asyncSend.discard();
+            }
             JMSException jmse = new JMSException("Exception when sending message:" + e.getMessage());
             jmse.setLinkedException(e);
             jmse.initCause(e);
@@ -247,6 +299,115 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         }
     }
 
+    /**
+     * Waits for the number of sends awaiting completion to fall below the limit, and then registers a new one.
+     */
+    private AsyncSend beginAsyncSend(Message message, CompletionListener completionListener) throws JMSException
+    {
+        try
+        {
+            if (!_asyncSendPermits.tryAcquire(ASYNC_SEND_TIMEOUT, TimeUnit.MILLISECONDS))
+            {
+                throw new JMSException("Timed out after " + ASYNC_SEND_TIMEOUT
+                                       + "ms waiting for earlier asynchronous sends to complete");
+            }
+        }
+        catch (InterruptedException e)
+        {
+            Thread.currentThread().interrupt();
+            JMSException jmse = new JMSException("Interrupted while waiting for earlier asynchronous sends to complete");
+            jmse.setLinkedException(e);
+            jmse.initCause(e);
+            throw jmse;
+        }
+
+        AsyncSend asyncSend = new AsyncSend(message, completionListener);
+        _asyncSends.add(asyncSend);
+        return asyncSend;
+    }
+
+    private void dispatchCompletion(final Runnable notification)
+    {
+        ExecutorService executor;
+        synchronized (_completionExecutorLock)
+        {
+            if (_completionExecutor == null)
+            {
+                _completionExecutor = Executors.newSingleThreadExecutor(new ThreadFactory()
+                {
+                    @Override
+                    public Thread newThread(final Runnable r)
+                    {
+                        Thread thread = new Thread(r, "AsyncSendCompletion-" + getChannelId());
+                        thread.setDaemon(true);
+                        _completionThread = thread;
+                        return thread;
+                    }
+                });
+            }
+            executor = _completionExecutor.isShutdown() ? null : _completionExecutor;
+            if (executor != null)
+            {
+                executor.execute(notification);
+            }
+        }
+
+        if (executor == null)
+        {
+            // the producer closed while the send was being completed
+            notification.run();
+        }
+    }
+
+    /**
+     * Waits for the broker to complete any outstanding asynchronous sends, fails those it does not complete, and waits
+     * for the listeners to be notified.
+     */
+    private void completeAsyncSends(AMQSession_0_10 ssn)
+    {
+        if (!_asyncSends.isEmpty() && !ssn.isClosed())
+        {
+            try
+            {
+                ssn.sync();
+            }
+            catch (AMQException e)
+            {
+                _logger.warn("Unable to sync outstanding asynchronous sends whilst closing producer", e);
+            }
+        }
+
+        for (AsyncSend asyncSend : _asyncSends)
+        {
+            asyncSend.fail(new JMSException("Producer closed before the broker completed the message"));
+        }
+
+        ExecutorService executor;
+        synchronized (_completionExecutorLock)
+        {
+            executor = _completionExecutor;
+            if (executor != null)
+            {
+                executor.shutdown();
+            }
+        }
+
+        if (executor != null && Thread.currentThread() != _completionThread)
+        {
+            try
+            {
+                if (!executor.awaitTermination(ASYNC_SEND_TIMEOUT, TimeUnit.MILLISECONDS))
+                {
+                    _logger.warn("Timed out waiting for asynchronous send completion listeners whilst closing producer");
+                }
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
     @Override
     public boolean isBound(AMQDestination destination) throws JMSException
     {
@@ -261,6 +422,7 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         super.close();
         AMQDestination dest = getAMQDestination();
         AMQSession_0_10 ssn = (AMQSession_0_10) getSession();
+        completeAsyncSends(ssn);
         if (!ssn.isClosed() && dest != null && dest.getDestSyntax() == AMQDestination.DestSyntax.ADDR)
         {
             try
@@ -286,5 +448,83 @@ public class BasicMessageProducer_0_10 extends BasicMessageProducer
         }
     }
 
-}
+    /**
+     * An asynchronous send awaiting completion by the broker, which releases its permit and notifies the listener once.
+     */
+    private final class AsyncSend implements Method.CompletionListener
+    {
+        private final Message _message;
+        private final CompletionListener _listener;
+        private final AtomicBoolean _finished = new AtomicBoolean();
+
+        private AsyncSend(Message message, CompletionListener listener)
+        {
+            _message = message;
+            _listener = listener;
+        }
 
+        @Override
+        public void onComplete(Method method)
+        {
+            if (finish())
+            {
+                dispatchCompletion(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            _listener.onCompletion(_message);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            _logger.warn("CompletionListener threw exception", e);
+                        }
+                    }
+                });
+            }
+        }
+
+        void fail(final Exception exception)
+        {
+            if (finish())
+            {
+                dispatchCompletion(new Runnable()
+                {
+                    @Override
+                    public void run()
+                    {
+                        try
+                        {
+                            _listener.onException(_message, exception);
+                        }
+                        catch (RuntimeException e)
+                        {
+                            _logger.warn("CompletionListener threw exception", e);
+                        }
+                    }
+                });
+            }
+        }
+
+        /**
+         * Abandons a send which failed synchronously, the failure being reported to the sender instead.
+         */
+        void discard()
+        {
+            finish();
+        }
+
+        private boolean finish()
+        {
+            if (_finished.compareAndSet(false, true))
+            {
+                _asyncSends.remove(this);
+                _asyncSendPermits.release();
+                return true;
+            }
+            return false;
+        }
+    }
+}
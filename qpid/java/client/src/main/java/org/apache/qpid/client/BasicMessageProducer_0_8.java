@@ -33,6 +33,7 @@ import org.apache.qpid.framing.ContentBody;
 import org.apache.qpid.framing.ContentHeaderBody;
 import org.apache.qpid.framing.ExchangeDeclareBody;
 import org.apache.qpid.framing.MethodRegistry;
+import org.apache.qpid.jms.CompletionListener;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -78,7 +79,7 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
 
     void sendMessage(AMQDestination destination, Message origMessage, AbstractJMSMessage message,
                      UUID messageId, int deliveryMode,int priority, long timeToLive, boolean mandatory,
-                     boolean immediate) throws JMSException
+                     boolean immediate, CompletionListener completionListener) throws JMSException
     {
         BasicPublishBody body = getSession().getMethodRegistry().createBasicPublishBody(getSession().getTicket(),
                                                                                         destination.getExchangeName(),
@@ -183,6 +184,21 @@ public class BasicMessageProducer_0_8 extends BasicMessageProducer
         }
 
         getConnection().getProtocolHandler().writeFrame(compositeFrame);
+
+        if (completionListener != null)
+        {
+            // 0-8/0-9 have no command completion, so the send is confirmed by a round trip before returning
+            try
+            {
+                getSession().sync();
+            }
+            catch (AMQException e)
+            {
+                throw new JMSAMQException("Failed to sync after send", e);
+            }
+            updateOriginalMessage(origMessage, message);
+            completionListener.onCompletion(origMessage);
+        }
     }
 
     /**
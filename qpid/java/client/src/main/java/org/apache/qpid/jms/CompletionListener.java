@@ -0,0 +1,46 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ * 
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.jms;
+
+import javax.jms.Message;
+
+/**
+ * Notified when a message sent asynchronously by a {@link MessageProducer} has been completed by the broker,
+ * in the spirit of the JMS 2.0 interface of the same name.
+ *
+ * Notifications for the messages sent by a producer are delivered in the order the messages were sent, on a thread
+ * other than that of the sender and never on the connection's IO thread.
+ */
+public interface CompletionListener
+{
+    /**
+     * Called once the broker has completed the message, i.e. routed it and, if persistent, written it to its store
+     * @param message the message that was sent
+     */
+    void onCompletion(Message message);
+
+    /**
+     * Called if the message cannot be confirmed as completed, for instance because the producer was closed first
+     * @param message the message that was sent
+     * @param exception the reason the send did not complete
+     */
+    void onException(Message message, Exception exception);
+}
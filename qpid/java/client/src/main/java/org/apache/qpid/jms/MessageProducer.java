@@ -36,4 +36,17 @@ public interface MessageProducer extends javax.jms.MessageProducer
                      int priority, long timeToLive, boolean mandatory, boolean immediate)
             throws JMSException;
 
+    /**
+     * Sends the message to the producer's destination without waiting for the broker to complete it. The listener is
+     * notified once it has done so. The number of asynchronous sends awaiting completion is bounded by the
+     * qpid.max_in_flight_async_sends system property, further sends blocking until earlier ones complete.
+     */
+    void send(Message message, CompletionListener completionListener) throws JMSException;
+
+    /**
+     * Sends the message to the given destination without waiting for the broker to complete it.
+     * @see #send(Message, CompletionListener)
+     */
+    void send(Destination destination, Message message, CompletionListener completionListener) throws JMSException;
+
 }
@@ -219,6 +219,18 @@ public class ClientProperties
      */
     public static final long DEFAULT_FLOW_CONTROL_WAIT_NOTIFY_PERIOD = 5000L;
 
+    /**
+     * System property to set the maximum number of messages a producer may have sent
+     * asynchronously but not yet had completed by the broker.
+     */
+    public static final String QPID_MAX_IN_FLIGHT_ASYNC_SENDS = "qpid.max_in_flight_async_sends";
+
+    /**
+     * Default maximum number of messages a producer may have sent asynchronously
+     * but not yet had completed by the broker.
+     */
+    public static final int DEFAULT_MAX_IN_FLIGHT_ASYNC_SENDS = 256;
+
     /**
      * System property to control whether the client will declare queues during
      * consumer creation when using BindingURLs.
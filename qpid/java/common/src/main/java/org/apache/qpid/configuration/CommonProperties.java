@@ -36,6 +36,24 @@ public class CommonProperties
     public static final String HANDSHAKE_TIMEOUT_PROP_NAME = "qpid.handshake_timeout";
     public static final int HANDSHAKE_TIMEOUT_DEFAULT = 2;
 
+    /**
+     * The number of selector threads used by the non-blocking network transport to service its connections
+     */
+    public static final String NIO_NETWORK_TRANSPORT_SELECTOR_THREADS_PROP_NAME = "qpid.nio_network_transport_selector_threads";
+    public static final int NIO_NETWORK_TRANSPORT_SELECTOR_THREADS_DEFAULT = Runtime.getRuntime().availableProcessors();
+
+    /**
+     * The largest buffer, in bytes, held by the shared buffer pools. Larger buffers are allocated on demand.
+     */
+    public static final String BUFFER_POOL_MAX_BUFFER_SIZE_PROP_NAME = "qpid.buffer_pool.max_buffer_size";
+    public static final int BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT = 1024 * 1024;
+
+    /**
+     * The number of bytes each size class of the shared buffer pools may hold on to
+     */
+    public static final String BUFFER_POOL_MAX_BYTES_PER_SIZE_PROP_NAME = "qpid.buffer_pool.max_bytes_per_size";
+    public static final int BUFFER_POOL_MAX_BYTES_PER_SIZE_DEFAULT = 4 * 1024 * 1024;
+
 
     private CommonProperties()
     {
@@ -72,6 +72,8 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
     static class LikeExpression extends UnaryExpression implements BooleanExpression
     {
 
+        private final String like;
+        private final int escape;
         private Pattern likePattern;
 
         /**
@@ -80,6 +82,8 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
         public LikeExpression(Expression right, String like, int escape)
         {
             super(right);
+            this.like = like;
+            this.escape = escape;
 
             StringBuffer regexp = new StringBuffer(like.length() * 2);
             regexp.append("\\A"); // The beginning of the input
@@ -123,6 +127,21 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
             likePattern = Pattern.compile(regexp.toString(), Pattern.DOTALL);
         }
 
+        String getLike()
+        {
+            return like;
+        }
+
+        int getEscape()
+        {
+            return escape;
+        }
+
+        Pattern getLikePattern()
+        {
+            return likePattern;
+        }
+
         /**
          *  org.apache.activemq.filter.UnaryExpression#getExpressionSymbol()
          */
@@ -552,7 +571,7 @@ public abstract class ComparisonExpression extends BinaryExpression implements B
         return (object != null) && (object == Boolean.TRUE);
     }
 
-    private static class EqualExpression extends ComparisonExpression
+    static class EqualExpression extends ComparisonExpression
     {
         public EqualExpression(final Expression left, final Expression right)
         {
@@ -0,0 +1,630 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * A selector expression compiled into a flat table of operations.
+ *
+ * Each node of the expression tree becomes an entry in parallel arrays holding its operation, the indexes of its
+ * operands and any constant it needs: a literal, the interned name of a header, a LIKE pattern or an IN list. The
+ * table is evaluated by a single switch, without the virtual calls of the tree and without allocating: boolean results
+ * are the canonical {@link Boolean} constants, numeric comparisons are made on primitive values (including the
+ * priority, timestamp and expiration of the message, which the tree would box), and simple LIKE patterns are matched
+ * with string operations rather than a regular expression. Results are the same as those of the tree.
+ */
+public final class CompiledSelector implements BooleanExpression
+{
+    private static final int OP_CONSTANT = 0;
+    private static final int OP_HEADER = 1;
+    private static final int OP_REPLY_TO = 2;
+    private static final int OP_TYPE = 3;
+    private static final int OP_DELIVERY_MODE = 4;
+    private static final int OP_PRIORITY = 5;
+    private static final int OP_MESSAGE_ID = 6;
+    private static final int OP_TIMESTAMP = 7;
+    private static final int OP_CORRELATION_ID = 8;
+    private static final int OP_EXPIRATION = 9;
+    private static final int OP_REDELIVERED = 10;
+    private static final int OP_AND = 11;
+    private static final int OP_OR = 12;
+    private static final int OP_NOT = 13;
+    private static final int OP_BOOLEAN_CAST = 14;
+    private static final int OP_EQUAL = 15;
+    private static final int OP_GREATER = 16;
+    private static final int OP_GREATER_EQUAL = 17;
+    private static final int OP_LESS = 18;
+    private static final int OP_LESS_EQUAL = 19;
+    private static final int OP_LIKE = 20;
+    private static final int OP_LIKE_EXACT = 21;
+    private static final int OP_LIKE_PREFIX = 22;
+    private static final int OP_LIKE_SUFFIX = 23;
+    private static final int OP_LIKE_CONTAINS = 24;
+    private static final int OP_IN = 25;
+    private static final int OP_NOT_IN = 26;
+    private static final int OP_NEGATE = 27;
+    private static final int OP_ARITHMETIC = 28;
+    private static final int OP_EXPRESSION = 29;
+
+    private static final Map<String, Integer> JMS_PROPERTY_OPCODES = new HashMap<String, Integer>();
+
+    static
+    {
+        JMS_PROPERTY_OPCODES.put("JMSDestination", OP_CONSTANT);
+        JMS_PROPERTY_OPCODES.put("JMSReplyTo", OP_REPLY_TO);
+        JMS_PROPERTY_OPCODES.put("JMSType", OP_TYPE);
+        JMS_PROPERTY_OPCODES.put("JMSDeliveryMode", OP_DELIVERY_MODE);
+        JMS_PROPERTY_OPCODES.put("JMSPriority", OP_PRIORITY);
+        JMS_PROPERTY_OPCODES.put("JMSMessageID", OP_MESSAGE_ID);
+        JMS_PROPERTY_OPCODES.put("AMQMessageID", OP_MESSAGE_ID);
+        JMS_PROPERTY_OPCODES.put("JMSTimestamp", OP_TIMESTAMP);
+        JMS_PROPERTY_OPCODES.put("JMSCorrelationID", OP_CORRELATION_ID);
+        JMS_PROPERTY_OPCODES.put("JMSExpiration", OP_EXPIRATION);
+        JMS_PROPERTY_OPCODES.put("JMSRedelivered", OP_REDELIVERED);
+    }
+
+    // the numeric types between which comparisons convert, in widening order
+    private static final int NOT_NUMERIC = -1;
+    private static final int BYTE = 0;
+    private static final int SHORT = 1;
+    private static final int INTEGER = 2;
+    private static final int LONG = 3;
+    private static final int FLOAT = 4;
+    private static final int DOUBLE = 5;
+
+    // outcomes of comparing two operands, other than the sign of their difference
+    private static final int NULL_OPERAND = 2;
+    private static final int INCOMPARABLE = 3;
+
+    private final BooleanExpression _expression;
+    private final int[] _opcodes;
+    private final int[] _left;
+    private final int[] _right;
+    private final Object[] _operands;
+    private final int _root;
+
+    public CompiledSelector(final BooleanExpression expression)
+    {
+        _expression = expression;
+
+        final Compiler compiler = new Compiler();
+        _root = compiler.compile(expression);
+        _opcodes = Arrays.copyOf(compiler._opcodes, compiler._size);
+        _left = Arrays.copyOf(compiler._left, compiler._size);
+        _right = Arrays.copyOf(compiler._right, compiler._size);
+        _operands = Arrays.copyOf(compiler._operands, compiler._size);
+    }
+
+    public BooleanExpression getExpression()
+    {
+        return _expression;
+    }
+
+    public Object evaluate(final FilterableMessage message)
+    {
+        return evaluate(_root, message);
+    }
+
+    public boolean matches(final FilterableMessage message)
+    {
+        return evaluate(_root, message) == Boolean.TRUE;
+    }
+
+    private Object evaluate(final int node, final FilterableMessage message)
+    {
+        final int opcode = _opcodes[node];
+        switch(opcode)
+        {
+            case OP_CONSTANT:
+                return _operands[node];
+            case OP_HEADER:
+                return message.getHeader((String) _operands[node]);
+            case OP_REPLY_TO:
+                return message.getReplyTo();
+            case OP_TYPE:
+                return message.getType();
+            case OP_DELIVERY_MODE:
+                return message.isPersistent() ? "PERSISTENT" : "NON_PERSISTENT";
+            case OP_PRIORITY:
+                return Integer.valueOf(message.getPriority());
+            case OP_MESSAGE_ID:
+                return message.getMessageId();
+            case OP_TIMESTAMP:
+                return Long.valueOf(message.getTimestamp());
+            case OP_CORRELATION_ID:
+                return message.getCorrelationId();
+            case OP_EXPIRATION:
+                return Long.valueOf(message.getExpiration());
+            case OP_REDELIVERED:
+                return message.isRedelivered() ? Boolean.TRUE : Boolean.FALSE;
+            case OP_AND:
+            {
+                final Boolean left = (Boolean) evaluate(_left[node], message);
+                if(left == null)
+                {
+                    return null;
+                }
+                return left ? evaluate(_right[node], message) : Boolean.FALSE;
+            }
+            case OP_OR:
+            {
+                final Boolean left = (Boolean) evaluate(_left[node], message);
+                if(left != null && left)
+                {
+                    return Boolean.TRUE;
+                }
+                return evaluate(_right[node], message);
+            }
+            case OP_NOT:
+            {
+                final Boolean value = (Boolean) evaluate(_left[node], message);
+                if(value == null)
+                {
+                    return null;
+                }
+                return value ? Boolean.FALSE : Boolean.TRUE;
+            }
+            case OP_BOOLEAN_CAST:
+            {
+                final Object value = evaluate(_left[node], message);
+                if(value == null)
+                {
+                    return null;
+                }
+                if(value.getClass() != Boolean.class)
+                {
+                    return Boolean.FALSE;
+                }
+                return ((Boolean) value) ? Boolean.TRUE : Boolean.FALSE;
+            }
+            case OP_EQUAL:
+                return compare(node, message, true) == 0 ? Boolean.TRUE : Boolean.FALSE;
+            case OP_GREATER:
+            case OP_GREATER_EQUAL:
+            case OP_LESS:
+            case OP_LESS_EQUAL:
+                return compared(opcode, compare(node, message, false));
+            case OP_LIKE:
+            case OP_LIKE_EXACT:
+            case OP_LIKE_PREFIX:
+            case OP_LIKE_SUFFIX:
+            case OP_LIKE_CONTAINS:
+            {
+                final Object value = evaluate(_left[node], message);
+                if(value == null)
+                {
+                    return null;
+                }
+                if(!(value instanceof String))
+                {
+                    return Boolean.FALSE;
+                }
+                return like(opcode, (String) value, _operands[node]) ? Boolean.TRUE : Boolean.FALSE;
+            }
+            case OP_IN:
+            case OP_NOT_IN:
+            {
+                final Object value = evaluate(_left[node], message);
+                if(value == null || value.getClass() != String.class)
+                {
+                    return null;
+                }
+                final Collection<?> inList = (Collection<?>) _operands[node];
+                return ((inList != null && inList.contains(value)) ^ (opcode == OP_NOT_IN))
+                        ? Boolean.TRUE
+                        : Boolean.FALSE;
+            }
+            case OP_NEGATE:
+            {
+                final Object value = evaluate(_left[node], message);
+                return value instanceof Number ? UnaryExpression.negate((Number) value) : null;
+            }
+            case OP_ARITHMETIC:
+            {
+                final Object left = evaluate(_left[node], message);
+                if(left == null)
+                {
+                    return null;
+                }
+                final Object right = evaluate(_right[node], message);
+                if(right == null)
+                {
+                    return null;
+                }
+                return ((ArithmeticExpression) _operands[node]).evaluate(left, right);
+            }
+            default:
+                return ((Expression) _operands[node]).evaluate(message);
+        }
+    }
+
+    /**
+     * Compares the operands of a comparison node in the way {@link ComparisonExpression} does, converting between
+     * numeric types where it would, but without boxing.
+     *
+     * @return the sign of the difference between the operands, or {@link #NULL_OPERAND} if one is null and this is not
+     * an equality test, or {@link #INCOMPARABLE} if they cannot be compared
+     */
+    @SuppressWarnings("unchecked")
+    private int compare(final int node, final FilterableMessage message, final boolean equality)
+    {
+        final int left = _left[node];
+        Object leftValue = null;
+        long leftLong = 0L;
+        double leftDouble = 0d;
+        int leftRank = primitiveRank(_opcodes[left]);
+        if(leftRank == NOT_NUMERIC)
+        {
+            leftValue = evaluate(left, message);
+            if(leftValue == null && !equality)
+            {
+                return NULL_OPERAND;
+            }
+            leftRank = rank(leftValue);
+            if(leftRank >= FLOAT)
+            {
+                leftDouble = ((Number) leftValue).doubleValue();
+            }
+            else if(leftRank != NOT_NUMERIC)
+            {
+                leftLong = ((Number) leftValue).longValue();
+            }
+        }
+        else
+        {
+            leftLong = primitiveValue(_opcodes[left], message);
+        }
+
+        final int right = _right[node];
+        Object rightValue = null;
+        long rightLong = 0L;
+        double rightDouble = 0d;
+        int rightRank = primitiveRank(_opcodes[right]);
+        if(rightRank == NOT_NUMERIC)
+        {
+            rightValue = evaluate(right, message);
+            if(rightValue == null && !equality)
+            {
+                return NULL_OPERAND;
+            }
+            rightRank = rank(rightValue);
+            if(rightRank >= FLOAT)
+            {
+                rightDouble = ((Number) rightValue).doubleValue();
+            }
+            else if(rightRank != NOT_NUMERIC)
+            {
+                rightLong = ((Number) rightValue).longValue();
+            }
+        }
+        else
+        {
+            rightLong = primitiveValue(_opcodes[right], message);
+        }
+
+        final boolean leftNull = leftRank == NOT_NUMERIC && leftValue == null;
+        final boolean rightNull = rightRank == NOT_NUMERIC && rightValue == null;
+        if(leftNull || rightNull)
+        {
+            return leftNull && rightNull ? 0 : INCOMPARABLE;
+        }
+
+        if(leftRank != NOT_NUMERIC && rightRank != NOT_NUMERIC)
+        {
+            // a narrower right operand is only converted to a long, float or double left operand, and then only
+            // from an integer or wider
+            if(leftRank > rightRank && (leftRank < LONG || rightRank < INTEGER))
+            {
+                return INCOMPARABLE;
+            }
+            final int rank = Math.max(leftRank, rightRank);
+            if(rank <= LONG)
+            {
+                return Long.compare(leftLong, rightLong);
+            }
+            else if(rank == FLOAT)
+            {
+                return Float.compare(leftRank == FLOAT ? (float) leftDouble : (float) leftLong,
+                                     rightRank == FLOAT ? (float) rightDouble : (float) rightLong);
+            }
+            else
+            {
+                return Double.compare(leftRank >= FLOAT ? leftDouble : (double) leftLong,
+                                      rightRank >= FLOAT ? rightDouble : (double) rightLong);
+            }
+        }
+        else if(leftRank != NOT_NUMERIC || rightRank != NOT_NUMERIC)
+        {
+            return INCOMPARABLE;
+        }
+
+        if(equality && (leftValue == rightValue || leftValue.equals(rightValue)))
+        {
+            return 0;
+        }
+        if(leftValue.getClass() == rightValue.getClass() && leftValue instanceof Comparable)
+        {
+            return Integer.signum(((Comparable<Object>) leftValue).compareTo(rightValue));
+        }
+        return INCOMPARABLE;
+    }
+
+    private static Boolean compared(final int opcode, final int comparison)
+    {
+        if(comparison == NULL_OPERAND)
+        {
+            return null;
+        }
+        else if(comparison == INCOMPARABLE)
+        {
+            return Boolean.FALSE;
+        }
+
+        final boolean result;
+        switch(opcode)
+        {
+            case OP_GREATER:
+                result = comparison > 0;
+                break;
+            case OP_GREATER_EQUAL:
+                result = comparison >= 0;
+                break;
+            case OP_LESS:
+                result = comparison < 0;
+                break;
+            default:
+                result = comparison <= 0;
+                break;
+        }
+        return result ? Boolean.TRUE : Boolean.FALSE;
+    }
+
+    private static boolean like(final int opcode, final String value, final Object pattern)
+    {
+        switch(opcode)
+        {
+            case OP_LIKE_EXACT:
+                return value.equals(pattern);
+            case OP_LIKE_PREFIX:
+                return value.startsWith((String) pattern);
+            case OP_LIKE_SUFFIX:
+                return value.endsWith((String) pattern);
+            case OP_LIKE_CONTAINS:
+                return value.contains((String) pattern);
+            default:
+                return ((Pattern) pattern).matcher(value).matches();
+        }
+    }
+
+    private static int primitiveRank(final int opcode)
+    {
+        switch(opcode)
+        {
+            case OP_PRIORITY:
+                return INTEGER;
+            case OP_TIMESTAMP:
+            case OP_EXPIRATION:
+                return LONG;
+            default:
+                return NOT_NUMERIC;
+        }
+    }
+
+    private static long primitiveValue(final int opcode, final FilterableMessage message)
+    {
+        switch(opcode)
+        {
+            case OP_PRIORITY:
+                return message.getPriority();
+            case OP_TIMESTAMP:
+                return message.getTimestamp();
+            default:
+                return message.getExpiration();
+        }
+    }
+
+    private static int rank(final Object value)
+    {
+        if(value == null)
+        {
+            return NOT_NUMERIC;
+        }
+        final Class<?> clazz = value.getClass();
+        if(clazz == Integer.class)
+        {
+            return INTEGER;
+        }
+        else if(clazz == Long.class)
+        {
+            return LONG;
+        }
+        else if(clazz == Double.class)
+        {
+            return DOUBLE;
+        }
+        else if(clazz == Float.class)
+        {
+            return FLOAT;
+        }
+        else if(clazz == Short.class)
+        {
+            return SHORT;
+        }
+        else if(clazz == Byte.class)
+        {
+            return BYTE;
+        }
+        return NOT_NUMERIC;
+    }
+
+    @Override
+    public String toString()
+    {
+        return _expression.toString();
+    }
+
+    private static final class Compiler
+    {
+        private int[] _opcodes = new int[16];
+        private int[] _left = new int[16];
+        private int[] _right = new int[16];
+        private Object[] _operands = new Object[16];
+        private int _size;
+
+        private int compile(final Expression expression)
+        {
+            if(expression instanceof ConstantExpression)
+            {
+                return add(OP_CONSTANT, -1, -1, ((ConstantExpression) expression).getValue());
+            }
+            else if(expression instanceof PropertyExpression)
+            {
+                final PropertyExpression property = (PropertyExpression) expression;
+                if(!property.isJMSProperty())
+                {
+                    return add(OP_HEADER, -1, -1, property.getName());
+                }
+                final Integer opcode = JMS_PROPERTY_OPCODES.get(property.getName());
+                return opcode == null ? add(OP_EXPRESSION, -1, -1, expression) : add(opcode, -1, -1, null);
+            }
+            else if(expression instanceof LogicExpression.AndExpression)
+            {
+                final LogicExpression and = (LogicExpression) expression;
+                return add(OP_AND, compile(and.getLeft()), compile(and.getRight()), null);
+            }
+            else if(expression instanceof LogicExpression.OrExpression)
+            {
+                final LogicExpression or = (LogicExpression) expression;
+                return add(OP_OR, compile(or.getLeft()), compile(or.getRight()), null);
+            }
+            else if(expression instanceof UnaryExpression.NotExpression)
+            {
+                return add(OP_NOT, compile(((UnaryExpression) expression).getRight()), -1, null);
+            }
+            else if(expression instanceof UnaryExpression.BooleanCastExpression)
+            {
+                return add(OP_BOOLEAN_CAST, compile(((UnaryExpression) expression).getRight()), -1, null);
+            }
+            else if(expression instanceof UnaryExpression.NegativeExpression)
+            {
+                return add(OP_NEGATE, compile(((UnaryExpression) expression).getRight()), -1, null);
+            }
+            else if(expression instanceof UnaryExpression.InExpression)
+            {
+                final UnaryExpression.InExpression in = (UnaryExpression.InExpression) expression;
+                return add(in.isNot() ? OP_NOT_IN : OP_IN, compile(in.getRight()), -1, in.getInList());
+            }
+            else if(expression instanceof ComparisonExpression.LikeExpression)
+            {
+                return compileLike((ComparisonExpression.LikeExpression) expression);
+            }
+            else if(expression instanceof ComparisonExpression)
+            {
+                final ComparisonExpression comparison = (ComparisonExpression) expression;
+                final int opcode = comparisonOpcode(comparison.getExpressionSymbol());
+                if(opcode != OP_EXPRESSION)
+                {
+                    return add(opcode, compile(comparison.getLeft()), compile(comparison.getRight()), null);
+                }
+            }
+            else if(expression instanceof ArithmeticExpression)
+            {
+                final ArithmeticExpression arithmetic = (ArithmeticExpression) expression;
+                return add(OP_ARITHMETIC, compile(arithmetic.getLeft()), compile(arithmetic.getRight()), arithmetic);
+            }
+            return add(OP_EXPRESSION, -1, -1, expression);
+        }
+
+        private int compileLike(final ComparisonExpression.LikeExpression like)
+        {
+            final int value = compile(like.getRight());
+            final String pattern = like.getLike();
+            final int escape = like.getEscape();
+
+            // patterns without single character wildcards or escapes, and with multiple character wildcards only at
+            // their ends, can be matched by string operations
+            if(pattern.indexOf('_') == -1 && (escape == -1 || pattern.indexOf((char) escape) == -1))
+            {
+                final int first = pattern.indexOf('%');
+                final int last = pattern.lastIndexOf('%');
+                final int length = pattern.length();
+                if(first == -1)
+                {
+                    return add(OP_LIKE_EXACT, value, -1, pattern);
+                }
+                else if(first == last && last == length - 1)
+                {
+                    return add(OP_LIKE_PREFIX, value, -1, pattern.substring(0, last));
+                }
+                else if(first == last && first == 0)
+                {
+                    return add(OP_LIKE_SUFFIX, value, -1, pattern.substring(1));
+                }
+                else if(first == 0 && last == length - 1 && pattern.indexOf('%', 1) == last)
+                {
+                    return add(OP_LIKE_CONTAINS, value, -1, pattern.substring(1, last));
+                }
+            }
+            return add(OP_LIKE, value, -1, like.getLikePattern());
+        }
+
+        private static int comparisonOpcode(final String symbol)
+        {
+            switch(symbol)
+            {
+                case "=":
+                    return OP_EQUAL;
+                case ">":
+                    return OP_GREATER;
+                case ">=":
+                    return OP_GREATER_EQUAL;
+                case "<":
+                    return OP_LESS;
+                case "<=":
+                    return OP_LESS_EQUAL;
+                default:
+                    return OP_EXPRESSION;
+            }
+        }
+
+        private int add(final int opcode, final int left, final int right, final Object operand)
+        {
+            if(_size == _opcodes.length)
+            {
+                final int capacity = 2 * _size;
+                _opcodes = Arrays.copyOf(_opcodes, capacity);
+                _left = Arrays.copyOf(_left, capacity);
+                _right = Arrays.copyOf(_right, capacity);
+                _operands = Arrays.copyOf(_operands, capacity);
+            }
+            _opcodes[_size] = opcode;
+            _left[_size] = left;
+            _right[_size] = right;
+            _operands[_size] = operand;
+            return _size++;
+        }
+    }
+}
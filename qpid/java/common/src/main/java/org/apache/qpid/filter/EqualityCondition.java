@@ -0,0 +1,131 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * A condition, implied by a selector, that a message property holds one of a set of string values.
+ *
+ * Any message matching the selector satisfies the condition, so messages which do not satisfy it can be passed over
+ * without evaluating the selector. Conditions are found in selectors of the forms <code>p = 'a'</code> and
+ * <code>p IN ('a', 'b')</code>, disjunctions of these on the same property, and conjunctions with any other
+ * expression.
+ */
+public final class EqualityCondition
+{
+    private final String _propertyName;
+    private final Set<String> _values;
+
+    private EqualityCondition(final String propertyName, final Set<String> values)
+    {
+        _propertyName = propertyName;
+        _values = Collections.unmodifiableSet(values);
+    }
+
+    public String getPropertyName()
+    {
+        return _propertyName;
+    }
+
+    public Set<String> getValues()
+    {
+        return _values;
+    }
+
+    public boolean isSatisfiedBy(final Object value)
+    {
+        return value instanceof String && _values.contains(value);
+    }
+
+    /**
+     * @return the condition implied by the given selector expression, or null if it implies none
+     */
+    public static EqualityCondition of(final Expression expression)
+    {
+        if(expression instanceof ComparisonExpression.EqualExpression)
+        {
+            final ComparisonExpression.EqualExpression equal = (ComparisonExpression.EqualExpression) expression;
+            EqualityCondition condition = of(equal.getLeft(), equal.getRight());
+            return condition == null ? of(equal.getRight(), equal.getLeft()) : condition;
+        }
+        else if(expression instanceof UnaryExpression.InExpression)
+        {
+            final UnaryExpression.InExpression in = (UnaryExpression.InExpression) expression;
+            if(!in.isNot() && in.getInList() != null && isHeader(in.getRight()))
+            {
+                final Set<String> values = new HashSet<String>();
+                for(Object value : in.getInList())
+                {
+                    if(value instanceof String)
+                    {
+                        values.add((String) value);
+                    }
+                }
+                return new EqualityCondition(((PropertyExpression) in.getRight()).getName(), values);
+            }
+        }
+        else if(expression instanceof LogicExpression.OrExpression)
+        {
+            final LogicExpression.OrExpression or = (LogicExpression.OrExpression) expression;
+            final EqualityCondition left = of(or.getLeft());
+            final EqualityCondition right = of(or.getRight());
+            if(left != null && right != null && left._propertyName.equals(right._propertyName))
+            {
+                final Set<String> values = new HashSet<String>(left._values);
+                values.addAll(right._values);
+                return new EqualityCondition(left._propertyName, values);
+            }
+        }
+        else if(expression instanceof LogicExpression.AndExpression)
+        {
+            final LogicExpression.AndExpression and = (LogicExpression.AndExpression) expression;
+            final EqualityCondition left = of(and.getLeft());
+            return left == null ? of(and.getRight()) : left;
+        }
+        return null;
+    }
+
+    private static EqualityCondition of(final Expression property, final Expression constant)
+    {
+        if(isHeader(property)
+           && constant instanceof ConstantExpression
+           && ((ConstantExpression) constant).getValue() instanceof String)
+        {
+            return new EqualityCondition(((PropertyExpression) property).getName(),
+                                         Collections.singleton((String) ((ConstantExpression) constant).getValue()));
+        }
+        return null;
+    }
+
+    private static boolean isHeader(final Expression expression)
+    {
+        return expression instanceof PropertyExpression && !((PropertyExpression) expression).isJMSProperty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return _propertyName + " IN " + _values;
+    }
+}
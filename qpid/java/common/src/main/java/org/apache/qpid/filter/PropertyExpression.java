@@ -43,6 +43,7 @@ public class PropertyExpression implements Expression
 
     private static final HashMap<String, Expression> JMS_PROPERTY_EXPRESSIONS = new HashMap<String, Expression>();
 
+    static
     {
         JMS_PROPERTY_EXPRESSIONS.put("JMSDestination", new Expression()
                                      {
@@ -89,9 +90,9 @@ public class PropertyExpression implements Expression
 
     public PropertyExpression(String name)
     {
-        this.name = name;
-
-        
+        // the name is interned so that messages can cache the values of the properties they are asked for, and
+        // find them again by identity
+        this.name = name.intern();
 
         jmsPropertyExpression = JMS_PROPERTY_EXPRESSIONS.get(name);
     }
@@ -114,6 +115,11 @@ public class PropertyExpression implements Expression
         return name;
     }
 
+    boolean isJMSProperty()
+    {
+        return jmsPropertyExpression != null;
+    }
+
     /**
      * @see java.lang.Object#toString()
      */
@@ -90,7 +90,7 @@ public abstract class UnaryExpression implements Expression
         return new BooleanCastExpression(left);
     }
 
-    private static Number negate(Number left)
+    static Number negate(Number left)
     {
         Class clazz = left.getClass();
         if (clazz == Integer.class)
@@ -177,7 +177,7 @@ public abstract class UnaryExpression implements Expression
      */
     public abstract String getExpressionSymbol();
 
-    private static class NegativeExpression extends UnaryExpression
+    static class NegativeExpression extends UnaryExpression
     {
         public NegativeExpression(final Expression left)
         {
@@ -206,7 +206,7 @@ public abstract class UnaryExpression implements Expression
         }
     }
 
-    private static class InExpression extends BooleanUnaryExpression
+    static class InExpression extends BooleanUnaryExpression
     {
         private final Collection _inList;
         private final boolean _not;
@@ -218,6 +218,16 @@ public abstract class UnaryExpression implements Expression
             _not = not;
         }
 
+        Collection getInList()
+        {
+            return _inList;
+        }
+
+        boolean isNot()
+        {
+            return _not;
+        }
+
         public Object evaluate(FilterableMessage message)
         {
 
@@ -280,7 +290,7 @@ public abstract class UnaryExpression implements Expression
         }
     }
 
-    private static class NotExpression extends BooleanUnaryExpression
+    static class NotExpression extends BooleanUnaryExpression
     {
         public NotExpression(final BooleanExpression left)
         {
@@ -304,7 +314,7 @@ public abstract class UnaryExpression implements Expression
         }
     }
 
-    private static class BooleanCastExpression extends BooleanUnaryExpression
+    static class BooleanCastExpression extends BooleanUnaryExpression
     {
         public BooleanCastExpression(final Expression left)
         {
@@ -0,0 +1,38 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A sender able to hand buffers to the network as they are, writing them with a single gathering write where
+ * possible, rather than copying them into a buffer of its own as {@link #send(Object)} does.
+ */
+public interface GatheringSender extends Sender<ByteBuffer>
+{
+    /**
+     * Queues the remaining content of the given buffers to be written, in order, without copying it.
+     * <p>
+     * Ownership of the buffers passes to the sender: neither their content nor their position or limit may be
+     * changed by the caller once this method has been called.
+     */
+    void sendWithoutCopy(ByteBuffer... buffers);
+}
@@ -20,6 +20,7 @@
  */
 package org.apache.qpid.transport.network;
 
+import org.apache.qpid.transport.GatheringSender;
 import org.apache.qpid.transport.Header;
 import org.apache.qpid.transport.Method;
 import org.apache.qpid.transport.ProtocolDelegate;
@@ -48,6 +49,7 @@ import static java.lang.Math.min;
 public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelegate<Void>
 {
     private final Sender<ByteBuffer> sender;
+    private final GatheringSender bodySender;
     private final int maxPayload;
     private final Object sendlock = new Object();
     private final static ThreadLocal<BBEncoder> _encoder = new ThreadLocal<BBEncoder>()
@@ -59,12 +61,22 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
     };
 
     public Disassembler(Sender<ByteBuffer> sender, int maxFrame)
+    {
+        this(sender, maxFrame, false);
+    }
+
+    /**
+     * @param sendBodiesWithoutCopy whether message bodies may be handed to a {@link GatheringSender} without being
+     * copied, which is only safe if bodies are never modified once they have been sent
+     */
+    public Disassembler(Sender<ByteBuffer> sender, int maxFrame, boolean sendBodiesWithoutCopy)
     {
         if (maxFrame <= HEADER_SIZE || maxFrame >= 64*1024)
         {
             throw new IllegalArgumentException("maxFrame must be > HEADER_SIZE and < 64K: " + maxFrame);
         }
         this.sender = sender;
+        this.bodySender = sendBodiesWithoutCopy && sender instanceof GatheringSender ? (GatheringSender) sender : null;
         this.maxPayload  = maxFrame - HEADER_SIZE;
     }
 
@@ -99,16 +111,16 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
     {
         synchronized (sendlock)
         {
+            if (bodySender != null && type == SegmentType.BODY.getValue())
+            {
+                bodyFrame(flags, type, track, channel, size, buf);
+                return;
+            }
+
             ByteBuffer data = _frameHeader;
             _frameHeader.rewind();
 
-            
-            data.put(0, flags);
-            data.put(1, type);
-            data.putShort(2, (short) (size + HEADER_SIZE));
-            data.put(5, track);
-            data.putShort(6, (short) channel);
-
+            writeFrameHeader(data, flags, type, track, channel, size);
 
             int limit = buf.limit();
             buf.limit(buf.position() + size);
@@ -121,6 +133,28 @@ public final class Disassembler implements Sender<ProtocolEvent>, ProtocolDelega
         }
     }
 
+    private void bodyFrame(byte flags, byte type, byte track, int channel, int size, ByteBuffer buf)
+    {
+        // the sender keeps hold of both buffers, so neither the header nor the body buffer may be reused
+        ByteBuffer data = ByteBuffer.allocate(HEADER_SIZE);
+        writeFrameHeader(data, flags, type, track, channel, size);
+
+        ByteBuffer body = buf.slice();
+        body.limit(size);
+        buf.position(buf.position() + size);
+
+        bodySender.sendWithoutCopy(data, body);
+    }
+
+    private static void writeFrameHeader(ByteBuffer data, byte flags, byte type, byte track, int channel, int size)
+    {
+        data.put(0, flags);
+        data.put(1, type);
+        data.putShort(2, (short) (size + HEADER_SIZE));
+        data.put(5, track);
+        data.putShort(6, (short) channel);
+    }
+
     private void fragment(byte flags, SegmentType type, ProtocolEvent event, ByteBuffer buf)
     {
         byte typeb = (byte) type.getValue();
@@ -0,0 +1,434 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.IOException;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.transport.Receiver;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.Ticker;
+
+/**
+ * A network connection over a non-blocking {@link SocketChannel} whose reads, idle ticks and (when the socket
+ * cannot accept more data) writes are performed by a shared {@link SelectorThread}. If created with an
+ * {@link SSLEngine} the connection performs the TLS handshake and record processing itself.
+ */
+public class NioNetworkConnection implements NetworkConnection
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioNetworkConnection.class);
+
+    private final SocketChannel _socketChannel;
+    private final Receiver<ByteBuffer> _receiver;
+    private final int _receiveBufferSize;
+    private final long _timeout;
+    private final Ticker _ticker;
+    private final SelectorThread _selectorThread;
+    private final NioSender _sender;
+    private final SocketAddress _remoteAddress;
+    private final SocketAddress _localAddress;
+    private final NioSslHandler _sslHandler;
+
+    private final AtomicBoolean _closing = new AtomicBoolean(false);
+    private final AtomicBoolean _closed = new AtomicBoolean(false);
+    private volatile long _closeDeadline;
+
+    private volatile int _maxReadIdle;
+    private volatile int _maxWriteIdle;
+
+    // only accessed by the selector thread
+    private SelectionKey _selectionKey;
+    private byte[] _readBuffer;
+    private int _readOffset;
+    private boolean _processingSslInput;
+
+    NioNetworkConnection(final SocketChannel socketChannel,
+                         final Receiver<ByteBuffer> receiver,
+                         final int sendBufferSize,
+                         final int receiveBufferSize,
+                         final long timeout,
+                         final Ticker ticker,
+                         final SelectorThread selectorThread)
+    {
+        this(socketChannel, receiver, sendBufferSize, receiveBufferSize, timeout, ticker, selectorThread, null);
+    }
+
+    NioNetworkConnection(final SocketChannel socketChannel,
+                         final Receiver<ByteBuffer> receiver,
+                         final int sendBufferSize,
+                         final int receiveBufferSize,
+                         final long timeout,
+                         final Ticker ticker,
+                         final SelectorThread selectorThread,
+                         final SSLEngine sslEngine)
+    {
+        _socketChannel = socketChannel;
+        _receiver = receiver;
+        _receiveBufferSize = receiveBufferSize;
+        _timeout = timeout;
+        _ticker = ticker;
+        _selectorThread = selectorThread;
+        _remoteAddress = socketChannel.socket().getRemoteSocketAddress();
+        _localAddress = socketChannel.socket().getLocalSocketAddress();
+        _sslHandler = sslEngine == null ? null : new NioSslHandler(sslEngine, receiveBufferSize);
+        _sender = new NioSender(this, _sslHandler, 2 * sendBufferSize, timeout);
+    }
+
+    @Override
+    public void start()
+    {
+        _selectorThread.addConnection(this);
+    }
+
+    @Override
+    public Sender<ByteBuffer> getSender()
+    {
+        return _sender;
+    }
+
+    SocketChannel getSocketChannel()
+    {
+        return _socketChannel;
+    }
+
+    SelectorThread getSelectorThread()
+    {
+        return _selectorThread;
+    }
+
+    /**
+     * Closes the connection once all data already passed to the sender has been written, or the transport
+     * timeout has elapsed.
+     */
+    @Override
+    public void close()
+    {
+        if(_closing.compareAndSet(false, true))
+        {
+            _closeDeadline = System.currentTimeMillis() + _timeout;
+            _selectorThread.execute(new Runnable()
+            {
+                @Override
+                public void run()
+                {
+                    doWrite();
+                }
+            });
+        }
+    }
+
+    boolean isClosing()
+    {
+        return _closing.get();
+    }
+
+    boolean isClosed()
+    {
+        return _closed.get();
+    }
+
+    void register(final Selector selector) throws IOException
+    {
+        if(_sslHandler == null)
+        {
+            _readBuffer = new byte[_receiveBufferSize];
+            _readOffset = 0;
+        }
+        _selectionKey = _socketChannel.register(selector, SelectionKey.OP_READ, this);
+        if(_closing.get() || _sender.hasPendingData())
+        {
+            doWrite();
+        }
+    }
+
+    void doRead()
+    {
+        try
+        {
+            if(_sslHandler != null)
+            {
+                doSslRead();
+                return;
+            }
+
+            int read = _socketChannel.read(ByteBuffer.wrap(_readBuffer, _readOffset, _receiveBufferSize - _readOffset));
+            if(read == -1)
+            {
+                closeImmediately(null);
+            }
+            else if(read > 0)
+            {
+                ByteBuffer b = ByteBuffer.wrap(_readBuffer, _readOffset, read);
+                _receiver.received(b);
+                _readOffset += read;
+                // the receiver may still hold on to slices of the buffer so it is never reused
+                if(_readOffset > _receiveBufferSize / 2)
+                {
+                    _readOffset = 0;
+                    _readBuffer = new byte[_receiveBufferSize];
+                }
+            }
+        }
+        catch (Throwable t)
+        {
+            closeImmediately(t);
+        }
+    }
+
+    private void doSslRead() throws IOException
+    {
+        int read = _sslHandler.read(_socketChannel);
+        processSslInput();
+        if(read == -1)
+        {
+            closeImmediately(null);
+        }
+    }
+
+    /**
+     * Unwraps buffered network data, interleaving the writes of any handshake messages the engine produces in
+     * response, until either no buffered data remains or the socket cannot take the next handshake message.
+     */
+    private void processSslInput() throws IOException
+    {
+        _processingSslInput = true;
+        try
+        {
+            boolean wrapNeeded;
+            do
+            {
+                wrapNeeded = _sslHandler.unwrap(_receiver);
+                if(_sslHandler.isInboundDone())
+                {
+                    close();
+                    return;
+                }
+                if(wrapNeeded || _sslHandler.isWrapNeeded() || _sender.hasPendingData())
+                {
+                    doWrite();
+                }
+            }
+            while(wrapNeeded && !_sslHandler.isWrapNeeded() && !_closed.get());
+        }
+        finally
+        {
+            _processingSslInput = false;
+        }
+    }
+
+    /**
+     * Writes as much pending data as the socket will accept, registering interest in writability if some
+     * remains. Invoked on the selector thread.
+     */
+    void doWrite()
+    {
+        if(_closed.get())
+        {
+            return;
+        }
+
+        writePending();
+
+        if(_sslHandler != null && !_processingSslInput && !_closed.get())
+        {
+            try
+            {
+                processSslInput();
+            }
+            catch (IOException e)
+            {
+                closeImmediately(e);
+            }
+        }
+    }
+
+    private void writePending()
+    {
+        try
+        {
+            boolean complete = _sender.doWrite();
+            if(complete && _closing.get())
+            {
+                closeImmediately(null);
+            }
+            else if(_selectionKey != null && _selectionKey.isValid())
+            {
+                int ops = complete ? SelectionKey.OP_READ : SelectionKey.OP_READ | SelectionKey.OP_WRITE;
+                if(_selectionKey.interestOps() != ops)
+                {
+                    _selectionKey.interestOps(ops);
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.info("Exception writing to '" + _remoteAddress + "': " + e);
+            closeImmediately(_closing.get() ? null : e);
+        }
+    }
+
+    /**
+     * Called by the sender when data could not be written in full from a non selector thread.
+     */
+    void scheduleWrite()
+    {
+        _selectorThread.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                doWrite();
+            }
+        });
+    }
+
+    /**
+     * Called by the sender when writing from a non selector thread failed.
+     */
+    void closeOnError(final Throwable cause)
+    {
+        _selectorThread.execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                closeImmediately(cause);
+            }
+        });
+    }
+
+    int processTick(final long currentTime)
+    {
+        if(_closing.get() && currentTime >= _closeDeadline)
+        {
+            LOGGER.debug("Timed out waiting for pending data to be written to '" + _remoteAddress + "' on close");
+            closeImmediately(null);
+            return 0;
+        }
+
+        int tick = _ticker.getTimeToNextTick(currentTime);
+        if(tick <= 0)
+        {
+            tick = _ticker.tick(currentTime);
+        }
+        if(_closing.get())
+        {
+            tick = (int) Math.min(tick, _closeDeadline - currentTime);
+        }
+        return tick <= 0 ? 1 : tick;
+    }
+
+    /**
+     * Closes the underlying channel without waiting for pending writes and notifies the receiver. Must be
+     * invoked on the selector thread unless the connection was never registered.
+     */
+    void closeImmediately(final Throwable cause)
+    {
+        if(_closed.compareAndSet(false, true))
+        {
+            _closing.set(true);
+            try
+            {
+                if(_selectionKey != null)
+                {
+                    _selectionKey.cancel();
+                }
+                _socketChannel.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Exception closing channel for '" + _remoteAddress + "'", e);
+            }
+            finally
+            {
+                _sender.closed(cause);
+                try
+                {
+                    if(cause != null)
+                    {
+                        _receiver.exception(cause);
+                    }
+                }
+                finally
+                {
+                    _receiver.closed();
+                    _selectorThread.rescheduleTicks();
+                }
+            }
+        }
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress()
+    {
+        return _remoteAddress;
+    }
+
+    @Override
+    public SocketAddress getLocalAddress()
+    {
+        return _localAddress;
+    }
+
+    @Override
+    public void setMaxWriteIdle(int sec)
+    {
+        _maxWriteIdle = sec;
+        _selectorThread.rescheduleTicks();
+    }
+
+    @Override
+    public void setMaxReadIdle(int sec)
+    {
+        _maxReadIdle = sec;
+        _selectorThread.rescheduleTicks();
+    }
+
+    @Override
+    public Principal getPeerPrincipal()
+    {
+        return _sslHandler == null ? null : _sslHandler.getPeerPrincipal();
+    }
+
+    @Override
+    public int getMaxReadIdle()
+    {
+        return _maxReadIdle;
+    }
+
+    @Override
+    public int getMaxWriteIdle()
+    {
+        return _maxWriteIdle;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.configuration.CommonProperties;
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.transport.ConnectionSettings;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.Receiver;
+import org.apache.qpid.transport.TransportException;
+import org.apache.qpid.transport.network.IncomingNetworkTransport;
+import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.OutgoingNetworkTransport;
+import org.apache.qpid.transport.network.TransportActivity;
+import org.apache.qpid.transport.network.io.IdleTimeoutTicker;
+
+/**
+ * Network transport which services all of its connections from a small pool of selector threads rather than
+ * dedicating a reader and a writer thread to each socket.
+ *
+ * Accepted connections are shared between the selector threads of the transport instance; outgoing connections
+ * share a single JVM wide pool. When accepting with an {@link SSLContext} each connection performs TLS on the
+ * selector threads through its own {@link SSLEngine}. The size of the pools defaults to
+ * {@link CommonProperties#NIO_NETWORK_TRANSPORT_SELECTOR_THREADS_PROP_NAME}.
+ */
+public class NioNetworkTransport implements OutgoingNetworkTransport, IncomingNetworkTransport
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioNetworkTransport.class);
+    private static final int TIMEOUT = Integer.getInteger(CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_PROP_NAME,
+                                                          CommonProperties.IO_NETWORK_TRANSPORT_TIMEOUT_DEFAULT);
+    private static final int HANDSHAKE_TIMEOUT = Integer.getInteger(CommonProperties.HANDSHAKE_TIMEOUT_PROP_NAME,
+                                                                    CommonProperties.HANDSHAKE_TIMEOUT_DEFAULT);
+    private static final int DEFAULT_SELECTOR_THREADS =
+            Integer.getInteger(CommonProperties.NIO_NETWORK_TRANSPORT_SELECTOR_THREADS_PROP_NAME,
+                               CommonProperties.NIO_NETWORK_TRANSPORT_SELECTOR_THREADS_DEFAULT);
+
+    private static SelectorThreadPool _outgoingSelectorThreadPool;
+
+    private final int _selectorThreadCount;
+    private NioNetworkConnection _connection;
+    private SelectorThreadPool _selectorThreadPool;
+    private AcceptingThread _acceptor;
+
+    public NioNetworkTransport()
+    {
+        this(DEFAULT_SELECTOR_THREADS);
+    }
+
+    public NioNetworkTransport(final int selectorThreadCount)
+    {
+        _selectorThreadCount = selectorThreadCount;
+    }
+
+    private static synchronized SelectorThreadPool getOutgoingSelectorThreadPool()
+    {
+        if(_outgoingSelectorThreadPool == null)
+        {
+            _outgoingSelectorThreadPool = new SelectorThreadPool("NioSelector - outgoing", DEFAULT_SELECTOR_THREADS);
+        }
+        return _outgoingSelectorThreadPool;
+    }
+
+    public NetworkConnection connect(ConnectionSettings settings,
+                                     Receiver<ByteBuffer> delegate,
+                                     TransportActivity transportActivity)
+    {
+        int sendBufferSize = settings.getWriteBufferSize();
+        int receiveBufferSize = settings.getReadBufferSize();
+
+        SocketChannel socketChannel;
+        try
+        {
+            socketChannel = SocketChannel.open();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Error connecting to broker", e);
+        }
+
+        try
+        {
+            Socket socket = socketChannel.socket();
+            socket.setReuseAddress(true);
+            socket.setTcpNoDelay(settings.isTcpNodelay());
+            socket.setSendBufferSize(sendBufferSize);
+            socket.setReceiveBufferSize(receiveBufferSize);
+
+            if(LOGGER.isDebugEnabled())
+            {
+                LOGGER.debug("SO_RCVBUF : " + socket.getReceiveBufferSize());
+                LOGGER.debug("SO_SNDBUF : " + socket.getSendBufferSize());
+                LOGGER.debug("TCP_NODELAY : " + socket.getTcpNoDelay());
+            }
+
+            InetAddress address = InetAddress.getByName(settings.getHost());
+
+            socket.connect(new InetSocketAddress(address, settings.getPort()), settings.getConnectTimeout());
+            socketChannel.configureBlocking(false);
+        }
+        catch (IOException e)
+        {
+            closeChannel(socketChannel);
+            throw new TransportException("Error connecting to broker", e);
+        }
+
+        try
+        {
+            IdleTimeoutTicker ticker = new IdleTimeoutTicker(transportActivity, TIMEOUT);
+            _connection = new NioNetworkConnection(socketChannel, delegate, sendBufferSize, receiveBufferSize,
+                                                   TIMEOUT, ticker,
+                                                   getOutgoingSelectorThreadPool().nextSelectorThread());
+            ticker.setConnection(_connection);
+            _connection.start();
+        }
+        catch(Exception e)
+        {
+            closeChannel(socketChannel);
+            throw new TransportException("Error creating network connection", e);
+        }
+
+        return _connection;
+    }
+
+    public void close()
+    {
+        if(_connection != null)
+        {
+            _connection.close();
+        }
+        if(_acceptor != null)
+        {
+            _acceptor.close();
+        }
+        if(_selectorThreadPool != null)
+        {
+            _selectorThreadPool.close();
+        }
+    }
+
+    public NetworkConnection getConnection()
+    {
+        return _connection;
+    }
+
+    public void accept(NetworkTransportConfiguration config,
+                       ProtocolEngineFactory factory,
+                       SSLContext sslContext)
+    {
+        try
+        {
+            _selectorThreadPool = new SelectorThreadPool("NioSelector - " + config.getAddress(), _selectorThreadCount);
+            _acceptor = new AcceptingThread(config, factory, sslContext);
+            _acceptor.setDaemon(false);
+            _acceptor.start();
+        }
+        catch (IOException e)
+        {
+            if(_selectorThreadPool != null)
+            {
+                _selectorThreadPool.close();
+            }
+            throw new TransportException("Failed to start AMQP on port : " + config, e);
+        }
+    }
+
+    private static void closeChannel(final SocketChannel socketChannel)
+    {
+        if(socketChannel != null)
+        {
+            try
+            {
+                socketChannel.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Exception while closing socket", e);
+            }
+        }
+    }
+
+    private class AcceptingThread extends Thread
+    {
+        private volatile boolean _closed = false;
+        private final NetworkTransportConfiguration _config;
+        private final ProtocolEngineFactory _factory;
+        private final SSLContext _sslContext;
+        private final ServerSocketChannel _serverSocketChannel;
+
+        private AcceptingThread(NetworkTransportConfiguration config,
+                                ProtocolEngineFactory factory,
+                                SSLContext sslContext) throws IOException
+        {
+            super("NioAcceptor - " + config.getAddress());
+            _config = config;
+            _factory = factory;
+            _sslContext = sslContext;
+
+            _serverSocketChannel = ServerSocketChannel.open();
+            _serverSocketChannel.socket().setReuseAddress(true);
+            _serverSocketChannel.socket().bind(config.getAddress());
+        }
+
+        /**
+            Close the underlying ServerSocketChannel if it has not already been closed.
+         */
+        public void close()
+        {
+            LOGGER.debug("Shutting down the Acceptor");
+            _closed = true;
+
+            if (_serverSocketChannel.isOpen())
+            {
+                try
+                {
+                    _serverSocketChannel.close();
+                }
+                catch (IOException e)
+                {
+                    throw new TransportException(e);
+                }
+            }
+        }
+
+        private SSLEngine createSSLEngine()
+        {
+            if(_sslContext == null)
+            {
+                return null;
+            }
+
+            SSLEngine sslEngine = _sslContext.createSSLEngine();
+            sslEngine.setUseClientMode(false);
+
+            if(_config.needClientAuth())
+            {
+                sslEngine.setNeedClientAuth(true);
+            }
+            else if(_config.wantClientAuth())
+            {
+                sslEngine.setWantClientAuth(true);
+            }
+            return sslEngine;
+        }
+
+        @Override
+        public void run()
+        {
+            try
+            {
+                while (!_closed)
+                {
+                    SocketChannel socketChannel = null;
+                    try
+                    {
+                        socketChannel = _serverSocketChannel.accept();
+                        socketChannel.configureBlocking(false);
+
+                        Socket socket = socketChannel.socket();
+                        socket.setTcpNoDelay(_config.getTcpNoDelay());
+
+                        final Integer sendBufferSize = _config.getSendBufferSize();
+                        final Integer receiveBufferSize = _config.getReceiveBufferSize();
+
+                        socket.setSendBufferSize(sendBufferSize);
+                        socket.setReceiveBufferSize(receiveBufferSize);
+
+                        ProtocolEngine engine = _factory.newProtocolEngine();
+
+                        final IdleTimeoutTicker ticker = new IdleTimeoutTicker(engine, TIMEOUT);
+                        NioNetworkConnection connection =
+                                new NioNetworkConnection(socketChannel, engine, sendBufferSize, receiveBufferSize,
+                                                         TIMEOUT, ticker, _selectorThreadPool.nextSelectorThread(),
+                                                         createSSLEngine());
+
+                        connection.setMaxReadIdle(HANDSHAKE_TIMEOUT);
+
+                        ticker.setConnection(connection);
+
+                        engine.setNetworkConnection(connection, connection.getSender());
+
+                        connection.start();
+                    }
+                    catch(RuntimeException e)
+                    {
+                        LOGGER.error("Error in Acceptor thread on address " + _config.getAddress(), e);
+                        closeChannel(socketChannel);
+                    }
+                    catch(ClosedChannelException e)
+                    {
+                        if(!_closed)
+                        {
+                            LOGGER.error("Server socket channel closed unexpectedly on address " + _config.getAddress(), e);
+                            _closed = true;
+                        }
+                    }
+                    catch(IOException e)
+                    {
+                        if(!_closed)
+                        {
+                            LOGGER.error("Error in Acceptor thread on address " + _config.getAddress(), e);
+                            closeChannel(socketChannel);
+                            try
+                            {
+                                //Delay to avoid tight spinning the loop during issues such as too many open files
+                                Thread.sleep(1000);
+                            }
+                            catch (InterruptedException ie)
+                            {
+                                LOGGER.debug("Stopping acceptor due to interrupt request");
+                                _closed = true;
+                            }
+                        }
+                    }
+                }
+            }
+            finally
+            {
+                if(LOGGER.isDebugEnabled())
+                {
+                    LOGGER.debug("Acceptor exiting, no new connections will be accepted on address " + _config.getAddress());
+                }
+            }
+        }
+    }
+}
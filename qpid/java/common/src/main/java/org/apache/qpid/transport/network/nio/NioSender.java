@@ -0,0 +1,359 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.net.ssl.SSLEngineResult;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.transport.GatheringSender;
+import org.apache.qpid.transport.SenderClosedException;
+import org.apache.qpid.transport.SenderException;
+import org.apache.qpid.util.ByteBufferPool;
+
+/**
+ * Queues outgoing data for a {@link NioNetworkConnection}.
+ *
+ * Data is written to the channel by whichever thread flushes, falling back to the selector thread when the
+ * socket cannot accept all of it. On TLS connections the gathered buffers are wrapped together, so that many
+ * small frames share a single record. Senders other than the selector thread block, for at most the transport
+ * timeout, while more than the configured amount of data is waiting to be written. Buffers passed to
+ * {@link #sendWithoutCopy(ByteBuffer...)} are queued and written as they are, other data is copied into buffers
+ * drawn from the shared direct buffer pool which are returned to it once written.
+ */
+final class NioSender implements GatheringSender
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(NioSender.class);
+
+    private static final int MAX_GATHERED_BUFFERS = 64;
+
+    private final NioNetworkConnection _connection;
+    private final NioSslHandler _sslHandler;
+    private final int _bufferLimit;
+    private final long _timeout;
+
+    private final ByteBufferPool _bufferPool = ByteBufferPool.getDirectPool();
+    private final Queue<PendingBuffer> _pending = new ConcurrentLinkedQueue<PendingBuffer>();
+    private final AtomicInteger _pendingBytes = new AtomicInteger();
+    private final Object _writeLock = new Object();
+    private final Object _notFull = new Object();
+    private final ByteBuffer[] _gatherBuffers = new ByteBuffer[MAX_GATHERED_BUFFERS];
+
+    private volatile boolean _closed;
+    private volatile Throwable _exception;
+
+    NioSender(final NioNetworkConnection connection,
+              final NioSslHandler sslHandler,
+              final int bufferLimit,
+              final long timeout)
+    {
+        _connection = connection;
+        _sslHandler = sslHandler;
+        _bufferLimit = bufferLimit;
+        _timeout = timeout;
+    }
+
+    @Override
+    public void send(final ByteBuffer buf)
+    {
+        checkNotAlreadyClosed();
+
+        final int size = buf.remaining();
+        if(size == 0)
+        {
+            return;
+        }
+
+        // callers are free to reuse the buffer once send returns
+        ByteBuffer copy = _bufferPool.acquire(size);
+        copy.put(buf);
+        copy.flip();
+
+        _pending.add(new PendingBuffer(copy, true));
+        pendingBytesAdded(size);
+    }
+
+    @Override
+    public void sendWithoutCopy(final ByteBuffer... buffers)
+    {
+        checkNotAlreadyClosed();
+
+        int size = 0;
+        for(ByteBuffer buf : buffers)
+        {
+            if(buf.hasRemaining())
+            {
+                size += buf.remaining();
+                _pending.add(new PendingBuffer(buf, false));
+            }
+        }
+        pendingBytesAdded(size);
+    }
+
+    private void pendingBytesAdded(final int size)
+    {
+        if(_pendingBytes.addAndGet(size) > _bufferLimit && !_connection.getSelectorThread().isSelectorThread())
+        {
+            flush();
+            awaitNotFull();
+        }
+    }
+
+    private void awaitNotFull()
+    {
+        synchronized (_notFull)
+        {
+            final long start = System.currentTimeMillis();
+            long elapsed = 0;
+            while (!_closed && _pendingBytes.get() > _bufferLimit && elapsed < _timeout)
+            {
+                try
+                {
+                    _notFull.wait(_timeout - elapsed);
+                }
+                catch (InterruptedException e)
+                {
+                    // pass
+                }
+                elapsed = System.currentTimeMillis() - start;
+            }
+        }
+
+        checkNotAlreadyClosed();
+
+        if (_pendingBytes.get() > _bufferLimit)
+        {
+            final String message = String.format("write timed out for socket %s: %d bytes pending",
+                                                  _connection.getRemoteAddress(),
+                                                  _pendingBytes.get());
+            LOGGER.error(message);
+            SenderException exception = new SenderException(message);
+            _connection.closeOnError(exception);
+            throw exception;
+        }
+    }
+
+    @Override
+    public void flush()
+    {
+        if(_closed || _pending.isEmpty())
+        {
+            return;
+        }
+
+        if(_connection.getSelectorThread().isSelectorThread())
+        {
+            _connection.doWrite();
+        }
+        else
+        {
+            try
+            {
+                if(!doWrite())
+                {
+                    _connection.scheduleWrite();
+                }
+            }
+            catch (IOException e)
+            {
+                LOGGER.info("Exception writing to '" + _connection.getRemoteAddress() + "': " + e);
+                _exception = e;
+                _connection.closeOnError(e);
+            }
+        }
+    }
+
+    /**
+     * Writes as much of the pending data as the channel accepts without blocking, gathering up to
+     * {@link #MAX_GATHERED_BUFFERS} buffers per write.
+     *
+     * @return true if no data remains that could currently be written
+     */
+    boolean doWrite() throws IOException
+    {
+        synchronized (_writeLock)
+        {
+            return _sslHandler == null ? doPlainWrite() : doSslWrite();
+        }
+    }
+
+    private boolean doPlainWrite() throws IOException
+    {
+        while(true)
+        {
+            int count = gatherPending();
+
+            if(count == 0)
+            {
+                return true;
+            }
+
+            long written = _connection.getSocketChannel().write(_gatherBuffers, 0, count);
+
+            if(releaseGathered(count, written))
+            {
+                return false;
+            }
+        }
+    }
+
+    private boolean doSslWrite() throws IOException
+    {
+        while(true)
+        {
+            if(!_sslHandler.writeNetData(_connection.getSocketChannel()))
+            {
+                return false;
+            }
+
+            int count = gatherPending();
+
+            if(count == 0 && _connection.isClosing())
+            {
+                _sslHandler.closeOutbound();
+            }
+
+            SSLEngineResult result = _sslHandler.wrap(_gatherBuffers, count);
+            releaseGathered(count, result.bytesConsumed());
+
+            if(result.bytesProduced() == 0 && result.bytesConsumed() == 0 && !_sslHandler.isWrapNeeded())
+            {
+                return true;
+            }
+        }
+    }
+
+    private int gatherPending()
+    {
+        int count = 0;
+        Iterator<PendingBuffer> iterator = _pending.iterator();
+        while(count < MAX_GATHERED_BUFFERS && iterator.hasNext())
+        {
+            _gatherBuffers[count++] = iterator.next().getBuffer();
+        }
+        return count;
+    }
+
+    /**
+     * Removes the fully consumed buffers amongst those gathered from the pending queue.
+     *
+     * @return true if any of the gathered buffers still has data remaining
+     */
+    private boolean releaseGathered(final int count, final long consumed)
+    {
+        boolean partial = false;
+        for(int i = 0; i < count; i++)
+        {
+            ByteBuffer buf = _gatherBuffers[i];
+            _gatherBuffers[i] = null;
+            if(buf.hasRemaining())
+            {
+                partial = true;
+            }
+            else
+            {
+                PendingBuffer written = _pending.poll();
+                if(written.isPooled())
+                {
+                    _bufferPool.release(written.getBuffer());
+                }
+            }
+        }
+
+        if(consumed > 0 && _pendingBytes.addAndGet((int) -consumed) <= _bufferLimit)
+        {
+            synchronized (_notFull)
+            {
+                _notFull.notifyAll();
+            }
+        }
+        return partial;
+    }
+
+    boolean hasPendingData()
+    {
+        return !_pending.isEmpty();
+    }
+
+    @Override
+    public void close()
+    {
+        _connection.close();
+    }
+
+    void closed(final Throwable cause)
+    {
+        if(cause != null && _exception == null)
+        {
+            _exception = cause;
+        }
+        _closed = true;
+        synchronized (_notFull)
+        {
+            _notFull.notifyAll();
+        }
+    }
+
+    @Override
+    public void setIdleTimeout(final int i)
+    {
+        // idle timeouts are driven by the connection's ticker
+    }
+
+    private void checkNotAlreadyClosed()
+    {
+        if (_closed || _connection.isClosing())
+        {
+            throw new SenderClosedException(String.format("sender for socket %s is closed",
+                                                          _connection.getRemoteAddress()), _exception);
+        }
+    }
+
+    private static final class PendingBuffer
+    {
+        private final ByteBuffer _buffer;
+        private final boolean _pooled;
+
+        private PendingBuffer(final ByteBuffer buffer, final boolean pooled)
+        {
+            _buffer = buffer;
+            _pooled = pooled;
+        }
+
+        ByteBuffer getBuffer()
+        {
+            return _buffer;
+        }
+
+        boolean isPooled()
+        {
+            return _pooled;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.security.Principal;
+
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLEngineResult.HandshakeStatus;
+import javax.net.ssl.SSLEngineResult.Status;
+import javax.net.ssl.SSLPeerUnverifiedException;
+
+import org.apache.qpid.transport.Receiver;
+
+/**
+ * Drives an {@link SSLEngine} for a {@link NioNetworkConnection} without ever blocking: handshake messages and
+ * records are unwrapped on the selector thread as network data arrives, and wrapped by whichever thread writes.
+ *
+ * The network buffers are allocated once per connection and reused for every record. Decrypted application data
+ * is handed to the receiver as slices of a larger buffer which is only replaced once it is nearly used up, as
+ * the protocol decoders may keep references to the data they were given.
+ */
+final class NioSslHandler
+{
+    private final SSLEngine _engine;
+    private final int _applicationBufferSize;
+    private final int _receiveBufferSize;
+
+    // only accessed by the selector thread
+    private ByteBuffer _netInBuffer;
+    private ByteBuffer _appInBuffer;
+
+    // only accessed whilst holding the sender's write lock
+    private ByteBuffer _netOutBuffer;
+
+    NioSslHandler(final SSLEngine engine, final int receiveBufferSize)
+    {
+        _engine = engine;
+        _applicationBufferSize = engine.getSession().getApplicationBufferSize();
+        _receiveBufferSize = Math.max(receiveBufferSize, _applicationBufferSize);
+
+        final int packetBufferSize = engine.getSession().getPacketBufferSize();
+        _netInBuffer = ByteBuffer.allocate(packetBufferSize);
+        _netOutBuffer = ByteBuffer.allocate(packetBufferSize);
+        _netOutBuffer.flip();
+        _appInBuffer = ByteBuffer.allocate(_receiveBufferSize);
+    }
+
+    /**
+     * Reads whatever network data is available into the inbound network buffer.
+     *
+     * @return the number of bytes read, or -1 if the channel has reached end-of-stream
+     */
+    int read(final SocketChannel channel) throws IOException
+    {
+        if(!_netInBuffer.hasRemaining())
+        {
+            ByteBuffer netInBuffer = ByteBuffer.allocate(_netInBuffer.capacity() + _engine.getSession().getPacketBufferSize());
+            _netInBuffer.flip();
+            netInBuffer.put(_netInBuffer);
+            _netInBuffer = netInBuffer;
+        }
+        return channel.read(_netInBuffer);
+    }
+
+    /**
+     * Unwraps the buffered network data, passing any application data to the receiver.
+     *
+     * @return true if unwrapping stopped because the engine must wrap a handshake message before the remaining
+     * network data can be processed
+     */
+    boolean unwrap(final Receiver<ByteBuffer> receiver) throws IOException
+    {
+        _netInBuffer.flip();
+        try
+        {
+            while(_netInBuffer.hasRemaining() && !_engine.isInboundDone())
+            {
+                if(_appInBuffer.remaining() < _applicationBufferSize)
+                {
+                    _appInBuffer = ByteBuffer.allocate(_receiveBufferSize);
+                }
+
+                SSLEngineResult result = _engine.unwrap(_netInBuffer, _appInBuffer);
+                runDelegatedTasks(result);
+
+                final int produced = result.bytesProduced();
+                if(produced > 0)
+                {
+                    ByteBuffer data = _appInBuffer.duplicate();
+                    data.limit(data.position());
+                    data.position(data.position() - produced);
+                    receiver.received(data.slice());
+                }
+
+                Status status = result.getStatus();
+                if(status == Status.BUFFER_UNDERFLOW || status == Status.CLOSED)
+                {
+                    return false;
+                }
+                else if(status == Status.BUFFER_OVERFLOW)
+                {
+                    _appInBuffer = ByteBuffer.allocate(Math.max(_receiveBufferSize,
+                                                                _engine.getSession().getApplicationBufferSize()));
+                }
+                else if(_engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP)
+                {
+                    return _netInBuffer.hasRemaining();
+                }
+                else if(result.bytesConsumed() == 0 && produced == 0)
+                {
+                    return false;
+                }
+            }
+            return false;
+        }
+        finally
+        {
+            _netInBuffer.compact();
+        }
+    }
+
+    boolean isWrapNeeded()
+    {
+        return _engine.getHandshakeStatus() == HandshakeStatus.NEED_WRAP;
+    }
+
+    boolean isInboundDone()
+    {
+        return _engine.isInboundDone();
+    }
+
+    /**
+     * Writes any previously wrapped data still held in the outbound network buffer.
+     *
+     * @return true if the outbound network buffer has been emptied
+     */
+    boolean writeNetData(final SocketChannel channel) throws IOException
+    {
+        if(_netOutBuffer.hasRemaining())
+        {
+            channel.write(_netOutBuffer);
+        }
+        return !_netOutBuffer.hasRemaining();
+    }
+
+    /**
+     * Wraps as much of the given application data as fits into a single record. Must only be called once the
+     * outbound network buffer has been emptied.
+     */
+    SSLEngineResult wrap(final ByteBuffer[] appData, final int count) throws IOException
+    {
+        while(true)
+        {
+            _netOutBuffer.clear();
+            SSLEngineResult result;
+            try
+            {
+                result = _engine.wrap(appData, 0, count, _netOutBuffer);
+            }
+            finally
+            {
+                _netOutBuffer.flip();
+            }
+            runDelegatedTasks(result);
+
+            if(result.getStatus() == Status.BUFFER_OVERFLOW)
+            {
+                _netOutBuffer = ByteBuffer.allocate(_engine.getSession().getPacketBufferSize());
+                _netOutBuffer.flip();
+            }
+            else
+            {
+                return result;
+            }
+        }
+    }
+
+    void closeOutbound()
+    {
+        if(!_engine.isOutboundDone())
+        {
+            _engine.closeOutbound();
+        }
+    }
+
+    boolean isOutboundDone()
+    {
+        return _engine.isOutboundDone();
+    }
+
+    Principal getPeerPrincipal()
+    {
+        try
+        {
+            return _engine.getSession().getPeerPrincipal();
+        }
+        catch (SSLPeerUnverifiedException e)
+        {
+            return null;
+        }
+    }
+
+    private void runDelegatedTasks(final SSLEngineResult result)
+    {
+        if(result.getHandshakeStatus() == HandshakeStatus.NEED_TASK)
+        {
+            Runnable task;
+            while((task = _engine.getDelegatedTask()) != null)
+            {
+                task.run();
+            }
+        }
+    }
+}
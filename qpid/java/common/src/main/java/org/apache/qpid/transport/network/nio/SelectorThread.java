@@ -0,0 +1,263 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.IOException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import org.apache.qpid.thread.Threading;
+import org.apache.qpid.transport.TransportException;
+
+/**
+ * Multiplexes the reads, writes and idle ticks of many {@link NioNetworkConnection}s onto a single thread.
+ *
+ * All state other than the task queue is confined to the selector thread; other threads hand work to it
+ * through {@link #execute(Runnable)}.
+ */
+final class SelectorThread implements Runnable
+{
+    private static final Logger LOGGER = LoggerFactory.getLogger(SelectorThread.class);
+
+    private final Selector _selector;
+    private final Thread _thread;
+    private final Queue<Runnable> _tasks = new ConcurrentLinkedQueue<Runnable>();
+    private final Set<NioNetworkConnection> _connections = new HashSet<NioNetworkConnection>();
+
+    private volatile boolean _closed;
+    private volatile boolean _rescheduleTicks;
+    private long _nextTickTime;
+
+    SelectorThread(final String name)
+    {
+        try
+        {
+            _selector = Selector.open();
+        }
+        catch (IOException e)
+        {
+            throw new TransportException("Unable to open selector", e);
+        }
+
+        try
+        {
+            //Create but deliberately don't start the thread.
+            _thread = Threading.getThreadFactory().createThread(this);
+        }
+        catch(Exception e)
+        {
+            throw new TransportException("Error creating selector thread", e);
+        }
+        _thread.setDaemon(true);
+        _thread.setName(name);
+    }
+
+    void start()
+    {
+        _thread.start();
+    }
+
+    boolean isSelectorThread()
+    {
+        return Thread.currentThread() == _thread;
+    }
+
+    void addConnection(final NioNetworkConnection connection)
+    {
+        execute(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                try
+                {
+                    connection.register(_selector);
+                    _connections.add(connection);
+                    _rescheduleTicks = true;
+                }
+                catch (IOException e)
+                {
+                    LOGGER.error("Unable to register connection " + connection.getRemoteAddress() + " with selector", e);
+                    connection.closeImmediately(e);
+                }
+            }
+        });
+    }
+
+    /**
+     * Runs the given task on the selector thread, directly if the caller already is the selector thread.
+     */
+    void execute(final Runnable task)
+    {
+        if(isSelectorThread())
+        {
+            task.run();
+        }
+        else
+        {
+            _tasks.add(task);
+            _selector.wakeup();
+        }
+    }
+
+    /**
+     * Causes the next tick deadline to be recalculated, e.g. after the idle timeouts of a connection changed.
+     */
+    void rescheduleTicks()
+    {
+        _rescheduleTicks = true;
+        if(!isSelectorThread())
+        {
+            _selector.wakeup();
+        }
+    }
+
+    @Override
+    public void run()
+    {
+        try
+        {
+            while (!_closed)
+            {
+                long timeout = processTicks();
+
+                _selector.select(timeout);
+
+                runTasks();
+
+                Iterator<SelectionKey> keys = _selector.selectedKeys().iterator();
+                while(keys.hasNext())
+                {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    NioNetworkConnection connection = (NioNetworkConnection) key.attachment();
+
+                    if(key.isValid() && key.isReadable())
+                    {
+                        connection.doRead();
+                    }
+                    if(key.isValid() && key.isWritable())
+                    {
+                        connection.doWrite();
+                    }
+                }
+
+                runTasks();
+            }
+        }
+        catch (IOException e)
+        {
+            LOGGER.error("Failed to select on " + _thread.getName(), e);
+        }
+        catch (RuntimeException e)
+        {
+            LOGGER.error("Unexpected exception on " + _thread.getName(), e);
+            throw e;
+        }
+        finally
+        {
+            for(NioNetworkConnection connection : _connections)
+            {
+                connection.closeImmediately(null);
+            }
+            _connections.clear();
+            try
+            {
+                _selector.close();
+            }
+            catch (IOException e)
+            {
+                LOGGER.debug("Exception closing selector", e);
+            }
+        }
+    }
+
+    private void runTasks()
+    {
+        Runnable task;
+        while((task = _tasks.poll()) != null)
+        {
+            try
+            {
+                task.run();
+            }
+            catch (RuntimeException e)
+            {
+                LOGGER.error("Exception running task on " + _thread.getName(), e);
+            }
+        }
+    }
+
+    /**
+     * Ticks every connection whose idle deadline has passed and returns the time to wait before the next one is due.
+     * The connections are only scanned once the earliest known deadline has been reached, as activity on a
+     * connection can only ever push its own deadline further into the future.
+     */
+    private long processTicks()
+    {
+        long currentTime = System.currentTimeMillis();
+        if(_rescheduleTicks || currentTime >= _nextTickTime)
+        {
+            _rescheduleTicks = false;
+            long nextTickTime = Long.MAX_VALUE;
+            Iterator<NioNetworkConnection> iterator = _connections.iterator();
+            while(iterator.hasNext())
+            {
+                NioNetworkConnection connection = iterator.next();
+                if(connection.isClosed())
+                {
+                    iterator.remove();
+                    continue;
+                }
+                long connectionTickTime = currentTime + connection.processTick(currentTime);
+                if(connection.isClosed())
+                {
+                    iterator.remove();
+                }
+                else if(connectionTickTime < nextTickTime)
+                {
+                    nextTickTime = connectionTickTime;
+                }
+            }
+            _nextTickTime = nextTickTime;
+        }
+        return _nextTickTime == Long.MAX_VALUE ? 0L : Math.max(1L, _nextTickTime - currentTime);
+    }
+
+    void close()
+    {
+        _closed = true;
+        _selector.wakeup();
+    }
+
+    String getName()
+    {
+        return _thread.getName();
+    }
+}
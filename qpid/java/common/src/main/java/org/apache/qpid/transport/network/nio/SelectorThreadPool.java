@@ -0,0 +1,68 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A fixed set of {@link SelectorThread}s to which new connections are assigned round robin.
+ */
+final class SelectorThreadPool
+{
+    private final SelectorThread[] _selectorThreads;
+    private final AtomicInteger _nextThread = new AtomicInteger();
+
+    SelectorThreadPool(final String name, final int threadCount)
+    {
+        if(threadCount < 1)
+        {
+            throw new IllegalArgumentException("Selector thread count must be positive: " + threadCount);
+        }
+        _selectorThreads = new SelectorThread[threadCount];
+        for(int i = 0; i < threadCount; i++)
+        {
+            _selectorThreads[i] = new SelectorThread(String.format("%s-%d", name, i));
+        }
+        for(SelectorThread selectorThread : _selectorThreads)
+        {
+            selectorThread.start();
+        }
+    }
+
+    SelectorThread nextSelectorThread()
+    {
+        int index = (_nextThread.getAndIncrement() & Integer.MAX_VALUE) % _selectorThreads.length;
+        return _selectorThreads[index];
+    }
+
+    int getThreadCount()
+    {
+        return _selectorThreads.length;
+    }
+
+    void close()
+    {
+        for(SelectorThread selectorThread : _selectorThreads)
+        {
+            selectorThread.close();
+        }
+    }
+}
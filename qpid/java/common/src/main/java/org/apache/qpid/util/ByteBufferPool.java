@@ -0,0 +1,179 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.util;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.qpid.configuration.CommonProperties;
+
+/**
+ * A pool of byte buffers in power of two size classes, from which short lived buffers can be drawn instead of
+ * being allocated afresh for every use.
+ *
+ * A buffer may only be released back to the pool once nothing, including any slice or duplicate of it, refers
+ * to it any longer. Requests for buffers larger than the largest size class are met with buffers which are
+ * allocated on demand and never pooled.
+ */
+public final class ByteBufferPool
+{
+    private static final int MIN_BUFFER_SIZE_SHIFT = 8;
+
+    private static final int MAX_BUFFER_SIZE =
+            Integer.getInteger(CommonProperties.BUFFER_POOL_MAX_BUFFER_SIZE_PROP_NAME,
+                               CommonProperties.BUFFER_POOL_MAX_BUFFER_SIZE_DEFAULT);
+    private static final int MAX_BYTES_PER_SIZE =
+            Integer.getInteger(CommonProperties.BUFFER_POOL_MAX_BYTES_PER_SIZE_PROP_NAME,
+                               CommonProperties.BUFFER_POOL_MAX_BYTES_PER_SIZE_DEFAULT);
+
+    private static final ByteBufferPool HEAP_POOL = new ByteBufferPool(false, MAX_BUFFER_SIZE, MAX_BYTES_PER_SIZE);
+    private static final ByteBufferPool DIRECT_POOL = new ByteBufferPool(true, MAX_BUFFER_SIZE, MAX_BYTES_PER_SIZE);
+
+    private final boolean _direct;
+    private final BlockingQueue<ByteBuffer>[] _sizeClasses;
+
+    private final AtomicLong _acquisitions = new AtomicLong();
+    private final AtomicLong _allocations = new AtomicLong();
+    private final AtomicLong _releases = new AtomicLong();
+
+    /**
+     * @return the shared pool of heap buffers, for buffers whose backing array is needed
+     */
+    public static ByteBufferPool getHeapPool()
+    {
+        return HEAP_POOL;
+    }
+
+    /**
+     * @return the shared pool of direct buffers, for buffers which are only ever written to the network
+     */
+    public static ByteBufferPool getDirectPool()
+    {
+        return DIRECT_POOL;
+    }
+
+    @SuppressWarnings("unchecked")
+    public ByteBufferPool(final boolean direct, final int maxBufferSize, final int maxBytesPerSize)
+    {
+        _direct = direct;
+        final int sizeClassCount = maxBufferSize < (1 << MIN_BUFFER_SIZE_SHIFT) ? 0 : sizeClassIndex(maxBufferSize) + 1;
+        _sizeClasses = new BlockingQueue[sizeClassCount];
+        for(int i = 0; i < sizeClassCount; i++)
+        {
+            _sizeClasses[i] = new ArrayBlockingQueue<ByteBuffer>(Math.max(1, maxBytesPerSize / bufferSize(i)));
+        }
+    }
+
+    /**
+     * Returns a buffer with a position of zero and a limit of the given size, whose content is undefined.
+     */
+    public ByteBuffer acquire(final int size)
+    {
+        _acquisitions.incrementAndGet();
+
+        final int index = sizeClassIndex(size);
+        ByteBuffer buf = index < _sizeClasses.length ? _sizeClasses[index].poll() : null;
+        if(buf == null)
+        {
+            _allocations.incrementAndGet();
+            final int capacity = index < _sizeClasses.length ? bufferSize(index) : size;
+            buf = _direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+        }
+        buf.limit(size);
+        return buf;
+    }
+
+    /**
+     * Returns a buffer obtained from {@link #acquire(int)} to the pool. Buffers which do not belong to any of the
+     * size classes of the pool, or whose size class is full, are left to the garbage collector.
+     */
+    public void release(final ByteBuffer buf)
+    {
+        if(buf.isDirect() == _direct && Integer.bitCount(buf.capacity()) == 1)
+        {
+            final int index = sizeClassIndex(buf.capacity());
+            if(index < _sizeClasses.length && bufferSize(index) == buf.capacity())
+            {
+                buf.clear();
+                if(_sizeClasses[index].offer(buf))
+                {
+                    _releases.incrementAndGet();
+                }
+            }
+        }
+    }
+
+    public boolean isDirect()
+    {
+        return _direct;
+    }
+
+    /**
+     * @return the number of buffers which have been acquired from the pool
+     */
+    public long getAcquisitions()
+    {
+        return _acquisitions.get();
+    }
+
+    /**
+     * @return the number of acquisitions which could not be met from the pool and required a new buffer
+     */
+    public long getAllocations()
+    {
+        return _allocations.get();
+    }
+
+    /**
+     * @return the number of buffers which have been returned to the pool
+     */
+    public long getReleases()
+    {
+        return _releases.get();
+    }
+
+    /**
+     * @return the total capacity of the buffers currently held by the pool
+     */
+    public long getPooledBytes()
+    {
+        long pooledBytes = 0L;
+        for(int i = 0; i < _sizeClasses.length; i++)
+        {
+            pooledBytes += (long) _sizeClasses[i].size() * bufferSize(i);
+        }
+        return pooledBytes;
+    }
+
+    private static int sizeClassIndex(final int size)
+    {
+        return size <= (1 << MIN_BUFFER_SIZE_SHIFT)
+                ? 0
+                : 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_BUFFER_SIZE_SHIFT;
+    }
+
+    private static int bufferSize(final int index)
+    {
+        return 1 << (index + MIN_BUFFER_SIZE_SHIFT);
+    }
+}
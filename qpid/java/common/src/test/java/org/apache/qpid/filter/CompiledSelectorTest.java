@@ -0,0 +1,273 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.filter;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.apache.qpid.filter.selector.SelectorParser;
+
+public class CompiledSelectorTest extends TestCase
+{
+    private static final String[] SELECTORS = {
+            "colour = 'red'",
+            "colour <> 'red'",
+            "colour IS NULL",
+            "colour IS NOT NULL",
+            "colour IN ('red', 'green')",
+            "colour NOT IN ('red', 'green', 'blue', 'cyan', 'magenta', 'yellow')",
+            "colour LIKE 're%'",
+            "colour LIKE '%ed'",
+            "colour LIKE '%e%'",
+            "colour LIKE 'red'",
+            "colour LIKE '%'",
+            "colour LIKE 'r_d'",
+            "colour LIKE 'r%d%'",
+            "colour LIKE 're\\%' ESCAPE '\\'",
+            "colour NOT LIKE 're%'",
+            "colour > 1",
+            "colour = 1",
+            "size > 2",
+            "size >= 3",
+            "size < 3.5",
+            "size <= 3",
+            "size = 3",
+            "size <> 3",
+            "size = 'red'",
+            "size BETWEEN 1 AND 5",
+            "size NOT BETWEEN 1 AND 5",
+            "size = small",
+            "small < size",
+            "size > small",
+            "shortValue = 2",
+            "shortValue < size",
+            "weight > 2",
+            "weight = 2.5",
+            "weight < size",
+            "size < weight",
+            "big > 100",
+            "big = 4294967296",
+            "big > weight",
+            "-size < 0",
+            "size + 1 = 4",
+            "size - 1 = 2",
+            "size * 2 > weight",
+            "size / 2 > 1",
+            "size % 2 = 1",
+            "JMSPriority > 4",
+            "JMSPriority = 4",
+            "JMSPriority < size",
+            "JMSTimestamp > 1000",
+            "JMSTimestamp = big",
+            "JMSExpiration = 0",
+            "JMSExpiration < JMSTimestamp",
+            "JMSDeliveryMode = 'PERSISTENT'",
+            "JMSType = 'type'",
+            "JMSMessageID LIKE 'ID:%'",
+            "JMSCorrelationID IS NULL",
+            "JMSRedelivered = TRUE",
+            "JMSReplyTo IS NULL",
+            "JMSDestination IS NULL",
+            "flag",
+            "NOT flag",
+            "flag = TRUE",
+            "flag OR colour = 'red'",
+            "missing > 1 OR colour = 'red'",
+            "colour = 'red' OR missing > 1",
+            "missing > 1 AND colour = 'red'",
+            "colour = 'red' AND missing > 1",
+            "NOT (missing > 1)",
+            "colour = 'red' AND (size > 1 OR weight < 1)",
+            "missing = missing",
+            "missing <> 1"
+    };
+
+    public void testCompiledSelectorsEvaluateAsTheirExpressions() throws Exception
+    {
+        final List<FilterableMessage> messages = createMessages();
+        for(String selector : SELECTORS)
+        {
+            final BooleanExpression expression = new SelectorParser().parse(selector);
+            final CompiledSelector compiled = new CompiledSelector(expression);
+            for(FilterableMessage message : messages)
+            {
+                final String description = "'" + selector + "' against " + message;
+                assertEquals(description, outcome(expression, message), outcome(compiled, message));
+            }
+        }
+    }
+
+    public void testBooleanResultsAreCanonical() throws Exception
+    {
+        final TestMessage message = new TestMessage(false, 4);
+        message.put("colour", "red");
+        message.put("size", 3);
+
+        assertSame(Boolean.TRUE, evaluate("colour = 'red' AND size > 2", message));
+        assertSame(Boolean.FALSE, evaluate("colour LIKE 'b%'", message));
+        assertSame(Boolean.TRUE, evaluate("JMSTimestamp >= 1000 OR size < 1", message));
+        assertNull(evaluate("missing > 1", message));
+    }
+
+    private Object outcome(final Expression expression, final FilterableMessage message)
+    {
+        try
+        {
+            return expression.evaluate(message);
+        }
+        catch (SelectorParsingException e)
+        {
+            // arithmetic on operands which are not numbers fails in the same way whichever way it is evaluated
+            return e.getClass();
+        }
+    }
+
+    private Object evaluate(final String selector, final FilterableMessage message) throws Exception
+    {
+        return new CompiledSelector(new SelectorParser().parse(selector)).evaluate(message);
+    }
+
+    private List<FilterableMessage> createMessages()
+    {
+        final List<FilterableMessage> messages = new ArrayList<FilterableMessage>();
+
+        final TestMessage empty = new TestMessage(false, 0);
+        messages.add(empty);
+
+        final TestMessage integers = new TestMessage(true, 4);
+        integers.put("colour", "red");
+        integers.put("size", 3);
+        integers.put("small", (byte) 2);
+        integers.put("shortValue", (short) 2);
+        integers.put("weight", 2.5f);
+        integers.put("big", 4294967296L);
+        integers.put("flag", Boolean.TRUE);
+        messages.add(integers);
+
+        final TestMessage longs = new TestMessage(false, 9);
+        longs.put("colour", "green");
+        longs.put("size", 3L);
+        longs.put("small", (byte) 5);
+        longs.put("shortValue", (short) 7);
+        longs.put("weight", 3.0d);
+        longs.put("big", 100L);
+        longs.put("flag", Boolean.FALSE);
+        messages.add(longs);
+
+        final TestMessage floats = new TestMessage(true, 0);
+        floats.put("colour", "re%");
+        floats.put("size", 3.0f);
+        floats.put("small", (short) 1);
+        floats.put("weight", 2);
+        floats.put("big", 4294967296.0d);
+        floats.put("flag", "true");
+        messages.add(floats);
+
+        final TestMessage mismatched = new TestMessage(false, 4);
+        mismatched.put("colour", 5);
+        mismatched.put("size", "3");
+        mismatched.put("small", 2L);
+        mismatched.put("shortValue", 2);
+        mismatched.put("weight", Boolean.TRUE);
+        mismatched.put("big", (byte) 101);
+        messages.add(mismatched);
+
+        return messages;
+    }
+
+    private static class TestMessage implements FilterableMessage
+    {
+        private final Map<String, Object> _headers = new HashMap<String, Object>();
+        private final boolean _redelivered;
+        private final byte _priority;
+
+        private TestMessage(final boolean redelivered, final int priority)
+        {
+            _redelivered = redelivered;
+            _priority = (byte) priority;
+        }
+
+        void put(final String name, final Object value)
+        {
+            _headers.put(name, value);
+        }
+
+        public boolean isPersistent()
+        {
+            return _redelivered;
+        }
+
+        public boolean isRedelivered()
+        {
+            return _redelivered;
+        }
+
+        public Object getHeader(final String name)
+        {
+            return _headers.get(name);
+        }
+
+        public String getReplyTo()
+        {
+            return null;
+        }
+
+        public String getType()
+        {
+            return _redelivered ? "type" : null;
+        }
+
+        public byte getPriority()
+        {
+            return _priority;
+        }
+
+        public String getMessageId()
+        {
+            return "ID:" + _priority;
+        }
+
+        public long getTimestamp()
+        {
+            return _redelivered ? 4294967296L : 1000L;
+        }
+
+        public String getCorrelationId()
+        {
+            return null;
+        }
+
+        public long getExpiration()
+        {
+            return 0L;
+        }
+
+        @Override
+        public String toString()
+        {
+            return _headers.toString();
+        }
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.DeliveryProperties;
+import org.apache.qpid.transport.GatheringSender;
+import org.apache.qpid.transport.Header;
+import org.apache.qpid.transport.MessageAcceptMode;
+import org.apache.qpid.transport.MessageAcquireMode;
+import org.apache.qpid.transport.MessageProperties;
+import org.apache.qpid.transport.MessageTransfer;
+import org.apache.qpid.transport.Sender;
+
+/**
+ * Checks that message bodies handed to a {@link GatheringSender} without being copied are framed exactly as when
+ * each frame is copied into the sender.
+ */
+public class DisassemblerTest extends QpidTestCase
+{
+    private static final int MAX_FRAME = 512;
+
+    public void testEmptyBody()
+    {
+        // an empty body is still sent as a single empty body frame
+        assertGatheredAsCopied(new byte[0], 1);
+    }
+
+    public void testNoBody()
+    {
+        assertGatheredAsCopied(null, 0);
+    }
+
+    public void testSingleFrameBody()
+    {
+        assertGatheredAsCopied(createBody(100), 1);
+    }
+
+    public void testMultiFrameBody()
+    {
+        assertGatheredAsCopied(createBody(3 * MAX_FRAME + 17), 4);
+    }
+
+    public void testBodyNotCopiedWhenNotPermitted()
+    {
+        RecordingSender gathering = new RecordingSender();
+        Disassembler disassembler = new Disassembler(gathering, MAX_FRAME, false);
+        disassembler.send(createTransfer(createBody(100)));
+
+        assertTrue("Body handed to sender without copy", gathering._gathered.isEmpty());
+    }
+
+    private void assertGatheredAsCopied(final byte[] body, final int expectedBodyFrames)
+    {
+        CopyingSender copying = new CopyingSender();
+        new Disassembler(copying, MAX_FRAME).send(createTransfer(body));
+
+        RecordingSender gathering = new RecordingSender();
+        new Disassembler(gathering, MAX_FRAME, true).send(createTransfer(body));
+
+        assertTrue("Unexpected encoding of " + (body == null ? "no" : body.length + " byte") + " body",
+                   Arrays.equals(copying.toByteArray(), gathering.toByteArray()));
+        assertEquals("Unexpected number of gathered body frames", expectedBodyFrames, gathering._gathered.size());
+
+        int offset = 0;
+        for (ByteBuffer[] buffers : gathering._gathered)
+        {
+            assertEquals("Unexpected number of buffers per frame", 2, buffers.length);
+            ByteBuffer frameBody = buffers[1];
+            assertSame("Body was copied", body, frameBody.array());
+            assertEquals("Unexpected body offset", offset, frameBody.arrayOffset() + frameBody.position());
+            offset += frameBody.remaining();
+        }
+        assertEquals("Not all of the body was gathered", body == null ? 0 : body.length, offset);
+    }
+
+    private MessageTransfer createTransfer(final byte[] body)
+    {
+        DeliveryProperties deliveryProperties = new DeliveryProperties();
+        deliveryProperties.setRoutingKey("key");
+        MessageProperties messageProperties = new MessageProperties();
+        messageProperties.setContentType("application/octet-stream");
+
+        MessageTransfer transfer = new MessageTransfer("destination",
+                                                       MessageAcceptMode.NONE,
+                                                       MessageAcquireMode.PRE_ACQUIRED,
+                                                       new Header(deliveryProperties, messageProperties),
+                                                       body == null ? null : ByteBuffer.wrap(body));
+        transfer.setChannel(1);
+        return transfer;
+    }
+
+    private byte[] createBody(final int size)
+    {
+        byte[] body = new byte[size];
+        for (int i = 0; i < size; i++)
+        {
+            body[i] = (byte) i;
+        }
+        return body;
+    }
+
+    /** Consumes each buffer sent by copying it, as the senders which do not gather do. */
+    private static class CopyingSender implements Sender<ByteBuffer>
+    {
+        private final ByteArrayOutputStream _output = new ByteArrayOutputStream();
+
+        public void send(final ByteBuffer msg)
+        {
+            byte[] bytes = new byte[msg.remaining()];
+            msg.get(bytes);
+            _output.write(bytes, 0, bytes.length);
+        }
+
+        public void setIdleTimeout(final int i)
+        {
+        }
+
+        public void flush()
+        {
+        }
+
+        public void close()
+        {
+        }
+
+        byte[] toByteArray()
+        {
+            return _output.toByteArray();
+        }
+    }
+
+    /** Records the buffers handed over without copy, which are read only once the whole transfer has been sent. */
+    private static class RecordingSender extends CopyingSender implements GatheringSender
+    {
+        private final List<Object> _sent = new ArrayList<Object>();
+        private final List<ByteBuffer[]> _gathered = new ArrayList<ByteBuffer[]>();
+
+        @Override
+        public void send(final ByteBuffer msg)
+        {
+            byte[] bytes = new byte[msg.remaining()];
+            msg.get(bytes);
+            _sent.add(bytes);
+        }
+
+        public void sendWithoutCopy(final ByteBuffer... buffers)
+        {
+            _gathered.add(buffers);
+            _sent.add(buffers);
+        }
+
+        @Override
+        byte[] toByteArray()
+        {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            for (Object sent : _sent)
+            {
+                if (sent instanceof byte[])
+                {
+                    output.write((byte[]) sent, 0, ((byte[]) sent).length);
+                }
+                else
+                {
+                    for (ByteBuffer buffer : (ByteBuffer[]) sent)
+                    {
+                        ByteBuffer buf = buffer.duplicate();
+                        byte[] bytes = new byte[buf.remaining()];
+                        buf.get(bytes);
+                        output.write(bytes, 0, bytes.length);
+                    }
+                }
+            }
+            return output.toByteArray();
+        }
+    }
+}
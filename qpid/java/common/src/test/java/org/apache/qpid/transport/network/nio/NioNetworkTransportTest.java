@@ -0,0 +1,326 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.transport.network.nio;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.qpid.protocol.ProtocolEngine;
+import org.apache.qpid.protocol.ProtocolEngineFactory;
+import org.apache.qpid.test.utils.QpidTestCase;
+import org.apache.qpid.transport.ConnectionSettings;
+import org.apache.qpid.transport.GatheringSender;
+import org.apache.qpid.transport.NetworkTransportConfiguration;
+import org.apache.qpid.transport.Receiver;
+import org.apache.qpid.transport.Sender;
+import org.apache.qpid.transport.network.NetworkConnection;
+import org.apache.qpid.transport.network.TransportActivity;
+
+public class NioNetworkTransportTest extends QpidTestCase
+{
+    private static final int BUFFER_SIZE = 8192;
+
+    private NioNetworkTransport _incomingTransport;
+    private NioNetworkTransport _outgoingTransport;
+    private int _port;
+
+    @Override
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+        _port = findFreePort();
+        _incomingTransport = new NioNetworkTransport(2);
+        _incomingTransport.accept(new TestNetworkTransportConfiguration(_port), new ProtocolEngineFactory()
+        {
+            @Override
+            public ProtocolEngine newProtocolEngine()
+            {
+                return new EchoProtocolEngine();
+            }
+        }, null);
+        _outgoingTransport = new NioNetworkTransport();
+    }
+
+    @Override
+    protected void tearDown() throws Exception
+    {
+        try
+        {
+            _outgoingTransport.close();
+            _incomingTransport.close();
+        }
+        finally
+        {
+            super.tearDown();
+        }
+    }
+
+    public void testDataIsEchoedBack() throws Exception
+    {
+        byte[] data = new byte[BUFFER_SIZE * 16];
+        for(int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) i;
+        }
+
+        CollectingReceiver receiver = new CollectingReceiver(data.length);
+        NetworkConnection connection = connect(receiver);
+
+        Sender<ByteBuffer> sender = connection.getSender();
+        for(int offset = 0; offset < data.length; offset += 1000)
+        {
+            sender.send(ByteBuffer.wrap(data, offset, Math.min(1000, data.length - offset)));
+            sender.flush();
+        }
+
+        assertTrue("Echoed data not received", receiver.awaitData(10, TimeUnit.SECONDS));
+        assertTrue("Unexpected data received", Arrays.equals(data, receiver.getData()));
+    }
+
+    public void testDataSentWithoutCopyIsEchoedBack() throws Exception
+    {
+        byte[] data = new byte[BUFFER_SIZE * 16];
+        for(int i = 0; i < data.length; i++)
+        {
+            data[i] = (byte) i;
+        }
+
+        CollectingReceiver receiver = new CollectingReceiver(data.length);
+        NetworkConnection connection = connect(receiver);
+
+        Sender<ByteBuffer> sender = connection.getSender();
+        assertTrue("Sender does not support gathering writes", sender instanceof GatheringSender);
+        for(int offset = 0; offset < data.length; offset += 3000)
+        {
+            ByteBuffer header = ByteBuffer.wrap(data, offset, Math.min(7, data.length - offset));
+            ByteBuffer body = ByteBuffer.wrap(data, header.limit(), Math.min(3000, data.length - offset) - header.remaining());
+            ((GatheringSender) sender).sendWithoutCopy(header, body, ByteBuffer.allocate(0));
+            sender.flush();
+        }
+
+        assertTrue("Echoed data not received", receiver.awaitData(10, TimeUnit.SECONDS));
+        assertTrue("Unexpected data received", Arrays.equals(data, receiver.getData()));
+    }
+
+    public void testCloseNotifiesReceiver() throws Exception
+    {
+        CollectingReceiver receiver = new CollectingReceiver(1);
+        NetworkConnection connection = connect(receiver);
+
+        connection.getSender().send(ByteBuffer.wrap(new byte[]{1}));
+        connection.getSender().flush();
+        assertTrue("Echoed data not received", receiver.awaitData(10, TimeUnit.SECONDS));
+
+        connection.close();
+        assertTrue("Receiver not notified of close", receiver.awaitClosed(10, TimeUnit.SECONDS));
+    }
+
+    private NetworkConnection connect(final Receiver<ByteBuffer> receiver)
+    {
+        ConnectionSettings settings = new ConnectionSettings();
+        settings.setHost("localhost");
+        settings.setPort(_port);
+        return _outgoingTransport.connect(settings, receiver, new TestTransportActivity());
+    }
+
+    private static class CollectingReceiver implements Receiver<ByteBuffer>
+    {
+        private final ByteArrayOutputStream _data = new ByteArrayOutputStream();
+        private final int _expectedLength;
+        private final CountDownLatch _dataLatch = new CountDownLatch(1);
+        private final CountDownLatch _closedLatch = new CountDownLatch(1);
+
+        private CollectingReceiver(final int expectedLength)
+        {
+            _expectedLength = expectedLength;
+        }
+
+        @Override
+        public synchronized void received(final ByteBuffer msg)
+        {
+            while(msg.hasRemaining())
+            {
+                _data.write(msg.get());
+            }
+            if(_data.size() >= _expectedLength)
+            {
+                _dataLatch.countDown();
+            }
+        }
+
+        @Override
+        public void exception(final Throwable t)
+        {
+        }
+
+        @Override
+        public void closed()
+        {
+            _closedLatch.countDown();
+        }
+
+        boolean awaitData(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return _dataLatch.await(timeout, unit);
+        }
+
+        boolean awaitClosed(long timeout, TimeUnit unit) throws InterruptedException
+        {
+            return _closedLatch.await(timeout, unit);
+        }
+
+        synchronized byte[] getData()
+        {
+            return _data.toByteArray();
+        }
+    }
+
+    private static class EchoProtocolEngine extends TestTransportActivity implements ProtocolEngine
+    {
+        private NetworkConnection _network;
+        private Sender<ByteBuffer> _sender;
+
+        @Override
+        public SocketAddress getRemoteAddress()
+        {
+            return _network.getRemoteAddress();
+        }
+
+        @Override
+        public SocketAddress getLocalAddress()
+        {
+            return _network.getLocalAddress();
+        }
+
+        @Override
+        public long getWrittenBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public long getReadBytes()
+        {
+            return 0;
+        }
+
+        @Override
+        public void received(final ByteBuffer msg)
+        {
+            _sender.send(msg);
+            _sender.flush();
+        }
+
+        @Override
+        public void exception(final Throwable t)
+        {
+        }
+
+        @Override
+        public void closed()
+        {
+        }
+
+        @Override
+        public void setNetworkConnection(final NetworkConnection network, final Sender<ByteBuffer> sender)
+        {
+            _network = network;
+            _sender = sender;
+            _network.setMaxReadIdle(0);
+        }
+    }
+
+    private static class TestTransportActivity implements TransportActivity
+    {
+        @Override
+        public long getLastReadTime()
+        {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public long getLastWriteTime()
+        {
+            return System.currentTimeMillis();
+        }
+
+        @Override
+        public void writerIdle()
+        {
+        }
+
+        @Override
+        public void readerIdle()
+        {
+        }
+    }
+
+    private static class TestNetworkTransportConfiguration implements NetworkTransportConfiguration
+    {
+        private final int _port;
+
+        private TestNetworkTransportConfiguration(final int port)
+        {
+            _port = port;
+        }
+
+        @Override
+        public Boolean getTcpNoDelay()
+        {
+            return true;
+        }
+
+        @Override
+        public Integer getReceiveBufferSize()
+        {
+            return BUFFER_SIZE;
+        }
+
+        @Override
+        public Integer getSendBufferSize()
+        {
+            return BUFFER_SIZE;
+        }
+
+        @Override
+        public InetSocketAddress getAddress()
+        {
+            return new InetSocketAddress("localhost", _port);
+        }
+
+        @Override
+        public boolean needClientAuth()
+        {
+            return false;
+        }
+
+        @Override
+        public boolean wantClientAuth()
+        {
+            return false;
+        }
+    }
+}
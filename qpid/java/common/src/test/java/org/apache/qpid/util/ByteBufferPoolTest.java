@@ -0,0 +1,114 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+package org.apache.qpid.util;
+
+import java.nio.ByteBuffer;
+
+import junit.framework.TestCase;
+
+public class ByteBufferPoolTest extends TestCase
+{
+    private ByteBufferPool _pool = new ByteBufferPool(false, 4096, 8192);
+
+    public void testAcquiredBufferHasRequestedLimit()
+    {
+        ByteBuffer buf = _pool.acquire(1000);
+
+        assertEquals(0, buf.position());
+        assertEquals(1000, buf.limit());
+        assertEquals(1024, buf.capacity());
+        assertFalse(buf.isDirect());
+    }
+
+    public void testReleasedBufferIsReused()
+    {
+        ByteBuffer buf = _pool.acquire(1000);
+        buf.position(10);
+        _pool.release(buf);
+
+        assertEquals(1024, _pool.getPooledBytes());
+
+        ByteBuffer reused = _pool.acquire(600);
+        assertSame(buf, reused);
+        assertEquals(0, reused.position());
+        assertEquals(600, reused.limit());
+
+        assertEquals(2, _pool.getAcquisitions());
+        assertEquals(1, _pool.getAllocations());
+        assertEquals(1, _pool.getReleases());
+        assertEquals(0, _pool.getPooledBytes());
+    }
+
+    public void testSmallRequestsShareSmallestSizeClass()
+    {
+        ByteBuffer buf = _pool.acquire(1);
+        assertEquals(256, buf.capacity());
+        _pool.release(buf);
+
+        assertSame(buf, _pool.acquire(256));
+    }
+
+    public void testOversizeBufferIsNotPooled()
+    {
+        ByteBuffer buf = _pool.acquire(5000);
+        assertEquals(5000, buf.capacity());
+        assertEquals(5000, buf.limit());
+
+        _pool.release(buf);
+        assertEquals(0, _pool.getReleases());
+        assertEquals(0, _pool.getPooledBytes());
+    }
+
+    public void testForeignBuffersAreNotPooled()
+    {
+        _pool.release(ByteBuffer.allocate(1000));
+        _pool.release(ByteBuffer.allocateDirect(1024));
+
+        assertEquals(0, _pool.getReleases());
+        assertEquals(0, _pool.getPooledBytes());
+    }
+
+    public void testSizeClassIsBounded()
+    {
+        ByteBuffer[] buffers = new ByteBuffer[3];
+        for(int i = 0; i < buffers.length; i++)
+        {
+            buffers[i] = _pool.acquire(4096);
+        }
+        for(ByteBuffer buf : buffers)
+        {
+            _pool.release(buf);
+        }
+
+        assertEquals(2, _pool.getReleases());
+        assertEquals(8192, _pool.getPooledBytes());
+    }
+
+    public void testDirectPool()
+    {
+        ByteBufferPool pool = new ByteBufferPool(true, 4096, 8192);
+        ByteBuffer buf = pool.acquire(2048);
+        assertTrue(buf.isDirect());
+
+        pool.release(buf);
+        assertSame(buf, pool.acquire(2048));
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+var jsonObject = {
+    _tests:[]
+};
+
+var duration = 30000;
+var queueName = "direct://amq.direct//publisherContention__INDEX?durable='false'";
+
+// Each connection publishes small messages to a queue of its own, so that the only state shared
+// between the publishers is that of the virtual host and broker, such as their statistics counters.
+var numbersOfConnections = [1, 8, 32];
+
+for(i=0; i < numbersOfConnections.length ; i++)
+{
+    var numberOfConnections = numbersOfConnections[i];
+    var test = {
+      "_name": numberOfConnections,
+      "_queues": QPID.times(numberOfConnections,
+        {
+          "_name": queueName,
+          "_durable": false
+        },
+        "__INDEX"),
+      "_clients": QPID.times(numberOfConnections,
+        {
+          "_name": "client__INDEX",
+          "_connections":[
+            {
+              "_name": "connection1",
+              "_factory": "connectionfactory",
+              "_sessions": [
+                {
+                  "_sessionName": "producerSession",
+                  "_acknowledgeMode": 1,
+                  "_producers": [
+                    {
+                      "_name": "Producer__INDEX",
+                      "_destinationName": queueName,
+                      "_deliveryMode": 1,
+                      "_messageSize": 256,
+                      "_maximumDuration": duration
+                    }
+                  ]
+                },
+                {
+                  "_sessionName": "consumerSession",
+                  "_acknowledgeMode": 1,
+                  "_consumers": [
+                    {
+                      "_name": "Consumer__INDEX",
+                      "_destinationName": queueName,
+                      "_maximumDuration": duration
+                    }
+                  ]
+                }
+              ]
+            }
+          ]
+        },
+        "__INDEX")
+    };
+
+    jsonObject._tests= jsonObject._tests.concat(test);
+}
@@ -0,0 +1,120 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+var jsonObject = {
+    _tests:[]
+};
+
+var duration = 30000;
+var numberOfProducers = 16;
+var numberOfConsumers = 16;
+
+// 16 producers and 16 consumers sharing a single queue, comparing a sorted queue with a standard queue
+var queueTypes = [
+  {
+    "_name": "sorted-queue",
+    "_attributes": { "qpid.queue_sort_key": "sort-key" }
+  },
+  {
+    "_name": "simple-queue",
+    "_attributes": { }
+  }
+];
+
+var sortKeys = [];
+for(k=0; k < 1000; k++)
+{
+    sortKeys.push("key" + ((k * 7919) % 1000));
+}
+
+for(i=0; i < queueTypes.length ; i++)
+{
+    var queueType = queueTypes[i];
+    var queueName = "direct://amq.direct//contention-" + queueType._name + "?durable='false'";
+    var test = {
+      "_name": queueType._name,
+      "_queues": [
+        {
+          "_name": queueName,
+          "_durable": false,
+          "_attributes": queueType._attributes
+        }
+      ],
+      "_clients": QPID.times(numberOfProducers,
+        {
+          "_name": "producingClient__INDEX",
+          "_messageProviders": [
+            {
+              "_name": "messageProvider",
+              "_messageProperties": { "sort-key": {"@def": "list", "_items": sortKeys } }
+            }
+          ],
+          "_connections":[
+            {
+              "_name": "connection1",
+              "_factory": "connectionfactory",
+              "_sessions": [
+                {
+                  "_sessionName": "session1",
+                  "_acknowledgeMode": 1,
+                  "_producers": [
+                    {
+                      "_name": "Producer__INDEX",
+                      "_destinationName": queueName,
+                      "_deliveryMode": 1,
+                      "_messageSize": 256,
+                      "_maximumDuration": duration,
+                      "_messageProviderName": "messageProvider"
+                    }
+                  ]
+                }
+              ]
+            }
+          ]
+        },
+        "__INDEX").concat(QPID.times(numberOfConsumers,
+        {
+          "_name": "consumingClient__INDEX",
+          "_connections":[
+            {
+              "_name": "connection1",
+              "_factory": "connectionfactory",
+              "_sessions": [
+                {
+                  "_sessionName": "session1",
+                  "_acknowledgeMode": 1,
+                  "_consumers": [
+                    {
+                      "_name": "Consumer__INDEX",
+                      "_destinationName": queueName,
+                      "_maximumDuration": duration
+                    }
+                  ]
+                }
+              ]
+            }
+          ]
+        },
+        "__INDEX"))
+    };
+
+    jsonObject._tests= jsonObject._tests.concat(test);
+}
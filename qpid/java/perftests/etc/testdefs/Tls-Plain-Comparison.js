@@ -0,0 +1,101 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+var jsonObject = {
+    _tests:[]
+};
+
+var duration = 30000;
+var queueName = "direct://amq.direct//tlsPlainComparison?durable='false'";
+
+// The same 1P 1C test is run over a plain and a TLS connection factory, so that the cost of TLS in
+// the broker's I/O layer can be read off as the difference in throughput and latency.
+var factories = [["PLAIN", "connectionfactory"], ["TLS", "sslconnectionfactory"]];
+var messageSizes = [256, 1024, 16384, 65536];
+
+for(i=0; i < factories.length ; i++)
+{
+    var transport = factories[i][0];
+    var factory = factories[i][1];
+    for(j=0; j < messageSizes.length ; j++)
+    {
+        var messageSize = messageSizes[j];
+        var test = {
+          "_name": transport + " " + messageSize,
+          "_queues":[
+            {
+              "_name": queueName,
+              "_durable": false
+            }
+          ],
+          "_clients":[
+            {
+              "_name": "producingClient",
+              "_connections":[
+                {
+                  "_name": "connection1",
+                  "_factory": factory,
+                  "_sessions": [
+                    {
+                      "_sessionName": "session1",
+                      "_acknowledgeMode": 1,
+                      "_producers": [
+                        {
+                          "_name": "Producer1",
+                          "_destinationName": queueName,
+                          "_deliveryMode": 1,
+                          "_messageSize": messageSize,
+                          "_maximumDuration": duration
+                        }
+                      ]
+                    }
+                  ]
+                }
+              ]
+            },
+            {
+              "_name": "consumingClient",
+              "_connections":[
+                {
+                  "_name": "connection1",
+                  "_factory": factory,
+                  "_sessions": [
+                    {
+                      "_sessionName": "session1",
+                      "_acknowledgeMode": 1,
+                      "_consumers": [
+                        {
+                          "_name": "Consumer1",
+                          "_destinationName": queueName,
+                          "_maximumDuration": duration,
+                          "_evaluateLatency": true
+                        }
+                      ]
+                    }
+                  ]
+                }
+              ]
+            }
+          ]
+        };
+
+        jsonObject._tests= jsonObject._tests.concat(test);
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ *
+ */
+
+var jsonObject = {
+    _tests:[]
+};
+
+var duration = 30000;
+var numberOfPairs = 8;
+var topicName = "topic://amq.topic/?routingkey='routing.publish.__INDEX'";
+
+// Each test has 8 pairs of producers and consumers, each pair with a topic of its own, publishing through a topic
+// exchange which also holds a varying number of bindings to queues which the messages do not match
+var numbersOfBindings = [10, 10000];
+
+for(i=0; i < numbersOfBindings.length ; i++)
+{
+    var numberOfBindings = numbersOfBindings[i];
+    var test = {
+      "_name": numberOfBindings,
+      "_queues": QPID.times(numberOfBindings,
+        {
+          "_name": "direct://amq.topic//topic-routing-__INDEX?routingkey='routing.__INDEX.*'&durable='false'",
+          "_durable": false
+        },
+        "__INDEX"),
+      "_clients":
+        QPID.times(numberOfPairs,
+            {
+              "_name": "producingClient-__INDEX",
+              "_connections":[
+                {
+                  "_name": "connection1",
+                  "_factory": "connectionfactory",
+                  "_sessions": [
+                    {
+                      "_sessionName": "session1",
+                      "_acknowledgeMode": 1,
+                      "_producers": [
+                        {
+                          "_name": "Producer-__INDEX",
+                          "_destinationName": topicName,
+                          "_isTopic": true,
+                          "_deliveryMode": 1,
+                          "_messageSize": 256,
+                          "_maximumDuration": duration,
+                          "_startDelay": 2000 // gives the consumers time to implicitly create the topic
+                        }
+                      ]
+                    }
+                  ]
+                }
+              ]
+            },
+            "__INDEX")
+        .concat(
+        QPID.times(numberOfPairs,
+            {
+              "_name": "consumingClient-__INDEX",
+              "_connections":[
+                {
+                  "_name": "connection1",
+                  "_factory": "connectionfactory",
+                  "_sessions": [
+                    {
+                      "_sessionName": "session1",
+                      "_acknowledgeMode": 1,
+                      "_consumers": [
+                        {
+                          "_name": "Consumer-__INDEX",
+                          "_destinationName": topicName,
+                          "_isTopic": true,
+                          "_maximumDuration": duration
+                        }
+                      ]
+                    }
+                  ]
+                }
+              ]
+            },
+            "__INDEX"))
+    };
+
+    jsonObject._tests= jsonObject._tests.concat(test);
+}
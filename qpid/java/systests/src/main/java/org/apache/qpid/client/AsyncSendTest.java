@@ -0,0 +1,167 @@
+/*
+ *  Licensed to the Apache Software Foundation (ASF) under one
+ *  or more contributor license agreements.  See the NOTICE file
+ *  distributed with this work for additional information
+ *  regarding copyright ownership.  The ASF licenses this file
+ *  to you under the Apache License, Version 2.0 (the
+ *  "License"); you may not use this file except in compliance
+ *  with the License.  You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing,
+ *  software distributed under the License is distributed on an
+ *  "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ *  KIND, either express or implied.  See the License for the
+ *  specific language governing permissions and limitations
+ *  under the License.
+ *
+ *
+ */
+package org.apache.qpid.client;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import javax.jms.Connection;
+import javax.jms.DeliveryMode;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.Queue;
+import javax.jms.Session;
+
+import org.apache.qpid.configuration.ClientProperties;
+import org.apache.qpid.jms.CompletionListener;
+import org.apache.qpid.jms.MessageProducer;
+import org.apache.qpid.test.utils.QpidBrokerTestCase;
+
+public class AsyncSendTest extends QpidBrokerTestCase
+{
+    private static final int MSG_COUNT = 500;
+    private static final long COMPLETION_TIMEOUT = 10000;
+
+    private Connection _connection;
+    private Session _session;
+    private Queue _queue;
+
+    protected void setUp() throws Exception
+    {
+        super.setUp();
+
+        _connection = getConnection();
+        _session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        _queue = _session.createQueue(getTestQueueName());
+        _session.createConsumer(_queue).close();
+    }
+
+    public void testCompletionListenerNotifiedForEachMessageInSendOrder() throws Exception
+    {
+        MessageProducer producer = (MessageProducer) _session.createProducer(_queue);
+        producer.setDeliveryMode(DeliveryMode.PERSISTENT);
+
+        RecordingCompletionListener listener = new RecordingCompletionListener(MSG_COUNT);
+        List<Message> sent = new ArrayList<Message>();
+        for (int i = 0; i < MSG_COUNT; i++)
+        {
+            Message message = createNextMessage(_session, i);
+            producer.send(message, listener);
+            sent.add(message);
+        }
+
+        assertTrue("Not all sends completed", listener.await());
+        assertEquals("Unexpected exceptions", Collections.<Exception>emptyList(), listener.getExceptions());
+        assertEquals("Completions not notified in send order", sent, listener.getCompleted());
+
+        _connection.start();
+        MessageConsumer consumer = _session.createConsumer(_queue);
+        for (int i = 0; i < MSG_COUNT; i++)
+        {
+            Message message = consumer.receive(RECEIVE_TIMEOUT);
+            assertNotNull("Message " + i + " not received", message);
+            assertEquals("Unexpected message", i, message.getIntProperty(INDEX));
+        }
+    }
+
+    public void testInFlightWindowSmallerThanMessageCount() throws Exception
+    {
+        _connection.close();
+        setTestClientSystemProperty(ClientProperties.QPID_MAX_IN_FLIGHT_ASYNC_SENDS, "4");
+        _connection = getConnection();
+        _session = _connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+
+        MessageProducer producer = (MessageProducer) _session.createProducer(_queue);
+
+        RecordingCompletionListener listener = new RecordingCompletionListener(MSG_COUNT);
+        for (int i = 0; i < MSG_COUNT; i++)
+        {
+            producer.send(createNextMessage(_session, i), listener);
+        }
+
+        assertTrue("Not all sends completed", listener.await());
+        assertEquals("Unexpected number of completions", MSG_COUNT, listener.getCompleted().size());
+    }
+
+    public void testCloseWaitsForOutstandingSends() throws Exception
+    {
+        MessageProducer producer = (MessageProducer) _session.createProducer(_queue);
+
+        RecordingCompletionListener listener = new RecordingCompletionListener(MSG_COUNT);
+        for (int i = 0; i < MSG_COUNT; i++)
+        {
+            producer.send(createNextMessage(_session, i), listener);
+        }
+        producer.close();
+
+        assertEquals("Not all sends notified on close", 0, listener.getOutstanding());
+        assertEquals("Unexpected number of completions", MSG_COUNT, listener.getCompleted().size());
+    }
+
+    private static final class RecordingCompletionListener implements CompletionListener
+    {
+        private final CountDownLatch _outstanding;
+        private final List<Message> _completed = Collections.synchronizedList(new ArrayList<Message>());
+        private final List<Exception> _exceptions = Collections.synchronizedList(new ArrayList<Exception>());
+
+        private RecordingCompletionListener(int count)
+        {
+            _outstanding = new CountDownLatch(count);
+        }
+
+        @Override
+        public void onCompletion(Message message)
+        {
+            _completed.add(message);
+            _outstanding.countDown();
+        }
+
+        @Override
+        public void onException(Message message, Exception exception)
+        {
+            _exceptions.add(exception);
+            _outstanding.countDown();
+        }
+
+        boolean await() throws InterruptedException
+        {
+            return _outstanding.await(COMPLETION_TIMEOUT, TimeUnit.MILLISECONDS);
+        }
+
+        long getOutstanding()
+        {
+            return _outstanding.getCount();
+        }
+
+        List<Message> getCompleted()
+        {
+            return new ArrayList<Message>(_completed);
+        }
+
+        List<Exception> getExceptions()
+        {
+            return new ArrayList<Exception>(_exceptions);
+        }
+    }
+}